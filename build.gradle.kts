@@ -15,6 +15,8 @@ plugins {
 
 	id("me.qoomon.git-versioning")
 
+	id("me.champeau.jmh")
+
 	id("idea")
 }
 
@@ -88,6 +90,7 @@ configurations["integrationTestImplementation"].extendsFrom(configurations["test
 dependencies {
 	implementation("com.github.spotbugs:spotbugs-annotations:4.8.6")
 	implementation("io.vavr:vavr:0.10.5")
+	implementation("org.apache.commons:commons-compress:1.26.1")
 	implementation("net.jcip:jcip-annotations:1.0")
 
 	testImplementation("cglib:cglib-nodep:3.3.0")
@@ -113,6 +116,10 @@ tasks.named("spotbugsFunctionalTest") {
 	enabled = false
 }
 
+tasks.named("spotbugsJmh") {
+	enabled = false
+}
+
 pmd {
 	toolVersion = "6.33.0"
 	isConsoleOutput = true
@@ -124,6 +131,12 @@ pmd {
 
 }
 
+jmh {
+	warmupIterations = 2
+	iterations = 5
+	fork = 1
+}
+
 group = "com.brunoritz.gradle"
 
 gitVersioning.apply {
@@ -147,7 +160,8 @@ idea {
 	module {
 		testSources.from(
 			sourceSets["integrationTest"].java.srcDirs,
-			sourceSets["functionalTest"].java.srcDirs
+			sourceSets["functionalTest"].java.srcDirs,
+			sourceSets["jmh"].java.srcDirs
 		)
 
 		testResources.from(
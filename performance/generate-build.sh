@@ -0,0 +1,76 @@
+#!/bin/sh
+#
+# Generates a synthetic multi-project build applying the plugin to every project. The plugin is taken from this
+# repository via an included build, so that local changes are picked up without publishing the plugin first.
+#
+# Usage: generate-build.sh <target-dir> [<number-of-subprojects>]
+#
+
+set -e
+
+if [ $# -lt 1 ]; then
+	echo "Usage: $0 <target-dir> [<number-of-subprojects>]" >&2
+	exit 1
+fi
+
+TARGET_DIR="$1"
+SUBPROJECTS="${2:-500}"
+PLUGIN_DIR="$(cd "$(dirname "$0")/.." && pwd)"
+
+mkdir -p "$TARGET_DIR"
+
+cat > "$TARGET_DIR/settings.gradle" <<SETTINGS
+pluginManagement {
+	includeBuild('$PLUGIN_DIR')
+}
+
+rootProject.name = 'synthetic-build'
+
+(1..$SUBPROJECTS).each { include("project-\$it") }
+SETTINGS
+
+cat > "$TARGET_DIR/build.gradle" <<BUILD
+plugins {
+	id 'com.brunoritz.gradle.singular-node'
+}
+
+nodeJs {
+	nodeVersion.set('20.6.0')
+	npmVersion.set('9.8.1')
+	yarnVersion.set('1.22.19')
+	pnpmVersion.set('8.7.4')
+}
+
+subprojects {
+	apply plugin: 'com.brunoritz.gradle.singular-node'
+
+	tasks.register('lint', com.brunoritz.gradle.singularnode.npm.NpmTask) {
+		args.set(['run', 'lint'])
+	}
+
+	tasks.register('test', com.brunoritz.gradle.singularnode.npm.NpmTask) {
+		args.set(['run', 'test'])
+		environment.put('CI', 'true')
+	}
+}
+BUILD
+
+i=1
+while [ "$i" -le "$SUBPROJECTS" ]; do
+	PROJECT_DIR="$TARGET_DIR/project-$i"
+
+	mkdir -p "$PROJECT_DIR"
+	cat > "$PROJECT_DIR/package.json" <<PACKAGE
+{
+  "name": "project-$i",
+  "version": "1.0.0",
+  "scripts": {
+    "lint": "node -e \"\"",
+    "test": "node -e \"\""
+  }
+}
+PACKAGE
+	i=$((i + 1))
+done
+
+echo "Generated $SUBPROJECTS subprojects in $TARGET_DIR"
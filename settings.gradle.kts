@@ -9,6 +9,7 @@ pluginManagement {
 		id("com.github.spotbugs").version("5.2.1")
 		id("org.checkerframework").version("0.6.34")
 		id("me.qoomon.git-versioning").version("6.4.2")
+		id("me.champeau.jmh").version("0.7.2")
 	}
 }
 
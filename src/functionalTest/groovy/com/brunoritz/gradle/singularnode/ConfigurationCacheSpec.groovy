@@ -0,0 +1,112 @@
+package com.brunoritz.gradle.singularnode
+
+import org.gradle.testkit.runner.BuildResult
+import org.gradle.testkit.runner.GradleRunner
+import spock.lang.Specification
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class ConfigurationCacheSpec
+	extends Specification
+{
+	private static final int SUBPROJECT_COUNT = 200
+
+	private File rootProjectDir
+
+	def setup()
+	{
+		rootProjectDir = File.createTempDir()
+
+		new File(rootProjectDir, 'build.gradle') << '''
+			plugins {
+			    id 'com.brunoritz.gradle.singular-node'
+			}
+
+			nodeJs {
+				nodeVersion.set('20.6.0')
+				npmVersion.set('10.0.0')
+				pnpmVersion.set('8.7.5')
+				yarnVersion.set('1.22.19')
+			}
+		'''
+
+		def settingsFile = new File(rootProjectDir, 'settings.gradle')
+
+		(1..SUBPROJECT_COUNT).each { index ->
+			def subProjectDir = new File(rootProjectDir, "subproject-${index}")
+
+			subProjectDir.mkdirs()
+			settingsFile << "include ':subproject-${index}'\n"
+
+			new File(subProjectDir, 'package.json') << '{ "scripts": { "test": "node -v" } }'
+			new File(subProjectDir, 'build.gradle') << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task runNpm(type: NpmTask) {
+					args.set(['run', 'test'])
+				}
+
+				task runPnpm(type: PnpmTask) {
+					args.set(['run', 'test'])
+				}
+
+				task runYarn(type: YarnTask) {
+					args.set(['run', 'test'])
+				}
+			'''
+		}
+	}
+
+	def cleanup()
+	{
+		rootProjectDir.deleteDir()
+	}
+
+	def 'The plugin shall be compatible with the configuration cache in a large multi-project build'()
+	{
+		when:
+			def firstRun = dryRunWithConfigurationCache()
+			def secondRun = dryRunWithConfigurationCache()
+
+		then:
+			firstRun.output.contains('Configuration cache entry stored')
+			secondRun.output.contains('Configuration cache entry reused')
+	}
+
+	def 'It shall run NPM tasks from a reused configuration cache entry'()
+	{
+		when:
+			def firstRun = runWithConfigurationCache(':subproject-1:runNpm')
+			def secondRun = runWithConfigurationCache(':subproject-1:runNpm')
+
+		then:
+			firstRun.output.contains('Configuration cache entry stored')
+			firstRun.task(':subproject-1:installNpmPackages').outcome == SUCCESS
+			firstRun.task(':subproject-1:runNpm').outcome == SUCCESS
+			firstRun.output.contains('v20.6.0')
+
+			secondRun.output.contains('Configuration cache entry reused')
+			secondRun.task(':subproject-1:runNpm').outcome == SUCCESS
+			secondRun.output.contains('v20.6.0')
+	}
+
+	/*
+	 * A dry run still requires every project to be configured and the full task graph to be calculated and serialized,
+	 * but avoids installing packages in hundreds of projects.
+	 */
+	private BuildResult dryRunWithConfigurationCache()
+	{
+		return runWithConfigurationCache('--dry-run', 'runNpm', 'runPnpm', 'runYarn')
+	}
+
+	private BuildResult runWithConfigurationCache(String... arguments)
+	{
+		return GradleRunner.create()
+			.withProjectDir(rootProjectDir)
+			.withArguments(['--configuration-cache'] + arguments.toList())
+			.withPluginClasspath()
+			.build()
+	}
+}
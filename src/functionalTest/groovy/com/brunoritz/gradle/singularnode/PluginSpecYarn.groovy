@@ -94,6 +94,55 @@ class PluginSpecYarn
 			result.output.contains('script output')
 	}
 
+	def 'It shall be possible to provision Yarn through Corepack'()
+	{
+		given:
+			def rootPackageFile = new File(rootProjectDir, 'package.json')
+			def packageFile = new File(subProjectDir, 'package.json')
+
+			rootBuildFile << '''
+				nodeJs {
+					packageManagerProvisioning.set('corepack')
+				}
+			'''
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task yarnVersion(type: YarnTask) {
+					args.set([
+						'--version'
+					])
+				}
+			'''
+
+			rootPackageFile << '''
+				{
+					"packageManager": "yarn@1.22.19"
+				}
+			'''
+
+			packageFile << '''
+				{
+					"name": "subproject"
+				}
+			'''
+
+		when:
+			def result = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments(':subproject:yarnVersion')
+				.withPluginClasspath()
+				.build()
+
+		then:
+			result.task(':installYarn').outcome == SUCCESS
+			result.output.contains('1.22.19')
+			new File(rootProjectDir, 'nodejs/corepack').isDirectory()
+	}
+
 	def 'It shall be possible to pass environment variables to scripts via Yarn'()
 	{
 		given:
@@ -1,9 +1,15 @@
 package com.brunoritz.gradle.singularnode
 
+import groovy.json.JsonSlurper
 import org.gradle.testkit.runner.GradleRunner
 import spock.lang.Specification
 
+import java.nio.file.Files
+
+import static org.gradle.testkit.runner.TaskOutcome.FAILED
+import static org.gradle.testkit.runner.TaskOutcome.FROM_CACHE
 import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+import static org.gradle.testkit.runner.TaskOutcome.UP_TO_DATE
 
 class PuginSpecNpm
 	extends Specification
@@ -94,6 +100,200 @@ class PuginSpecNpm
 			result.output.contains('script output')
 	}
 
+	def 'It shall run several scripts at once, reporting the outcome of each script'()
+	{
+		given:
+			def packageFile = new File(subProjectDir, 'package.json')
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task check(type: NpmRunTask) {
+					scripts.set(['lint', 'test', 'pack'])
+				}
+			'''
+
+			packageFile << '''
+				{
+					"scripts": {
+						"lint": "echo lint-output",
+						"test": "echo test-output && exit 3",
+						"pack": "echo pack-output"
+					}
+				}
+			'''
+
+		when:
+			def result = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments(':subproject:check')
+				.withPluginClasspath()
+				.buildAndFail()
+
+		then:
+			result.task(':subproject:check').outcome == FAILED
+			result.output.contains('[lint] lint-output')
+			result.output.contains('[test] test-output')
+			result.output.contains('[pack] pack-output')
+			result.output.contains('lint  succeeded in ')
+			result.output.contains('test  failed with exit code 3 in ')
+			result.output.contains('pack  succeeded in ')
+			result.output.contains('1 of 3 scripts failed: test (exit code 3)')
+	}
+
+	def 'It shall run scripts concurrently, each with its pre and post scripts in order'()
+	{
+		given:
+			def packageFile = new File(subProjectDir, 'package.json')
+			def scriptFile = new File(subProjectDir, 'meet.js')
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task check(type: NpmRunTask) {
+					scripts.set(['one', 'two'])
+					parallelism.set(2)
+				}
+			'''
+
+			scriptFile << '''
+				const fs = require('fs');
+				const [own, other] = process.argv.slice(2);
+				const deadline = Date.now() + 30000;
+
+				fs.writeFileSync(`${own}.started`, '');
+
+				while (!fs.existsSync(`${other}.started`)) {
+					if (Date.now() > deadline) {
+						console.log(`${own} ran alone`);
+						process.exit(1);
+					}
+
+					Atomics.wait(new Int32Array(new SharedArrayBuffer(4)), 0, 0, 50);
+				}
+
+				console.log(`${own} met ${other}`);
+			'''
+
+			packageFile << '''
+				{
+					"scripts": {
+						"preone": "echo pre-one",
+						"one": "node meet.js one two",
+						"postone": "echo post-one",
+						"two": "node meet.js two one"
+					}
+				}
+			'''
+
+		when:
+			def result = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments(':subproject:check')
+				.withPluginClasspath()
+				.build()
+
+		then:
+			result.task(':subproject:check').outcome == SUCCESS
+			result.output.contains('[one] one met two')
+			result.output.contains('[two] two met one')
+			result.output.indexOf('[one] pre-one') < result.output.indexOf('[one] one met two')
+			result.output.indexOf('[one] one met two') < result.output.indexOf('[one] post-one')
+	}
+
+	def 'It shall not run more scripts at the same time than allowed by the parallelism'()
+	{
+		given:
+			def packageFile = new File(subProjectDir, 'package.json')
+			def scriptFile = new File(subProjectDir, 'exclusive.js')
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task check(type: NpmRunTask) {
+					scripts.set(['one', 'two', 'six'])
+					parallelism.set(1)
+				}
+			'''
+
+			scriptFile << '''
+				const fs = require('fs');
+				const lock = fs.openSync('running.lock', 'wx');
+
+				Atomics.wait(new Int32Array(new SharedArrayBuffer(4)), 0, 0, 300);
+				fs.closeSync(lock);
+				fs.unlinkSync('running.lock');
+				console.log(`${process.argv[2]} ran alone`);
+			'''
+
+			packageFile << '''
+				{
+					"scripts": {
+						"one": "node exclusive.js one",
+						"two": "node exclusive.js two",
+						"six": "node exclusive.js six"
+					}
+				}
+			'''
+
+		when:
+			def result = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments(':subproject:check')
+				.withPluginClasspath()
+				.build()
+
+		then:
+			result.task(':subproject:check').outcome == SUCCESS
+			result.output.contains('[one] one ran alone')
+			result.output.contains('[two] two ran alone')
+			result.output.contains('[six] six ran alone')
+	}
+
+	def 'It shall report missing and failed scripts together'()
+	{
+		given:
+			def packageFile = new File(subProjectDir, 'package.json')
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task check(type: NpmRunTask) {
+					scripts.set(['lint', 'gone', 'test'])
+				}
+			'''
+
+			packageFile << '''
+				{
+					"scripts": {
+						"lint": "echo lint-output",
+						"test": "exit 2"
+					}
+				}
+			'''
+
+		when:
+			def result = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments(':subproject:check')
+				.withPluginClasspath()
+				.buildAndFail()
+
+		then:
+			result.task(':subproject:check').outcome == FAILED
+			result.output.contains('[lint] lint-output')
+			result.output.contains('[gone] Missing script: "gone"')
+			result.output.contains('2 of 3 scripts failed: gone (exit code 1), test (exit code 2)')
+	}
+
 	def 'It shall be possible to pass environment variables to scripts via NPM'()
 	{
 		given:
@@ -140,4 +340,286 @@ class PuginSpecNpm
 			result.output.contains('bar-environment')
 			result.output.contains('baz-environment')
 	}
+
+	def 'It shall be possible to run NPM tasks in long-lived NodeJS workers'()
+	{
+		given:
+			def packageFile = new File(subProjectDir, 'package.json')
+			def scriptFile = new File(subProjectDir, 'test.js')
+
+			rootBuildFile << '''
+				nodeJs {
+					nodeWorkers.set(true)
+				}
+			'''
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task runFirst(type: NpmTask) {
+					args.set(['run', 'test'])
+					environment.set([MESSAGE: 'first-invocation'])
+				}
+
+				task runSecond(type: NpmTask) {
+					dependsOn runFirst
+					args.set(['run', 'test'])
+					environment.set([MESSAGE: 'second-invocation'])
+				}
+			'''
+
+			scriptFile << 'console.log(process.env.MESSAGE, process.cwd())'
+
+			packageFile << '''
+				{
+					"scripts": {
+						"test": "node test.js"
+					}
+				}
+			'''
+
+		when:
+			def result = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments(':subproject:runSecond')
+				.withPluginClasspath()
+				.build()
+
+		then:
+			result.task(':subproject:runFirst').outcome == SUCCESS
+			result.task(':subproject:runSecond').outcome == SUCCESS
+			result.output.contains("first-invocation ${subProjectDir.canonicalPath}")
+			result.output.contains("second-invocation ${subProjectDir.canonicalPath}")
+	}
+
+	def 'It shall forward the output of child processes spawned in long-lived NodeJS workers'()
+	{
+		given:
+			def packageFile = new File(subProjectDir, 'package.json')
+			def scriptFile = new File(subProjectDir, 'test.js')
+
+			rootBuildFile << '''
+				nodeJs {
+					nodeWorkers.set(true)
+				}
+			'''
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task runNpm(type: NpmTask) {
+					args.set(['run', 'test'])
+				}
+			'''
+
+			scriptFile << '''
+				const childProcess = require('child_process');
+
+				childProcess.spawnSync('node', ['-e', 'console.log("synchronous-child")'], { stdio: 'inherit' });
+				childProcess.spawn('node', ['-e', 'console.log("asynchronous-child")'], { stdio: 'inherit' });
+			'''
+
+			packageFile << '''
+				{
+					"scripts": {
+						"pretest": "echo pre-script",
+						"test": "node test.js"
+					}
+				}
+			'''
+
+		when:
+			def result = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments(':subproject:runNpm')
+				.withPluginClasspath()
+				.build()
+
+		then:
+			result.task(':subproject:runNpm').outcome == SUCCESS
+			result.output.contains('pre-script')
+			result.output.contains('synchronous-child')
+			result.output.contains('asynchronous-child')
+	}
+
+	def 'It shall write a telemetry report of all NodeJS invocations'()
+	{
+		given:
+			def packageFile = new File(subProjectDir, 'package.json')
+			def reportFile = new File(rootProjectDir, 'build/reports/singular-node/telemetry.json')
+
+			rootBuildFile << '''
+				nodeJs {
+					executionTelemetry.set(true)
+				}
+			'''
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task runTest(type: NpmTask) {
+					args.set(['run', 'test'])
+				}
+			'''
+
+			packageFile << '''
+				{
+					"scripts": {
+						"test": "node -e \\"console.log('telemetry')\\""
+					}
+				}
+			'''
+
+		when:
+			def result = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments(':subproject:runTest')
+				.withPluginClasspath()
+				.build()
+
+		then:
+			result.task(':subproject:runTest').outcome == SUCCESS
+			reportFile.isFile()
+
+		when:
+			def invocations = new JsonSlurper().parse(reportFile).invocations
+
+		then:
+			invocations*.task.containsAll([':subproject:installNpmPackages', ':subproject:runTest'])
+			invocations.every { it.exitCode == 0 && it.packageManager == 'npm' }
+			invocations.find { it.task == ':subproject:runTest' }.stdoutBytes > 0
+			invocations.find { it.task == ':subproject:runTest' }.cpuTimeMillis != null
+	}
+
+	def 'It shall not run NPM tasks again whose inputs and outputs are unchanged'()
+	{
+		given:
+			def packageFile = new File(subProjectDir, 'package.json')
+			def sourceFile = new File(subProjectDir, 'src/input.txt')
+			def scriptFile = new File(subProjectDir, 'build.js')
+			def outputFile = new File(subProjectDir, 'dist/output.txt')
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task runBuild(type: NpmTask) {
+					args.set(['run', 'build'])
+					inputFiles.from('src')
+					outputDirectories.from('dist')
+				}
+			'''
+
+			sourceFile.parentFile.mkdirs()
+			sourceFile << 'first'
+
+			scriptFile << '''
+				const fs = require('fs');
+
+				fs.mkdirSync('dist', { recursive: true });
+				fs.writeFileSync('dist/output.txt', fs.readFileSync('src/input.txt', 'utf8'));
+			'''
+
+			packageFile << '''
+				{
+					"scripts": {
+						"build": "node build.js"
+					}
+				}
+			'''
+
+		when:
+			def runner = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments(':subproject:runBuild')
+				.withPluginClasspath()
+			def firstResult = runner.build()
+			def secondResult = runner.build()
+
+		then:
+			firstResult.task(':subproject:runBuild').outcome == SUCCESS
+			secondResult.task(':subproject:runBuild').outcome == UP_TO_DATE
+
+		when:
+			sourceFile.text = 'second'
+
+			def thirdResult = runner.build()
+
+		then:
+			thirdResult.task(':subproject:runBuild').outcome == SUCCESS
+			outputFile.text == 'second'
+	}
+
+	def 'It shall run package binaries after restoring the installed packages from the build cache'()
+	{
+		given:
+			def packageFile = new File(subProjectDir, 'package.json')
+
+			settingsFile << '''
+				buildCache {
+					local {
+						directory = new File(rootDir, 'build-cache')
+					}
+				}
+			'''
+
+			rootBuildFile << '''
+				nodeJs {
+					cacheablePackageInstallation.set(true)
+				}
+			'''
+
+			subProjectBuildFile << '''
+				plugins {
+				    id 'com.brunoritz.gradle.singular-node'
+				}
+
+				task runNpm(type: NpmTask) {
+					args.set(['run', 'test'])
+				}
+			'''
+
+			packageFile << '''
+				{
+					"scripts": {
+						"test": "semver 1.2.3 -i minor"
+					},
+
+					"dependencies": {
+						"semver": "7.6.0"
+					}
+				}
+			'''
+
+		when:
+			def runner = GradleRunner.create()
+				.withProjectDir(rootProjectDir)
+				.withArguments('--build-cache', ':subproject:runNpm')
+				.withPluginClasspath()
+			def firstResult = runner.build()
+
+		then:
+			firstResult.task(':subproject:installNpmPackages').outcome == SUCCESS
+			firstResult.output.contains('1.3.0')
+
+		when:
+			new File(subProjectDir, 'node_modules').deleteDir()
+			new File(subProjectDir, 'build').deleteDir()
+
+			def secondResult = runner.build()
+
+		then:
+			secondResult.task(':subproject:installNpmPackages').outcome == FROM_CACHE
+			secondResult.task(':subproject:restoreNpmPackages').outcome == SUCCESS
+			secondResult.task(':subproject:runNpm').outcome == SUCCESS
+			secondResult.output.contains('1.3.0')
+			Files.isSymbolicLink(new File(subProjectDir, 'node_modules/.bin/semver').toPath())
+	}
 }
@@ -34,7 +34,7 @@ class InstallNodeJsTaskSpec
 	}
 
 	@IgnoreIf({ System.getProperty('os.name').containsIgnoreCase('windows') })
-	def 'It shall fix the NPM and NPX shortcuts on Unix operating systems'()
+	def 'It shall preserve the NPM and NPX symlinks on Unix operating systems'()
 	{
 		given:
 			def project = rootProject()
@@ -78,6 +78,100 @@ class InstallNodeJsTaskSpec
 			sanitizedNpmCmd.exists() && sanitizedNpmCmd.isFile()
 	}
 
+	@IgnoreIf({ System.getProperty('os.name').containsIgnoreCase('windows') })
+	def 'It shall link a shared installation to the distribution store'()
+	{
+		given:
+			def project = rootProject()
+			def configuration = project.extensions.getByType(NodeJsExtension)
+			def layout = platformDependentLayout(configuration.installBaseDir).get()
+			def storeDir = File.createTempDir()
+			def task = installTaskFromProject(project)
+
+			configuration.shareNodeJsDistributions.set(true)
+			configuration.distributionStoreDir.set(storeDir)
+			task.nodeArchive.set(archriveResourceAsFile('nodejs-unix.tar.gz'))
+
+		when:
+			task.installNode()
+
+		then:
+			def storedDistributions = storeDir.listFiles().findAll { it.isDirectory() }
+
+			storedDistributions.size() == 1
+			Files.isSymbolicLink(layout.nodeJsInstallDir().toPath())
+			Files.isSymbolicLink(layout.pathOfBundledNpmScript().toPath())
+			layout.nodeJsBinDirectory().canonicalPath.startsWith(storeDir.canonicalPath)
+
+		cleanup:
+			storeDir.deleteDir()
+	}
+
+	def 'It shall extract a shared distribution only once'()
+	{
+		given:
+			def firstProject = rootProject()
+			def secondProject = rootProject()
+			def storeDir = File.createTempDir()
+			def firstTask = installTaskFromProject(firstProject)
+			def secondTask = installTaskFromProject(secondProject)
+
+			[firstProject, secondProject].each { project ->
+				def configuration = project.extensions.getByType(NodeJsExtension)
+
+				configuration.shareNodeJsDistributions.set(true)
+				configuration.distributionStoreDir.set(storeDir)
+			}
+
+			firstTask.nodeArchive.set(archriveResourceAsFile('nodejs-windows.zip'))
+			secondTask.nodeArchive.set(archriveResourceAsFile('nodejs-windows.zip'))
+
+		when:
+			firstTask.installNode()
+			def storedMarker = new File(storeDir.listFiles().find { it.isDirectory() }, 'extracted-once')
+			storedMarker.createNewFile()
+			secondTask.installNode()
+
+		then:
+			def secondConfiguration = secondProject.extensions.getByType(NodeJsExtension)
+			def secondLayout = platformDependentLayout(secondConfiguration.installBaseDir).get()
+
+			new File(secondLayout.nodeJsInstallDir(), 'extracted-once').exists()
+
+		cleanup:
+			storeDir.deleteDir()
+	}
+
+	def 'It shall only replace differing entries during an incremental upgrade'()
+	{
+		given:
+			def project = rootProject()
+			def configuration = project.extensions.getByType(NodeJsExtension)
+			def layout = platformDependentLayout(configuration.installBaseDir).get()
+			def task = installTaskFromProject(project)
+			def installDir = layout.nodeJsInstallDir()
+			def unchangedFile = new File(installDir, 'node_modules/npm/.mailmap')
+			def modifiedFile = new File(installDir, 'npm.cmd')
+			def leftover = new File(installDir, 'should-not-exist')
+
+			configuration.incrementalNodeJsUpgrade.set(true)
+			task.nodeArchive.set(archriveResourceAsFile('nodejs-windows.zip'))
+			task.installNode()
+
+			unchangedFile.setLastModified(0)
+			modifiedFile.text = 'modified'
+			leftover.createNewFile()
+
+		when:
+			task.installNode()
+
+		then:
+			unchangedFile.lastModified() == 0
+			modifiedFile.text != 'modified'
+			!leftover.exists()
+			layout.nodeJsManifestFile().isFile()
+	}
+
 	private static InstallNodeJsTask installTaskFromProject(Project project)
 	{
 		return project.tasks.getByPath('installNodeJs') as InstallNodeJsTask
@@ -0,0 +1,69 @@
+package com.brunoritz.gradle.singularnode.nodejs
+
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermission
+
+class StreamingExtractorSpec
+	extends Specification
+{
+	private File targetDir
+
+	def setup()
+	{
+		targetDir = File.createTempDir()
+	}
+
+	def cleanup()
+	{
+		targetDir.deleteDir()
+	}
+
+	def 'It shall remove the top-level directory of the archive'()
+	{
+		when:
+			StreamingExtractor.extract(archiveResourceAsFile('nodejs-windows.zip'), targetDir)
+
+		then:
+			new File(targetDir, 'npm.cmd').isFile()
+			new File(targetDir, 'node_modules/npm/bin/npm-cli.js').isFile()
+			!new File(targetDir, 'unwanted-top-dir').exists()
+	}
+
+	@IgnoreIf({ System.getProperty('os.name').containsIgnoreCase('windows') })
+	def 'It shall preserve symlinks and permission bits of TAR GZ archives'()
+	{
+		when:
+			StreamingExtractor.extract(archiveResourceAsFile('nodejs-unix.tar.gz'), targetDir)
+
+		then:
+			def npmLink = new File(targetDir, 'bin/npm').toPath()
+			def cliScript = new File(targetDir, 'lib/node_modules/npm/bin/npm-cli.js').toPath()
+			def plainFile = new File(targetDir, 'lib/node_modules/npm/.npmignore').toPath()
+
+			Files.isSymbolicLink(npmLink)
+			Files.readSymbolicLink(npmLink).toString().endsWith('npm/bin/npm-cli.js')
+			Files.getPosixFilePermissions(cliScript).contains(PosixFilePermission.OWNER_EXECUTE)
+			!Files.getPosixFilePermissions(plainFile).contains(PosixFilePermission.OWNER_EXECUTE)
+	}
+
+	def 'It shall refuse to write entries outside of the target directory'()
+	{
+		given:
+			def entry = new ArchiveEntry('../escaped', ArchiveEntry.Type.FILE, 0, '')
+
+		when:
+			StreamingExtractor.write(targetDir.toPath(), entry, new ByteArrayInputStream(new byte[0]))
+
+		then:
+			thrown(IOException)
+			!new File(targetDir.parentFile, 'escaped').exists()
+	}
+
+	private File archiveResourceAsFile(String identifier)
+	{
+		return new File(getClass().getResource(identifier).getFile())
+	}
+}
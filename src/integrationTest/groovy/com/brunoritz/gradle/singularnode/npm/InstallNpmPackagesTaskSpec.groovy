@@ -86,6 +86,120 @@ class InstallNpmPackagesTaskSpec
 			new File(subProject.file('node_modules'), '.install.executed').exists()
 	}
 
+	def 'It shall skip the installation if the installed packages match the previous installation'()
+	{
+		given:
+			def subProject = multiModuleProject()
+			def task = installTaskFromProject(subProject)
+			def npmCommand = subProject.file('cli.txt')
+
+			subProject.projectDir.mkdirs()
+			subProject.file('node_modules').mkdirs()
+			subProject.file('package.json').text = '{ "scripts": { "test": "jest" } }'
+			simulateNodeInstallationInProject(subProject.rootProject)
+
+			task.installPackages()
+			npmCommand.delete()
+
+		when:
+			subProject.file('package.json').text = '{ "scripts": { "test": "mocha" } }'
+			task.installPackages()
+
+		then:
+			!npmCommand.exists()
+	}
+
+	def 'It shall install packages again if the dependencies have changed'()
+	{
+		given:
+			def subProject = multiModuleProject()
+			def task = installTaskFromProject(subProject)
+			def npmCommand = subProject.file('cli.txt')
+
+			subProject.projectDir.mkdirs()
+			subProject.file('node_modules').mkdirs()
+			subProject.file('package.json').text = '{ "dependencies": { "colors": "1.4.0" } }'
+			simulateNodeInstallationInProject(subProject.rootProject)
+
+			task.installPackages()
+			npmCommand.delete()
+
+		when:
+			subProject.file('package.json').text = '{ "dependencies": { "colors": "1.4.1" } }'
+			task.installPackages()
+
+		then:
+			npmCommand.exists()
+	}
+
+	def 'It shall leave the installation to the root project in workspace mode'()
+	{
+		given:
+			def subProject = multiModuleProject()
+			def configuration = subProject.rootProject.extensions.getByType(NodeJsExtension)
+			def task = installTaskFromProject(subProject)
+
+			subProject.projectDir.mkdirs()
+			subProject.rootProject.file('package.json').text = '{ "workspaces": ["*"] }'
+			simulateNodeInstallationInProject(subProject.rootProject)
+
+			configuration.workspaceMode.set(true)
+
+		when:
+			task.installPackages()
+
+		then:
+			!subProject.file('cli.txt').exists()
+			new File(subProject.file('node_modules'), '.install.executed').exists()
+			task.taskDependencies.getDependencies(task)*.path.contains(':installNpmWorkspace')
+	}
+
+	def 'It shall install the packages of the workspace in the root project'()
+	{
+		given:
+			def subProject = multiModuleProject()
+			def rootProject = subProject.rootProject
+			def configuration = rootProject.extensions.getByType(NodeJsExtension)
+			def layout = platformDependentLayout(configuration.installBaseDir).get()
+			def task = rootProject.tasks.getByPath('installNpmWorkspace') as InstallNpmPackagesTask
+
+			rootProject.file('package.json').text = '{ "workspaces": ["*"] }'
+			rootProject.file('node_modules').mkdirs()
+			simulateNodeInstallationInProject(rootProject)
+
+			configuration.workspaceMode.set(true)
+
+		when:
+			task.installPackages()
+
+		then:
+			rootProject.file('cli.txt').text.trim() == "${layout.pathOfManagedNpmScript()} install"
+	}
+
+	def 'It shall not declare the installed packages as output by default'()
+	{
+		given:
+			def subProject = multiModuleProject()
+			def task = installTaskFromProject(subProject)
+
+		expect:
+			!task.nodeModulesArchive.present
+	}
+
+	def 'It shall declare the installed packages as output if the installation is cacheable'()
+	{
+		given:
+			def subProject = multiModuleProject()
+			def configuration = subProject.rootProject.extensions.getByType(NodeJsExtension)
+			def task = installTaskFromProject(subProject)
+
+			configuration.cacheablePackageInstallation.set(true)
+
+		expect:
+			task.nodeModulesArchive.get().asFile ==
+				subProject.layout.buildDirectory.file('node-modules/npm.tar.gz').get().asFile
+	}
+
 	private static InstallNpmPackagesTask installTaskFromProject(Project project)
 	{
 		return project.tasks.getByPath('installNpmPackages') as InstallNpmPackagesTask
@@ -85,6 +85,32 @@ class InstallYarnPackagesTaskSpec
 			new File(subProject.projectDir, '.install.executed').exists()
 	}
 
+	def 'It shall not declare the installed packages as output by default'()
+	{
+		given:
+			def subProject = multiModuleProject()
+			def task = installTaskFromProject(subProject)
+
+		expect:
+			!task.nodeModulesArchive.present
+	}
+
+	def 'It shall declare the installed packages as output if the installation is cacheable'()
+	{
+		given:
+			def subProject = multiModuleProject()
+			def configuration = subProject.rootProject.extensions.getByType(NodeJsExtension)
+			def task = installTaskFromProject(subProject)
+
+			configuration.cacheablePackageInstallation.set(true)
+
+		expect:
+			task.nodeModulesArchive.get().asFile ==
+				subProject.layout.buildDirectory.file('node-modules/yarn.tar.gz').get().asFile
+			task.pnpFile.get().asFile == subProject.file('.pnp.cjs')
+			task.pnpLoaderFile.get().asFile == subProject.file('.pnp.loader.mjs')
+	}
+
 	private static InstallYarnPackagesTask installTaskFromProject(Project project)
 	{
 		return project.tasks.getByPath('installYarnPackages') as InstallYarnPackagesTask
@@ -0,0 +1,352 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import groovy.json.JsonSlurper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading synthetic lockfiles of about 50 MB, the size reached by the lockfiles of large monorepos, into a
+ * {@link DependencyGraph}. Reading the NPM lockfile into a document tree with {@link JsonSlurper}, as the prefetching
+ * of tarballs previously did, serves as a baseline.
+ * <p>
+ * Each lockfile format has a state of its own, so that only the lockfile needed by a benchmark is generated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LockfileBenchmark
+{
+	private static final long TARGET_SIZE = 50L * 1024 * 1024;
+	private static final int PACKAGE_COUNT = 20_000;
+	private static final int MAX_DEPENDENCIES = 8;
+
+	@Benchmark
+	public DependencyGraph npmStreaming(NpmLockfile lockfile)
+		throws IOException
+	{
+		return Lockfiles.read(lockfile.file);
+	}
+
+	@Benchmark
+	public Object npmJsonSlurper(NpmLockfile lockfile)
+	{
+		return new JsonSlurper().parse(lockfile.file, StandardCharsets.UTF_8.name());
+	}
+
+	@Benchmark
+	public DependencyGraph yarnClassicStreaming(YarnClassicLockfile lockfile)
+		throws IOException
+	{
+		return Lockfiles.read(lockfile.file);
+	}
+
+	@Benchmark
+	public DependencyGraph yarnBerryStreaming(YarnBerryLockfile lockfile)
+		throws IOException
+	{
+		return Lockfiles.read(lockfile.file);
+	}
+
+	@Benchmark
+	public DependencyGraph pnpmStreaming(PnpmLockfile lockfile)
+		throws IOException
+	{
+		return Lockfiles.read(lockfile.file);
+	}
+
+	/**
+	 * Generates a lockfile before the first and deletes it after the last iteration. Packages are named
+	 * {@code pkg-<n>} and depend on a few randomly chosen other packages, with a fixed seed so that all runs read the
+	 * same lockfile.
+	 */
+	@State(Scope.Benchmark)
+	public abstract static class GeneratedLockfile
+	{
+		File file;
+		private Path workDir;
+
+		@Setup(Level.Trial)
+		public void generate()
+			throws IOException
+		{
+			workDir = Files.createTempDirectory("lockfile-benchmark");
+			file = workDir.resolve(fileName()).toFile();
+
+			Random random = new Random(42);
+			byte[] hash = new byte[64];
+
+			try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+				StringBuilder entry = new StringBuilder();
+				long written = 0;
+
+				writer.write(header());
+
+				for (int index = 0; (written + pendingSize()) < TARGET_SIZE; index++) {
+					random.nextBytes(hash);
+					entry.setLength(0);
+					writeEntry(entry, index, random, Base64.getEncoder().encodeToString(hash));
+					writer.append(entry);
+					written += entry.length();
+				}
+
+				writeFooter(writer);
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void deleteWorkDir()
+			throws IOException
+		{
+			Files.deleteIfExists(file.toPath());
+			Files.deleteIfExists(workDir);
+		}
+
+		abstract String fileName();
+
+		String header()
+		{
+			return "";
+		}
+
+		abstract void writeEntry(StringBuilder entry, int index, Random random, String hash);
+
+		/*
+		 * The size of the content held back by writeEntry() for the footer.
+		 */
+		long pendingSize()
+		{
+			return 0;
+		}
+
+		void writeFooter(Writer writer)
+			throws IOException
+		{
+		}
+
+		static String name(int index)
+		{
+			return "pkg-" + (index % PACKAGE_COUNT);
+		}
+
+		static String version(int index)
+		{
+			return (index / PACKAGE_COUNT) + ".0." + (index % 7);
+		}
+	}
+
+	/**
+	 * A {@code package-lock.json} of version 3, with packages occurring more than once nested below a dependent.
+	 */
+	public static class NpmLockfile
+		extends GeneratedLockfile
+	{
+		@Override
+		String fileName()
+		{
+			return "package-lock.json";
+		}
+
+		@Override
+		String header()
+		{
+			return "{\n  \"name\": \"app\",\n  \"lockfileVersion\": 3,\n  \"packages\": {\n"
+				+ "    \"\": {\n      \"name\": \"app\",\n      \"version\": \"1.0.0\"\n    },\n";
+		}
+
+		@Override
+		void writeEntry(StringBuilder entry, int index, Random random, String hash)
+		{
+			String path = (index < PACKAGE_COUNT)
+				? "node_modules/" + name(index)
+				: "node_modules/" + name(random.nextInt(PACKAGE_COUNT)) + "/node_modules/" + name(index);
+
+			entry.append(index == 0 ? "" : ",\n")
+				.append("    \"").append(path).append("\": {\n")
+				.append("      \"version\": \"").append(version(index)).append("\",\n")
+				.append("      \"resolved\": \"https://registry.npmjs.org/").append(name(index)).append("/-/")
+				.append(name(index)).append('-').append(version(index)).append(".tgz\",\n")
+				.append("      \"integrity\": \"sha512-").append(hash).append("\",\n")
+				.append("      \"dependencies\": {");
+
+			int dependencies = random.nextInt(MAX_DEPENDENCIES);
+
+			for (int dependency = 0; dependency < dependencies; dependency++) {
+				entry.append(dependency == 0 ? "\n" : ",\n")
+					.append("        \"").append(name(random.nextInt(PACKAGE_COUNT))).append("\": \"^0.0.0\"");
+			}
+
+			entry.append("\n      }\n    }");
+		}
+
+		@Override
+		void writeFooter(Writer writer)
+			throws IOException
+		{
+			writer.write("\n  }\n}\n");
+		}
+	}
+
+	/**
+	 * A {@code yarn.lock} of Yarn 1.
+	 */
+	public static class YarnClassicLockfile
+		extends GeneratedLockfile
+	{
+		@Override
+		String fileName()
+		{
+			return "yarn.lock";
+		}
+
+		@Override
+		String header()
+		{
+			return "# THIS IS AN AUTOGENERATED FILE. DO NOT EDIT THIS FILE DIRECTLY.\n# yarn lockfile v1\n\n";
+		}
+
+		@Override
+		void writeEntry(StringBuilder entry, int index, Random random, String hash)
+		{
+			entry.append('\n')
+				.append(name(index)).append("@^").append(version(index)).append(", ")
+				.append(name(index)).append("@~").append(version(index)).append(":\n")
+				.append("  version \"").append(version(index)).append("\"\n")
+				.append("  resolved \"https://registry.yarnpkg.com/").append(name(index)).append("/-/")
+				.append(name(index)).append('-').append(version(index)).append(".tgz\"\n")
+				.append("  integrity sha512-").append(hash).append('\n');
+
+			int dependencies = random.nextInt(MAX_DEPENDENCIES);
+
+			if (dependencies > 0) {
+				entry.append("  dependencies:\n");
+			}
+
+			for (int dependency = 0; dependency < dependencies; dependency++) {
+				int target = random.nextInt(PACKAGE_COUNT);
+
+				entry.append("    ").append(name(target)).append(" \"^").append(version(target)).append("\"\n");
+			}
+		}
+	}
+
+	/**
+	 * A {@code yarn.lock} of Yarn 4.
+	 */
+	public static class YarnBerryLockfile
+		extends GeneratedLockfile
+	{
+		@Override
+		String fileName()
+		{
+			return "yarn.lock";
+		}
+
+		@Override
+		String header()
+		{
+			return "# This file is generated by running \"yarn install\" inside your project.\n\n"
+				+ "__metadata:\n  version: 8\n  cacheKey: 10c0\n";
+		}
+
+		@Override
+		void writeEntry(StringBuilder entry, int index, Random random, String hash)
+		{
+			entry.append("\n\"")
+				.append(name(index)).append("@npm:^").append(version(index)).append(", ")
+				.append(name(index)).append("@npm:~").append(version(index)).append("\":\n")
+				.append("  version: ").append(version(index)).append('\n')
+				.append("  resolution: \"").append(name(index)).append("@npm:").append(version(index)).append("\"\n");
+
+			int dependencies = random.nextInt(MAX_DEPENDENCIES);
+
+			if (dependencies > 0) {
+				entry.append("  dependencies:\n");
+			}
+
+			for (int dependency = 0; dependency < dependencies; dependency++) {
+				int target = random.nextInt(PACKAGE_COUNT);
+
+				entry.append("    ").append(name(target)).append(": \"npm:^").append(version(target)).append("\"\n");
+			}
+
+			entry.append("  checksum: 10c0/").append(hash).append('\n')
+				.append("  languageName: node\n  linkType: hard\n");
+		}
+	}
+
+	/**
+	 * A {@code pnpm-lock.yaml} of lockfile version 9, listing the dependencies in the {@code snapshots} section
+	 * following all packages.
+	 */
+	public static class PnpmLockfile
+		extends GeneratedLockfile
+	{
+		private final StringBuilder snapshots = new StringBuilder();
+
+		@Override
+		String fileName()
+		{
+			return "pnpm-lock.yaml";
+		}
+
+		@Override
+		String header()
+		{
+			return "lockfileVersion: '9.0'\n\nimporters:\n\n  .: {}\n\npackages:\n";
+		}
+
+		@Override
+		void writeEntry(StringBuilder entry, int index, Random random, String hash)
+		{
+			String key = name(index) + '@' + version(index);
+
+			entry.append("\n  ").append(key).append(":\n")
+				.append("    resolution: {integrity: sha512-").append(hash).append("}\n")
+				.append("    engines: {node: '>=14'}\n");
+			snapshots.append("\n  ").append(key).append(":\n");
+
+			int dependencies = random.nextInt(MAX_DEPENDENCIES);
+
+			if (dependencies > 0) {
+				snapshots.append("    dependencies:\n");
+			}
+
+			for (int dependency = 0; dependency < dependencies; dependency++) {
+				int target = random.nextInt(PACKAGE_COUNT);
+
+				snapshots.append("      ").append(name(target)).append(": ").append(version(target)).append('\n');
+			}
+		}
+
+		@Override
+		long pendingSize()
+		{
+			return snapshots.length();
+		}
+
+		@Override
+		void writeFooter(Writer writer)
+			throws IOException
+		{
+			writer.write("\nsnapshots:\n");
+			writer.append(snapshots);
+			snapshots.setLength(0);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the streaming extraction of a NodeJS sized {@code .tar.gz} archive with the extraction via Gradle's
+ * {@code tarTree()} and {@code copy()} previously used by {@link InstallNodeJsTask}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExtractionBenchmark
+{
+	private static final int FILE_COUNT = 2500;
+	private static final int MAX_FILE_SIZE = 32 * 1024;
+
+	private Path workDir;
+	private File archive;
+	private Project project;
+	private File targetDir;
+	private int invocation;
+
+	@Setup(Level.Trial)
+	public void createArchive()
+		throws IOException
+	{
+		workDir = Files.createTempDirectory("extraction-benchmark");
+		archive = workDir.resolve("node-v0.0.0-linux-x64.tar.gz").toFile();
+		project = ProjectBuilder.builder().withProjectDir(workDir.toFile()).build();
+
+		writeSyntheticDistribution(archive);
+	}
+
+	@Setup(Level.Invocation)
+	public void createTargetDir()
+	{
+		targetDir = workDir.resolve("target-" + invocation++).toFile();
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteTargetDir()
+		throws IOException
+	{
+		deleteRecursively(targetDir.toPath());
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteWorkDir()
+		throws IOException
+	{
+		deleteRecursively(workDir);
+	}
+
+	@Benchmark
+	public void streamingExtraction()
+		throws IOException
+	{
+		StreamingExtractor.extract(archive, targetDir);
+	}
+
+	@Benchmark
+	public void gradleCopyExtraction()
+	{
+		project.copy(cp -> {
+			cp.from(project.tarTree(archive));
+			cp.into(targetDir);
+			cp.eachFile(fileCopy -> {
+				String path = fileCopy.getPath();
+
+				fileCopy.setPath(path.substring(path.indexOf("/") + 1));
+			});
+		});
+	}
+
+	private static void writeSyntheticDistribution(File archive)
+		throws IOException
+	{
+		Random random = new Random(42);
+
+		try (OutputStream file = Files.newOutputStream(archive.toPath());
+			TarArchiveOutputStream tar = new TarArchiveOutputStream(new GZIPOutputStream(file))) {
+			tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+
+			for (int index = 0; index < FILE_COUNT; index++) {
+				byte[] content = new byte[random.nextInt(MAX_FILE_SIZE)];
+				TarArchiveEntry entry = new TarArchiveEntry(
+					String.format("node-v0.0.0-linux-x64/lib/node_modules/pkg%d/file%d.js", index % 100, index)
+				);
+
+				random.nextBytes(content);
+				entry.setSize(content.length);
+				entry.setMode(0100644);
+				tar.putArchiveEntry(entry);
+				tar.write(content);
+				tar.closeArchiveEntry();
+			}
+
+			TarArchiveEntry npmLink = new TarArchiveEntry("node-v0.0.0-linux-x64/bin/npm", TarArchiveEntry.LF_SYMLINK);
+
+			npmLink.setLinkName("../lib/node_modules/pkg0/file0.js");
+			tar.putArchiveEntry(npmLink);
+			tar.closeArchiveEntry();
+		}
+	}
+
+	private static void deleteRecursively(Path directory)
+		throws IOException
+	{
+		if (!Files.exists(directory)) {
+			return;
+		}
+
+		try (Stream<Path> walk = Files.walk(directory)) {
+			for (Path entry : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(entry);
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import io.vavr.control.Option;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures computing the platform dependent NodeJS dependency and archive names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NodeDependencyFactoryBenchmark
+{
+	@Param({"Linux", "Mac OS X", "Windows 11"})
+	public String osName;
+
+	@Param({"20.6.0"})
+	public String nodeVersion;
+
+	private Properties systemProperties;
+
+	@Setup(Level.Trial)
+	public void createSystemProperties()
+	{
+		systemProperties = new Properties();
+		systemProperties.setProperty("os.name", osName);
+		systemProperties.setProperty("os.arch", "aarch64");
+	}
+
+	@Benchmark
+	public Option<String> computeDependencyString()
+	{
+		return NodeDependencyFactory.computeDependencyString(nodeVersion, systemProperties);
+	}
+
+	@Benchmark
+	public Option<String> computeArchiveName()
+	{
+		return NodeDependencyFactory.computeArchiveName(nodeVersion, systemProperties);
+	}
+}
@@ -0,0 +1,88 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayoutFactory;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import org.gradle.api.Project;
+import org.gradle.process.ExecOperations;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures assembling a {@link NodeCommand} the way the NPM, Yarn and PNPM tasks do. That includes copying the entire
+ * environment of the Gradle process into the persistent collections held by the command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NodeCommandBenchmark
+{
+	private NodeCommand command;
+	private Map<String, String> systemEnvironment;
+	private Map<CharSequence, CharSequence> taskEnvironment;
+	private List<CharSequence> taskArgs;
+
+	@Setup(Level.Trial)
+	public void createCommand()
+	{
+		Project project = ProjectBuilder.builder().build();
+		ExecOperations processes = project.getObjects().newInstance(ProcessServices.class).getProcesses();
+		InstallationLayout layout = InstallationLayoutFactory.platformDependentLayout(
+				project.getObjects().directoryProperty().fileValue(new File(project.getProjectDir(), "nodejs"))
+			)
+			.getOrElseThrow(() -> new IllegalStateException("Running on unsupported OS"));
+
+		command = new NodeCommand(processes, project.getProjectDir(), layout);
+		systemEnvironment = System.getenv();
+		taskEnvironment = java.util.Map.of("NODE_ENV", "production", "CI", "true");
+		taskArgs = List.of("run", "test", "--", "--coverage", "--reporter=dot");
+	}
+
+	@Benchmark
+	public NodeCommand appendArguments()
+	{
+		return command
+			.args("/opt/nodejs/npm/lib/node_modules/npm/bin/npm-cli.js")
+			.args(taskArgs);
+	}
+
+	@Benchmark
+	public NodeCommand applyEnvironment()
+	{
+		return command
+			.withEnvironment(HashMap.ofAll(systemEnvironment))
+			.withEnvironment(HashMap.ofAll(taskEnvironment));
+	}
+
+	@Benchmark
+	public NodeCommand assembleTaskCommand()
+	{
+		return command
+			.args("/opt/nodejs/npm/lib/node_modules/npm/bin/npm-cli.js")
+			.args(taskArgs)
+			.withEnvironment(HashMap.ofAll(systemEnvironment))
+			.withEnvironment(HashMap.ofAll(taskEnvironment));
+	}
+
+	/**
+	 * Provides the process services of Gradle to the benchmark.
+	 */
+	public abstract static class ProcessServices
+	{
+		@Inject
+		public abstract ExecOperations getProcesses();
+	}
+}
@@ -0,0 +1,73 @@
+package com.brunoritz.gradle.singularnode.platform.layout;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the resolution of paths within the NodeJS installation. Every task using NodeJS resolves several of these
+ * paths, both while being configured and while being executed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InstallationLayoutBenchmark
+{
+	private File installBaseDir;
+	private InstallationLayout unixLayout;
+	private InstallationLayout windowsLayout;
+
+	@Setup(Level.Trial)
+	public void createLayouts()
+	{
+		Project project = ProjectBuilder.builder().build();
+		DirectoryProperty baseDirProperty = project.getObjects().directoryProperty();
+
+		installBaseDir = new File(project.getProjectDir(), "nodejs");
+		baseDirProperty.set(installBaseDir);
+
+		unixLayout = new UnixInstallationLayout(baseDirProperty);
+		windowsLayout = new WindowsInstallationLayout(baseDirProperty);
+	}
+
+	@Benchmark
+	public File combinePath()
+	{
+		return PathCombination.combine(installBaseDir, "npm", "lib", "node_modules", "npm", "bin", "npm-cli.js");
+	}
+
+	@Benchmark
+	public File unixManagedNpmScript()
+	{
+		return unixLayout.pathOfManagedNpmScript();
+	}
+
+	@Benchmark
+	public File unixNodeExecutable()
+	{
+		return unixLayout.pathOfNodeExecutable();
+	}
+
+	@Benchmark
+	public File windowsManagedNpmScript()
+	{
+		return windowsLayout.pathOfManagedNpmScript();
+	}
+
+	@Benchmark
+	public File windowsNodeExecutable()
+	{
+		return windowsLayout.pathOfNodeExecutable();
+	}
+}
@@ -3,10 +3,13 @@ package com.brunoritz.gradle.singularnode;
 import org.gradle.api.Project;
 import org.gradle.api.file.Directory;
 import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
 
 import javax.inject.Inject;
+import java.io.File;
+import java.util.List;
 
 /**
  * Allows the root project to configure the details of the tooling to be installed.
@@ -67,6 +70,308 @@ public class NodeJsExtension
 	 */
 	public final DirectoryProperty installBaseDir;
 
+	/**
+	 * Whether to share extracted NodeJS distributions across all checkouts on this machine. When enabled, each archive
+	 * is only extracted once into {@link #distributionStoreDir} and the NodeJS installation directory becomes a link
+	 * into that store.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> shareNodeJsDistributions;
+
+	/**
+	 * The machine-wide directory holding the shared NodeJS distributions. Distributions are stored by the checksum of
+	 * their archive. Only used if {@link #shareNodeJsDistributions} is enabled.
+	 * <p>
+	 * Defaults to {@code {$gradleUserHome}/caches/singular-node/nodejs}
+	 */
+	public final DirectoryProperty distributionStoreDir;
+
+	/**
+	 * Whether to upgrade an existing NodeJS installation by only replacing the files that differ from the new
+	 * distribution instead of deleting and extracting the entire installation. Has no effect on shared distributions.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> incrementalNodeJsUpgrade;
+
+	/**
+	 * Whether to download NodeJS using parallel HTTP range requests instead of resolving it as a Gradle dependency.
+	 * Parallel downloads are resumed after interruptions and verified against the {@code SHASUMS256.txt} file of the
+	 * release.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> parallelNodeJsDownload;
+
+	/**
+	 * The number of parallel connections to use for downloading NodeJS. Only used if {@link #parallelNodeJsDownload}
+	 * is enabled.
+	 * <p>
+	 * Defaults to {@code 4}.
+	 */
+	public final Property<Integer> nodeJsDownloadConnections;
+
+	/**
+	 * The directory into which NodeJS archives are downloaded. Only used if {@link #parallelNodeJsDownload} is
+	 * enabled.
+	 * <p>
+	 * Defaults to {@code {$gradleUserHome}/caches/singular-node/downloads}
+	 */
+	public final DirectoryProperty nodeJsDownloadDir;
+
+	/**
+	 * Whether the package installation tasks shall declare the installed packages as their output. This allows
+	 * {@code node_modules} (and the Plug'n'Play files of Yarn) to be stored in and restored from the Gradle build
+	 * cache. Since the build cache does not preserve symlinks, {@code node_modules} is stored in an archive, which the
+	 * {@code restoreNpmPackages}, {@code restoreYarnPackages} and {@code restorePnpmPackages} tasks extract after a
+	 * cache hit. Symlinks pointing outside of {@code node_modules}, such as those of {@code file:} dependencies, cannot
+	 * be archived and fail the installation. Note that the archive is written after every installation, which can take
+	 * a considerable amount of time for large dependency trees.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> cacheablePackageInstallation;
+
+	/**
+	 * Whether to execute {@code NpmTask}, {@code YarnTask} and {@code PnpmTask} tasks in a pool of long-lived NodeJS
+	 * processes instead of starting a new NodeJS process for each task. Each task still gets its own working
+	 * directory, arguments and environment. Scripts that cannot be executed by the pool are run in a new process.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> nodeWorkers;
+
+	/**
+	 * The maximum number of package installations to run at the same time across all projects. Installations waiting
+	 * to run are started largest lockfile first.
+	 * <p>
+	 * The limit is enforced within the running installation tasks, hence a waiting task keeps its Gradle worker while
+	 * blocked. The ordering only applies among tasks that are already waiting, tasks Gradle has not started yet are
+	 * not taken into account.
+	 * <p>
+	 * Defaults to the maximum number of Gradle workers.
+	 */
+	public final Property<Integer> maxParallelPackageInstallations;
+
+	/**
+	 * Whether to install the packages of an NPM, Yarn or PNPM workspace declared in the root project once for the
+	 * entire workspace. The package installation tasks of subprojects then depend on that single installation instead
+	 * of installing packages on their own. Has no effect if the root project does not declare a workspace.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> workspaceMode;
+
+	/**
+	 * Whether to record the wall time, CPU time, peak memory usage, exit code and output size of every NodeJS
+	 * invocation made by the plugin. CPU time and memory usage include the NodeJS processes spawned by the invocation,
+	 * but no other processes. At the end of the build, the recorded data is written as JSON and HTML report to
+	 * {@code build/reports/singular-node} of the root project.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> executionTelemetry;
+
+	/**
+	 * Whether to publish the slowest NodeJS invocations as custom values of the build scan, if a build scan is
+	 * produced. Only has an effect if {@link #executionTelemetry} is enabled.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> executionTelemetryBuildScan;
+
+	/**
+	 * The NPM registry from which the tarballs of the package managers are downloaded when exporting a tool bundle or
+	 * when installing them via {@code tarball} provisioning.
+	 * <p>
+	 * Defaults to {@code https://registry.npmjs.org}.
+	 */
+	public final Property<CharSequence> packageRegistry;
+
+	/**
+	 * The tool bundle holding NodeJS and the package managers. The {@code exportToolBundle} task writes the bundle to
+	 * this location, from where it is read if {@link #offline} is enabled.
+	 * <p>
+	 * Defaults to {@code {$rootProjectDir}/build/singular-node/tool-bundle.zip}
+	 */
+	public final RegularFileProperty toolBundle;
+
+	/**
+	 * Whether to install NodeJS, NPM, Yarn and PNPM exclusively from the {@link #toolBundle} instead of downloading
+	 * them. The bundle must have been exported for the configured versions and the current platform. The packages
+	 * of the projects themselves are still installed by the package managers as usual.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> offline;
+
+	/**
+	 * How NPM, Yarn and PNPM are installed. Supported values are
+	 * <ul>
+	 *     <li>{@code npm}: Installs them globally using the NPM version bundled with NodeJS</li>
+	 *     <li>{@code tarball}: Downloads their tarball, verifies its integrity and extracts it directly. No lifecycle
+	 *     scripts are run, which is not needed by any of the package managers.</li>
+	 *     <li>{@code corepack}: Prepares them through the Corepack version bundled with NodeJS. The version declared by
+	 *     the {@code packageManager} field of the root project's {@code package.json} takes precedence over the
+	 *     configured one. Corepack keeps its cache in the installation base directory, where it is shared by all
+	 *     projects. Not supported in offline mode.</li>
+	 * </ul>
+	 * <p>
+	 * Defaults to {@code npm}.
+	 */
+	public final Property<CharSequence> packageManagerProvisioning;
+
+	/**
+	 * Whether the NPM cache, the Yarn cache and the PNPM store of all checkouts on this machine shall be kept in
+	 * {@link #packageCacheDir}. Packages downloaded by one checkout are then available to all others. Concurrent
+	 * installations, even those of separate Gradle daemons, may share the cache.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> sharePackageCaches;
+
+	/**
+	 * The machine-wide directory holding the caches of the package managers. Only used if
+	 * {@link #sharePackageCaches} is enabled.
+	 * <p>
+	 * Defaults to {@code {$gradleUserHome}/caches/singular-node/packages}
+	 */
+	public final DirectoryProperty packageCacheDir;
+
+	/**
+	 * The maximum size of the shared package cache in megabytes. The {@code prunePackageCache} task deletes the least
+	 * recently used entries of the cache until it no longer exceeds this size. If not set, the cache is never pruned.
+	 */
+	public final Property<Long> maxPackageCacheSize;
+
+	/**
+	 * Whether to deduplicate the packages installed by NPM and Yarn across all projects. After each installation,
+	 * packages are copied into {@link #packageStoreDir} and package directories with identical contents are replaced
+	 * by clones of the stored files, so they occupy disk space only once. Files are cloned with
+	 * {@code cp --reflink} on Linux and {@code clonefile} on macOS. Where the file system does not support cloning,
+	 * hardlinks are used instead, which share modifications made in place with all projects. Packages that can be
+	 * neither cloned nor linked, for example because the store resides on another file system, are left as
+	 * installed. PNPM links packages from its own store and is not affected.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> deduplicatePackages;
+
+	/**
+	 * The directory holding the deduplicated packages. It must reside on the same file system as the projects. Only
+	 * used if {@link #deduplicatePackages} is enabled.
+	 * <p>
+	 * Defaults to {@code {$installBaseDir}/package-store}
+	 */
+	public final DirectoryProperty packageStoreDir;
+
+	/**
+	 * Whether to download the tarballs of all locked packages in parallel before installing them. The
+	 * {@code prefetchNodePackages} task reads {@code package-lock.json} and {@code yarn.lock} of Yarn 1, verifies each
+	 * tarball against its locked integrity and stores it where the package manager looks for it: the cache of NPM or
+	 * the offline mirror of Yarn. PNPM fetches the packages of {@code pnpm-lock.yaml} into its store using
+	 * {@code pnpm fetch}. The package installations then prefer the prefetched packages over the registry.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> prefetchPackages;
+
+	/**
+	 * The maximum number of tarballs downloaded at the same time while prefetching packages.
+	 * <p>
+	 * Defaults to {@code 16}.
+	 */
+	public final Property<Integer> prefetchConnections;
+
+	/**
+	 * Whether to derive dependencies between the {@code NpmTask}, {@code YarnTask} and {@code PnpmTask} tasks of
+	 * subprojects from their {@code package.json} files. If a subproject depends on the package of another subproject,
+	 * either by its name or by a {@code file:}, {@code link:} or {@code portal:} reference to its directory, each of
+	 * its tasks depends on the task of the same name and type of the other subproject, if there is one. Gradle then
+	 * runs the tasks of independent packages in parallel and those of dependent packages in order.
+	 * {@code peerDependencies} are ignored. Dependencies closing a cycle, such as a {@code devDependency} on a package
+	 * that itself depends on the dependent package, do not result in task dependencies.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> projectTaskDependencies;
+
+	/**
+	 * The git ref, such as {@code origin/main}, enabling the affected-only mode. In this mode, the {@code NpmTask},
+	 * {@code YarnTask} and {@code PnpmTask} tasks of a subproject only run if the subproject is affected by the files
+	 * changed since the merge base of this ref and {@code HEAD}, including uncommitted and untracked files. A
+	 * subproject is affected if it contains a changed file or depends on an affected subproject, as declared in the
+	 * {@code package.json} files. The package installation and {@code prefetchNodePackages} tasks of unaffected
+	 * subprojects are skipped as well. Changes to the {@link #affectedGlobalFiles} affect all subprojects, changes to
+	 * other files outside of any subproject are ignored. If the changes cannot be determined, all tasks run.
+	 * <p>
+	 * The decision for each task and its reason are printed at the end of the build and written to
+	 * {@code build/reports/singular-node/affected-projects.txt} of the root project.
+	 * <p>
+	 * Not set by default, which disables the affected-only mode.
+	 */
+	public final Property<String> affectedBaseRef;
+
+	/**
+	 * The glob patterns of the files outside of any subproject whose changes affect all subprojects in the
+	 * affected-only mode. The patterns are relative to the directory of the root project.
+	 * <p>
+	 * Defaults to the root {@code package.json}, the lockfiles and workspace declarations of NPM, Yarn and PNPM, their
+	 * configuration files and the files of the Yarn installation, as well as the Gradle build and settings files.
+	 */
+	public final ListProperty<String> affectedGlobalFiles;
+
+	/**
+	 * Whether {@code NpmTask}, {@code YarnTask} and {@code PnpmTask} tasks run {@code package.json} scripts directly
+	 * instead of starting the package manager. Tasks invoking a script via {@code run <script>}, optionally followed by
+	 * {@code -- <args>}, then execute the script through the shell, with the {@code node_modules/.bin} directories on
+	 * the {@code PATH} and the {@code npm_*} lifecycle variables set. {@code NpmTask} tasks and {@code YarnTask} tasks
+	 * using Yarn 1 run the {@code pre} and {@code post} scripts, as Yarn 2 and later and PNPM do not run them by
+	 * default. {@code YarnTask} tasks only run scripts directly if the Yarn version tells the major version, which a
+	 * tag such as {@code berry} does not. Tasks with any other arguments and tasks of Plug'n'Play installations still
+	 * start the package manager.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> directScriptExecution;
+
+	/**
+	 * Whether every line written by {@code NpmTask}, {@code NpmRunTask}, {@code YarnTask} and {@code PnpmTask} tasks is
+	 * prefixed with the path of the task, which tells apart the output of tasks running in parallel.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> prefixOutput;
+
+	/**
+	 * Whether the output of {@code NpmTask}, {@code NpmRunTask}, {@code YarnTask} and {@code PnpmTask} tasks is written
+	 * to {@code build/logs/<task name>.log} of their project instead of the console. If a task fails, the last
+	 * {@code outputTailLines} lines of its output are shown along with the location of the log file.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	public final Property<Boolean> outputLogFiles;
+
+	/**
+	 * The number of output lines shown if a task writing its output to a log file fails. Also the number of lines
+	 * dropped by {@link #maxOutputLinesPerSecond} that are shown if a task fails.
+	 * <p>
+	 * Defaults to {@code 100}.
+	 */
+	public final Property<Integer> outputTailLines;
+
+	/**
+	 * The maximum number of output lines per second that {@code NpmTask}, {@code NpmRunTask}, {@code YarnTask} and
+	 * {@code PnpmTask} tasks forward to the console. Excess lines are dropped and only their number is reported, which
+	 * keeps very chatty tools from slowing down the build. Only the standard output is limited, the error output is
+	 * always forwarded. If a task fails, the last {@link #outputTailLines} dropped lines are shown. Zero disables the
+	 * limit.
+	 * <p>
+	 * Defaults to {@code 0}.
+	 */
+	public final Property<Integer> maxOutputLinesPerSecond;
+
 	@Inject
 	public NodeJsExtension(Project project)
 	{
@@ -88,5 +393,120 @@ public class NodeJsExtension
 
 		installBaseDir = project.getObjects().directoryProperty();
 		installBaseDir.set(defaultInstallDir);
+
+		shareNodeJsDistributions = project.getObjects().property(Boolean.class);
+		shareNodeJsDistributions.convention(false);
+
+		distributionStoreDir = project.getObjects().directoryProperty();
+		distributionStoreDir.set(sharedCacheDir(project, "nodejs"));
+
+		incrementalNodeJsUpgrade = project.getObjects().property(Boolean.class);
+		incrementalNodeJsUpgrade.convention(false);
+
+		parallelNodeJsDownload = project.getObjects().property(Boolean.class);
+		parallelNodeJsDownload.convention(false);
+
+		nodeJsDownloadConnections = project.getObjects().property(Integer.class);
+		nodeJsDownloadConnections.convention(4);
+
+		nodeJsDownloadDir = project.getObjects().directoryProperty();
+		nodeJsDownloadDir.set(sharedCacheDir(project, "downloads"));
+
+		cacheablePackageInstallation = project.getObjects().property(Boolean.class);
+		cacheablePackageInstallation.convention(false);
+
+		nodeWorkers = project.getObjects().property(Boolean.class);
+		nodeWorkers.convention(false);
+
+		maxParallelPackageInstallations = project.getObjects().property(Integer.class);
+		maxParallelPackageInstallations.convention(project.getGradle().getStartParameter().getMaxWorkerCount());
+
+		workspaceMode = project.getObjects().property(Boolean.class);
+		workspaceMode.convention(false);
+
+		executionTelemetry = project.getObjects().property(Boolean.class);
+		executionTelemetry.convention(false);
+
+		executionTelemetryBuildScan = project.getObjects().property(Boolean.class);
+		executionTelemetryBuildScan.convention(false);
+
+		packageRegistry = project.getObjects().property(CharSequence.class);
+		packageRegistry.convention("https://registry.npmjs.org");
+
+		toolBundle = project.getObjects().fileProperty();
+		toolBundle.convention(project.getLayout().getBuildDirectory().file("singular-node/tool-bundle.zip"));
+
+		offline = project.getObjects().property(Boolean.class);
+		offline.convention(false);
+
+		packageManagerProvisioning = project.getObjects().property(CharSequence.class);
+		packageManagerProvisioning.convention("npm");
+
+		sharePackageCaches = project.getObjects().property(Boolean.class);
+		sharePackageCaches.convention(false);
+
+		packageCacheDir = project.getObjects().directoryProperty();
+		packageCacheDir.set(sharedCacheDir(project, "packages"));
+
+		maxPackageCacheSize = project.getObjects().property(Long.class);
+
+		deduplicatePackages = project.getObjects().property(Boolean.class);
+		deduplicatePackages.convention(false);
+
+		packageStoreDir = project.getObjects().directoryProperty();
+		packageStoreDir.convention(installBaseDir.dir("package-store"));
+
+		prefetchPackages = project.getObjects().property(Boolean.class);
+		prefetchPackages.convention(false);
+
+		prefetchConnections = project.getObjects().property(Integer.class);
+		prefetchConnections.convention(16);
+
+		projectTaskDependencies = project.getObjects().property(Boolean.class);
+		projectTaskDependencies.convention(false);
+
+		affectedBaseRef = project.getObjects().property(String.class);
+
+		affectedGlobalFiles = project.getObjects().listProperty(String.class);
+		affectedGlobalFiles.convention(List.of(
+			"package.json",
+			"package-lock.json",
+			"npm-shrinkwrap.json",
+			"yarn.lock",
+			"pnpm-lock.yaml",
+			"pnpm-workspace.yaml",
+			".npmrc",
+			".yarnrc",
+			".yarnrc.yml",
+			".pnpmfile.cjs",
+			".yarn/{releases,plugins,patches}/**",
+			"*.gradle",
+			"*.gradle.kts",
+			"gradle.properties",
+			"gradle/*.versions.toml",
+			"buildSrc/**"
+		));
+
+		directScriptExecution = project.getObjects().property(Boolean.class);
+		directScriptExecution.convention(false);
+
+		prefixOutput = project.getObjects().property(Boolean.class);
+		prefixOutput.convention(false);
+
+		outputLogFiles = project.getObjects().property(Boolean.class);
+		outputLogFiles.convention(false);
+
+		outputTailLines = project.getObjects().property(Integer.class);
+		outputTailLines.convention(100);
+
+		maxOutputLinesPerSecond = project.getObjects().property(Integer.class);
+		maxOutputLinesPerSecond.convention(0);
+	}
+
+	private static File sharedCacheDir(Project project, String name)
+	{
+		File gradleUserHome = project.getGradle().getGradleUserHomeDir();
+
+		return new File(new File(new File(gradleUserHome, "caches"), "singular-node"), name);
 	}
 }
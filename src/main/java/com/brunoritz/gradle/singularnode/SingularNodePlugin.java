@@ -1,13 +1,16 @@
 package com.brunoritz.gradle.singularnode;
 
+import com.brunoritz.gradle.singularnode.cache.PackageCacheSetup;
 import com.brunoritz.gradle.singularnode.npm.NpmSetup;
 import com.brunoritz.gradle.singularnode.npm.NpmTask;
 import com.brunoritz.gradle.singularnode.nodejs.InstallNodeJsTask;
+import com.brunoritz.gradle.singularnode.platform.ExecutionTelemetry;
 import com.brunoritz.gradle.singularnode.platform.Lookup;
 import com.brunoritz.gradle.singularnode.nodejs.NodeJsSetup;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayoutFactory;
 import com.brunoritz.gradle.singularnode.pnpm.PnpmSetup;
+import com.brunoritz.gradle.singularnode.prefetch.PrefetchSetup;
 import com.brunoritz.gradle.singularnode.pnpm.PnpmTask;
 import com.brunoritz.gradle.singularnode.yarn.YarnSetup;
 import com.brunoritz.gradle.singularnode.yarn.YarnTask;
@@ -67,15 +70,23 @@ public class SingularNodePlugin
 	{
 		TaskProvider<InstallNodeJsTask> nodeInstallationTask = NodeJsSetup.configureNodeJsInstallation(project);
 
+		PrefetchSetup.configurePrefetching(project);
 		NpmSetup.setupRootTasks(project, nodeInstallationTask);
 		PnpmSetup.setupRootTasks(project, nodeInstallationTask);
 		YarnSetup.setupRootTasks(project, nodeInstallationTask);
+
+		NodeJsExtension configuration = Lookup.pluginConfiguration(project)
+			.getOrElseThrow(() -> new IllegalStateException("Plugin configuration does not exist in root project"));
+
+		ExecutionTelemetry.publishToBuildScan(project, configuration);
+		PackageCacheSetup.configurePruning(project, configuration);
 	}
 
 	private static void configureSubproject(Project project)
 	{
 		ensureRootProjectHasPlugin(project);
 
+		PrefetchSetup.configurePrefetching(project);
 		NpmSetup.setupChildTasks(project);
 		PnpmSetup.setupChildTasks(project);
 		YarnSetup.setupChildTasks(project);
@@ -0,0 +1,256 @@
+package com.brunoritz.gradle.singularnode.affected;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import com.brunoritz.gradle.singularnode.workspace.WorkspacePackages;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Decides which NodeJS tasks run in the affected-only mode. The files changed since the merge base of the configured
+ * base ref and {@code HEAD}, including uncommitted and untracked files, are determined once per build using
+ * {@code git}. Only tasks of subprojects affected by these changes run, as determined by {@link ChangeImpact}.
+ * <p>
+ * Every decision is recorded. Once the build has finished, the decisions are printed and written to
+ * {@code affected-projects.txt} in the report directory.
+ */
+public abstract class AffectedProjects
+	implements BuildService<AffectedProjects.Parameters>, AutoCloseable
+{
+	private static final String SERVICE_NAME = "com.brunoritz.gradle.singularnode.affectedProjects";
+	private static final Logger LOGGER = Logging.getLogger(AffectedProjects.class);
+	private static final String REPORT_FILE = "affected-projects.txt";
+
+	private final ExecOperations processes;
+	private Option<HashMap<String, String>> affectedProjects = Option.none();
+	private List<Decision> decisions = List.empty();
+
+	@Inject
+	public AffectedProjects(ExecOperations processes)
+	{
+		this.processes = processes;
+	}
+
+	/**
+	 * Registers the shared service for the build. Calling this method more than once returns the already registered
+	 * service.
+	 *
+	 * @param project
+	 * 	Any project of the build
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 *
+	 * @return The shared service
+	 */
+	public static Provider<AffectedProjects> register(Project project, NodeJsExtension configuration)
+	{
+		Project rootProject = project.getRootProject();
+		Provider<WorkspacePackages> workspacePackages = WorkspacePackages.register(project);
+
+		return project.getGradle().getSharedServices().registerIfAbsent(SERVICE_NAME, AffectedProjects.class, spec -> {
+			spec.getParameters().getBaseRef().set(configuration.affectedBaseRef);
+			spec.getParameters().getRootDirectory().set(rootProject.getLayout().getProjectDirectory());
+			spec.getParameters().getWorkspacePackages().set(workspacePackages);
+			spec.getParameters().getGlobalFiles().set(configuration.affectedGlobalFiles);
+			spec.getParameters().getReportDirectory()
+				.set(rootProject.getLayout().getBuildDirectory().dir("reports/singular-node"));
+
+			rootProject.getSubprojects().forEach(subproject ->
+				spec.getParameters().getProjectDirectories().put(subproject.getPath(), subproject.getProjectDir())
+			);
+		});
+	}
+
+	/**
+	 * Tells whether a task should run, which is the case if its project is affected by the changes since the base
+	 * ref. The decision is recorded for the report.
+	 *
+	 * @param taskPath
+	 * 	The path of the task
+	 * @param projectPath
+	 * 	The path of the project owning the task
+	 *
+	 * @return {@code true} if the task should run
+	 */
+	public synchronized boolean isAffected(String taskPath, String projectPath)
+	{
+		Option<String> reason = affectedProjects().get(projectPath);
+
+		decisions = decisions.append(new Decision(taskPath, reason));
+
+		return reason.isDefined();
+	}
+
+	private HashMap<String, String> affectedProjects()
+	{
+		if (affectedProjects.isEmpty()) {
+			affectedProjects = Option.of(determineAffectedProjects());
+		}
+
+		return affectedProjects.get();
+	}
+
+	private HashMap<String, String> determineAffectedProjects()
+	{
+		String baseRef = getParameters().getBaseRef().get();
+		File rootDirectory = getParameters().getRootDirectory().get().getAsFile();
+		HashMap<String, File> projectDirectories = HashMap.ofAll(getParameters().getProjectDirectories().get());
+		WorkspacePackages workspacePackages = getParameters().getWorkspacePackages().get();
+		Option<String> mergeBase = git(rootDirectory, "merge-base", baseRef, "HEAD").map(String::trim);
+
+		if (mergeBase.isEmpty()) {
+			LOGGER.warn("Failed to determine the merge base of {} and HEAD, running all NodeJS tasks", baseRef);
+
+			return projectDirectories.mapValues(directory -> "Changes since " + baseRef + " are unknown");
+		}
+
+		Option<File> repositoryRoot =
+			git(rootDirectory, "rev-parse", "--show-toplevel").map(String::trim).map(File::new);
+		Option<String> changes = git(rootDirectory, "diff", "--name-only", "--no-renames", mergeBase.get());
+		Option<String> untracked = git(rootDirectory, "ls-files", "--others", "--exclude-standard", "--full-name");
+
+		if (repositoryRoot.isEmpty() || changes.isEmpty() || untracked.isEmpty()) {
+			LOGGER.warn("Failed to determine the files changed since {}, running all NodeJS tasks", baseRef);
+
+			return projectDirectories.mapValues(directory -> "Changes since " + baseRef + " are unknown");
+		}
+
+		List<String> changedFiles = List.of((changes.get() + '\n' + untracked.get()).split("\n"))
+			.filter(path -> !path.isBlank());
+
+		return ChangeImpact.affectedProjects(
+			repositoryRoot.get(),
+			changedFiles,
+			rootDirectory,
+			projectDirectories,
+			workspacePackages::dependencies,
+			List.ofAll(getParameters().getGlobalFiles().get())
+		);
+	}
+
+	/*
+	 * Returns the output of a git command, or none if git is not installed or fails, for example because the build is
+	 * not within a git repository or the base ref does not exist.
+	 */
+	private Option<String> git(File workingDirectory, String... args)
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		try {
+			ExecResult result = processes.exec(spec -> {
+				spec.setWorkingDir(workingDirectory);
+				spec.setExecutable("git");
+				spec.args((Object[]) args);
+				spec.setStandardOutput(output);
+				spec.setErrorOutput(OutputStream.nullOutputStream());
+				spec.setIgnoreExitValue(true);
+			});
+
+			return (result.getExitValue() == 0)
+				? Option.of(output.toString(StandardCharsets.UTF_8))
+				: Option.none();
+		} catch (GradleException e) {
+			LOGGER.info("Failed to run git {}", String.join(" ", args), e);
+
+			return Option.none();
+		}
+	}
+
+	@Override
+	public synchronized void close()
+		throws IOException
+	{
+		if (decisions.isEmpty()) {
+			return;
+		}
+
+		String report = report();
+		File reportDirectory = getParameters().getReportDirectory().get().getAsFile();
+
+		Files.createDirectories(reportDirectory.toPath());
+		Files.writeString(new File(reportDirectory, REPORT_FILE).toPath(), report, StandardCharsets.UTF_8);
+		LOGGER.lifecycle(report);
+	}
+
+	private String report()
+	{
+		int width = decisions.foldLeft(0, (longest, decision) -> Math.max(longest, decision.taskPath().length()));
+		long skipped = decisions.count(decision -> decision.reason().isEmpty());
+		StringBuilder report = new StringBuilder(String.format(
+			"Affected-only mode (changes since %s): ran %d, skipped %d NodeJS tasks%n",
+			getParameters().getBaseRef().get(), decisions.size() - skipped, skipped
+		));
+
+		for (Decision decision : decisions.sortBy(Decision::taskPath)) {
+			report.append(String.format("  %-" + width + "s  %s  %s%n",
+				decision.taskPath(),
+				decision.reason().isDefined() ? "run " : "skip",
+				decision.reason().getOrElse("Not affected")
+			));
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * The parameters of the service.
+	 */
+	public interface Parameters
+		extends BuildServiceParameters
+	{
+		/**
+		 * The ref whose changes up to {@code HEAD} determine the affected projects.
+		 */
+		Property<String> getBaseRef();
+
+		/**
+		 * The directory of the root project.
+		 */
+		DirectoryProperty getRootDirectory();
+
+		/**
+		 * The directories of all subprojects by their project path.
+		 */
+		MapProperty<String, File> getProjectDirectories();
+
+		/**
+		 * The service telling the dependencies among subprojects.
+		 */
+		Property<WorkspacePackages> getWorkspacePackages();
+
+		/**
+		 * The glob patterns of the files outside of all subprojects whose changes affect all subprojects.
+		 */
+		ListProperty<String> getGlobalFiles();
+
+		/**
+		 * The directory to write the report to.
+		 */
+		DirectoryProperty getReportDirectory();
+	}
+
+	private record Decision(String taskPath, Option<String> reason)
+	{
+	}
+}
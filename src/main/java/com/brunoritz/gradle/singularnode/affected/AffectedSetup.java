@@ -0,0 +1,41 @@
+package com.brunoritz.gradle.singularnode.affected;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Provider;
+
+/**
+ * Configures the affected-only mode, in which NodeJS tasks only run for subprojects affected by the changes since a
+ * git ref.
+ */
+public final class AffectedSetup
+{
+	private AffectedSetup()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Skips the given task unless its project is affected by the changes since the {@code affectedBaseRef}. Tasks
+	 * always run if no {@code affectedBaseRef} is configured.
+	 *
+	 * @param project
+	 * 	The subproject owning the task
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 * @param task
+	 * 	The task to skip unless affected, such as an {@code NpmTask} or a package installation task
+	 */
+	public static void onlyIfAffected(Project project, NodeJsExtension configuration, Task task)
+	{
+		Provider<AffectedProjects> affectedProjects = AffectedProjects.register(project, configuration);
+		Provider<Boolean> enabled = configuration.affectedBaseRef.map(baseRef -> true).orElse(false);
+		String projectPath = project.getPath();
+
+		task.usesService(affectedProjects);
+		task.onlyIf("Project is affected by the changes since the affected base ref", affectedTask ->
+			!enabled.get() || affectedProjects.get().isAffected(affectedTask.getPath(), projectPath)
+		);
+	}
+}
@@ -0,0 +1,153 @@
+package com.brunoritz.gradle.singularnode.affected;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * Determines the subprojects affected by a set of changed files. A subproject is affected if
+ * <ul>
+ *     <li>it contains a changed file, with files of nested subprojects only affecting the innermost one,</li>
+ *     <li>it depends on an affected subproject, directly or transitively, or</li>
+ *     <li>a global file of the build changed, such as the root {@code package.json}, a lockfile shared by a workspace
+ *     or a Gradle build file. Such changes may affect any subproject.</li>
+ * </ul>
+ * Changes to other files outside of all subprojects, such as documentation, as well as changes outside the directory
+ * of the build are ignored.
+ */
+final class ChangeImpact
+{
+	private ChangeImpact()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns the affected subprojects along with the reason why they are affected.
+	 *
+	 * @param repositoryRoot
+	 * 	The directory to which the paths of the changed files are relative
+	 * @param changedFiles
+	 * 	The changed files
+	 * @param buildRoot
+	 * 	The directory of the root project
+	 * @param projectDirectories
+	 * 	The directories of all subprojects by their project path
+	 * @param dependencies
+	 * 	Returns the project paths of the subprojects a subproject depends on
+	 * @param globalFiles
+	 * 	The glob patterns, relative to the directory of the root project, of the files outside of all subprojects
+	 * 	whose changes affect all subprojects
+	 *
+	 * @return The reasons by project path of the affected subprojects
+	 */
+	static HashMap<String, String> affectedProjects(
+		File repositoryRoot,
+		List<String> changedFiles,
+		File buildRoot,
+		HashMap<String, File> projectDirectories,
+		Function<String, List<String>> dependencies,
+		List<String> globalFiles)
+	{
+		Path repository = canonicalPath(repositoryRoot);
+		Path build = canonicalPath(buildRoot);
+		Comparator<Tuple2<String, Path>> byDepth = Comparator.comparingInt(project -> project._2().getNameCount());
+		List<Tuple2<String, Path>> innermostFirst = List.ofAll(projectDirectories)
+			.map(project -> new Tuple2<>(project._1(), canonicalPath(project._2())))
+			.sorted(byDepth.reversed());
+		HashMap<String, List<String>> changesByProject = HashMap.empty();
+
+		for (String changedFile : changedFiles) {
+			Path file = repository.resolve(changedFile).normalize();
+
+			if (!file.startsWith(build)) {
+				continue;
+			}
+
+			Option<String> owner = innermostFirst.find(project -> file.startsWith(project._2())).map(Tuple2::_1);
+
+			if (owner.isEmpty() && isGlobalFile(build.relativize(file), globalFiles)) {
+				return projectDirectories.mapValues(directory ->
+					String.format("Changed %s outside of any subproject", changedFile)
+				);
+			} else if (owner.isEmpty()) {
+				continue;
+			}
+
+			changesByProject = changesByProject.put(
+				owner.get(),
+				changesByProject.getOrElse(owner.get(), List.empty()).append(changedFile)
+			);
+		}
+
+		HashMap<String, String> directlyAffected = changesByProject.mapValues(ChangeImpact::describeChanges);
+
+		return withDependents(directlyAffected, projectDirectories, dependencies);
+	}
+
+	private static HashMap<String, String> withDependents(
+		HashMap<String, String> directlyAffected,
+		HashMap<String, File> projectDirectories,
+		Function<String, List<String>> dependencies)
+	{
+		HashMap<String, List<String>> dependents = HashMap.empty();
+
+		for (Tuple2<String, File> project : projectDirectories) {
+			for (String dependency : dependencies.apply(project._1())) {
+				List<String> dependentsOfDependency = dependents.getOrElse(dependency, List.empty());
+
+				dependents = dependents.put(dependency, dependentsOfDependency.append(project._1()));
+			}
+		}
+
+		HashMap<String, String> affected = directlyAffected;
+		List<String> pending = directlyAffected.keySet().toList();
+
+		while (!pending.isEmpty()) {
+			String affectedProject = pending.head();
+
+			pending = pending.tail();
+
+			for (String dependent : dependents.getOrElse(affectedProject, List.empty())) {
+				if (!affected.containsKey(dependent)) {
+					affected = affected.put(dependent, "Depends on affected project " + affectedProject);
+					pending = pending.append(dependent);
+				}
+			}
+		}
+
+		return affected;
+	}
+
+	private static boolean isGlobalFile(Path relativePath, List<String> globalFiles)
+	{
+		FileSystem fileSystem = relativePath.getFileSystem();
+
+		return globalFiles.exists(pattern -> fileSystem.getPathMatcher("glob:" + pattern).matches(relativePath));
+	}
+
+	private static String describeChanges(List<String> changedFiles)
+	{
+		return (changedFiles.size() == 1)
+			? "Changed " + changedFiles.head()
+			: String.format("Changed %s and %d more files", changedFiles.head(), changedFiles.size() - 1);
+	}
+
+	private static Path canonicalPath(File file)
+	{
+		try {
+			return file.getCanonicalFile().toPath();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.brunoritz.gradle.singularnode.bundle;
+
+import com.brunoritz.gradle.singularnode.platform.PackageRegistry;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.Map;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.TaskAction;
+
+import static org.gradle.api.tasks.PathSensitivity.NAME_ONLY;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Exports a tool bundle holding the NodeJS archive of the current platform and the tarballs of all configured package
+ * managers. The bundle allows installing the tooling on machines without network access via the {@code offline}
+ * option of the plugin.
+ *
+ * @see ToolBundle
+ */
+public abstract class ExportToolBundleTask
+	extends DefaultTask
+{
+	private final FileSystemOperations files;
+
+	@Inject
+	public ExportToolBundleTask(FileSystemOperations files)
+	{
+		this.files = files;
+	}
+
+	@Input
+	public abstract Property<CharSequence> getNodeVersion();
+
+	@InputFile
+	@PathSensitive(NAME_ONLY)
+	public abstract RegularFileProperty getNodeArchive();
+
+	@Input
+	@Optional
+	public abstract Property<CharSequence> getNpmVersion();
+
+	@Input
+	@Optional
+	public abstract Property<CharSequence> getYarnVersion();
+
+	@Input
+	@Optional
+	public abstract Property<CharSequence> getPnpmVersion();
+
+	/**
+	 * The NPM registry to download the package manager tarballs from.
+	 */
+	@Input
+	public abstract Property<CharSequence> getPackageRegistry();
+
+	/**
+	 * The directory to download the package manager tarballs to before adding them to the bundle.
+	 */
+	@Internal
+	public abstract DirectoryProperty getTemporaryDirectory();
+
+	@OutputFile
+	public abstract RegularFileProperty getBundleFile();
+
+	@TaskAction
+	public void export()
+		throws IOException
+	{
+		File nodeArchive = getNodeArchive().get().getAsFile();
+		File downloadDir = getTemporaryDirectory().get().getAsFile();
+		PackageRegistry registry = PackageRegistry.connect(getPackageRegistry().get());
+		Map<String, File> entries = LinkedHashMap.of(ToolBundle.nodeArchiveEntry(nodeArchive.getName()), nodeArchive);
+		Map<String, String> packageVersions = LinkedHashMap.empty();
+
+		files.delete(spec -> spec.delete(downloadDir));
+
+		for (String packageName : new String[] {"npm", "yarn", "pnpm"}) {
+			Property<CharSequence> version = packageVersion(packageName);
+
+			if (version.isPresent()) {
+				PackageRegistry.PackageTarball tarball = registry.resolve(packageName, version.get());
+				File tarballFile = new File(downloadDir, packageName + ".tgz");
+
+				getLogger().lifecycle("Adding {}@{} to the tool bundle", packageName, tarball.version());
+				registry.download(tarball, tarballFile.toPath());
+
+				entries = entries.put(ToolBundle.packageEntry(packageName), tarballFile);
+				packageVersions = packageVersions.put(packageName, version.get().toString());
+			}
+		}
+
+		ToolBundle.write(
+			getBundleFile().get().getAsFile(),
+			new ToolBundle.Manifest(getNodeVersion().get().toString(), nodeArchive.getName(), packageVersions,
+				LinkedHashMap.empty()
+			),
+			entries
+		);
+
+		files.delete(spec -> spec.delete(downloadDir));
+	}
+
+	private Property<CharSequence> packageVersion(String packageName)
+	{
+		return switch (packageName) {
+			case "npm" -> getNpmVersion();
+			case "yarn" -> getYarnVersion();
+			default -> getPnpmVersion();
+		};
+	}
+}
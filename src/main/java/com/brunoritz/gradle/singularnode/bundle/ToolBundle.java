@@ -0,0 +1,265 @@
+package com.brunoritz.gradle.singularnode.bundle;
+
+import com.brunoritz.gradle.singularnode.platform.Checksums;
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import io.vavr.Tuple2;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.Map;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A single ZIP file holding everything needed to install NodeJS and the package managers without network access. The
+ * bundle consists of
+ * <ul>
+ *     <li>{@code manifest.json}, listing the bundled versions and the SHA-256 checksum of every other entry</li>
+ *     <li>{@code node/<archive>}, the NodeJS archive for the platform the bundle was exported on</li>
+ *     <li>{@code packages/<name>.tgz}, the tarballs of NPM, Yarn and PNPM as published to the registry</li>
+ * </ul>
+ * Entries are verified against the manifest while being extracted. Any entry not listed in the manifest, or not
+ * matching its checksum, renders the entire bundle invalid.
+ */
+public final class ToolBundle
+{
+	private static final String MANIFEST_ENTRY = "manifest.json";
+	private static final int FORMAT_VERSION = 1;
+
+	private ToolBundle()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Computes the name of the entry holding the NodeJS archive.
+	 *
+	 * @param archiveName
+	 * 	The file name of the NodeJS archive
+	 *
+	 * @return The name of the entry
+	 */
+	public static String nodeArchiveEntry(String archiveName)
+	{
+		return "node/" + archiveName;
+	}
+
+	/**
+	 * Computes the name of the entry holding the tarball of a package manager.
+	 *
+	 * @param packageName
+	 * 	The name of the package manager, {@code npm}, {@code yarn} or {@code pnpm}
+	 *
+	 * @return The name of the entry
+	 */
+	public static String packageEntry(String packageName)
+	{
+		return String.format("packages/%s.tgz", packageName);
+	}
+
+	/**
+	 * Writes a new bundle, replacing any existing file.
+	 *
+	 * @param bundleFile
+	 * 	The file to write the bundle to
+	 * @param manifest
+	 * 	The versions held by the bundle. The checksums of the manifest are ignored and computed from {@code entries}.
+	 * @param entries
+	 * 	The files to add, keyed by their entry name
+	 *
+	 * @return The manifest written into the bundle
+	 *
+	 * @throws IOException
+	 * 	If any of the files cannot be read or the bundle cannot be written
+	 */
+	static Manifest write(File bundleFile, Manifest manifest, Map<String, File> entries)
+		throws IOException
+	{
+		Map<String, String> checksums = LinkedHashMap.empty();
+
+		for (Tuple2<String, File> entry : entries) {
+			checksums = checksums.put(entry._1, Checksums.sha256(entry._2));
+		}
+
+		Manifest completeManifest = new Manifest(manifest.nodeVersion(), manifest.nodeArchive(),
+			manifest.packageVersions(), checksums
+		);
+		Path partFile = bundleFile.toPath().resolveSibling(bundleFile.getName() + ".part");
+
+		Files.createDirectories(partFile.toAbsolutePath().getParent());
+
+		try (ZipOutputStream bundle = new ZipOutputStream(Files.newOutputStream(partFile))) {
+			bundle.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+			bundle.write(completeManifest.toJson().getBytes(StandardCharsets.UTF_8));
+			bundle.closeEntry();
+
+			for (Tuple2<String, File> entry : entries) {
+				bundle.putNextEntry(new ZipEntry(entry._1));
+				Files.copy(entry._2.toPath(), bundle);
+				bundle.closeEntry();
+			}
+		}
+
+		Files.move(partFile, bundleFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		return completeManifest;
+	}
+
+	/**
+	 * Extracts all entries of a bundle, verifying each of them against the manifest of the bundle.
+	 *
+	 * @param bundleFile
+	 * 	The bundle to extract
+	 * @param targetDir
+	 * 	The directory to extract the entries to
+	 *
+	 * @return The manifest of the bundle
+	 *
+	 * @throws IOException
+	 * 	If the bundle cannot be read, is incomplete or any entry does not match its checksum
+	 */
+	static Manifest extract(File bundleFile, File targetDir)
+		throws IOException
+	{
+		try (ZipFile bundle = new ZipFile(bundleFile)) {
+			ZipEntry manifestEntry = bundle.getEntry(MANIFEST_ENTRY);
+
+			if (manifestEntry == null) {
+				throw new IOException(bundleFile + " is not a tool bundle, it lacks a manifest");
+			}
+
+			Manifest manifest;
+
+			try (InputStream content = bundle.getInputStream(manifestEntry)) {
+				manifest = Manifest.fromJson(new String(content.readAllBytes(), StandardCharsets.UTF_8));
+			}
+
+			Enumeration<? extends ZipEntry> entries = bundle.entries();
+			int verifiedEntries = 0;
+
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+
+				if (!entry.isDirectory() && !entry.getName().equals(MANIFEST_ENTRY)) {
+					extractVerified(bundle, entry, manifest, targetDir.toPath());
+					verifiedEntries++;
+				}
+			}
+
+			if (verifiedEntries != manifest.checksums().size()) {
+				throw new IOException(bundleFile + " is incomplete, not all entries listed in its manifest exist");
+			}
+
+			return manifest;
+		}
+	}
+
+	private static void extractVerified(ZipFile bundle, ZipEntry entry, Manifest manifest, Path targetDir)
+		throws IOException
+	{
+		String expectedChecksum = manifest.checksums().get(entry.getName())
+			.getOrElseThrow(() -> new IOException("Tool bundle contains unexpected entry " + entry.getName()));
+		Path target = targetDir.resolve(entry.getName()).normalize();
+
+		if (!target.startsWith(targetDir.normalize())) {
+			throw new IOException("Tool bundle entry points outside of the target directory: " + entry.getName());
+		}
+
+		Files.createDirectories(target.getParent());
+
+		MessageDigest digest = Checksums.digest("SHA-256");
+
+		try (InputStream content = new DigestInputStream(bundle.getInputStream(entry), digest);
+			OutputStream output = Files.newOutputStream(target)) {
+			content.transferTo(output);
+		}
+
+		String actualChecksum = HexFormat.of().formatHex(digest.digest());
+
+		if (!actualChecksum.equals(expectedChecksum)) {
+			Files.delete(target);
+
+			throw new IOException(String.format(
+				"Checksum mismatch for tool bundle entry %s: expected %s, but got %s",
+				entry.getName(), expectedChecksum, actualChecksum
+			));
+		}
+	}
+
+	/**
+	 * The manifest of a bundle.
+	 *
+	 * @param nodeVersion
+	 * 	The bundled version of NodeJS
+	 * @param nodeArchive
+	 * 	The file name of the bundled NodeJS archive
+	 * @param packageVersions
+	 * 	The versions of the bundled package managers, as configured when exporting the bundle, keyed by their name
+	 * @param checksums
+	 * 	The SHA-256 checksums of all entries, keyed by the entry name
+	 */
+	record Manifest(
+		String nodeVersion,
+		String nodeArchive,
+		Map<String, String> packageVersions,
+		Map<String, String> checksums)
+	{
+		String toJson()
+		{
+			java.util.Map<String, Object> json = new java.util.LinkedHashMap<>();
+
+			json.put("formatVersion", FORMAT_VERSION);
+			json.put("nodeVersion", nodeVersion);
+			json.put("nodeArchive", nodeArchive);
+			json.put("packageVersions", packageVersions.toJavaMap());
+			json.put("checksums", checksums.toJavaMap());
+
+			return JsonOutput.prettyPrint(JsonOutput.toJson(json));
+		}
+
+		static Manifest fromJson(String content)
+			throws IOException
+		{
+			Object json = new JsonSlurper().parseText(content);
+
+			if (!(json instanceof java.util.Map<?, ?> values)) {
+				throw new IOException("Tool bundle manifest is not a JSON object");
+			} else if (!Integer.valueOf(FORMAT_VERSION).equals(values.get("formatVersion"))) {
+				throw new IOException("Unsupported tool bundle format " + values.get("formatVersion"));
+			}
+
+			return new Manifest(
+				String.valueOf(values.get("nodeVersion")),
+				String.valueOf(values.get("nodeArchive")),
+				stringMap(values.get("packageVersions")),
+				stringMap(values.get("checksums"))
+			);
+		}
+
+		private static Map<String, String> stringMap(Object value)
+		{
+			Map<String, String> result = LinkedHashMap.empty();
+
+			if (value instanceof java.util.Map<?, ?> entries) {
+				for (java.util.Map.Entry<?, ?> entry : entries.entrySet()) {
+					result = result.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+				}
+			}
+
+			return result;
+		}
+	}
+}
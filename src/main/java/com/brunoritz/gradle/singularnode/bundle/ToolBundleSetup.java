@@ -0,0 +1,100 @@
+package com.brunoritz.gradle.singularnode.bundle;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.TaskProvider;
+
+/**
+ * Configures the tasks for exporting and unpacking tool bundles.
+ */
+public final class ToolBundleSetup
+{
+	private static final String UNPACK_TASK = "unpackToolBundle";
+
+	private ToolBundleSetup()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Registers the {@code exportToolBundle} and {@code unpackToolBundle} tasks on the root project.
+	 *
+	 * @param project
+	 * 	The root project
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 * @param nodeArchive
+	 * 	The NodeJS archive as downloaded from the distribution server, to be added to exported bundles
+	 * @param nodeArchiveName
+	 * 	The name of the NodeJS archive for the current platform
+	 *
+	 * @return The NodeJS archive extracted from the tool bundle
+	 */
+	public static Provider<RegularFile> configureToolBundle(
+		Project project,
+		NodeJsExtension configuration,
+		Provider<RegularFile> nodeArchive,
+		Provider<String> nodeArchiveName)
+	{
+		TaskProvider<ExportToolBundleTask> exportTask =
+			project.getTasks().register("exportToolBundle", ExportToolBundleTask.class);
+		TaskProvider<UnpackToolBundleTask> unpackTask =
+			project.getTasks().register(UNPACK_TASK, UnpackToolBundleTask.class);
+
+		exportTask.configure(task -> {
+			task.setGroup("NodeJS");
+			task.setDescription("Exports NodeJS and the package managers into a bundle for offline installations");
+			task.getNodeVersion().set(configuration.nodeVersion);
+			task.getNodeArchive().set(nodeArchive);
+			task.getNpmVersion().set(configuration.npmVersion);
+			task.getYarnVersion().set(configuration.yarnVersion);
+			task.getPnpmVersion().set(configuration.pnpmVersion);
+			task.getPackageRegistry().set(configuration.packageRegistry);
+			task.getTemporaryDirectory().set(task.getTemporaryDir());
+			task.getBundleFile().set(configuration.toolBundle);
+		});
+
+		unpackTask.configure(task -> {
+			task.setGroup("NodeJS");
+			task.getBundleFile().set(configuration.toolBundle);
+			task.getNodeVersion().set(configuration.nodeVersion);
+			task.getNodeArchiveName().set(nodeArchiveName);
+			task.getNpmVersion().set(configuration.npmVersion);
+			task.getYarnVersion().set(configuration.yarnVersion);
+			task.getPnpmVersion().set(configuration.pnpmVersion);
+			task.getOutputDirectory().set(project.getLayout().getBuildDirectory().dir("singular-node/tool-bundle"));
+		});
+
+		return unpackTask.flatMap(task ->
+			task.getOutputDirectory().file(nodeArchiveName.map(ToolBundle::nodeArchiveEntry))
+		);
+	}
+
+	/**
+	 * Provides the tarball of a package manager extracted from the tool bundle. The provider has no value unless the
+	 * offline mode is enabled.
+	 *
+	 * @param project
+	 * 	The root project
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 * @param packageName
+	 * 	The name of the package manager
+	 *
+	 * @return The extracted tarball
+	 */
+	public static Provider<RegularFile> bundledPackage(
+		Project project,
+		NodeJsExtension configuration,
+		String packageName)
+	{
+		TaskProvider<UnpackToolBundleTask> unpackTask =
+			project.getTasks().named(UNPACK_TASK, UnpackToolBundleTask.class);
+
+		return configuration.offline.filter(offline -> offline).flatMap(offline ->
+			unpackTask.flatMap(task -> task.getOutputDirectory().file(ToolBundle.packageEntry(packageName)))
+		);
+	}
+}
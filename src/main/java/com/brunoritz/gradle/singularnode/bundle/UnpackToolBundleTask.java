@@ -0,0 +1,118 @@
+package com.brunoritz.gradle.singularnode.bundle;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.TaskAction;
+
+import static org.gradle.api.tasks.PathSensitivity.NONE;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Extracts a tool bundle for installing NodeJS and the package managers without network access. Every entry is
+ * verified against the checksums of the bundle. The task fails if the bundle was exported for other versions than the
+ * configured ones, or for another platform.
+ *
+ * @see ToolBundle
+ */
+public abstract class UnpackToolBundleTask
+	extends DefaultTask
+{
+	private final FileSystemOperations files;
+
+	@Inject
+	public UnpackToolBundleTask(FileSystemOperations files)
+	{
+		this.files = files;
+	}
+
+	@InputFile
+	@PathSensitive(NONE)
+	public abstract RegularFileProperty getBundleFile();
+
+	@Input
+	public abstract Property<CharSequence> getNodeVersion();
+
+	/**
+	 * The name of the NodeJS archive for the current platform.
+	 */
+	@Input
+	public abstract Property<String> getNodeArchiveName();
+
+	@Input
+	@Optional
+	public abstract Property<CharSequence> getNpmVersion();
+
+	@Input
+	@Optional
+	public abstract Property<CharSequence> getYarnVersion();
+
+	@Input
+	@Optional
+	public abstract Property<CharSequence> getPnpmVersion();
+
+	@OutputDirectory
+	public abstract DirectoryProperty getOutputDirectory();
+
+	@TaskAction
+	public void unpack()
+		throws IOException
+	{
+		File bundleFile = getBundleFile().get().getAsFile();
+		File outputDirectory = getOutputDirectory().get().getAsFile();
+
+		files.delete(spec -> spec.delete(outputDirectory));
+
+		ToolBundle.Manifest manifest = ToolBundle.extract(bundleFile, outputDirectory);
+
+		expectVersion(bundleFile, "NodeJS", Option.of(manifest.nodeVersion()), getNodeVersion());
+
+		if (!manifest.nodeArchive().equals(getNodeArchiveName().get())) {
+			throw new IllegalStateException(String.format(
+				"Tool bundle %s contains NodeJS archive %s, but this platform requires %s",
+				bundleFile, manifest.nodeArchive(), getNodeArchiveName().get()
+			));
+		}
+
+		for (String packageName : List.of("npm", "yarn", "pnpm")) {
+			expectVersion(bundleFile, packageName, manifest.packageVersions().get(packageName),
+				packageVersion(packageName)
+			);
+		}
+	}
+
+	private Property<CharSequence> packageVersion(String packageName)
+	{
+		return switch (packageName) {
+			case "npm" -> getNpmVersion();
+			case "yarn" -> getYarnVersion();
+			default -> getPnpmVersion();
+		};
+	}
+
+	private static void expectVersion(
+		File bundleFile,
+		String tool,
+		Option<String> bundledVersion,
+		Property<CharSequence> configuredVersion)
+	{
+		if (configuredVersion.isPresent() && !bundledVersion.contains(configuredVersion.get().toString())) {
+			throw new IllegalStateException(String.format(
+				"Tool bundle %s contains %s %s, but %s is configured",
+				bundleFile, tool, bundledVersion.getOrElse("none"), configuredVersion.get()
+			));
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package com.brunoritz.gradle.singularnode.cache;
+
+import com.brunoritz.gradle.singularnode.platform.ExecutionTelemetry;
+import com.brunoritz.gradle.singularnode.platform.InstallationFingerprint;
+import com.brunoritz.gradle.singularnode.platform.NodeCommand;
+import com.brunoritz.gradle.singularnode.platform.PackageInstallLimiter;
+import com.brunoritz.gradle.singularnode.platform.PrioritizedPermits;
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import static org.gradle.api.tasks.PathSensitivity.RELATIVE;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Installs packages declared in the {@code package.json} file. Installations are limited across projects, hold a
+ * shared lease on the package cache and are skipped if the fingerprint of the installed packages is unchanged.
+ * <p>
+ * Subclasses only provide the name, script, lockfile and state file of the package manager.
+ */
+public abstract class InstallPackagesTask
+	extends DefaultTask
+{
+	private final ExecOperations processes;
+
+	@Inject
+	public InstallPackagesTask(ExecOperations processes)
+	{
+		this.processes = processes;
+
+		getWorkingDirectory().convention(getProject().getLayout().getProjectDirectory());
+		getWorkspaceInstallation().convention(false);
+		getPreferOffline().convention(false);
+		getOutputs().upToDateWhen(task -> getWorkspaceInstallation().get() || installedStateFile().isDefined());
+		getOutputs().cacheIf("Package installation is cacheable", task -> getNodeModulesArchive().isPresent());
+	}
+
+	/**
+	 * Optional arguments to pass to the package installation command. By default, no arguments are defined.
+	 */
+	@Input
+	@Optional
+	public abstract ListProperty<CharSequence> getArgs();
+
+	@Internal
+	public abstract DirectoryProperty getWorkingDirectory();
+
+	@Internal
+	public abstract Property<InstallationLayout> getInstallationLayout();
+
+	/**
+	 * Limits the number of package installations running at the same time across all projects.
+	 */
+	@Internal
+	public abstract Property<PackageInstallLimiter> getInstallLimiter();
+
+	/**
+	 * Records the telemetry of the NodeJS invocations of this task. If not set, no telemetry is recorded.
+	 */
+	@Internal
+	public abstract Property<ExecutionTelemetry> getTelemetry();
+
+	/**
+	 * The machine-wide cache shared by the package managers of all checkouts. If not set, the package manager uses
+	 * its default cache location.
+	 */
+	@Internal
+	public abstract DirectoryProperty getPackageCacheDirectory();
+
+	/**
+	 * The store with which identical installed packages are deduplicated across subprojects. If not set, installed
+	 * packages are not deduplicated. Never set for PNPM, which links packages from its own store.
+	 */
+	@Internal
+	public abstract DirectoryProperty getPackageStoreDirectory();
+
+	/**
+	 * Whether the package manager shall prefer packages already present in its cache over fetching them from the
+	 * registry. Enabled if the packages were prefetched by the {@code prefetchNodePackages} task.
+	 */
+	@Input
+	public abstract Property<Boolean> getPreferOffline();
+
+	/**
+	 * Whether the packages of this project are installed by the workspace installation of the root project. If so,
+	 * this task only records the state of the project, but does not install any packages itself.
+	 */
+	@Input
+	public abstract Property<Boolean> getWorkspaceInstallation();
+
+	/**
+	 * The {@code package.json} files of the workspace members. Only set on the workspace installation of the root
+	 * project, so changes to the dependencies of any member cause the workspace to be installed again.
+	 */
+	@InputFiles
+	@PathSensitive(RELATIVE)
+	public abstract ConfigurableFileCollection getWorkspacePackageFiles();
+
+	/**
+	 * The archive in which the installed packages are stored. It is only set if the package installation is
+	 * cacheable, in which case the task becomes eligible for the build cache. Declaring {@code node_modules} itself as
+	 * output would not preserve its symlinks when restored from the build cache.
+	 *
+	 * @see NodeModulesArchive
+	 */
+	@OutputFile
+	@Optional
+	public abstract RegularFileProperty getNodeModulesArchive();
+
+	@InputFile
+	@PathSensitive(RELATIVE)
+	@Optional
+	@Nullable
+	public File getPackageFile()
+	{
+		File packageFile = getWorkingDirectory().file("package.json").get().getAsFile();
+
+		return packageFile.exists() ? packageFile : null;
+	}
+
+	@InputFile
+	@PathSensitive(RELATIVE)
+	@Optional
+	@Nullable
+	public File getPackageLockFile()
+	{
+		File lockFile = getWorkingDirectory().file(lockFileName()).get().getAsFile();
+
+		return lockFile.exists() ? lockFile : null;
+	}
+
+	/**
+	 * The execution marker file indicates that this task was executed. It is a compromise between reliability and
+	 * speed. Declaring {@code node_modules} an output directory would add a tremendous hashing overhead for Gradle.
+	 * <p>
+	 * The marker holds a fingerprint of the dependency sections of {@code package.json}, the lockfile and the state
+	 * file the package manager keeps in {@code node_modules}. Deleting {@code node_modules} or reinstalling packages
+	 * outside of Gradle is therefore detected. Other manual changes to {@code node_modules} or changes introduced by a
+	 * build cannot be detected with this approach, unless the package installation is cacheable.
+	 */
+	@OutputFile
+	public File getExecutionMarkerFile()
+	{
+		return getWorkingDirectory().file("node_modules/.install.executed").get().getAsFile();
+	}
+
+	/**
+	 * Returns the name of the package manager.
+	 */
+	protected abstract String packageManager();
+
+	/**
+	 * Returns the name of the lockfile the package manager writes next to {@code package.json}.
+	 */
+	protected abstract String lockFileName();
+
+	/**
+	 * Returns the location of the script that starts the package manager.
+	 */
+	protected abstract File packageManagerScript(InstallationLayout layout);
+
+	/**
+	 * Returns the state file written by the package manager after every installation, if it exists.
+	 */
+	protected abstract Option<File> installedStateFile();
+
+	/**
+	 * Returns additional environment variables to run the package manager with. By default, there are none.
+	 *
+	 * @param lockFile
+	 * 	The lockfile of the installation, which need not exist
+	 *
+	 * @throws IOException
+	 * 	If the lockfile cannot be read
+	 */
+	protected Map<CharSequence, CharSequence> installationEnvironment(File lockFile)
+		throws IOException
+	{
+		return HashMap.empty();
+	}
+
+	@TaskAction
+	public void installPackages()
+		throws IOException
+	{
+		InstallationLayout layout = getInstallationLayout().get();
+		String script = packageManagerScript(layout).getAbsolutePath();
+		File executionMarker = getExecutionMarkerFile();
+
+		if (getWorkspaceInstallation().get()) {
+			getLogger().info("Packages are installed by the workspace installation of the root project");
+		} else if (InstallationFingerprint.matches(executionMarker, fingerprint())) {
+			getLogger().info("Installed packages match {}, skipping installation", lockFileName());
+			setDidWork(false);
+			archiveInstalledPackages(false);
+
+			return;
+		} else {
+			File lockFile = getWorkingDirectory().file(lockFileName()).get().getAsFile();
+			Option<PackageCache> packageCache = packageCache();
+
+			try (PrioritizedPermits.Permit ignored = getInstallLimiter().get().acquire(lockFile);
+				PackageCache.Lease ignoredLease =
+					packageCache.map(PackageCache::lockShared).getOrElse(PackageCache.Lease.NONE)) {
+				new NodeCommand(processes, getWorkingDirectory().get().getAsFile(), layout)
+					.args(script, "install")
+					.args(getPreferOffline().get() ? List.of("--prefer-offline") : List.empty())
+					.args(List.ofAll(getArgs().get()))
+					.withEnvironment(HashMap.ofAll(System.getenv()))
+					.withEnvironment(packageCache.map(cache -> cache.environment(packageManager()))
+						.getOrElse(HashMap.empty()))
+					.withEnvironment(installationEnvironment(lockFile))
+					.withTelemetry(Option.of(getTelemetry().getOrNull()), getPath(), packageManager())
+					.execute();
+
+				deduplicatePackages();
+			}
+		}
+
+		/*
+		 * Just mark that this task was successful. Making node_modules an output directory would result in a large
+		 * amount of time neeed to index that directory. The fingerprint of the installed packages allows skipping
+		 * subsequent installations that would not change anything.
+		 */
+		Files.createDirectories(executionMarker.getAbsoluteFile().getParentFile().toPath());
+		Files.writeString(executionMarker.toPath(), fingerprint(), StandardCharsets.UTF_8);
+		archiveInstalledPackages(true);
+	}
+
+	/*
+	 * Skipped installations write the archive as well, should it have been deleted since the last installation.
+	 */
+	private void archiveInstalledPackages(boolean installed)
+		throws IOException
+	{
+		if (getNodeModulesArchive().isPresent()) {
+			File archive = getNodeModulesArchive().get().getAsFile();
+			File nodeModules = getWorkingDirectory().dir("node_modules").get().getAsFile();
+
+			if (installed || !NodeModulesArchive.matches(nodeModules, archive)) {
+				NodeModulesArchive.store(nodeModules, archive);
+			}
+		}
+	}
+
+	private String fingerprint()
+		throws IOException
+	{
+		Directory workingDirectory = getWorkingDirectory().get();
+
+		return InstallationFingerprint.compute(
+			List.of(workingDirectory.file("package.json").getAsFile()).appendAll(getWorkspacePackageFiles()),
+			workingDirectory.file(lockFileName()).getAsFile(),
+			installedStateFile()
+		);
+	}
+
+	private void deduplicatePackages()
+		throws IOException
+	{
+		if (getPackageStoreDirectory().isPresent()) {
+			PackageStore store = new PackageStore(getPackageStoreDirectory().get().getAsFile());
+			PackageStore.Deduplication deduplication =
+				store.deduplicate(getWorkingDirectory().dir("node_modules").get().getAsFile());
+
+			getLogger().info("Linked {} packages ({} bytes) to the package store",
+				deduplication.linkedPackages(), deduplication.linkedBytes()
+			);
+		}
+	}
+
+	private Option<PackageCache> packageCache()
+	{
+		return Option.of(getPackageCacheDirectory().getAsFile().getOrNull()).map(PackageCache::new);
+	}
+}
@@ -0,0 +1,263 @@
+package com.brunoritz.gradle.singularnode.cache;
+
+import com.brunoritz.gradle.singularnode.nodejs.StreamingExtractor;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * Stores {@code node_modules} in a single archive, so it can be stored in and restored from the Gradle build cache.
+ * Gradle restores symlinks within output directories as regular files, which breaks the binaries in
+ * {@code node_modules/.bin} as well as the layout of PNPM. The archive preserves symlinks and permission bits instead.
+ * <p>
+ * A stamp file within {@code node_modules} records the archive it matches. It allows telling whether an archive has
+ * been restored from the build cache and still needs to be extracted.
+ */
+public final class NodeModulesArchive
+{
+	private static final String TOP_LEVEL_DIRECTORY = "node_modules/";
+	private static final String STAMP_FILE = ".install.archived";
+	private static final boolean POSIX_PERMISSIONS =
+		FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+	private static final PosixFilePermission[] PERMISSION_BITS = {
+		PosixFilePermission.OTHERS_EXECUTE,
+		PosixFilePermission.OTHERS_WRITE,
+		PosixFilePermission.OTHERS_READ,
+		PosixFilePermission.GROUP_EXECUTE,
+		PosixFilePermission.GROUP_WRITE,
+		PosixFilePermission.GROUP_READ,
+		PosixFilePermission.OWNER_EXECUTE,
+		PosixFilePermission.OWNER_WRITE,
+		PosixFilePermission.OWNER_READ
+	};
+
+	private NodeModulesArchive()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stores the contents of {@code node_modules} in the archive, replacing a previous archive. Only symlinks
+	 * pointing within {@code node_modules} can be stored, since the archive may be restored in another checkout.
+	 *
+	 * @param nodeModules
+	 * 	The {@code node_modules} directory to store
+	 * @param archive
+	 * 	The archive to write
+	 *
+	 * @throws IOException
+	 * 	If {@code node_modules} cannot be read, contains symlinks pointing outside of it or the archive cannot be
+	 * 	written
+	 */
+	public static void store(File nodeModules, File archive)
+		throws IOException
+	{
+		Path root = nodeModules.toPath();
+		Path archiveDir = archive.getAbsoluteFile().toPath().getParent();
+
+		Files.createDirectories(archiveDir);
+
+		Path partFile = Files.createTempFile(archiveDir, archive.getName(), ".part");
+
+		try {
+			try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(partFile));
+				TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(file, fast()))) {
+				tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+				tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+
+				for (Path path : contents(root)) {
+					writeEntry(tar, root, path);
+				}
+			}
+
+			Files.move(partFile, archive.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(partFile);
+		}
+
+		writeStamp(root, archive.toPath());
+	}
+
+	/**
+	 * Replaces {@code node_modules} with the contents of the archive.
+	 *
+	 * @param archive
+	 * 	The archive to restore
+	 * @param nodeModules
+	 * 	The {@code node_modules} directory to replace
+	 *
+	 * @throws IOException
+	 * 	If the archive cannot be read or {@code node_modules} cannot be replaced
+	 */
+	public static void restore(File archive, File nodeModules)
+		throws IOException
+	{
+		Path root = nodeModules.toPath();
+
+		delete(root);
+		StreamingExtractor.extract(archive, nodeModules);
+		writeStamp(root, archive.toPath());
+	}
+
+	/**
+	 * Checks whether {@code node_modules} matches the archive, because it was either stored in or restored from the
+	 * archive.
+	 *
+	 * @param nodeModules
+	 * 	The {@code node_modules} directory to check
+	 * @param archive
+	 * 	The archive to check against
+	 *
+	 * @return {@code true} if {@code node_modules} matches the archive
+	 *
+	 * @throws IOException
+	 * 	If the stamp file cannot be read
+	 */
+	public static boolean matches(File nodeModules, File archive)
+		throws IOException
+	{
+		Path stampFile = nodeModules.toPath().resolve(STAMP_FILE);
+
+		return archive.isFile()
+			&& Files.isRegularFile(stampFile)
+			&& Files.readString(stampFile, StandardCharsets.UTF_8).equals(stamp(archive.toPath()));
+	}
+
+	private static List<Path> contents(Path root)
+		throws IOException
+	{
+		if (!Files.isDirectory(root)) {
+			return List.of();
+		}
+
+		try (Stream<Path> paths = Files.walk(root)) {
+			return paths
+				.filter(path -> !path.equals(root) && !path.equals(root.resolve(STAMP_FILE)))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+	}
+
+	private static void writeEntry(TarArchiveOutputStream tar, Path root, Path path)
+		throws IOException
+	{
+		String name = TOP_LEVEL_DIRECTORY + root.relativize(path).toString().replace(File.separatorChar, '/');
+
+		if (Files.isSymbolicLink(path)) {
+			TarArchiveEntry entry = new TarArchiveEntry(name, TarConstants.LF_SYMLINK);
+
+			entry.setLinkName(linkTarget(root, path));
+			tar.putArchiveEntry(entry);
+		} else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+			TarArchiveEntry entry = new TarArchiveEntry(name + "/");
+
+			entry.setMode((TarArchiveEntry.DEFAULT_DIR_MODE & ~0777) | mode(path));
+			tar.putArchiveEntry(entry);
+		} else {
+			TarArchiveEntry entry = new TarArchiveEntry(name);
+
+			entry.setMode((TarArchiveEntry.DEFAULT_FILE_MODE & ~0777) | mode(path));
+			entry.setSize(Files.size(path));
+			tar.putArchiveEntry(entry);
+			Files.copy(path, tar);
+		}
+
+		tar.closeArchiveEntry();
+	}
+
+	private static String linkTarget(Path root, Path link)
+		throws IOException
+	{
+		Path target = Files.readSymbolicLink(link);
+
+		if (target.isAbsolute() || !link.getParent().resolve(target).normalize().startsWith(root.normalize())) {
+			throw new IOException(String.format(
+				"%s points outside of node_modules to %s, hence the installed packages cannot be cached", link, target
+			));
+		}
+
+		return target.toString().replace(File.separatorChar, '/');
+	}
+
+	private static int mode(Path path)
+		throws IOException
+	{
+		if (!POSIX_PERMISSIONS) {
+			return Files.isDirectory(path) ? 0755 : 0644;
+		}
+
+		Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+		int mode = 0;
+
+		for (int bit = 0; bit < PERMISSION_BITS.length; bit++) {
+			if (permissions.contains(PERMISSION_BITS[bit])) {
+				mode |= 1 << bit;
+			}
+		}
+
+		return mode;
+	}
+
+	/*
+	 * Gradle compresses cache entries by itself, so the archive favors speed over size.
+	 */
+	private static GzipParameters fast()
+	{
+		GzipParameters parameters = new GzipParameters();
+
+		parameters.setCompressionLevel(Deflater.BEST_SPEED);
+
+		return parameters;
+	}
+
+	private static void delete(Path root)
+		throws IOException
+	{
+		if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/*
+	 * Gradle writes the archive anew when restoring it from the build cache, which changes its modification time.
+	 */
+	private static String stamp(Path archive)
+		throws IOException
+	{
+		return Files.size(archive) + ":" + Files.getLastModifiedTime(archive).toMillis();
+	}
+
+	private static void writeStamp(Path root, Path archive)
+		throws IOException
+	{
+		Files.createDirectories(root);
+		Files.writeString(root.resolve(STAMP_FILE), stamp(archive), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,371 @@
+package com.brunoritz.gradle.singularnode.cache;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A machine-wide cache shared by the package managers of all checkouts. The cache directory holds one subdirectory per
+ * package manager, into which the package manager is pointed using its environment variables:
+ * <ul>
+ *     <li>NPM: {@code npm_config_cache}</li>
+ *     <li>Yarn: {@code YARN_CACHE_FOLDER}</li>
+ *     <li>PNPM: {@code npm_config_store_dir}</li>
+ * </ul>
+ * <p>
+ * Yarn 2 or later only use the cache folder if {@code enableGlobalCache} is disabled, otherwise they keep using their
+ * own global folder. The setting of the project is left untouched, as Plug'n'Play installations refer to the cached
+ * archives directly.
+ * <p>
+ * The package managers write their caches atomically, hence concurrent installations are safe. Only pruning needs
+ * exclusive access to the cache. Installations therefore hold a shared lock while running, while pruning waits for an
+ * exclusive one. The lock is a lock file within the cache directory, which coordinates separate Gradle daemons, along
+ * with a lock within the JVM, which coordinates the builds and workers of a single daemon.
+ */
+public final class PackageCache
+{
+	private static final ConcurrentMap<Path, LockState> LOCKS = new ConcurrentHashMap<>();
+
+	private final Path cacheDir;
+
+	/**
+	 * Creates a new cache. The directory is created on demand.
+	 *
+	 * @param cacheDir
+	 * 	The directory holding the caches of all package managers
+	 */
+	public PackageCache(File cacheDir)
+	{
+		this.cacheDir = cacheDir.getAbsoluteFile().toPath().normalize();
+	}
+
+	/**
+	 * Returns the environment variables pointing a package manager to its part of the cache.
+	 *
+	 * @param packageManager
+	 * 	The name of the package manager, {@code npm}, {@code yarn} or {@code pnpm}
+	 *
+	 * @return The environment variables to pass to the package manager
+	 */
+	public Map<CharSequence, CharSequence> environment(String packageManager)
+	{
+		return switch (packageManager) {
+			case "npm" -> HashMap.of("npm_config_cache", path("npm"));
+			case "yarn" -> HashMap.of("YARN_CACHE_FOLDER", path("yarn", "cache"));
+			case "pnpm" -> HashMap.of("npm_config_store_dir", path("pnpm"));
+			default -> throw new IllegalArgumentException("Unknown package manager: " + packageManager);
+		};
+	}
+
+	/**
+	 * Blocks until the cache may be used by a package installation. Any number of installations may use the cache at
+	 * the same time.
+	 *
+	 * @return The lease, which must be closed once the installation is complete
+	 */
+	public Lease lockShared()
+	{
+		return lockState().acquire(true);
+	}
+
+	/**
+	 * Blocks until the cache is no longer used by any package installation and prevents further installations from
+	 * using it.
+	 *
+	 * @return The lease, which must be closed once the cache may be used again
+	 */
+	public Lease lockExclusive()
+	{
+		return lockState().acquire(false);
+	}
+
+	/**
+	 * Deletes the least recently used entries of the cache until its total size does not exceed the given limit. An
+	 * entry is the smallest unit a package manager can cope with losing, which is a single file for the
+	 * content-addressable caches of NPM and PNPM as well as for the offline mirror of Yarn 1, and a package directory
+	 * for the cache of Yarn 1. The time of use is the later of the last access and the last modification time.
+	 * <p>
+	 * The archives cached by Yarn 2 or later are never deleted. Plug'n'Play installations load packages straight from
+	 * these archives, hence deleting them would break installations that are still considered up-to-date.
+	 * <p>
+	 * Callers must hold the exclusive lock.
+	 *
+	 * @param maxSize
+	 * 	The maximum size of the cache in bytes
+	 *
+	 * @return The number of bytes deleted
+	 *
+	 * @throws IOException
+	 * 	If the cache cannot be read or an entry cannot be deleted
+	 */
+	public long prune(long maxSize)
+		throws IOException
+	{
+		List<CacheEntry> entries = entries().sorted(Comparator.comparing(CacheEntry::lastUsed));
+		long totalSize = 0;
+		long deleted = 0;
+
+		for (CacheEntry entry : entries) {
+			totalSize += entry.size();
+		}
+
+		for (CacheEntry entry : entries) {
+			if ((totalSize - deleted) <= maxSize) {
+				break;
+			}
+
+			deleteRecursively(entry.path());
+			deleted += entry.size();
+		}
+
+		return deleted;
+	}
+
+	private List<CacheEntry> entries()
+		throws IOException
+	{
+		List<CacheEntry> entries = List.empty();
+
+		for (Path file : files(cacheDir.resolve("npm")).appendAll(files(cacheDir.resolve("pnpm")))) {
+			entries = entries.append(CacheEntry.of(file));
+		}
+
+		for (Path file : files(cacheDir.resolve("yarn").resolve("offline-mirror"))) {
+			entries = entries.append(CacheEntry.of(file));
+		}
+
+		for (Path packageDir : yarnClassicPackages()) {
+			entries = entries.append(CacheEntry.of(packageDir));
+		}
+
+		return entries;
+	}
+
+	/*
+	 * Yarn 1 keeps each package in a directory below a versioned cache directory, such as cache/v6/npm-colors-1.4.0-...
+	 * Later versions keep their archives directly in the cache directory, which are therefore not listed.
+	 */
+	private List<Path> yarnClassicPackages()
+		throws IOException
+	{
+		Path yarnCache = cacheDir.resolve("yarn").resolve("cache");
+
+		if (!Files.isDirectory(yarnCache)) {
+			return List.empty();
+		}
+
+		try (Stream<Path> versions = Files.list(yarnCache)) {
+			List<Path> packages = List.empty();
+
+			for (Path version : versions.filter(Files::isDirectory).collect(Collectors.toList())) {
+				try (Stream<Path> packageDirs = Files.list(version)) {
+					packages = packages.appendAll(packageDirs.collect(Collectors.toList()));
+				}
+			}
+
+			return packages;
+		}
+	}
+
+	private static List<Path> files(Path directory)
+		throws IOException
+	{
+		if (!Files.isDirectory(directory)) {
+			return List.empty();
+		}
+
+		try (Stream<Path> walk = Files.walk(directory)) {
+			return List.ofAll(walk.filter(Files::isRegularFile).collect(Collectors.toList()));
+		}
+	}
+
+	private static void deleteRecursively(Path path)
+		throws IOException
+	{
+		java.util.List<Path> entries;
+
+		try (Stream<Path> walk = Files.walk(path)) {
+			entries = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+
+		for (Path entry : entries) {
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	private String path(String... segments)
+	{
+		Path path = cacheDir;
+
+		for (String segment : segments) {
+			path = path.resolve(segment);
+		}
+
+		return path.toString();
+	}
+
+	private LockState lockState()
+	{
+		return LOCKS.computeIfAbsent(cacheDir, dir -> new LockState(dir.resolve(".lock")));
+	}
+
+	/**
+	 * A granted lock on the cache. Closing the lease releases the lock, closing it more than once has no effect.
+	 */
+	public static final class Lease
+		implements AutoCloseable
+	{
+		/**
+		 * A lease that does not hold any lock, for installations not using a shared cache.
+		 */
+		public static final Lease NONE = new Lease(Option.none(), true);
+
+		private final Option<LockState> lock;
+		private final boolean shared;
+		private boolean released;
+
+		private Lease(Option<LockState> lock, boolean shared)
+		{
+			this.lock = lock;
+			this.shared = shared;
+		}
+
+		@Override
+		public void close()
+		{
+			lock.forEach(state -> {
+				synchronized (state) {
+					if (!released) {
+						released = true;
+						state.release(shared);
+					}
+				}
+			});
+		}
+	}
+
+	private record CacheEntry(Path path, long size, FileTime lastUsed)
+	{
+		static CacheEntry of(Path path)
+			throws IOException
+		{
+			long size = 0;
+			FileTime lastUsed = FileTime.fromMillis(0);
+
+			try (Stream<Path> walk = Files.walk(path)) {
+				for (Path file : walk.filter(Files::isRegularFile).collect(Collectors.toList())) {
+					BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+					size += attributes.size();
+					lastUsed = later(lastUsed, later(attributes.lastAccessTime(), attributes.lastModifiedTime()));
+				}
+			}
+
+			return new CacheEntry(path, size, lastUsed);
+		}
+
+		private static FileTime later(FileTime first, FileTime second)
+		{
+			return (first.compareTo(second) >= 0) ? first : second;
+		}
+	}
+
+	/**
+	 * The lock of a single cache directory within this JVM. Any number of shared holders or one exclusive holder are
+	 * admitted. The file lock is acquired by the first holder and released by the last one, as a JVM cannot hold
+	 * overlapping locks on the same file.
+	 */
+	private static final class LockState
+	{
+		private final Path lockFile;
+		private int sharedHolders;
+		private boolean exclusivelyHeld;
+		private FileChannel channel;
+		private FileLock fileLock;
+
+		LockState(Path lockFile)
+		{
+			this.lockFile = lockFile;
+		}
+
+		synchronized Lease acquire(boolean shared)
+		{
+			try {
+				while (exclusivelyHeld || (!shared && (sharedHolders > 0))) {
+					wait();
+				}
+
+				if (sharedHolders == 0) {
+					lockFile(shared);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				throw new IllegalStateException("Interrupted while waiting for the package cache", e);
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to lock the package cache " + lockFile.getParent(), e);
+			}
+
+			if (shared) {
+				sharedHolders++;
+			} else {
+				exclusivelyHeld = true;
+			}
+
+			return new Lease(Option.of(this), shared);
+		}
+
+		private void lockFile(boolean shared)
+			throws IOException
+		{
+			Files.createDirectories(lockFile.getParent());
+			channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE
+			);
+
+			try {
+				fileLock = channel.lock(0, Long.MAX_VALUE, shared);
+			} catch (IOException e) {
+				channel.close();
+
+				throw e;
+			}
+		}
+
+		private void release(boolean shared)
+		{
+			if (shared) {
+				sharedHolders--;
+			} else {
+				exclusivelyHeld = false;
+			}
+
+			if ((sharedHolders == 0) && !exclusivelyHeld) {
+				try {
+					fileLock.release();
+					channel.close();
+				} catch (IOException e) {
+					throw new IllegalStateException("Failed to unlock the package cache " + lockFile.getParent(), e);
+				}
+			}
+
+			notifyAll();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.brunoritz.gradle.singularnode.cache;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.TaskProvider;
+
+/**
+ * Configures the machine-wide package cache shared by the package managers.
+ */
+public final class PackageCacheSetup
+{
+	private PackageCacheSetup()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Registers the {@code prunePackageCache} task on the root project. The task is skipped unless the package cache
+	 * is shared and a maximum size is configured.
+	 *
+	 * @param project
+	 * 	The root project
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 */
+	public static void configurePruning(Project project, NodeJsExtension configuration)
+	{
+		Provider<Directory> cacheDirectory = sharedCacheDirectory(configuration);
+		TaskProvider<PrunePackageCacheTask> pruneTask =
+			project.getTasks().register("prunePackageCache", PrunePackageCacheTask.class);
+
+		pruneTask.configure(task -> {
+			task.setGroup("NodeJS");
+			task.setDescription("Deletes the least recently used entries of the shared package cache");
+			task.getCacheDirectory().set(cacheDirectory);
+			task.getMaxSize().set(configuration.maxPackageCacheSize);
+			task.onlyIf("The package cache is shared and limited in size", pruning ->
+				task.getCacheDirectory().isPresent() && task.getMaxSize().isPresent()
+			);
+		});
+	}
+
+	/**
+	 * Provides the directory of the shared package cache. The provider has no value unless sharing package caches is
+	 * enabled.
+	 *
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 *
+	 * @return The directory of the shared package cache
+	 */
+	public static Provider<Directory> sharedCacheDirectory(NodeJsExtension configuration)
+	{
+		return configuration.sharePackageCaches
+			.filter(enabled -> enabled)
+			.flatMap(enabled -> configuration.packageCacheDir);
+	}
+
+	/**
+	 * Provides the directory of the store with which installed packages are deduplicated. The provider has no value
+	 * unless deduplicating packages is enabled.
+	 *
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 *
+	 * @return The directory of the package store
+	 */
+	public static Provider<Directory> packageStoreDirectory(NodeJsExtension configuration)
+	{
+		return configuration.deduplicatePackages
+			.filter(enabled -> enabled)
+			.flatMap(enabled -> configuration.packageStoreDir);
+	}
+
+	/**
+	 * Provides the archive a cacheable package installation stores {@code node_modules} in. The provider has no value
+	 * unless the package installation is cacheable.
+	 *
+	 * @param project
+	 * 	The project installing packages
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 * @param packageManager
+	 * 	The name of the package manager installing the packages
+	 *
+	 * @return The archive of {@code node_modules}
+	 */
+	public static Provider<RegularFile> nodeModulesArchive(
+		Project project,
+		NodeJsExtension configuration,
+		String packageManager)
+	{
+		return configuration.cacheablePackageInstallation
+			.filter(enabled -> enabled)
+			.flatMap(enabled -> project.getLayout().getBuildDirectory()
+				.file(String.format("node-modules/%s.tar.gz", packageManager))
+			);
+	}
+
+	/**
+	 * Registers the task extracting the archive of {@code node_modules} after it has been written or restored from
+	 * the build cache by the package installation task. The task is skipped unless the package installation is
+	 * cacheable. Tasks using the installed packages need to depend on the returned task.
+	 *
+	 * @param project
+	 * 	The project installing packages
+	 * @param name
+	 * 	The name of the task to register
+	 * @param group
+	 * 	The group of the task to register
+	 * @param installationTask
+	 * 	The package installation task writing the archive
+	 * @param archive
+	 * 	The archive of {@code node_modules}, as provided by {@link #nodeModulesArchive(Project, NodeJsExtension,
+	 * 	String)}
+	 *
+	 * @return The registered task
+	 */
+	public static TaskProvider<RestoreNodeModulesTask> registerRestoreTask(
+		Project project,
+		String name,
+		String group,
+		TaskProvider<? extends Task> installationTask,
+		Provider<RegularFile> archive)
+	{
+		TaskProvider<RestoreNodeModulesTask> restoreTask =
+			project.getTasks().register(name, RestoreNodeModulesTask.class);
+
+		restoreTask.configure(task -> {
+			task.setGroup(group);
+			task.setDescription("Extracts node_modules after it has been restored from the build cache");
+			task.dependsOn(installationTask);
+			task.getNodeModulesArchive().set(archive);
+			task.getNodeModulesDirectory().set(project.getLayout().getProjectDirectory().dir("node_modules"));
+		});
+		installationTask.configure(task -> task.finalizedBy(restoreTask));
+
+		return restoreTask;
+	}
+}
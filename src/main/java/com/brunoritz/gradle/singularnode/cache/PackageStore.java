@@ -0,0 +1,474 @@
+package com.brunoritz.gradle.singularnode.cache;
+
+import com.brunoritz.gradle.singularnode.platform.Checksums;
+import io.vavr.collection.List;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A store of installed package directories, shared by the subprojects of a build. After a package manager has
+ * installed packages into {@code node_modules}, every package directory is looked up in the store by the checksum of
+ * its contents and file modes. Packages not yet stored are copied into the store. The installed files are then
+ * replaced by clones of the stored files, or by hardlinks to them if the file system cannot clone files. Identical
+ * packages installed by many subprojects therefore occupy disk space only once.
+ * <p>
+ * Files are cloned with {@code cp}, using {@code --reflink} on Linux and {@code clonefile} on macOS. Clones share
+ * their storage until either copy is modified, hence modifying an installed file in place affects no other subproject.
+ * Hardlinks on the other hand share the file itself, in which case modifying an installed file in place affects the
+ * store and all subprojects. Package managers replace files instead of modifying them, so this only affects manual
+ * changes. Neither is possible across file systems, in which case packages keep the copies written by the package
+ * manager.
+ * <p>
+ * Linked packages are marked with the checksum of the stored package. Later deduplications skip marked packages whose
+ * files still match the stored ones by size, modification time and mode, so unchanged packages are not hashed again.
+ * <p>
+ * Concurrent installations may use the store. A package is added to a staging directory first and then moved into
+ * place, so a partially stored package is never visible. Should two installations store the same package at the same
+ * time, the first one wins and the other one discards its copy.
+ */
+public final class PackageStore
+{
+	private static final String NODE_MODULES = "node_modules";
+	private static final String LINK_SUFFIX = ".singular-node-link";
+	private static final String STORED_MARKER = ".singular-node-stored";
+	private static final Pattern CHECKSUM = Pattern.compile("[0-9a-f]{64}");
+	private static final int FILES_PER_CLONE = 100;
+	private static final byte[] SEPARATOR = {0};
+	private static final byte[] EXECUTABLE = {'x'};
+	private static final byte[] NOT_EXECUTABLE = {'-'};
+
+	private final Path storeDir;
+	private final List<String> cloneCommand;
+	private boolean clonesUnsupported;
+
+	/**
+	 * Creates a new store. The directory is created on demand.
+	 *
+	 * @param storeDir
+	 * 	The directory holding the stored packages
+	 */
+	public PackageStore(File storeDir)
+	{
+		this(storeDir, cloneCommand());
+	}
+
+	PackageStore(File storeDir, List<String> cloneCommand)
+	{
+		this.storeDir = storeDir.getAbsoluteFile().toPath().normalize();
+		this.cloneCommand = cloneCommand;
+		this.clonesUnsupported = cloneCommand.isEmpty();
+	}
+
+	/**
+	 * Stores the packages within {@code node_modules}, including nested ones, and replaces them by clones of or
+	 * hardlinks to the stored packages.
+	 *
+	 * @param nodeModules
+	 * 	The {@code node_modules} directory populated by a package manager
+	 *
+	 * @return The number of packages and bytes that were newly linked to the store
+	 *
+	 * @throws IOException
+	 * 	If reading the installed packages or writing the store fails
+	 */
+	public Deduplication deduplicate(File nodeModules)
+		throws IOException
+	{
+		Deduplication result = new Deduplication(0, 0);
+
+		for (Path packageDir : packageDirectories(nodeModules.toPath())) {
+			List<Path> files = packageFiles(packageDir);
+
+			if (isLinked(packageDir, files)) {
+				continue;
+			}
+
+			Path storedPackage = storeDir.resolve(contentChecksum(packageDir, files));
+
+			if (!Files.isDirectory(storedPackage)) {
+				store(packageDir, files, storedPackage);
+			}
+
+			result = result.add(link(packageDir, files, storedPackage));
+		}
+
+		return result;
+	}
+
+	/*
+	 * Package directories are the children of node_modules, or the children of a scope directory such as @types.
+	 * Hidden entries, such as .bin or the state files of package managers, are not packages.
+	 */
+	private static List<Path> packageDirectories(Path nodeModules)
+		throws IOException
+	{
+		List<Path> packages = List.empty();
+
+		for (Path entry : directories(nodeModules)) {
+			String name = entry.getFileName().toString();
+
+			if (name.startsWith(".")) {
+				continue;
+			}
+
+			List<Path> scopePackages = name.startsWith("@") ? directories(entry) : List.of(entry);
+
+			for (Path packageDir : scopePackages) {
+				packages = packages.append(packageDir)
+					.appendAll(packageDirectories(packageDir.resolve(NODE_MODULES)));
+			}
+		}
+
+		return packages;
+	}
+
+	private static List<Path> directories(Path parent)
+		throws IOException
+	{
+		if (!Files.isDirectory(parent) || Files.isSymbolicLink(parent)) {
+			return List.empty();
+		}
+
+		try (Stream<Path> entries = Files.list(parent)) {
+			return List.ofAll(entries
+				.filter(entry -> Files.isDirectory(entry) && !Files.isSymbolicLink(entry))
+				.sorted()
+				.collect(Collectors.toList())
+			);
+		}
+	}
+
+	/*
+	 * The files of a package, excluding those of nested packages and the marker of linked packages. Symlinks are not
+	 * part of the package's content, as they usually point to other packages or workspace members.
+	 */
+	private static List<Path> packageFiles(Path packageDir)
+		throws IOException
+	{
+		Path nestedPackages = packageDir.resolve(NODE_MODULES);
+
+		try (Stream<Path> walk = Files.walk(packageDir)) {
+			return List.ofAll(walk
+				.filter(file -> !file.startsWith(nestedPackages))
+				.filter(file -> Files.isRegularFile(file) && !Files.isSymbolicLink(file))
+				.map(packageDir::relativize)
+				.filter(file -> !STORED_MARKER.equals(file.toString()))
+				.sorted(Comparator.comparing(Path::toString))
+				.collect(Collectors.toList())
+			);
+		}
+	}
+
+	private static String contentChecksum(Path packageDir, List<Path> files)
+		throws IOException
+	{
+		MessageDigest digest = Checksums.digest("SHA-256");
+
+		for (Path file : files) {
+			String relativePath = file.toString().replace(File.separatorChar, '/');
+
+			digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+			digest.update(SEPARATOR);
+			digest.update(Checksums.sha256(packageDir.resolve(file).toFile()).getBytes(StandardCharsets.UTF_8));
+			digest.update(SEPARATOR);
+			digest.update(isExecutable(packageDir.resolve(file)) ? EXECUTABLE : NOT_EXECUTABLE);
+			digest.update(SEPARATOR);
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/*
+	 * A package is linked if it carries the marker of a stored package whose files match the installed ones. Comparing
+	 * the attributes of the files is enough, as clones and hardlinks keep those of the stored files.
+	 */
+	private boolean isLinked(Path packageDir, List<Path> files)
+		throws IOException
+	{
+		Path marker = packageDir.resolve(STORED_MARKER);
+
+		if (!Files.isRegularFile(marker)) {
+			return false;
+		}
+
+		String checksum = Files.readString(marker, StandardCharsets.UTF_8).trim();
+		Path storedPackage = storeDir.resolve(checksum);
+
+		if (!CHECKSUM.matcher(checksum).matches() || !Files.isDirectory(storedPackage)
+			|| (packageFiles(storedPackage).size() != files.size())) {
+			return false;
+		}
+
+		for (Path file : files) {
+			if (!isSameContent(packageDir.resolve(file), storedPackage.resolve(file))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isSameContent(Path installed, Path stored)
+		throws IOException
+	{
+		if (!Files.isRegularFile(stored)) {
+			return false;
+		}
+
+		if (Files.isSameFile(installed, stored)) {
+			return true;
+		}
+
+		BasicFileAttributes installedAttributes = Files.readAttributes(installed, BasicFileAttributes.class);
+		BasicFileAttributes storedAttributes = Files.readAttributes(stored, BasicFileAttributes.class);
+
+		return (installedAttributes.size() == storedAttributes.size())
+			&& installedAttributes.lastModifiedTime().equals(storedAttributes.lastModifiedTime())
+			&& (isExecutable(installed) == isExecutable(stored));
+	}
+
+	private Deduplication link(Path packageDir, List<Path> files, Path storedPackage)
+		throws IOException
+	{
+		long linkedBytes = 0;
+
+		if (cloneOver(storedPackage, files, packageDir)) {
+			for (Path file : files) {
+				linkedBytes += Files.size(storedPackage.resolve(file));
+			}
+		} else {
+			for (Path file : files) {
+				Path installed = packageDir.resolve(file);
+				Path stored = storedPackage.resolve(file);
+
+				if (!Files.isRegularFile(stored)) {
+					return new Deduplication(0, linkedBytes);
+				}
+
+				if (Files.isSameFile(installed, stored)) {
+					continue;
+				}
+
+				Path link = installed.resolveSibling(installed.getFileName() + LINK_SUFFIX);
+
+				try {
+					Files.createLink(link, stored);
+				} catch (UnsupportedOperationException | IOException e) {
+					return new Deduplication(0, linkedBytes);
+				}
+
+				Files.move(link, installed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				linkedBytes += Files.size(stored);
+			}
+		}
+
+		Files.writeString(packageDir.resolve(STORED_MARKER), storedPackage.getFileName().toString(),
+			StandardCharsets.UTF_8
+		);
+
+		return new Deduplication(1, linkedBytes);
+	}
+
+	/*
+	 * The clones are created next to the package and then moved over the installed files, so the package never lacks a
+	 * file. Hidden directories are not considered packages.
+	 */
+	private boolean cloneOver(Path storedPackage, List<Path> files, Path packageDir)
+		throws IOException
+	{
+		if (clonesUnsupported) {
+			return false;
+		}
+
+		Path staging = Files.createTempDirectory(packageDir.getParent(), "." + packageDir.getFileName() + LINK_SUFFIX);
+
+		try {
+			if (!cloneAll(storedPackage, files, staging)) {
+				return false;
+			}
+
+			for (Path file : files) {
+				Files.move(staging.resolve(file), packageDir.resolve(file),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+				);
+			}
+
+			return true;
+		} finally {
+			deleteRecursively(staging);
+		}
+	}
+
+	/*
+	 * The store holds copies rather than links of the installed files, so it does not depend on the node_modules
+	 * directory it was populated from. Cloning avoids duplicating the storage if supported by the file system.
+	 */
+	private void store(Path packageDir, List<Path> files, Path storedPackage)
+		throws IOException
+	{
+		Files.createDirectories(storeDir);
+
+		Path staging = Files.createTempDirectory(storeDir, storedPackage.getFileName() + ".");
+
+		try {
+			if (!cloneAll(packageDir, files, staging)) {
+				copyAll(packageDir, files, staging);
+			}
+
+			Files.move(staging, storedPackage, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			if (!Files.isDirectory(storedPackage)) {
+				throw e;
+			}
+
+			// Stored by a concurrent installation in the meantime
+		} finally {
+			deleteRecursively(staging);
+		}
+	}
+
+	private static void copyAll(Path sourceDir, List<Path> files, Path targetDir)
+		throws IOException
+	{
+		for (Path file : files) {
+			Path target = targetDir.resolve(file);
+
+			Files.createDirectories(target.getParent());
+			Files.copy(sourceDir.resolve(file), target,
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES
+			);
+		}
+	}
+
+	/*
+	 * Clones the files with one cp invocation per target directory and batch of files. The first failure disables
+	 * cloning for this store, as it is most likely caused by a file system or cp lacking support for it.
+	 */
+	private boolean cloneAll(Path sourceDir, List<Path> files, Path targetDir)
+		throws IOException
+	{
+		if (clonesUnsupported) {
+			return false;
+		}
+
+		java.util.Map<Path, java.util.List<String>> filesByTarget = new java.util.LinkedHashMap<>();
+
+		for (Path file : files) {
+			filesByTarget.computeIfAbsent(targetDir.resolve(file).getParent(), target -> new ArrayList<>())
+				.add(sourceDir.resolve(file).toString());
+		}
+
+		for (java.util.Map.Entry<Path, java.util.List<String>> target : filesByTarget.entrySet()) {
+			java.util.List<String> sources = target.getValue();
+
+			Files.createDirectories(target.getKey());
+
+			for (int start = 0; start < sources.size(); start += FILES_PER_CLONE) {
+				int end = Math.min(start + FILES_PER_CLONE, sources.size());
+				List<String> batch = List.ofAll(sources.subList(start, end));
+
+				if (!runClone(cloneCommand.appendAll(batch).append(target.getKey().toString()))) {
+					clonesUnsupported = true;
+
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean runClone(List<String> command)
+		throws IOException
+	{
+		try {
+			Process process = new ProcessBuilder(command.toJavaList())
+				.redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+				.start();
+
+			return process.waitFor() == 0;
+		} catch (IOException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new IOException("Interrupted while cloning package files", e);
+		}
+	}
+
+	/*
+	 * GNU cp clones files with --reflink, the cp of macOS with -c. Both preserve the mode and modification time, which
+	 * identify linked packages. Windows provides no command to clone files.
+	 */
+	private static List<String> cloneCommand()
+	{
+		String osName = System.getProperty("os.name").toLowerCase(Locale.ENGLISH);
+
+		if (osName.contains("windows")) {
+			return List.empty();
+		} else if (osName.contains("mac")) {
+			return List.of("cp", "-c", "-p");
+		} else {
+			return List.of("cp", "--reflink=always", "--preserve=mode,timestamps");
+		}
+	}
+
+	private static boolean isExecutable(Path file)
+		throws IOException
+	{
+		PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+
+		return (view != null) && view.readAttributes().permissions().contains(PosixFilePermission.OWNER_EXECUTE);
+	}
+
+	private static void deleteRecursively(Path directory)
+		throws IOException
+	{
+		if (!Files.exists(directory)) {
+			return;
+		}
+
+		java.util.List<Path> entries;
+
+		try (Stream<Path> walk = Files.walk(directory)) {
+			entries = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+
+		for (Path entry : entries) {
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	/**
+	 * The outcome of a deduplication.
+	 *
+	 * @param linkedPackages
+	 * 	The number of installed packages that were replaced by clones of or links to stored packages
+	 * @param linkedBytes
+	 * 	The size of the files that were replaced by clones or links
+	 */
+	public record Deduplication(int linkedPackages, long linkedBytes)
+	{
+		Deduplication add(Deduplication other)
+		{
+			return new Deduplication(linkedPackages + other.linkedPackages, linkedBytes + other.linkedBytes);
+		}
+	}
+}
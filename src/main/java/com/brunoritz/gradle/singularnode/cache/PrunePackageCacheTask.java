@@ -0,0 +1,47 @@
+package com.brunoritz.gradle.singularnode.cache;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.IOException;
+
+/**
+ * Deletes the least recently used entries of the shared package cache until it no longer exceeds its maximum size.
+ * The task waits for all package installations currently using the cache to complete, including those of other
+ * builds, and blocks further installations while pruning.
+ *
+ * @see PackageCache#prune(long)
+ */
+public abstract class PrunePackageCacheTask
+	extends DefaultTask
+{
+	private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
+	@Internal
+	@Optional
+	public abstract DirectoryProperty getCacheDirectory();
+
+	/**
+	 * The maximum size of the cache in megabytes.
+	 */
+	@Internal
+	@Optional
+	public abstract Property<Long> getMaxSize();
+
+	@TaskAction
+	public void prune()
+		throws IOException
+	{
+		PackageCache cache = new PackageCache(getCacheDirectory().get().getAsFile());
+
+		try (PackageCache.Lease ignored = cache.lockExclusive()) {
+			long deleted = cache.prune(getMaxSize().get() * BYTES_PER_MEGABYTE);
+
+			getLogger().lifecycle("Deleted {} MB from the package cache", deleted / BYTES_PER_MEGABYTE);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.brunoritz.gradle.singularnode.cache;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Extracts the archive of {@code node_modules} written by a cacheable package installation. When the package
+ * installation is restored from the build cache, only the archive is restored, so {@code node_modules} itself needs
+ * to be recreated before any package is used. If {@code node_modules} already matches the archive, nothing is done.
+ *
+ * @see NodeModulesArchive
+ */
+public abstract class RestoreNodeModulesTask
+	extends DefaultTask
+{
+	public RestoreNodeModulesTask()
+	{
+		onlyIf("Package installation is cacheable", task -> getNodeModulesArchive().isPresent());
+	}
+
+	@Internal
+	@Optional
+	public abstract RegularFileProperty getNodeModulesArchive();
+
+	@Internal
+	public abstract DirectoryProperty getNodeModulesDirectory();
+
+	@TaskAction
+	public void restore()
+		throws IOException
+	{
+		File archive = getNodeModulesArchive().get().getAsFile();
+		File nodeModules = getNodeModulesDirectory().get().getAsFile();
+
+		if (!archive.isFile() || NodeModulesArchive.matches(nodeModules, archive)) {
+			getLogger().info("Installed packages match {}, skipping restore", archive);
+			setDidWork(false);
+
+			return;
+		}
+
+		NodeModulesArchive.restore(archive, nodeModules);
+	}
+}
@@ -0,0 +1,101 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+/**
+ * The packages locked by a lockfile along with the dependencies among them. The graph is immutable and kept in a
+ * compact form: the fields of all packages are held in arrays indexed by the package number and the dependencies in a
+ * single array of package numbers. Strings occurring many times, such as package names and versions, share the same
+ * instance. {@link LockedPackage} instances are only created when accessed.
+ * <p>
+ * Dependencies that the lockfile does not resolve to a locked package, such as unmet optional or peer dependencies,
+ * are not part of the graph.
+ */
+public final class DependencyGraph
+{
+	private final String[] names;
+	private final String[] versions;
+	private final String[] resolutions;
+	private final String[] integrities;
+	private final int[] dependencyOffsets;
+	private final int[] dependencies;
+
+	DependencyGraph(
+		String[] names,
+		String[] versions,
+		String[] resolutions,
+		String[] integrities,
+		int[] dependencyOffsets,
+		int[] dependencies)
+	{
+		this.names = names;
+		this.versions = versions;
+		this.resolutions = resolutions;
+		this.integrities = integrities;
+		this.dependencyOffsets = dependencyOffsets;
+		this.dependencies = dependencies;
+	}
+
+	/**
+	 * Returns the number of locked packages.
+	 */
+	public int size()
+	{
+		return names.length;
+	}
+
+	/**
+	 * Returns a locked package by its number.
+	 *
+	 * @param id
+	 * 	The number of the package, between {@code 0} and {@link #size()}
+	 *
+	 * @return The locked package
+	 */
+	public LockedPackage get(int id)
+	{
+		return new LockedPackage(
+			id,
+			names[id],
+			Option.of(versions[id]),
+			Option.of(resolutions[id]),
+			Option.of(integrities[id])
+		);
+	}
+
+	/**
+	 * Returns all locked packages in the order they appear in the lockfile.
+	 */
+	public List<LockedPackage> packages()
+	{
+		List<LockedPackage> packages = List.empty();
+
+		for (int id = names.length - 1; id >= 0; id--) {
+			packages = packages.prepend(get(id));
+		}
+
+		return packages;
+	}
+
+	/**
+	 * Returns the packages a locked package directly depends on.
+	 *
+	 * @param lockedPackage
+	 * 	The package of which to return the dependencies
+	 *
+	 * @return The direct dependencies
+	 */
+	public List<LockedPackage> dependencies(LockedPackage lockedPackage)
+	{
+		List<LockedPackage> packages = List.empty();
+		int first = dependencyOffsets[lockedPackage.id()];
+		int last = dependencyOffsets[lockedPackage.id() + 1] - 1;
+
+		for (int index = last; index >= first; index--) {
+			packages = packages.prepend(get(dependencies[index]));
+		}
+
+		return packages;
+	}
+}
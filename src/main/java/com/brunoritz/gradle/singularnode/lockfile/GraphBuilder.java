@@ -0,0 +1,188 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import java.util.Arrays;
+
+/**
+ * Collects the packages and dependencies found by a lockfile parser and compacts them into a {@link DependencyGraph}.
+ * <p>
+ * Lockfiles refer to packages by keys, such as the {@code node_modules} path of NPM or the requested ranges of Yarn.
+ * Each package may be reachable by several keys. As dependencies may refer to packages appearing later in the
+ * lockfile, they are recorded by key and only resolved once the whole lockfile has been read.
+ */
+final class GraphBuilder
+{
+	private static final int NONE = SymbolTable.ABSENT;
+
+	private final SymbolTable symbols;
+	private final IntList names = new IntList();
+	private final IntList versions = new IntList();
+	private final IntList resolutions = new IntList();
+	private final IntList integrities = new IntList();
+	private final IntList dependents = new IntList();
+	private final IntList dependencyKeys = new IntList();
+	private int[] packagesByKey = new int[1024];
+
+	GraphBuilder(SymbolTable symbols)
+	{
+		this.symbols = symbols;
+
+		Arrays.fill(packagesByKey, NONE);
+	}
+
+	SymbolTable symbols()
+	{
+		return symbols;
+	}
+
+	/**
+	 * Adds a package without any fields but its name.
+	 *
+	 * @param nameSymbol
+	 * 	The interned name of the package
+	 *
+	 * @return The number of the package
+	 */
+	int addPackage(int nameSymbol)
+	{
+		names.add(nameSymbol);
+		versions.add(NONE);
+		resolutions.add(NONE);
+		integrities.add(NONE);
+
+		return names.size() - 1;
+	}
+
+	void setName(int id, int symbol)
+	{
+		names.set(id, symbol);
+	}
+
+	void setVersion(int id, int symbol)
+	{
+		versions.set(id, symbol);
+	}
+
+	void setResolved(int id, int symbol)
+	{
+		resolutions.set(id, symbol);
+	}
+
+	void setIntegrity(int id, int symbol)
+	{
+		integrities.set(id, symbol);
+	}
+
+	/**
+	 * Makes a package reachable by a key. A key already assigned to another package is reassigned.
+	 *
+	 * @param keySymbol
+	 * 	The interned key
+	 * @param id
+	 * 	The number of the package
+	 */
+	void addKey(int keySymbol, int id)
+	{
+		if (keySymbol >= packagesByKey.length) {
+			int previousLength = packagesByKey.length;
+
+			packagesByKey = Arrays.copyOf(packagesByKey, Math.max(keySymbol + 1, previousLength * 2));
+			Arrays.fill(packagesByKey, previousLength, packagesByKey.length, NONE);
+		}
+
+		packagesByKey[keySymbol] = id;
+	}
+
+	/**
+	 * Returns the package reachable by a key.
+	 *
+	 * @param keySymbol
+	 * 	The interned key, or {@link SymbolTable#ABSENT}
+	 *
+	 * @return The number of the package or {@link SymbolTable#ABSENT}
+	 */
+	int packageOf(int keySymbol)
+	{
+		return ((keySymbol >= 0) && (keySymbol < packagesByKey.length)) ? packagesByKey[keySymbol] : NONE;
+	}
+
+	/**
+	 * Records a dependency on the package reachable by a key. The key is resolved when building the graph, dependencies
+	 * on keys not assigned to any package by then are dropped.
+	 *
+	 * @param id
+	 * 	The number of the dependent package
+	 * @param keySymbol
+	 * 	The interned key of the dependency
+	 */
+	void addDependency(int id, int keySymbol)
+	{
+		dependents.add(id);
+		dependencyKeys.add(keySymbol);
+	}
+
+	/**
+	 * Records a dependency on a package whose number is already known.
+	 *
+	 * @param id
+	 * 	The number of the dependent package
+	 * @param dependencyId
+	 * 	The number of the dependency
+	 */
+	void addResolvedDependency(int id, int dependencyId)
+	{
+		dependents.add(id);
+		dependencyKeys.add(-(dependencyId + 2));
+	}
+
+	DependencyGraph build()
+	{
+		int size = names.size();
+		int[] targets = new int[dependents.size()];
+		int[] offsets = new int[size + 1];
+
+		for (int index = 0; index < dependents.size(); index++) {
+			int key = dependencyKeys.get(index);
+
+			targets[index] = (key < NONE) ? -(key + 2) : packageOf(key);
+
+			if (targets[index] != NONE) {
+				offsets[dependents.get(index) + 1]++;
+			}
+		}
+
+		for (int id = 0; id < size; id++) {
+			offsets[id + 1] += offsets[id];
+		}
+
+		int[] dependencies = new int[offsets[size]];
+		int[] fillLevels = Arrays.copyOf(offsets, size);
+
+		for (int index = 0; index < dependents.size(); index++) {
+			if (targets[index] != NONE) {
+				dependencies[fillLevels[dependents.get(index)]++] = targets[index];
+			}
+		}
+
+		return new DependencyGraph(
+			strings(names, size),
+			strings(versions, size),
+			strings(resolutions, size),
+			strings(integrities, size),
+			offsets,
+			dependencies
+		);
+	}
+
+	private String[] strings(IntList symbolList, int size)
+	{
+		String[] strings = new String[size];
+
+		for (int id = 0; id < size; id++) {
+			int symbol = symbolList.get(id);
+
+			strings[id] = (symbol == NONE) ? null : symbols.get(symbol);
+		}
+
+		return strings;
+	}
+}
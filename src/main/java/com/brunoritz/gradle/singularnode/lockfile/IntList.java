@@ -0,0 +1,36 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive integers, avoiding the boxing of a {@code List<Integer>}.
+ */
+final class IntList
+{
+	private int[] values = new int[64];
+	private int size;
+
+	void add(int value)
+	{
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+
+		values[size++] = value;
+	}
+
+	void set(int index, int value)
+	{
+		values[index] = value;
+	}
+
+	int get(int index)
+	{
+		return values[index];
+	}
+
+	int size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,374 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A pull parser for JSON documents, reading one token at a time without building a document tree. Strings and other
+ * scalars are interned into a {@link SymbolTable} straight from the read buffer, so repeated values do not cause any
+ * allocation. Values of no interest can be skipped without interning them at all.
+ * <p>
+ * The parser is lenient in that it treats commas and colons as whitespace. It relies on well-formed input to tell
+ * object keys from values, which holds for lockfiles written by package managers.
+ */
+final class JsonReader
+{
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_DEPTH = 32;
+
+	private final Reader source;
+	private final SymbolTable symbols;
+	private char[] buffer;
+	private int limit;
+	private int position;
+	private boolean exhausted;
+	private char[] scratch;
+	private boolean[] objects;
+	private boolean[] expectingName;
+	private int depth;
+	private int symbol;
+
+	JsonReader(Reader source, SymbolTable symbols)
+	{
+		this.source = source;
+		this.symbols = symbols;
+		this.buffer = new char[INITIAL_BUFFER_SIZE];
+		this.scratch = new char[256];
+		this.objects = new boolean[INITIAL_DEPTH];
+		this.expectingName = new boolean[INITIAL_DEPTH];
+	}
+
+	/**
+	 * Reads the next token. The text of names and scalar values is interned and available via {@link #symbol()}.
+	 *
+	 * @return The next token, {@link Token#END} at the end of the document
+	 *
+	 * @throws IOException
+	 * 	If the input cannot be read or is not well-formed
+	 */
+	Token next()
+		throws IOException
+	{
+		return next(true);
+	}
+
+	/**
+	 * Returns the interned text of the last name or scalar value read.
+	 */
+	int symbol()
+	{
+		return symbol;
+	}
+
+	/**
+	 * Skips the next value, including all nested values of an object or array, without interning any text.
+	 *
+	 * @throws IOException
+	 * 	If the input cannot be read or is not well-formed
+	 */
+	void skipValue()
+		throws IOException
+	{
+		int nesting = 0;
+
+		do {
+			Token token = next(false);
+
+			if ((token == Token.BEGIN_OBJECT) || (token == Token.BEGIN_ARRAY)) {
+				nesting++;
+			} else if ((token == Token.END_OBJECT) || (token == Token.END_ARRAY)) {
+				nesting--;
+			} else if (token == Token.END) {
+				throw new IOException("Unexpected end of JSON document");
+			}
+		} while (nesting > 0);
+	}
+
+	private Token next(boolean intern)
+		throws IOException
+	{
+		int character = skipWhitespace();
+
+		switch (character) {
+			case -1:
+				return Token.END;
+			case '{':
+				push(true);
+
+				return Token.BEGIN_OBJECT;
+			case '[':
+				push(false);
+
+				return Token.BEGIN_ARRAY;
+			case '}':
+				pop();
+
+				return Token.END_OBJECT;
+			case ']':
+				pop();
+
+				return Token.END_ARRAY;
+			case '"':
+				return stringToken(intern);
+			default:
+				position--;
+				symbol = readScalar(intern);
+				valueCompleted();
+
+				return Token.SCALAR;
+		}
+	}
+
+	private Token stringToken(boolean intern)
+		throws IOException
+	{
+		boolean isName = (depth > 0) && objects[depth - 1] && expectingName[depth - 1];
+
+		symbol = readString(intern);
+
+		if (isName) {
+			expectingName[depth - 1] = false;
+
+			return Token.NAME;
+		}
+
+		valueCompleted();
+
+		return Token.STRING;
+	}
+
+	private void push(boolean object)
+	{
+		if (depth == objects.length) {
+			objects = Arrays.copyOf(objects, depth * 2);
+			expectingName = Arrays.copyOf(expectingName, depth * 2);
+		}
+
+		objects[depth] = object;
+		expectingName[depth] = object;
+		depth++;
+	}
+
+	private void pop()
+		throws IOException
+	{
+		if (depth == 0) {
+			throw new IOException("Unbalanced brackets in JSON document");
+		}
+
+		depth--;
+		valueCompleted();
+	}
+
+	private void valueCompleted()
+	{
+		if ((depth > 0) && objects[depth - 1]) {
+			expectingName[depth - 1] = true;
+		}
+	}
+
+	private int skipWhitespace()
+		throws IOException
+	{
+		while (true) {
+			if ((position == limit) && !fill(position)) {
+				return -1;
+			}
+
+			char character = buffer[position++];
+
+			if ((character != ' ') && (character != '\n') && (character != '\r') && (character != '\t')
+				&& (character != ',') && (character != ':')) {
+				return character;
+			}
+		}
+	}
+
+	/*
+	 * Strings without escape sequences are interned straight from the buffer. Escaped strings are decoded into the
+	 * scratch buffer first.
+	 */
+	private int readString(boolean intern)
+		throws IOException
+	{
+		int start = position;
+
+		while (true) {
+			if (position == limit) {
+				boolean filled = fill(start);
+
+				start = 0;
+
+				if (!filled) {
+					throw new IOException("Unterminated string in JSON document");
+				}
+			}
+
+			char character = buffer[position];
+
+			if (character == '"') {
+				position++;
+
+				return intern ? symbols.intern(buffer, start, position - 1) : SymbolTable.ABSENT;
+			} else if (character == '\\') {
+				return readEscapedString(start, intern);
+			}
+
+			position++;
+		}
+	}
+
+	private int readEscapedString(int start, boolean intern)
+		throws IOException
+	{
+		int length = 0;
+
+		for (int index = start; index < position; index++) {
+			length = append(length, buffer[index]);
+		}
+
+		while (true) {
+			int character = read();
+
+			if (character == '"') {
+				return intern ? symbols.intern(scratch, 0, length) : SymbolTable.ABSENT;
+			} else if (character == '\\') {
+				length = append(length, unescape());
+			} else if (character < 0) {
+				throw new IOException("Unterminated string in JSON document");
+			} else {
+				length = append(length, (char) character);
+			}
+		}
+	}
+
+	private char unescape()
+		throws IOException
+	{
+		int character = read();
+
+		return switch (character) {
+			case 'b' -> '\b';
+			case 'f' -> '\f';
+			case 'n' -> '\n';
+			case 'r' -> '\r';
+			case 't' -> '\t';
+			case 'u' -> (char) ((hexDigit() << 12) | (hexDigit() << 8) | (hexDigit() << 4) | hexDigit());
+			case -1 -> throw new IOException("Unterminated string in JSON document");
+			default -> (char) character;
+		};
+	}
+
+	private int hexDigit()
+		throws IOException
+	{
+		int digit = Character.digit(read(), 16);
+
+		if (digit < 0) {
+			throw new IOException("Invalid unicode escape in JSON document");
+		}
+
+		return digit;
+	}
+
+	private int readScalar(boolean intern)
+		throws IOException
+	{
+		int start = position;
+
+		while (true) {
+			if (position == limit) {
+				boolean filled = fill(start);
+
+				start = 0;
+
+				if (!filled) {
+					break;
+				}
+			}
+
+			char character = buffer[position];
+
+			if ((character == ',') || (character == '}') || (character == ']') || (character == ':')
+				|| Character.isWhitespace(character)) {
+				break;
+			}
+
+			position++;
+		}
+
+		if (start == position) {
+			throw new IOException("Unexpected character in JSON document");
+		}
+
+		return intern ? symbols.intern(buffer, start, position) : SymbolTable.ABSENT;
+	}
+
+	private int read()
+		throws IOException
+	{
+		if ((position == limit) && !fill(position)) {
+			return -1;
+		}
+
+		return buffer[position++];
+	}
+
+	private int append(int length, char character)
+	{
+		if (length == scratch.length) {
+			scratch = Arrays.copyOf(scratch, length * 2);
+		}
+
+		scratch[length] = character;
+
+		return length + 1;
+	}
+
+	/*
+	 * Moves the characters from keepFrom onwards to the start of the buffer and appends more input. Returns false if
+	 * the input is exhausted. The characters are moved in any case.
+	 */
+	private boolean fill(int keepFrom)
+		throws IOException
+	{
+		int kept = limit - keepFrom;
+
+		if (kept == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		} else {
+			System.arraycopy(buffer, keepFrom, buffer, 0, kept);
+		}
+
+		position -= keepFrom;
+		limit = kept;
+
+		int count = exhausted ? -1 : source.read(buffer, limit, buffer.length - limit);
+
+		if (count < 0) {
+			exhausted = true;
+
+			return false;
+		}
+
+		limit += count;
+
+		return true;
+	}
+
+	/**
+	 * The tokens of a JSON document. Commas and colons are not reported.
+	 */
+	enum Token
+	{
+		BEGIN_OBJECT,
+		END_OBJECT,
+		BEGIN_ARRAY,
+		END_ARRAY,
+		NAME,
+		STRING,
+		SCALAR,
+		END
+	}
+}
@@ -0,0 +1,337 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads a text file line by line without allocating a string per line. The current line is exposed as a range of the
+ * internal buffer, which is only valid until the next line is read.
+ * <p>
+ * The line-oriented lockfile formats, which are the one of Yarn 1 and the YAML subsets written by later Yarn versions
+ * and PNPM, are made of {@code key value} lines whose nesting is expressed by their indentation. The reader therefore
+ * also splits each line into its key and value, removing any quotes.
+ */
+final class LineReader
+{
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	private final Reader source;
+	private char[] buffer;
+	private int limit;
+	private int position;
+	private boolean exhausted;
+	private int lineNumber;
+	private int lineStart;
+	private int lineEnd;
+	private int keyStart;
+	private int keyEnd;
+	private int valueStart;
+	private int valueEnd;
+
+	LineReader(Reader source)
+	{
+		this.source = source;
+		this.buffer = new char[INITIAL_BUFFER_SIZE];
+	}
+
+	/**
+	 * Advances to the next line.
+	 *
+	 * @return {@code false} if the end of the input has been reached
+	 *
+	 * @throws IOException
+	 * 	If the input cannot be read
+	 */
+	boolean next()
+		throws IOException
+	{
+		int newline = indexOfNewline(position);
+
+		while ((newline < 0) && !exhausted) {
+			fill();
+			newline = indexOfNewline(position);
+		}
+
+		if ((newline < 0) && (position == limit)) {
+			return false;
+		}
+
+		lineStart = position;
+		lineEnd = (newline < 0) ? limit : newline;
+		position = (newline < 0) ? limit : (newline + 1);
+		lineNumber++;
+
+		if ((lineEnd > lineStart) && (buffer[lineEnd - 1] == '\r')) {
+			lineEnd--;
+		}
+
+		return true;
+	}
+
+	char[] chars()
+	{
+		return buffer;
+	}
+
+	int start()
+	{
+		return lineStart;
+	}
+
+	int end()
+	{
+		return lineEnd;
+	}
+
+	int lineNumber()
+	{
+		return lineNumber;
+	}
+
+	/**
+	 * Returns the number of leading spaces of the current line.
+	 */
+	int indentation()
+	{
+		int index = lineStart;
+
+		while ((index < lineEnd) && (buffer[index] == ' ')) {
+			index++;
+		}
+
+		return index - lineStart;
+	}
+
+	/**
+	 * Tells whether the current line holds no content, being either blank or a comment.
+	 */
+	boolean isBlank()
+	{
+		int index = lineStart + indentation();
+
+		return (index == lineEnd) || (buffer[index] == '#');
+	}
+
+	/**
+	 * Tells whether the current line, ignoring its indentation, starts with the given text.
+	 */
+	boolean startsWith(String prefix)
+	{
+		return regionMatches(lineStart + indentation(), prefix);
+	}
+
+	/**
+	 * Splits the current line into key and value. Keys and values may be enclosed in single or double quotes. An
+	 * unquoted key ends at the first separator, which for a colon must be followed by a space or end the line, as
+	 * unquoted YAML keys may contain colons.
+	 *
+	 * @param separator
+	 * 	The character separating key and value, {@code :} for YAML and a space for Yarn 1 lockfiles
+	 */
+	void split(char separator)
+	{
+		int index = lineStart + indentation();
+
+		if ((index < lineEnd) && isQuote(buffer[index])) {
+			keyStart = index + 1;
+			keyEnd = indexOf(buffer[index], keyStart, lineEnd);
+			index = Math.min(keyEnd + 1, lineEnd);
+		} else {
+			keyStart = index;
+
+			while ((index < lineEnd) && !isSeparator(index, separator)) {
+				index++;
+			}
+
+			keyEnd = index;
+		}
+
+		if ((index < lineEnd) && (buffer[index] == separator)) {
+			index++;
+		}
+
+		while ((index < lineEnd) && (buffer[index] == ' ')) {
+			index++;
+		}
+
+		valueStart = index;
+		valueEnd = lineEnd;
+
+		while ((valueEnd > valueStart) && (buffer[valueEnd - 1] == ' ')) {
+			valueEnd--;
+		}
+
+		unquoteValue();
+	}
+
+	/**
+	 * Narrows the value of the current line, which must be a YAML flow mapping such as
+	 * {@code {integrity: sha512-..., tarball: https://...}}, to the value of one of its entries.
+	 *
+	 * @param field
+	 * 	The key of the entry
+	 *
+	 * @return {@code false} if the mapping does not contain the entry, in which case the value is left unchanged
+	 */
+	boolean selectFlowEntry(String field)
+	{
+		if ((valueStart == valueEnd) || (buffer[valueStart] != '{')) {
+			return false;
+		}
+
+		int index = valueStart + 1;
+
+		while (index < valueEnd) {
+			while ((index < valueEnd) && ((buffer[index] == ' ') || (buffer[index] == ','))) {
+				index++;
+			}
+
+			int entryEnd = index;
+
+			while ((entryEnd < valueEnd) && (buffer[entryEnd] != ',') && (buffer[entryEnd] != '}')) {
+				entryEnd++;
+			}
+
+			if (regionMatches(index, field) && ((index + field.length()) < entryEnd)
+				&& (buffer[index + field.length()] == ':')) {
+				valueStart = index + field.length() + 1;
+				valueEnd = entryEnd;
+
+				while ((valueStart < valueEnd) && (buffer[valueStart] == ' ')) {
+					valueStart++;
+				}
+
+				while ((valueEnd > valueStart) && (buffer[valueEnd - 1] == ' ')) {
+					valueEnd--;
+				}
+
+				unquoteValue();
+
+				return true;
+			}
+
+			index = entryEnd + 1;
+		}
+
+		return false;
+	}
+
+	int keyStart()
+	{
+		return keyStart;
+	}
+
+	int keyEnd()
+	{
+		return keyEnd;
+	}
+
+	int valueStart()
+	{
+		return valueStart;
+	}
+
+	int valueEnd()
+	{
+		return valueEnd;
+	}
+
+	boolean hasValue()
+	{
+		return valueEnd > valueStart;
+	}
+
+	/**
+	 * Tells whether the key of the current line equals the given text.
+	 */
+	boolean keyEquals(String key)
+	{
+		return ((keyEnd - keyStart) == key.length()) && regionMatches(keyStart, key);
+	}
+
+	private void unquoteValue()
+	{
+		boolean quoted = ((valueEnd - valueStart) >= 2) && isQuote(buffer[valueStart]);
+
+		if (quoted && (buffer[valueEnd - 1] == buffer[valueStart])) {
+			valueStart++;
+			valueEnd--;
+		}
+	}
+
+	private boolean regionMatches(int start, String text)
+	{
+		if ((start + text.length()) > lineEnd) {
+			return false;
+		}
+
+		for (int index = 0; index < text.length(); index++) {
+			if (buffer[start + index] != text.charAt(index)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean isSeparator(int index, char separator)
+	{
+		return (buffer[index] == separator)
+			&& ((separator != ':') || ((index + 1) == lineEnd) || (buffer[index + 1] == ' '));
+	}
+
+	private int indexOf(char character, int from, int to)
+	{
+		for (int index = from; index < to; index++) {
+			if (buffer[index] == character) {
+				return index;
+			}
+		}
+
+		return to;
+	}
+
+	private static boolean isQuote(char character)
+	{
+		return (character == '"') || (character == '\'');
+	}
+
+	private int indexOfNewline(int from)
+	{
+		for (int index = from; index < limit; index++) {
+			if (buffer[index] == '\n') {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Moves the unread part of the buffer to its start and appends more input. The buffer only grows if a single line
+	 * does not fit.
+	 */
+	private void fill()
+		throws IOException
+	{
+		int remaining = limit - position;
+
+		if (remaining == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		} else {
+			System.arraycopy(buffer, position, buffer, 0, remaining);
+		}
+
+		limit = remaining;
+		position = 0;
+
+		int count = source.read(buffer, limit, buffer.length - limit);
+
+		if (count < 0) {
+			exhausted = true;
+		} else {
+			limit += count;
+		}
+	}
+}
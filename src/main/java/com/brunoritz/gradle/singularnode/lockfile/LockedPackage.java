@@ -0,0 +1,29 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import io.vavr.control.Option;
+
+/**
+ * A package locked by a lockfile.
+ *
+ * @param id
+ * 	The number of the package within its {@link DependencyGraph}
+ * @param name
+ * 	The name of the package
+ * @param version
+ * 	The locked version, if recorded. Linked workspace members usually have none.
+ * @param resolved
+ * 	Where the package was resolved from, if recorded. For NPM and Yarn 1, this is the location of the tarball,
+ * 	for later Yarn versions the resolution descriptor, such as {@code colors@npm:1.4.0}. PNPM only records the
+ * 	location of tarballs not obtained from the registry.
+ * @param integrity
+ * 	The Subresource Integrity string of the tarball, if recorded. Yarn 2 and later record checksums of their own
+ * 	cache format instead, hence packages locked by them have none.
+ */
+public record LockedPackage(
+	int id,
+	String name,
+	Option<String> version,
+	Option<String> resolved,
+	Option<String> integrity)
+{
+}
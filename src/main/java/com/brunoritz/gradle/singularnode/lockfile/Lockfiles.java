@@ -0,0 +1,102 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Reads the lockfiles of NPM, Yarn and PNPM into a {@link DependencyGraph}.
+ * <p>
+ * Lockfiles of large monorepos easily reach tens of megabytes. Rather than building a document tree, the parsers
+ * stream the lockfile through a fixed-size buffer and only keep the fields needed for the graph. Strings are interned
+ * as they are read, so each package name and version is only allocated once.
+ */
+public final class Lockfiles
+{
+	private Lockfiles()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Reads a lockfile, telling its format by its name.
+	 *
+	 * @param lockFile
+	 * 	A {@code package-lock.json}, {@code npm-shrinkwrap.json}, {@code yarn.lock} or {@code pnpm-lock.yaml} file
+	 *
+	 * @return The locked packages and their dependencies
+	 *
+	 * @throws IOException
+	 * 	If the lockfile cannot be read or is malformed
+	 * @throws IllegalArgumentException
+	 * 	If the file is not a lockfile of a supported package manager
+	 */
+	public static DependencyGraph read(File lockFile)
+		throws IOException
+	{
+		try (Reader reader = new InputStreamReader(Files.newInputStream(lockFile.toPath()), StandardCharsets.UTF_8)) {
+			return switch (lockFile.getName()) {
+				case "package-lock.json", "npm-shrinkwrap.json" -> npm(reader);
+				case "yarn.lock" -> yarn(reader);
+				case "pnpm-lock.yaml" -> pnpm(reader);
+				default -> throw new IllegalArgumentException("Not a supported lockfile: " + lockFile);
+			};
+		} catch (IOException e) {
+			throw new IOException("Failed to read lockfile " + lockFile, e);
+		}
+	}
+
+	/**
+	 * Reads a {@code package-lock.json} or {@code npm-shrinkwrap.json} file of any lockfile version.
+	 *
+	 * @param source
+	 * 	The content of the lockfile
+	 *
+	 * @return The locked packages and their dependencies
+	 *
+	 * @throws IOException
+	 * 	If the lockfile cannot be read or is malformed
+	 */
+	public static DependencyGraph npm(Reader source)
+		throws IOException
+	{
+		return NpmLockfileParser.parse(source, new SymbolTable());
+	}
+
+	/**
+	 * Reads a {@code yarn.lock} file of Yarn 1 or any later version.
+	 *
+	 * @param source
+	 * 	The content of the lockfile
+	 *
+	 * @return The locked packages and their dependencies
+	 *
+	 * @throws IOException
+	 * 	If the lockfile cannot be read
+	 */
+	public static DependencyGraph yarn(Reader source)
+		throws IOException
+	{
+		return YarnLockfileParser.parse(source, new SymbolTable());
+	}
+
+	/**
+	 * Reads a {@code pnpm-lock.yaml} file of lockfile version 5, 6 or 9.
+	 *
+	 * @param source
+	 * 	The content of the lockfile
+	 *
+	 * @return The locked packages and their dependencies
+	 *
+	 * @throws IOException
+	 * 	If the lockfile cannot be read
+	 */
+	public static DependencyGraph pnpm(Reader source)
+		throws IOException
+	{
+		return PnpmLockfileParser.parse(source, new SymbolTable());
+	}
+}
@@ -0,0 +1,294 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Parses {@code package-lock.json} and {@code npm-shrinkwrap.json} files.
+ * <p>
+ * Lockfiles of version 2 and 3 list every package in the {@code packages} section, keyed by its path within the
+ * {@code node_modules} tree, such as {@code node_modules/a/node_modules/b}. Lockfiles of version 1 nest the packages
+ * in the {@code dependencies} section instead, from which the same paths are derived. Both sections are present in
+ * version 2, in which case the {@code packages} section is used.
+ * <p>
+ * A dependency is resolved the way NodeJS resolves modules: starting at the {@code node_modules} directory of the
+ * dependent package, going up the tree until a package of the requested name is found.
+ */
+final class NpmLockfileParser
+{
+	private static final String NODE_MODULES = "node_modules/";
+	private static final String NESTED_NODE_MODULES = "/node_modules/";
+
+	private final JsonReader json;
+	private final SymbolTable symbols;
+	private final GraphBuilder graph;
+	private final IntList paths = new IntList();
+	private final IntList dependents = new IntList();
+	private final IntList dependencyNames = new IntList();
+	private final int packagesField;
+	private final int dependenciesField;
+	private final int optionalDependenciesField;
+	private final int devDependenciesField;
+	private final int peerDependenciesField;
+	private final int requiresField;
+	private final int nameField;
+	private final int versionField;
+	private final int resolvedField;
+	private final int integrityField;
+	private final int linkField;
+	private final int trueValue;
+	private char[] candidate = new char[256];
+
+	private NpmLockfileParser(Reader source, SymbolTable symbols)
+	{
+		this.json = new JsonReader(source, symbols);
+		this.symbols = symbols;
+		this.graph = new GraphBuilder(symbols);
+		this.packagesField = symbols.intern("packages");
+		this.dependenciesField = symbols.intern("dependencies");
+		this.optionalDependenciesField = symbols.intern("optionalDependencies");
+		this.devDependenciesField = symbols.intern("devDependencies");
+		this.peerDependenciesField = symbols.intern("peerDependencies");
+		this.requiresField = symbols.intern("requires");
+		this.nameField = symbols.intern("name");
+		this.versionField = symbols.intern("version");
+		this.resolvedField = symbols.intern("resolved");
+		this.integrityField = symbols.intern("integrity");
+		this.linkField = symbols.intern("link");
+		this.trueValue = symbols.intern("true");
+	}
+
+	static DependencyGraph parse(Reader source, SymbolTable symbols)
+		throws IOException
+	{
+		return new NpmLockfileParser(source, symbols).parse();
+	}
+
+	private DependencyGraph parse()
+		throws IOException
+	{
+		boolean packagesRead = false;
+
+		expect(JsonReader.Token.BEGIN_OBJECT);
+
+		while (json.next() == JsonReader.Token.NAME) {
+			int field = json.symbol();
+
+			if (field == packagesField) {
+				readPackages();
+				packagesRead = true;
+			} else if ((field == dependenciesField) && !packagesRead) {
+				readLegacyDependencies("");
+			} else {
+				json.skipValue();
+			}
+		}
+
+		resolveDependencies();
+
+		return graph.build();
+	}
+
+	private void readPackages()
+		throws IOException
+	{
+		expect(JsonReader.Token.BEGIN_OBJECT);
+
+		while (json.next() == JsonReader.Token.NAME) {
+			readPackage(json.symbol());
+		}
+	}
+
+	private void readPackage(int pathSymbol)
+		throws IOException
+	{
+		int id = addPackage(pathSymbol);
+		boolean link = false;
+		int resolved = SymbolTable.ABSENT;
+		boolean named = false;
+
+		expect(JsonReader.Token.BEGIN_OBJECT);
+
+		while (json.next() == JsonReader.Token.NAME) {
+			int field = json.symbol();
+
+			if (field == nameField) {
+				graph.setName(id, readValue());
+				named = true;
+			} else if (field == versionField) {
+				graph.setVersion(id, readValue());
+			} else if (field == resolvedField) {
+				resolved = readValue();
+				graph.setResolved(id, resolved);
+			} else if (field == integrityField) {
+				graph.setIntegrity(id, readValue());
+			} else if (field == linkField) {
+				link = readValue() == trueValue;
+			} else if ((field == dependenciesField) || (field == optionalDependenciesField)
+				|| (field == devDependenciesField) || (field == peerDependenciesField)) {
+				readDependencyNames(id);
+			} else {
+				json.skipValue();
+			}
+		}
+
+		if (!named) {
+			graph.setName(id, nameOfPath(pathSymbol));
+		}
+
+		/*
+		 * Links point to the workspace member they resolve to, which is listed by its path relative to the root.
+		 */
+		if (link && (resolved != SymbolTable.ABSENT)) {
+			graph.addDependency(id, resolved);
+		}
+	}
+
+	private void readLegacyDependencies(String parentPath)
+		throws IOException
+	{
+		expect(JsonReader.Token.BEGIN_OBJECT);
+
+		while (json.next() == JsonReader.Token.NAME) {
+			int nameSymbol = json.symbol();
+			String path = parentPath + NODE_MODULES + symbols.get(nameSymbol);
+			int id = addPackage(symbols.intern(path));
+
+			graph.setName(id, nameSymbol);
+			expect(JsonReader.Token.BEGIN_OBJECT);
+
+			while (json.next() == JsonReader.Token.NAME) {
+				int field = json.symbol();
+
+				if (field == versionField) {
+					graph.setVersion(id, readValue());
+				} else if (field == resolvedField) {
+					graph.setResolved(id, readValue());
+				} else if (field == integrityField) {
+					graph.setIntegrity(id, readValue());
+				} else if (field == requiresField) {
+					readDependencyNames(id);
+				} else if (field == dependenciesField) {
+					readLegacyDependencies(path + "/");
+				} else {
+					json.skipValue();
+				}
+			}
+		}
+	}
+
+	private int addPackage(int pathSymbol)
+	{
+		int id = graph.addPackage(SymbolTable.ABSENT);
+
+		graph.addKey(pathSymbol, id);
+		paths.add(pathSymbol);
+
+		return id;
+	}
+
+	/*
+	 * Only the names of dependencies are needed to resolve them, hence their ranges are skipped.
+	 */
+	private void readDependencyNames(int id)
+		throws IOException
+	{
+		expect(JsonReader.Token.BEGIN_OBJECT);
+
+		while (json.next() == JsonReader.Token.NAME) {
+			dependents.add(id);
+			dependencyNames.add(json.symbol());
+			json.skipValue();
+		}
+	}
+
+	private int readValue()
+		throws IOException
+	{
+		JsonReader.Token token = json.next();
+
+		if ((token != JsonReader.Token.STRING) && (token != JsonReader.Token.SCALAR)) {
+			throw new IOException("Expected a string or scalar in package-lock.json, but got " + token);
+		}
+
+		return json.symbol();
+	}
+
+	private void expect(JsonReader.Token expected)
+		throws IOException
+	{
+		JsonReader.Token token = json.next();
+
+		if (token != expected) {
+			throw new IOException(String.format("Expected %s in package-lock.json, but got %s", expected, token));
+		}
+	}
+
+	private int nameOfPath(int pathSymbol)
+	{
+		String path = symbols.get(pathSymbol);
+		int nameStart = path.lastIndexOf(NODE_MODULES);
+
+		return (nameStart < 0)
+			? pathSymbol
+			: symbols.intern(path, nameStart + NODE_MODULES.length(), path.length());
+	}
+
+	private void resolveDependencies()
+	{
+		for (int index = 0; index < dependents.size(); index++) {
+			int id = dependents.get(index);
+			int dependency = resolve(symbols.get(paths.get(id)), symbols.get(dependencyNames.get(index)));
+
+			if ((dependency != SymbolTable.ABSENT) && (dependency != id)) {
+				graph.addResolvedDependency(id, dependency);
+			}
+		}
+	}
+
+	/*
+	 * Tries <path>/node_modules/<name> for the path of the dependent package and each of its parents, up to the
+	 * node_modules directory of the root project. The candidate paths are assembled in a reusable buffer and looked up
+	 * without interning them.
+	 */
+	private int resolve(String path, String name)
+	{
+		int baseEnd = path.length();
+
+		while (true) {
+			int length = 0;
+
+			if (baseEnd > 0) {
+				length = append(length, path, baseEnd);
+				length = append(length, "/", 1);
+			}
+
+			length = append(length, NODE_MODULES, NODE_MODULES.length());
+			length = append(length, name, name.length());
+
+			int dependency = graph.packageOf(symbols.lookup(candidate, 0, length));
+
+			if ((dependency != SymbolTable.ABSENT) || (baseEnd == 0)) {
+				return dependency;
+			}
+
+			int parentEnd = path.lastIndexOf(NESTED_NODE_MODULES, baseEnd - 1);
+
+			baseEnd = Math.max(parentEnd, 0);
+		}
+	}
+
+	private int append(int length, String text, int end)
+	{
+		int newLength = length + end;
+
+		if (newLength > candidate.length) {
+			candidate = Arrays.copyOf(candidate, Math.max(newLength, candidate.length * 2));
+		}
+
+		text.getChars(0, end, candidate, length);
+
+		return newLength;
+	}
+}
@@ -0,0 +1,289 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Parses {@code pnpm-lock.yaml} files of lockfile version 5, 6 and 9.
+ * <p>
+ * The {@code packages} section lists each package under a key naming it and its version, which depending on the
+ * lockfile version looks like {@code /lodash/4.17.21}, {@code /lodash@4.17.21} or {@code lodash@4.17.21}. Packages
+ * with peer dependencies are listed once per combination of peers, with a suffix such as {@code _react@18.2.0} or
+ * {@code (react@18.2.0)}. All keys are reduced to the {@code name@version} form, so each package version is only part
+ * of the graph once, with the dependencies of all its peer combinations.
+ * <p>
+ * Since version 9, the dependencies are listed in the separate {@code snapshots} section. The importers, which are the
+ * projects of the workspace, are not part of the graph.
+ */
+final class PnpmLockfileParser
+{
+	private static final int NONE = SymbolTable.ABSENT;
+	private static final int PACKAGE_INDENTATION = 2;
+	private static final int FIELD_INDENTATION = 4;
+	private static final int ENTRY_INDENTATION = 6;
+	private static final String LINK_PROTOCOL = "link:";
+
+	private final LineReader lines;
+	private final SymbolTable symbols;
+	private final GraphBuilder graph;
+	private char[] key = new char[256];
+	private int majorVersion = 9;
+	private boolean inPackages;
+	private int current = NONE;
+	private boolean inResolution;
+	private boolean inDependencies;
+
+	private PnpmLockfileParser(Reader source, SymbolTable symbols)
+	{
+		this.lines = new LineReader(source);
+		this.symbols = symbols;
+		this.graph = new GraphBuilder(symbols);
+	}
+
+	static DependencyGraph parse(Reader source, SymbolTable symbols)
+		throws IOException
+	{
+		return new PnpmLockfileParser(source, symbols).parse();
+	}
+
+	private DependencyGraph parse()
+		throws IOException
+	{
+		while (lines.next()) {
+			if (!lines.isBlank()) {
+				readLine();
+			}
+		}
+
+		return graph.build();
+	}
+
+	private void readLine()
+	{
+		int indentation = lines.indentation();
+
+		lines.split(':');
+
+		if (indentation == 0) {
+			if (lines.keyEquals("lockfileVersion")) {
+				majorVersion = majorVersion();
+			}
+
+			inPackages = lines.keyEquals("packages") || lines.keyEquals("snapshots");
+			current = NONE;
+		} else if (!inPackages) {
+			return;
+		} else if (indentation == PACKAGE_INDENTATION) {
+			current = packageOf(canonicalKey(lines.chars(), lines.keyStart(), lines.keyEnd()));
+			inResolution = false;
+			inDependencies = false;
+		} else if (indentation == FIELD_INDENTATION) {
+			inResolution = lines.keyEquals("resolution") && !lines.hasValue();
+			inDependencies = lines.keyEquals("dependencies") || lines.keyEquals("optionalDependencies");
+
+			readField();
+		} else if (inResolution && (indentation == ENTRY_INDENTATION)) {
+			readResolution();
+		} else if (inDependencies && (indentation == ENTRY_INDENTATION)) {
+			int dependency = dependencyKey();
+
+			if (dependency != NONE) {
+				graph.addDependency(current, dependency);
+			}
+		}
+	}
+
+	private void readField()
+	{
+		if (!lines.hasValue()) {
+			return;
+		}
+
+		if (lines.keyEquals("name")) {
+			graph.setName(current, valueSymbol());
+		} else if (lines.keyEquals("version")) {
+			graph.setVersion(current, valueSymbol());
+		} else if (lines.keyEquals("resolution")) {
+			if (lines.selectFlowEntry("integrity")) {
+				graph.setIntegrity(current, valueSymbol());
+				lines.split(':');
+			}
+
+			if (lines.selectFlowEntry("tarball")) {
+				graph.setResolved(current, valueSymbol());
+			}
+		}
+	}
+
+	private void readResolution()
+	{
+		if (lines.keyEquals("integrity")) {
+			graph.setIntegrity(current, valueSymbol());
+		} else if (lines.keyEquals("tarball")) {
+			graph.setResolved(current, valueSymbol());
+		}
+	}
+
+	/*
+	 * Returns the package listed under a key, adding it if the key is seen for the first time. Packages listed with
+	 * several peer combinations, as well as the snapshots of version 9, map to the package seen first.
+	 */
+	private int packageOf(int keySymbol)
+	{
+		int id = graph.packageOf(keySymbol);
+
+		if (id == NONE) {
+			String canonical = symbols.get(keySymbol);
+			int separator = canonical.lastIndexOf('@');
+
+			if (separator > 0) {
+				id = graph.addPackage(symbols.intern(canonical, 0, separator));
+				graph.setVersion(id, symbols.intern(canonical, separator + 1, canonical.length()));
+			} else {
+				id = graph.addPackage(keySymbol);
+			}
+
+			graph.addKey(keySymbol, id);
+		}
+
+		return id;
+	}
+
+	/*
+	 * Dependencies are listed by name and version, possibly with a peer suffix. Aliased dependencies and dependencies
+	 * not resolved from the registry give the key of the package instead of the version, while workspace members are
+	 * linked and thus not part of the graph.
+	 */
+	private int dependencyKey()
+	{
+		char[] chars = lines.chars();
+		int valueStart = lines.valueStart();
+		int valueEnd = withoutPeers(chars, valueStart, lines.valueEnd());
+
+		if (startsWith(chars, valueStart, valueEnd, LINK_PROTOCOL)) {
+			return NONE;
+		}
+
+		if ((valueStart < valueEnd) && (chars[valueStart] == '/')) {
+			return canonicalKey(chars, valueStart, valueEnd);
+		}
+
+		if ((majorVersion >= 9) && (indexOf(chars, '@', valueStart + 1, valueEnd) >= 0)) {
+			return canonicalKey(chars, valueStart, valueEnd);
+		}
+
+		int nameLength = lines.keyEnd() - lines.keyStart();
+		int versionLength = valueEnd - valueStart;
+		int length = nameLength + 1 + versionLength;
+
+		ensureKeyCapacity(length);
+		System.arraycopy(chars, lines.keyStart(), key, 0, nameLength);
+		key[nameLength] = '@';
+		System.arraycopy(chars, valueStart, key, nameLength + 1, versionLength);
+
+		return symbols.intern(key, 0, length);
+	}
+
+	/*
+	 * Reduces a package key to name@version, dropping the leading slash and the peer suffix of older lockfile
+	 * versions. Version 5 separates name and version with a slash, which for scoped packages is the last one.
+	 */
+	private int canonicalKey(char[] chars, int start, int end)
+	{
+		int keyStart = ((start < end) && (chars[start] == '/')) ? (start + 1) : start;
+		int keyEnd = withoutPeers(chars, keyStart, end);
+
+		if (majorVersion >= 6) {
+			return symbols.intern(chars, keyStart, keyEnd);
+		}
+
+		int separator = lastIndexOf(chars, '/', keyStart, keyEnd);
+
+		if (separator <= keyStart) {
+			return symbols.intern(chars, keyStart, keyEnd);
+		}
+
+		int length = keyEnd - keyStart;
+
+		ensureKeyCapacity(length);
+		System.arraycopy(chars, keyStart, key, 0, length);
+		key[separator - keyStart] = '@';
+
+		return symbols.intern(key, 0, length);
+	}
+
+	private int withoutPeers(char[] chars, int start, int end)
+	{
+		if (majorVersion >= 6) {
+			int peers = indexOf(chars, '(', start, end);
+
+			return (peers < 0) ? end : peers;
+		}
+
+		int peers = indexOf(chars, '_', Math.max(lastIndexOf(chars, '/', start, end), start), end);
+
+		return (peers < 0) ? end : peers;
+	}
+
+	private int majorVersion()
+	{
+		char[] chars = lines.chars();
+		int version = 0;
+
+		for (int index = lines.valueStart(); (index < lines.valueEnd()) && Character.isDigit(chars[index]); index++) {
+			version = (version * 10) + (chars[index] - '0');
+		}
+
+		return version;
+	}
+
+	private int valueSymbol()
+	{
+		return symbols.intern(lines.chars(), lines.valueStart(), lines.valueEnd());
+	}
+
+	private void ensureKeyCapacity(int length)
+	{
+		if (key.length < length) {
+			key = Arrays.copyOf(key, Math.max(length, key.length * 2));
+		}
+	}
+
+	private static boolean startsWith(char[] chars, int start, int end, String prefix)
+	{
+		if ((end - start) < prefix.length()) {
+			return false;
+		}
+
+		for (int index = 0; index < prefix.length(); index++) {
+			if (chars[start + index] != prefix.charAt(index)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int indexOf(char[] chars, char character, int start, int end)
+	{
+		for (int index = start; index < end; index++) {
+			if (chars[index] == character) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	private static int lastIndexOf(char[] chars, char character, int start, int end)
+	{
+		for (int index = end - 1; index >= start; index--) {
+			if (chars[index] == character) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,193 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import java.util.Arrays;
+
+/**
+ * Assigns a number to every distinct string seen while parsing a lockfile. Lockfiles repeat the same package names,
+ * versions and field names many times, hence strings are looked up by the characters of the parser's buffer and only
+ * allocated the first time they are seen. All occurrences of a string share the same instance.
+ */
+final class SymbolTable
+{
+	static final int ABSENT = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private String[] symbols;
+	private int[] hashes;
+	private int[] slots;
+	private int size;
+	private char[] scratch = new char[256];
+
+	SymbolTable()
+	{
+		symbols = new String[INITIAL_CAPACITY / 2];
+		hashes = new int[INITIAL_CAPACITY / 2];
+		slots = new int[INITIAL_CAPACITY];
+
+		Arrays.fill(slots, ABSENT);
+	}
+
+	/**
+	 * Returns the number of the given characters, adding them to the table if not yet present.
+	 *
+	 * @param chars
+	 * 	The buffer holding the characters
+	 * @param start
+	 * 	The index of the first character
+	 * @param end
+	 * 	The index after the last character
+	 *
+	 * @return The number of the symbol
+	 */
+	int intern(char[] chars, int start, int end)
+	{
+		int hash = hash(chars, start, end);
+		int slot = find(chars, start, end, hash);
+
+		if (slots[slot] != ABSENT) {
+			return slots[slot];
+		}
+
+		if (size == symbols.length) {
+			symbols = Arrays.copyOf(symbols, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+
+		symbols[size] = new String(chars, start, end - start);
+		hashes[size] = hash;
+		slots[slot] = size;
+
+		if (++size > (slots.length / 2)) {
+			rehash();
+		}
+
+		return size - 1;
+	}
+
+	/**
+	 * Returns the number of the given string, adding it to the table if not yet present.
+	 *
+	 * @param value
+	 * 	The string to look up
+	 *
+	 * @return The number of the symbol
+	 */
+	int intern(String value)
+	{
+		return intern(value, 0, value.length());
+	}
+
+	/**
+	 * Returns the number of a part of the given string, adding it to the table if not yet present.
+	 *
+	 * @param value
+	 * 	The string holding the part to look up
+	 * @param start
+	 * 	The index of the first character of the part
+	 * @param end
+	 * 	The index after the last character of the part
+	 *
+	 * @return The number of the symbol
+	 */
+	int intern(String value, int start, int end)
+	{
+		if (scratch.length < (end - start)) {
+			scratch = new char[Math.max(end - start, scratch.length * 2)];
+		}
+
+		value.getChars(start, end, scratch, 0);
+
+		return intern(scratch, 0, end - start);
+	}
+
+	/**
+	 * Returns the number of the given characters without adding them to the table.
+	 *
+	 * @param chars
+	 * 	The buffer holding the characters
+	 * @param start
+	 * 	The index of the first character
+	 * @param end
+	 * 	The index after the last character
+	 *
+	 * @return The number of the symbol or {@link #ABSENT}
+	 */
+	int lookup(char[] chars, int start, int end)
+	{
+		return slots[find(chars, start, end, hash(chars, start, end))];
+	}
+
+	String get(int symbol)
+	{
+		return symbols[symbol];
+	}
+
+	private int find(char[] chars, int start, int end, int hash)
+	{
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+
+		while ((slots[slot] != ABSENT) && !matches(slots[slot], chars, start, end, hash)) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	private boolean matches(int symbol, char[] chars, int start, int end, int hash)
+	{
+		String candidate = symbols[symbol];
+
+		if ((hashes[symbol] != hash) || (candidate.length() != (end - start))) {
+			return false;
+		}
+
+		for (int index = 0; index < candidate.length(); index++) {
+			if (candidate.charAt(index) != chars[start + index]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void rehash()
+	{
+		int mask = (slots.length * 2) - 1;
+
+		slots = new int[slots.length * 2];
+		Arrays.fill(slots, ABSENT);
+
+		for (int symbol = 0; symbol < size; symbol++) {
+			int slot = mix(hashes[symbol]) & mask;
+
+			while (slots[slot] != ABSENT) {
+				slot = (slot + 1) & mask;
+			}
+
+			slots[slot] = symbol;
+		}
+	}
+
+	private static int hash(char[] chars, int start, int end)
+	{
+		int hash = 0;
+
+		for (int index = start; index < end; index++) {
+			hash = (31 * hash) + chars[index];
+		}
+
+		return hash;
+	}
+
+	/*
+	 * Spreads the bits of the polynomial hash, whose lower bits alone cluster for strings sharing a common suffix.
+	 */
+	private static int mix(int hash)
+	{
+		int mixed = hash * 0x9E3779B9;
+
+		return mixed ^ (mixed >>> 16);
+	}
+}
@@ -0,0 +1,239 @@
+package com.brunoritz.gradle.singularnode.lockfile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Parses {@code yarn.lock} files written by Yarn 1 as well as by Yarn 2 and later, which are told apart by the
+ * {@code __metadata} entry only present in the latter.
+ * <p>
+ * Both formats list each package under a header naming all requested ranges that resolve to it, such as
+ * {@code "lodash@^4.17.0", "lodash@^4.17.21":} for Yarn 1 and {@code "lodash@npm:^4.17.0, lodash@npm:^4.17.21":} for
+ * later versions. Each of these ranges becomes a key of the package. Dependencies are listed as name and range, which
+ * are joined to the same key.
+ * <p>
+ * Yarn 1 records the download location and the SRI integrity of packages. Later versions record the resolved locator,
+ * such as {@code lodash@npm:4.17.21}, and a checksum in a format of their own, which is not exposed as integrity.
+ */
+final class YarnLockfileParser
+{
+	private static final int NONE = SymbolTable.ABSENT;
+	private static final int PACKAGE_INDENTATION = 2;
+	private static final int DEPENDENCY_INDENTATION = 4;
+	private static final String METADATA = "__metadata";
+	private static final String NPM_PROTOCOL = "npm:";
+
+	private final LineReader lines;
+	private final SymbolTable symbols;
+	private final GraphBuilder graph;
+	private char[] key = new char[256];
+	private int current = NONE;
+	private boolean inDependencies;
+
+	private YarnLockfileParser(Reader source, SymbolTable symbols)
+	{
+		this.lines = new LineReader(source);
+		this.symbols = symbols;
+		this.graph = new GraphBuilder(symbols);
+	}
+
+	static DependencyGraph parse(Reader source, SymbolTable symbols)
+		throws IOException
+	{
+		return new YarnLockfileParser(source, symbols).parse();
+	}
+
+	private DependencyGraph parse()
+		throws IOException
+	{
+		boolean found = lines.next();
+
+		while (found && lines.isBlank()) {
+			found = lines.next();
+		}
+
+		boolean berry = found && lines.startsWith(METADATA + ':');
+
+		while (found) {
+			if (!lines.isBlank()) {
+				if (berry) {
+					readBerryLine();
+				} else {
+					readClassicLine();
+				}
+			}
+
+			found = lines.next();
+		}
+
+		return graph.build();
+	}
+
+	private void readClassicLine()
+	{
+		int indentation = lines.indentation();
+
+		if (indentation == 0) {
+			int end = lines.end();
+
+			if ((end > lines.start()) && (lines.chars()[end - 1] == ':')) {
+				end--;
+			}
+
+			current = readHeader(lines.start(), end);
+			inDependencies = false;
+		} else if (current == NONE) {
+			return;
+		} else if (indentation == PACKAGE_INDENTATION) {
+			inDependencies = lines.startsWith("dependencies:") || lines.startsWith("optionalDependencies:");
+
+			lines.split(' ');
+			readField();
+		} else if (inDependencies && (indentation == DEPENDENCY_INDENTATION)) {
+			lines.split(' ');
+			graph.addDependency(current, dependencyKey(false));
+		}
+	}
+
+	private void readBerryLine()
+	{
+		int indentation = lines.indentation();
+
+		lines.split(':');
+
+		if (indentation == 0) {
+			current = lines.keyEquals(METADATA) ? NONE : readHeader(lines.keyStart(), lines.keyEnd());
+			inDependencies = false;
+		} else if (current == NONE) {
+			return;
+		} else if (indentation == PACKAGE_INDENTATION) {
+			inDependencies = lines.keyEquals("dependencies") || lines.keyEquals("optionalDependencies");
+
+			if (lines.keyEquals("resolution")) {
+				graph.setResolved(current, valueSymbol());
+			} else {
+				readField();
+			}
+		} else if (inDependencies && (indentation == DEPENDENCY_INDENTATION)) {
+			graph.addDependency(current, dependencyKey(true));
+		}
+	}
+
+	private void readField()
+	{
+		if (!lines.hasValue()) {
+			return;
+		}
+
+		if (lines.keyEquals("version")) {
+			graph.setVersion(current, valueSymbol());
+		} else if (lines.keyEquals("resolved")) {
+			graph.setResolved(current, valueSymbol());
+		} else if (lines.keyEquals("integrity")) {
+			graph.setIntegrity(current, valueSymbol());
+		}
+	}
+
+	/*
+	 * Adds a package for a header holding a comma separated list of possibly quoted ranges. The name of the package is
+	 * taken from the first range, being everything before the version separator, which for scoped packages is not the
+	 * leading @.
+	 */
+	private int readHeader(int start, int end)
+	{
+		char[] chars = lines.chars();
+		int id = NONE;
+		int index = start;
+
+		while (index < end) {
+			int rangeEnd = index;
+
+			while ((rangeEnd < end) && (chars[rangeEnd] != ',')) {
+				rangeEnd++;
+			}
+
+			int rangeStart = index;
+			int trimmedEnd = rangeEnd;
+
+			while ((rangeStart < trimmedEnd) && isBlankOrQuote(chars[rangeStart])) {
+				rangeStart++;
+			}
+
+			while ((trimmedEnd > rangeStart) && isBlankOrQuote(chars[trimmedEnd - 1])) {
+				trimmedEnd--;
+			}
+
+			if (rangeStart < trimmedEnd) {
+				if (id == NONE) {
+					id = graph.addPackage(symbols.intern(chars, rangeStart, nameEnd(chars, rangeStart, trimmedEnd)));
+				}
+
+				graph.addKey(symbols.intern(chars, rangeStart, trimmedEnd), id);
+			}
+
+			index = rangeEnd + 1;
+		}
+
+		return id;
+	}
+
+	/*
+	 * Joins the name and range of a dependency line to the key under which the dependency is listed. Yarn 2 and later
+	 * omit the protocol of ranges resolved from the registry in older lockfiles.
+	 */
+	private int dependencyKey(boolean berry)
+	{
+		char[] chars = lines.chars();
+		int nameLength = lines.keyEnd() - lines.keyStart();
+		int rangeLength = lines.valueEnd() - lines.valueStart();
+		boolean addProtocol = berry && (indexOf(chars, ':', lines.valueStart(), lines.valueEnd()) < 0);
+		int length = nameLength + 1 + (addProtocol ? NPM_PROTOCOL.length() : 0) + rangeLength;
+
+		if (key.length < length) {
+			key = Arrays.copyOf(key, Math.max(length, key.length * 2));
+		}
+
+		System.arraycopy(chars, lines.keyStart(), key, 0, nameLength);
+		key[nameLength] = '@';
+
+		int rangeStart = nameLength + 1;
+
+		if (addProtocol) {
+			NPM_PROTOCOL.getChars(0, NPM_PROTOCOL.length(), key, rangeStart);
+			rangeStart += NPM_PROTOCOL.length();
+		}
+
+		System.arraycopy(chars, lines.valueStart(), key, rangeStart, rangeLength);
+
+		return symbols.intern(key, 0, length);
+	}
+
+	private int valueSymbol()
+	{
+		return symbols.intern(lines.chars(), lines.valueStart(), lines.valueEnd());
+	}
+
+	private static int nameEnd(char[] chars, int start, int end)
+	{
+		int separator = indexOf(chars, '@', start + 1, end);
+
+		return (separator < 0) ? end : separator;
+	}
+
+	private static int indexOf(char[] chars, char character, int start, int end)
+	{
+		for (int index = start; index < end; index++) {
+			if (chars[index] == character) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	private static boolean isBlankOrQuote(char character)
+	{
+		return (character == ' ') || (character == '"') || (character == '\'');
+	}
+}
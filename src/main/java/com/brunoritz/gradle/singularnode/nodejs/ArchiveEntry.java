@@ -0,0 +1,63 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+/**
+ * An entry of a NodeJS archive. The path of the entry is relative to the root of the installation, that is, the
+ * top-level directory of the archive has already been removed from it.
+ */
+final class ArchiveEntry
+{
+	private final String path;
+	private final Type type;
+	private final int mode;
+	private final String linkTarget;
+
+	ArchiveEntry(String path, Type type, int mode, String linkTarget)
+	{
+		this.path = path;
+		this.type = type;
+		this.mode = mode;
+		this.linkTarget = linkTarget;
+	}
+
+	/**
+	 * Returns the path of the entry relative to the installation root, using {@code /} as separator.
+	 */
+	String path()
+	{
+		return path;
+	}
+
+	Type type()
+	{
+		return type;
+	}
+
+	/**
+	 * Returns the Unix permission bits of the entry. Archives not carrying permissions report {@code 0}.
+	 */
+	int mode()
+	{
+		return mode;
+	}
+
+	/**
+	 * Returns the target of a link entry. For symbolic links, this is the target as stored in the archive. For hard
+	 * links, this is the path of the linked entry relative to the installation root. Other entries return an empty
+	 * string.
+	 */
+	String linkTarget()
+	{
+		return linkTarget;
+	}
+
+	/**
+	 * The kinds of entries found in NodeJS archives.
+	 */
+	enum Type
+	{
+		DIRECTORY,
+		FILE,
+		SYMLINK,
+		HARDLINK
+	}
+}
@@ -0,0 +1,179 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import com.brunoritz.gradle.singularnode.platform.NodeCommand;
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.process.ExecOperations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Provisions package managers through the Corepack version bundled with NodeJS instead of installing them globally.
+ * Corepack keeps the package managers in its home directory within the installation base directory, hence each
+ * version is downloaded only once and shared by all projects of the build.
+ * <p>
+ * Instead of the package manager itself, a launcher is placed at the location of the managed script. The launcher
+ * points Corepack to its home directory and starts the package manager through Corepack, which picks the version
+ * declared by the {@code packageManager} field of the nearest {@code package.json}, or the prepared version if there
+ * is none.
+ */
+public final class CorepackInstaller
+{
+	private CorepackInstaller()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns the version of a package manager declared by the {@code package.json} of the given project. The version
+	 * is only looked up if the package managers are provisioned through Corepack.
+	 *
+	 * @param project
+	 * 	The project whose {@code package.json} to read
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 * @param packageManager
+	 * 	The name of the package manager
+	 *
+	 * @return The declared version, absent if there is none or Corepack is not used
+	 */
+	public static Provider<String> declaredVersion(
+		Project project,
+		NodeJsExtension configuration,
+		String packageManager)
+	{
+		RegularFile packageFile = project.getLayout().getProjectDirectory().file("package.json");
+
+		return configuration.packageManagerProvisioning
+			.filter(provisioning -> "corepack".contentEquals(provisioning))
+			.flatMap(provisioning -> project.getProviders().fileContents(packageFile).getAsText())
+			.map(packageJson -> declaredVersion(packageJson, packageManager).getOrNull());
+	}
+
+	/**
+	 * Returns the version of a package manager declared by the {@code packageManager} field of a {@code package.json}
+	 * file. The field holds the name and version of the package manager, optionally followed by a hash, for example
+	 * {@code yarn@3.6.1+sha224.1c0d...}.
+	 *
+	 * @param packageJson
+	 * 	The content of the {@code package.json} file
+	 * @param packageManager
+	 * 	The name of the package manager
+	 *
+	 * @return The declared version including any hash, or {@code none} if the field is missing or refers to a
+	 * 	different package manager
+	 */
+	public static Option<String> declaredVersion(String packageJson, String packageManager)
+	{
+		Object manifest = new JsonSlurper().parseText(packageJson);
+		Object declaration = (manifest instanceof java.util.Map<?, ?> fields) ? fields.get("packageManager") : null;
+		String prefix = packageManager + "@";
+
+		return Option.of(declaration)
+			.filter(String.class::isInstance)
+			.map(String.class::cast)
+			.filter(spec -> spec.startsWith(prefix))
+			.map(spec -> spec.substring(prefix.length()));
+	}
+
+	/**
+	 * Prepares the given version of a package manager in the Corepack home directory, makes it the default version
+	 * and writes the launcher.
+	 *
+	 * @param processes
+	 * 	The service to start NodeJS with
+	 * @param workingDirectory
+	 * 	The directory to run Corepack in
+	 * @param layout
+	 * 	The layout of the NodeJS installation
+	 * @param packageManager
+	 * 	The name of the package manager
+	 * @param version
+	 * 	The version, tag or range of the package manager, as understood by Corepack
+	 * @param registry
+	 * 	The NPM registry Corepack downloads the package manager from
+	 * @param launcher
+	 * 	The location of the launcher, which is the location of the managed script of the package manager
+	 *
+	 * @throws IOException
+	 * 	If the launcher cannot be written
+	 */
+	public static void install(
+		ExecOperations processes,
+		File workingDirectory,
+		InstallationLayout layout,
+		String packageManager,
+		CharSequence version,
+		CharSequence registry,
+		File launcher)
+		throws IOException
+	{
+		File corepack = layout.pathOfBundledCorepackScript("corepack");
+
+		if (!corepack.isFile()) {
+			throw new IllegalStateException("The installed version of NodeJS does not bundle Corepack");
+		}
+
+		new NodeCommand(processes, workingDirectory, layout)
+			.args(
+				corepack.getAbsolutePath(),
+				"prepare",
+				String.format("%s@%s", packageManager, version),
+				"--activate"
+			)
+			.withEnvironment(HashMap.ofAll(System.getenv()))
+			.withEnvironment(environment(layout, registry))
+			.execute();
+
+		writeLauncher(layout, packageManager, registry, launcher);
+	}
+
+	private static Map<CharSequence, CharSequence> environment(InstallationLayout layout, CharSequence registry)
+	{
+		return HashMap.of(
+			"COREPACK_HOME", layout.corepackHomeDirectory().getAbsolutePath(),
+			"COREPACK_NPM_REGISTRY", registry,
+			"COREPACK_ENABLE_DOWNLOAD_PROMPT", "0"
+		);
+	}
+
+	/*
+	 * The launcher overrides any Corepack variables of the caller, so that it never resolves package managers outside
+	 * of the prepared home directory. Values are written as JSON strings, which are valid JavaScript string literals on
+	 * all platforms.
+	 */
+	private static void writeLauncher(
+		InstallationLayout layout,
+		String packageManager,
+		CharSequence registry,
+		File launcher)
+		throws IOException
+	{
+		StringBuilder script = new StringBuilder();
+
+		for (Tuple2<CharSequence, CharSequence> variable : environment(layout, registry)) {
+			script.append(String.format("process.env.%s = %s;\n",
+				variable._1, JsonOutput.toJson(variable._2.toString())
+			));
+		}
+
+		script.append(String.format("require(%s);\n",
+			JsonOutput.toJson(layout.pathOfBundledCorepackScript(packageManager).getAbsolutePath())
+		));
+
+		Files.createDirectories(launcher.toPath().getParent());
+		Files.writeString(launcher.toPath(), script, StandardCharsets.UTF_8);
+	}
+}
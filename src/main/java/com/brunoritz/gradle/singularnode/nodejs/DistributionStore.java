@@ -0,0 +1,175 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import com.brunoritz.gradle.singularnode.platform.Checksums;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A machine-wide store of extracted NodeJS distributions. Each distribution is kept in a directory named after the
+ * SHA-256 checksum of its archive. Hence, identical archives are only ever extracted once, no matter how many
+ * checkouts request them.
+ * <p>
+ * Concurrent builds, even those running in separate Gradle daemons, are coordinated using one lock file per checksum.
+ * A distribution is extracted into a staging directory first and only moved into its final location once complete.
+ * Other builds therefore never get to see a partially extracted distribution.
+ */
+final class DistributionStore
+{
+	private static final Object PROCESS_LOCK = new Object();
+
+	private final Path storeDir;
+
+	DistributionStore(File storeDir)
+	{
+		this.storeDir = storeDir.toPath();
+	}
+
+	/**
+	 * Returns the stored distribution for the given archive. Should the distribution not yet exist, {@code extraction}
+	 * is used to populate it.
+	 *
+	 * @param archive
+	 * 	The NodeJS archive whose extracted contents to return
+	 * @param extraction
+	 * 	The means of extracting the archive into an empty directory
+	 *
+	 * @return The directory holding the extracted distribution
+	 *
+	 * @throws IOException
+	 * 	If the store cannot be accessed or the extraction fails
+	 */
+	Path storedDistribution(File archive, Extraction extraction)
+		throws IOException
+	{
+		String checksum = Checksums.sha256(archive);
+		Path distribution = storeDir.resolve(checksum);
+
+		if (Files.isDirectory(distribution)) {
+			return distribution;
+		}
+
+		Files.createDirectories(storeDir);
+
+		synchronized (PROCESS_LOCK) {
+			try (FileChannel lockFile = FileChannel.open(storeDir.resolve(checksum + ".lock"),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock ignored = lockFile.lock()) {
+				if (!Files.isDirectory(distribution)) {
+					populate(distribution, extraction);
+				}
+			}
+		}
+
+		return distribution;
+	}
+
+	private void populate(Path distribution, Extraction extraction)
+		throws IOException
+	{
+		Path staging = Files.createTempDirectory(storeDir, distribution.getFileName() + ".");
+
+		try {
+			extraction.extractInto(staging.toFile());
+			Files.move(staging, distribution, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			deleteRecursively(staging);
+		}
+	}
+
+	/**
+	 * Makes a stored distribution available at {@code installDir}. Preferably, the installation directory becomes a
+	 * symlink to the stored distribution. Where symlinks cannot be created (for example on Windows without the
+	 * necessary privilege), a directory tree of hardlinks is created instead. Files that cannot be hardlinked, such as
+	 * when the store resides on another file system, are copied.
+	 *
+	 * @param distribution
+	 * 	The stored distribution as returned by {@link #storedDistribution(File, Extraction)}
+	 * @param installDir
+	 * 	The directory at which the distribution shall be made available. Must not exist.
+	 *
+	 * @throws IOException
+	 * 	If neither linking nor copying the distribution succeeds
+	 */
+	static void linkInstallation(Path distribution, Path installDir)
+		throws IOException
+	{
+		Files.createDirectories(installDir.toAbsolutePath().getParent());
+
+		try {
+			Files.createSymbolicLink(installDir, distribution);
+		} catch (UnsupportedOperationException | IOException e) {
+			createLinkFarm(distribution, installDir);
+		}
+	}
+
+	private static void createLinkFarm(Path distribution, Path installDir)
+		throws IOException
+	{
+		List<Path> entries;
+
+		try (Stream<Path> walk = Files.walk(distribution)) {
+			entries = walk.collect(Collectors.toList());
+		}
+
+		for (Path source : entries) {
+			Path target = installDir.resolve(distribution.relativize(source).toString());
+
+			if (Files.isSymbolicLink(source)) {
+				Files.createSymbolicLink(target, Files.readSymbolicLink(source));
+			} else if (Files.isDirectory(source)) {
+				Files.createDirectories(target);
+			} else {
+				linkOrCopy(source, target);
+			}
+		}
+	}
+
+	private static void linkOrCopy(Path source, Path target)
+		throws IOException
+	{
+		try {
+			Files.createLink(target, source);
+		} catch (UnsupportedOperationException | IOException e) {
+			Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+		}
+	}
+
+	private static void deleteRecursively(Path directory)
+		throws IOException
+	{
+		if (!Files.exists(directory)) {
+			return;
+		}
+
+		List<Path> entries;
+
+		try (Stream<Path> walk = Files.walk(directory)) {
+			entries = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+
+		for (Path entry : entries) {
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	/**
+	 * Extracts a NodeJS archive into an empty directory.
+	 */
+	@FunctionalInterface
+	interface Extraction
+	{
+		void extractInto(File targetDir)
+			throws IOException;
+	}
+}
@@ -0,0 +1,71 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+
+/**
+ * Downloads the NodeJS archive using parallel HTTP range requests. Interrupted downloads are resumed and every
+ * download is verified against the {@code SHASUMS256.txt} file of the release. An existing archive with the expected
+ * checksum is not downloaded again.
+ * <p>
+ * This task is an alternative to resolving the archive as a Gradle dependency. It is only used if parallel downloads
+ * are enabled.
+ */
+public abstract class DownloadNodeJsTask
+	extends DefaultTask
+{
+	@Input
+	public abstract Property<CharSequence> getDownloadBase();
+
+	@Input
+	public abstract Property<CharSequence> getNodeVersion();
+
+	/**
+	 * The number of parallel connections to use for downloading the archive.
+	 */
+	@Input
+	public abstract Property<Integer> getConnections();
+
+	/**
+	 * The file to download the archive to. The name of the file must match the one of the archive to download.
+	 */
+	@OutputFile
+	public abstract RegularFileProperty getArchiveFile();
+
+	@TaskAction
+	public void download()
+		throws IOException
+	{
+		File archiveFile = getArchiveFile().get().getAsFile();
+		String downloadBase = stripTrailingSlash(getDownloadBase().get());
+		URI releaseUri = URI.create(String.format("%s/v%s/", downloadBase, getNodeVersion().get()));
+		HttpClient client = HttpClient.newBuilder()
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.proxy(ProxySelector.getDefault())
+			.build();
+
+		new NodeArchiveDownloader(client, getConnections().get(), NodeArchiveDownloader.DEFAULT_CHUNK_SIZE)
+			.download(
+				releaseUri.resolve(archiveFile.getName()),
+				releaseUri.resolve("SHASUMS256.txt"),
+				archiveFile.toPath()
+			);
+	}
+
+	private static String stripTrailingSlash(CharSequence url)
+	{
+		String value = url.toString();
+
+		return value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+	}
+}
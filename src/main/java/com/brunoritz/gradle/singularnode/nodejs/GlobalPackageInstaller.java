@@ -0,0 +1,100 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import groovy.json.JsonSlurper;
+import io.vavr.Tuple2;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.Map;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Installs a package from its tarball the way {@code npm install --global --prefix} would, but without running NPM.
+ * The tarball is extracted into the global package directory of the prefix and a shim is created for every binary
+ * declared in its {@code package.json}.
+ * <p>
+ * No dependencies are installed and no lifecycle scripts are run. Hence, this is only suitable for self-contained
+ * packages, such as NPM, Yarn and PNPM.
+ */
+public final class GlobalPackageInstaller
+{
+	private GlobalPackageInstaller()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Installs a package from its tarball.
+	 *
+	 * @param tarball
+	 * 	The tarball of the package, as published to a registry
+	 * @param packageName
+	 * 	The name of the package
+	 * @param prefix
+	 * 	The directory to install the package into
+	 * @param layout
+	 * 	The layout of the NodeJS installation, which determines the locations within the prefix
+	 *
+	 * @throws IOException
+	 * 	If the tarball cannot be extracted, contains links or the shims cannot be created
+	 */
+	public static void install(File tarball, String packageName, File prefix, InstallationLayout layout)
+		throws IOException
+	{
+		File packageDir = layout.globalPackageDirectory(prefix, packageName);
+
+		StreamingExtractor.extractPackage(tarball, packageDir);
+
+		for (Tuple2<String, String> bin : binaries(packageName, new File(packageDir, "package.json"))) {
+			Path script = packageDir.toPath().resolve(bin._2).normalize();
+			File shim = layout.globalBinShim(prefix, bin._1);
+
+			if (!script.startsWith(packageDir.toPath()) || !Files.isRegularFile(script)) {
+				throw new IOException(String.format("Binary %s of %s does not exist", bin._2, packageName));
+			}
+
+			createShim(shim.toPath(), script);
+		}
+	}
+
+	/*
+	 * The bin field is either the path of a single binary named after the package, or a map of binary names to paths.
+	 */
+	private static Map<String, String> binaries(String packageName, File packageFile)
+	{
+		Object manifest = new JsonSlurper().parse(packageFile, StandardCharsets.UTF_8.name());
+		Object bin = (manifest instanceof java.util.Map<?, ?> fields) ? fields.get("bin") : null;
+		Map<String, String> binaries = LinkedHashMap.empty();
+
+		if (bin instanceof String path) {
+			binaries = binaries.put(packageName, path);
+		} else if (bin instanceof java.util.Map<?, ?> paths) {
+			for (java.util.Map.Entry<?, ?> path : paths.entrySet()) {
+				binaries = binaries.put(String.valueOf(path.getKey()), String.valueOf(path.getValue()));
+			}
+		}
+
+		return binaries;
+	}
+
+	private static void createShim(Path shim, Path script)
+		throws IOException
+	{
+		Files.createDirectories(shim.getParent());
+		Files.deleteIfExists(shim);
+
+		if (shim.getFileName().toString().endsWith(".cmd")) {
+			String relativeScript = shim.getParent().relativize(script).toString().replace('/', '\\');
+			String batchFile = String.format("@node \"%%~dp0\\%s\" %%*\r\n", relativeScript);
+
+			Files.writeString(shim, batchFile, StandardCharsets.UTF_8);
+		} else {
+			script.toFile().setExecutable(true, false);
+			Files.createSymbolicLink(shim, shim.getParent().relativize(script));
+		}
+	}
+}
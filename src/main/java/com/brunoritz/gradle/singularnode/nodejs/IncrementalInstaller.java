@@ -0,0 +1,128 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Upgrades an existing NodeJS installation to the contents of another archive by only touching the entries that
+ * actually differ. Unchanged files (typically most of {@code include/} and the bundled NPM between patch releases) are
+ * neither deleted nor rewritten.
+ * <p>
+ * After the upgrade, the manifest of the new distribution is stored next to the installation and the installation is
+ * verified against it.
+ */
+final class IncrementalInstaller
+{
+	private IncrementalInstaller()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Brings the installation in line with the given archive. A missing installation is created from scratch.
+	 *
+	 * @param archive
+	 * 	The NodeJS archive to install
+	 * @param installDir
+	 * 	The root of the installation to upgrade
+	 * @param manifestFile
+	 * 	The file to store the manifest of the installation in
+	 *
+	 * @throws IOException
+	 * 	If the upgrade fails or the resulting installation does not match the manifest
+	 */
+	static void install(File archive, Path installDir, Path manifestFile)
+		throws IOException
+	{
+		NodeManifest desired = NodeManifest.ofArchive(archive);
+		NodeManifest existing = NodeManifest.ofInstallation(installDir);
+		Set<String> changedPaths = new HashSet<>(desired.unmatchedPaths(existing));
+
+		Files.deleteIfExists(manifestFile);
+		removeEntries(installDir, obsoletePaths(desired, existing, changedPaths));
+		Files.createDirectories(installDir);
+
+		NodeArchiveReader.read(archive, (entry, content) -> {
+			if (changedPaths.contains(entry.path())) {
+				StreamingExtractor.write(installDir, entry, content);
+			}
+		});
+
+		desired.writeTo(manifestFile);
+		verify(installDir, manifestFile);
+	}
+
+	private static List<String> obsoletePaths(NodeManifest desired, NodeManifest existing, Set<String> changedPaths)
+	{
+		List<String> obsolete = new ArrayList<>();
+
+		for (String path : existing.paths()) {
+			boolean removed = !desired.paths().contains(path);
+			boolean replacedByOtherType = changedPaths.contains(path) && desired.typeDiffers(path, existing);
+
+			if (removed || replacedByOtherType) {
+				obsolete.add(path);
+			}
+		}
+
+		obsolete.sort(Comparator.reverseOrder());
+
+		return obsolete;
+	}
+
+	private static void removeEntries(Path installDir, List<String> paths)
+		throws IOException
+	{
+		for (String path : paths) {
+			Path entry = installDir.resolve(path);
+
+			if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+				deleteRecursively(entry);
+			} else {
+				Files.deleteIfExists(entry);
+			}
+		}
+	}
+
+	private static void deleteRecursively(Path directory)
+		throws IOException
+	{
+		List<Path> entries;
+
+		try (Stream<Path> walk = Files.walk(directory)) {
+			entries = walk.sorted(Comparator.reverseOrder()).toList();
+		}
+
+		for (Path entry : entries) {
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	private static void verify(Path installDir, Path manifestFile)
+		throws IOException
+	{
+		NodeManifest expected = NodeManifest.readFrom(manifestFile)
+			.getOrElseThrow(() -> new IOException("Manifest of the NodeJS installation is missing"));
+		NodeManifest actual = NodeManifest.ofInstallation(installDir);
+		List<String> mismatches = expected.unmatchedPaths(actual);
+		List<String> unexpected = new ArrayList<>(actual.paths());
+
+		unexpected.removeAll(expected.paths());
+
+		if (!(mismatches.isEmpty() && unexpected.isEmpty())) {
+			throw new IOException(String.format(
+				"NodeJS installation does not match its manifest. Mismatching: %s, unexpected: %s",
+				mismatches, unexpected
+			));
+		}
+	}
+}
@@ -2,13 +2,11 @@ package com.brunoritz.gradle.singularnode.nodejs;
 
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.file.ArchiveOperations;
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileSystemOperations;
-import org.gradle.api.file.FileTree;
-import org.gradle.api.file.RegularFile;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputDirectory;
@@ -17,35 +15,60 @@ import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 
 import javax.inject.Inject;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Installs the requested version of NodeJS into the installation directory. Removes the top-level directory from the
  * NodeJS archive since it is not relevant for the installation and simplifies further consumption of the software.
  * <p>
- * For those distributions packages in {@code .tar.gz}, additional steps are taken to repair the broken {@code npm}
- * and {@code npx} symlinks. Gradle does not preserve symlinks when extracting TAR GZ archives.
+ * The archive is streamed straight into the installation directory in a single pass. Symlinks (such as {@code npm} and
+ * {@code npx} in {@code .tar.gz} distributions) and permission bits are preserved as stored in the archive.
  * <p>
- * Any existing installation will be deleted prior to the installation.
+ * If the distribution is shared, the archive is extracted into a machine-wide store only once and the installation
+ * directory just links to the stored distribution.
+ * <p>
+ * Unless upgraded incrementally, any existing installation will be deleted prior to the installation. An incremental
+ * upgrade only replaces those entries of the existing installation that differ from the archive and records the
+ * resulting contents in a manifest next to the installation.
  */
 public abstract class InstallNodeJsTask
 	extends DefaultTask
 {
 	private final FileSystemOperations files;
-	private final ArchiveOperations archives;
 
 	@Inject
-	public InstallNodeJsTask(FileSystemOperations files, ArchiveOperations archives)
+	public InstallNodeJsTask(FileSystemOperations files)
 	{
 		this.files = files;
-		this.archives = archives;
 	}
 
 	@InputFile
 	@PathSensitive(PathSensitivity.RELATIVE)
 	public abstract RegularFileProperty getNodeArchive();
 
+	/**
+	 * Whether to link the installation to a distribution kept in {@link #getDistributionStoreDir()} instead of
+	 * extracting the archive into the installation directory.
+	 */
+	@Input
+	public abstract Property<Boolean> getShareDistribution();
+
+	/**
+	 * The machine-wide store holding the shared distributions. Only used if the distribution is shared.
+	 */
+	@Internal
+	public abstract DirectoryProperty getDistributionStoreDir();
+
+	/**
+	 * Whether to upgrade an existing installation by only replacing differing entries. Ignored for shared
+	 * distributions.
+	 */
+	@Input
+	public abstract Property<Boolean> getIncrementalUpgrade();
+
 	@Internal
 	public abstract Property<InstallationLayout> getInstallationLayout();
 
@@ -55,65 +78,46 @@ public abstract class InstallNodeJsTask
 	@TaskAction
 	public void installNode()
 		throws IOException
-	{
-		cleanTarget();
-		extractArchive();
-	}
-
-	private void cleanTarget()
 	{
 		InstallationLayout layout = getInstallationLayout().get();
-
-		files.delete(spec -> spec.delete(layout.nodeJsInstallDir()));
+		Path installDir = layout.nodeJsInstallDir().toPath();
+
+		if (getShareDistribution().getOrElse(false)) {
+			DistributionStore store = new DistributionStore(getDistributionStoreDir().get().getAsFile());
+			Path distribution = store.storedDistribution(getNodeArchive().get().getAsFile(), this::extractArchive);
+
+			cleanTarget();
+			DistributionStore.linkInstallation(distribution, installDir);
+		} else if (getIncrementalUpgrade().getOrElse(false) && !Files.isSymbolicLink(installDir)) {
+			IncrementalInstaller.install(
+				getNodeArchive().get().getAsFile(),
+				installDir,
+				layout.nodeJsManifestFile().toPath()
+			);
+		} else {
+			cleanTarget();
+			extractArchive(layout.nodeJsInstallDir());
+		}
 	}
 
-	private void extractArchive()
+	private void cleanTarget()
 		throws IOException
 	{
 		InstallationLayout layout = getInstallationLayout().get();
-		RegularFile nodeArchive = getNodeArchive().get();
+		Path installDir = layout.nodeJsInstallDir().toPath();
+
+		Files.deleteIfExists(layout.nodeJsManifestFile().toPath());
 
-		if (nodeArchive.getAsFile().getName().endsWith(".zip")) {
-			extractArchive(archives.zipTree(nodeArchive), layout);
+		if (Files.isSymbolicLink(installDir)) {
+			Files.delete(installDir);
 		} else {
-			extractArchive(archives.tarTree(nodeArchive), layout);
-			restoreBrokenSymlinks(layout);
+			files.delete(spec -> spec.delete(installDir));
 		}
 	}
 
-	private void extractArchive(FileTree source, InstallationLayout layout)
-	{
-		files.copy(cp -> {
-			cp.from(source);
-			cp.into(layout.nodeJsInstallDir());
-			cp.eachFile(fileCopy -> {
-				String path = fileCopy.getPath();
-				String sanitizedPath = path.substring(path.indexOf("/") + 1);
-
-				fileCopy.setPath(sanitizedPath);
-			});
-		});
-	}
-
-	private void restoreBrokenSymlinks(InstallationLayout layout)
+	private void extractArchive(File targetDir)
 		throws IOException
 	{
-		if (!(layout.nodeJsBinDirectory().exists() || layout.nodeJsBinDirectory().mkdirs())) {
-			throw new IOException("Failed to create NodeJS bin directory");
-		}
-
-		if (!(layout.pathOfBundledNpmScript().delete() && layout.pathOfBundnledNpxScript().delete())) {
-			throw new IOException("Failed to delete broken symlinks");
-		}
-
-		Files.createSymbolicLink(
-			layout.pathOfBundledNpmScript().toPath(),
-			layout.pathOfBundledCliScript("npm").toPath()
-		);
-
-		Files.createSymbolicLink(
-			layout.pathOfBundnledNpxScript().toPath(),
-			layout.pathOfBundledCliScript("npx").toPath()
-		);
+		StreamingExtractor.extract(getNodeArchive().get().getAsFile(), targetDir);
 	}
 }
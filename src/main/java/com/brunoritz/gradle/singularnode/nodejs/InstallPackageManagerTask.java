@@ -0,0 +1,189 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import com.brunoritz.gradle.singularnode.platform.NodeCommand;
+import com.brunoritz.gradle.singularnode.platform.PackageRegistry;
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.process.ExecOperations;
+
+import static org.gradle.api.tasks.PathSensitivity.NONE;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Installs the requested version of a package manager into its installation directory. Depending on the provisioning,
+ * the bundled version of NPM fetches the package manager, its tarball is downloaded and extracted directly, which
+ * avoids loading NPM altogether, or Corepack prepares it.
+ * <p>
+ * Any existing installation will be deleted prior to the installation. Subclasses only provide the name, version,
+ * installation directory and managed script of the package manager.
+ */
+public abstract class InstallPackageManagerTask
+	extends DefaultTask
+{
+	private final FileSystemOperations files;
+	private final ExecOperations processes;
+
+	@Inject
+	public InstallPackageManagerTask(FileSystemOperations files, ExecOperations processes)
+	{
+		this.files = files;
+		this.processes = processes;
+	}
+
+	@Internal
+	public abstract DirectoryProperty getWorkingDirectory();
+
+	@Internal
+	public abstract Property<InstallationLayout> getInstallationLayout();
+
+	/**
+	 * How to install the package manager, either {@code npm}, {@code tarball} or {@code corepack}.
+	 */
+	@Input
+	public abstract Property<CharSequence> getProvisioning();
+
+	/**
+	 * The NPM registry to download the tarball from when using {@code tarball} or {@code corepack} provisioning.
+	 */
+	@Input
+	public abstract Property<CharSequence> getPackageRegistry();
+
+	/**
+	 * The tarball of the package manager to install instead of downloading the requested version. If set, the
+	 * installation does not access the network.
+	 */
+	@InputFile
+	@PathSensitive(NONE)
+	@Optional
+	public abstract RegularFileProperty getPackageTarball();
+
+	/**
+	 * The version of the package manager declared by the {@code packageManager} field of {@code package.json}. When
+	 * using {@code corepack} provisioning, it takes precedence over the configured version.
+	 */
+	@Input
+	@Optional
+	public abstract Property<CharSequence> getDeclaredVersion();
+
+	/**
+	 * Returns the name of the package manager, which is also the name of its package.
+	 */
+	protected abstract String packageName();
+
+	/**
+	 * Returns the requested version of the package manager.
+	 */
+	protected abstract Property<CharSequence> packageVersion();
+
+	/**
+	 * Returns the directory to install the package manager into.
+	 */
+	protected abstract DirectoryProperty installDirectory();
+
+	/**
+	 * Returns the location of the script that starts the installed package manager.
+	 */
+	protected abstract File managedScript(InstallationLayout layout);
+
+	protected final void installPackageManager()
+		throws IOException
+	{
+		cleanTarget();
+
+		switch (getProvisioning().get().toString()) {
+			case "npm" -> install();
+			case "tarball" -> installTarball();
+			case "corepack" -> installCorepack();
+			default -> throw new IllegalStateException(
+				"Unsupported package manager provisioning: " + getProvisioning().get()
+			);
+		}
+	}
+
+	private void cleanTarget()
+	{
+		files.delete(spec -> spec.delete(installDirectory().get().getAsFile()));
+	}
+
+	private void install()
+	{
+		InstallationLayout layout = getInstallationLayout().get();
+		String bundledNpm = layout.pathOfBundledNpmScript().getAbsolutePath();
+		String npmPackage = String.format("%s@%s", packageName(), packageVersion().get());
+		List<CharSequence> packageArgs = getPackageTarball().isPresent()
+			? List.of("--offline", getPackageTarball().get().getAsFile().getAbsolutePath())
+			: List.of(npmPackage);
+
+		new NodeCommand(processes, getWorkingDirectory().get().getAsFile(), layout)
+			.args(
+				bundledNpm,
+				"install",
+				"--global",
+				"--no-save",
+				"--prefix", installDirectory().get().getAsFile().getAbsolutePath()
+			)
+			.args(packageArgs)
+			.withEnvironment(HashMap.ofAll(System.getenv()))
+			.execute();
+	}
+
+	private void installTarball()
+		throws IOException
+	{
+		File tarball = getPackageTarball().isPresent()
+			? getPackageTarball().get().getAsFile()
+			: downloadTarball();
+
+		GlobalPackageInstaller.install(
+			tarball,
+			packageName(),
+			installDirectory().get().getAsFile(),
+			getInstallationLayout().get()
+		);
+	}
+
+	private void installCorepack()
+		throws IOException
+	{
+		InstallationLayout layout = getInstallationLayout().get();
+
+		if (getPackageTarball().isPresent()) {
+			throw new IllegalStateException("Corepack provisioning does not support installing from a tool bundle");
+		}
+
+		CorepackInstaller.install(
+			processes,
+			getWorkingDirectory().get().getAsFile(),
+			layout,
+			packageName(),
+			getDeclaredVersion().orElse(packageVersion()).get(),
+			getPackageRegistry().get(),
+			managedScript(layout)
+		);
+	}
+
+	private File downloadTarball()
+		throws IOException
+	{
+		PackageRegistry registry = PackageRegistry.connect(getPackageRegistry().get());
+		File tarball = new File(getTemporaryDir(), packageName() + ".tgz");
+
+		registry.download(registry.resolve(packageName(), packageVersion().get()), tarball.toPath());
+
+		return tarball;
+	}
+}
@@ -0,0 +1,300 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import com.brunoritz.gradle.singularnode.platform.Checksums;
+import io.vavr.control.Option;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads NodeJS archives using multiple parallel HTTP range requests. The archive is split into chunks of a fixed
+ * size. Completed chunks are recorded in a progress file next to the partial download, hence an interrupted download
+ * resumes with the missing chunks only. Servers not supporting range requests are served by a single sequential
+ * request.
+ * <p>
+ * Every download is verified against the {@code SHASUMS256.txt} file published along with each NodeJS release before
+ * being moved to its final location.
+ */
+final class NodeArchiveDownloader
+{
+	static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int HTTP_OK = 200;
+	private static final int HTTP_PARTIAL_CONTENT = 206;
+
+	private final HttpClient client;
+	private final int connections;
+	private final int chunkSize;
+
+	NodeArchiveDownloader(HttpClient client, int connections, int chunkSize)
+	{
+		this.client = client;
+		this.connections = Math.max(1, connections);
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Downloads the archive to {@code destination}, unless a file with the expected checksum already exists there.
+	 *
+	 * @param archiveUri
+	 * 	The URI of the archive
+	 * @param checksumsUri
+	 * 	The URI of the {@code SHASUMS256.txt} file listing the archive
+	 * @param destination
+	 * 	The file to store the archive in. Its name must match the name listed in the checksum file.
+	 *
+	 * @throws IOException
+	 * 	If the download fails or the downloaded archive does not match the published checksum
+	 */
+	void download(URI archiveUri, URI checksumsUri, Path destination)
+		throws IOException
+	{
+		String fileName = destination.getFileName().toString();
+		String expectedChecksum = fetchExpectedChecksum(checksumsUri, fileName);
+
+		if (Files.isRegularFile(destination) && Checksums.sha256(destination.toFile()).equals(expectedChecksum)) {
+			return;
+		}
+
+		Path partFile = destination.resolveSibling(fileName + ".part");
+		Path progressFile = destination.resolveSibling(fileName + ".part.progress");
+
+		Files.createDirectories(destination.toAbsolutePath().getParent());
+		fetch(archiveUri, partFile, progressFile);
+
+		String actualChecksum = Checksums.sha256(partFile.toFile());
+
+		Files.deleteIfExists(progressFile);
+
+		if (!actualChecksum.equals(expectedChecksum)) {
+			Files.deleteIfExists(partFile);
+
+			throw new IOException(String.format(
+				"Checksum mismatch for %s: expected %s, but got %s", archiveUri, expectedChecksum, actualChecksum
+			));
+		}
+
+		Files.move(partFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private String fetchExpectedChecksum(URI checksumsUri, String fileName)
+		throws IOException
+	{
+		HttpResponse<String> response = send(
+			HttpRequest.newBuilder(checksumsUri).GET().build(),
+			HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)
+		);
+
+		expectStatus(response, checksumsUri, HTTP_OK);
+
+		for (String line : response.body().split("\n")) {
+			String[] fields = line.trim().split("\\s+");
+
+			if ((fields.length == 2) && fields[1].equals(fileName)) {
+				return fields[0].toLowerCase(Locale.ENGLISH);
+			}
+		}
+
+		throw new IOException(String.format("%s does not list a checksum for %s", checksumsUri, fileName));
+	}
+
+	private void fetch(URI archiveUri, Path partFile, Path progressFile)
+		throws IOException
+	{
+		HttpResponse<Void> probe = send(
+			HttpRequest.newBuilder(archiveUri).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+			HttpResponse.BodyHandlers.discarding()
+		);
+
+		long length = probe.headers().firstValueAsLong("Content-Length").orElse(-1);
+		boolean rangesSupported = (probe.statusCode() == HTTP_OK)
+			&& probe.headers().allValues("Accept-Ranges").contains("bytes");
+
+		if ((length > 0) && rangesSupported) {
+			fetchInChunks(archiveUri, partFile, progressFile, length);
+		} else {
+			fetchSequentially(archiveUri, partFile);
+		}
+	}
+
+	private void fetchSequentially(URI archiveUri, Path partFile)
+		throws IOException
+	{
+		HttpResponse<InputStream> response =
+			send(HttpRequest.newBuilder(archiveUri).GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+
+		expectStatus(response, archiveUri, HTTP_OK);
+
+		try (InputStream body = response.body()) {
+			Files.copy(body, partFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private void fetchInChunks(URI archiveUri, Path partFile, Path progressFile, long length)
+		throws IOException
+	{
+		int chunkCount = (int) ((length + chunkSize - 1) / chunkSize);
+		Set<Integer> completedChunks = readProgress(progressFile, length);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(connections, chunkCount));
+
+		try (FileChannel part = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			List<Future<Void>> pendingChunks = new ArrayList<>();
+
+			for (int chunk = 0; chunk < chunkCount; chunk++) {
+				if (completedChunks.contains(chunk)) {
+					continue;
+				}
+
+				long start = (long) chunk * chunkSize;
+				long end = Math.min(start + chunkSize, length) - 1;
+				int chunkIndex = chunk;
+
+				pendingChunks.add(executor.submit(() -> {
+					fetchRange(archiveUri, part, start, end);
+					recordProgress(progressFile, chunkIndex);
+
+					return null;
+				}));
+			}
+
+			awaitAll(pendingChunks);
+			part.truncate(length);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void fetchRange(URI archiveUri, FileChannel part, long start, long end)
+		throws IOException
+	{
+		HttpRequest request = HttpRequest.newBuilder(archiveUri)
+			.header("Range", String.format("bytes=%d-%d", start, end))
+			.GET()
+			.build();
+		HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+		expectStatus(response, archiveUri, HTTP_PARTIAL_CONTENT);
+
+		try (InputStream body = response.body()) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long position = start;
+			int count;
+
+			while ((count = body.read(buffer)) != -1) {
+				ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+
+				while (data.hasRemaining()) {
+					position += part.write(data, position);
+				}
+			}
+
+			if (position != (end + 1)) {
+				throw new IOException(
+					String.format("Incomplete range %d-%d received from %s", start, end, archiveUri)
+				);
+			}
+		}
+	}
+
+	private static Set<Integer> readProgress(Path progressFile, long length)
+		throws IOException
+	{
+		Set<Integer> completedChunks = new HashSet<>();
+
+		if (!Files.isRegularFile(progressFile)) {
+			Files.writeString(progressFile, length + "\n");
+
+			return completedChunks;
+		}
+
+		List<String> lines = Files.readAllLines(progressFile, StandardCharsets.UTF_8);
+
+		if (lines.isEmpty() || !lines.get(0).equals(Long.toString(length))) {
+			Files.writeString(progressFile, length + "\n");
+
+			return completedChunks;
+		}
+
+		for (String line : lines.subList(1, lines.size())) {
+			if (!line.isBlank()) {
+				completedChunks.add(Integer.parseInt(line.trim()));
+			}
+		}
+
+		return completedChunks;
+	}
+
+	private static synchronized void recordProgress(Path progressFile, int chunk)
+		throws IOException
+	{
+		Files.writeString(progressFile, chunk + "\n", StandardOpenOption.APPEND);
+	}
+
+	private static void awaitAll(List<Future<Void>> futures)
+		throws IOException
+	{
+		Option<Throwable> failure = Option.none();
+
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				failure = failure.orElse(Option.of(e.getCause()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				throw new InterruptedIOException("Interrupted while downloading NodeJS");
+			}
+		}
+
+		if (failure.isDefined()) {
+			throw (failure.get() instanceof IOException ioException)
+				? ioException
+				: new IOException("Failed to download NodeJS", failure.get());
+		}
+	}
+
+	private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+		throws IOException
+	{
+		try {
+			return client.send(request, bodyHandler);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while downloading NodeJS");
+		}
+	}
+
+	private static void expectStatus(HttpResponse<?> response, URI uri, int expectedStatus)
+		throws IOException
+	{
+		if (response.statusCode() != expectedStatus) {
+			throw new IOException(String.format(
+				"Unexpected HTTP status %d for %s (expected %d)", response.statusCode(), uri, expectedStatus
+			));
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import io.vavr.control.Option;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads NodeJS archives ({@code .tar.gz} and {@code .zip}) in a single streaming pass. The top-level directory every
+ * NodeJS archive contains is removed from the entry paths. Symlinks and permission bits are reported as stored in the
+ * archive.
+ */
+final class NodeArchiveReader
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private NodeArchiveReader()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Passes every entry of the archive to the visitor in the order in which they are stored. The top-level directory
+	 * itself is not reported.
+	 *
+	 * @param archive
+	 * 	The {@code .tar.gz} or {@code .zip} archive to read
+	 * @param visitor
+	 * 	The visitor receiving the entries
+	 *
+	 * @throws IOException
+	 * 	If the archive cannot be read or the visitor fails
+	 */
+	static void read(File archive, EntryVisitor visitor)
+		throws IOException
+	{
+		try (InputStream file = new BufferedInputStream(Files.newInputStream(archive.toPath()), BUFFER_SIZE)) {
+			if (archive.getName().endsWith(".zip")) {
+				readZip(new ZipArchiveInputStream(file), visitor);
+			} else {
+				readTar(new TarArchiveInputStream(new GZIPInputStream(file, BUFFER_SIZE)), visitor);
+			}
+		}
+	}
+
+	private static void readTar(ArchiveInputStream<TarArchiveEntry> tar, EntryVisitor visitor)
+		throws IOException
+	{
+		TarArchiveEntry entry;
+
+		while ((entry = tar.getNextEntry()) != null) {
+			Option<String> path = stripTopLevelDirectory(entry.getName());
+
+			if (path.isDefined()) {
+				visitor.visit(toArchiveEntry(entry, path.get()), tar);
+			}
+		}
+	}
+
+	private static ArchiveEntry toArchiveEntry(TarArchiveEntry entry, String path)
+		throws IOException
+	{
+		if (entry.isSymbolicLink()) {
+			return new ArchiveEntry(path, ArchiveEntry.Type.SYMLINK, 0, entry.getLinkName());
+		} else if (entry.isLink()) {
+			String linkedPath = stripTopLevelDirectory(entry.getLinkName())
+				.getOrElseThrow(() -> new IOException("Invalid hard link in archive: " + path));
+
+			return new ArchiveEntry(path, ArchiveEntry.Type.HARDLINK, 0, linkedPath);
+		} else if (entry.isDirectory()) {
+			return new ArchiveEntry(path, ArchiveEntry.Type.DIRECTORY, entry.getMode(), "");
+		} else {
+			return new ArchiveEntry(path, ArchiveEntry.Type.FILE, entry.getMode(), "");
+		}
+	}
+
+	private static void readZip(ArchiveInputStream<ZipArchiveEntry> zip, EntryVisitor visitor)
+		throws IOException
+	{
+		ZipArchiveEntry entry;
+
+		while ((entry = zip.getNextEntry()) != null) {
+			Option<String> path = stripTopLevelDirectory(entry.getName());
+
+			if (path.isEmpty()) {
+				continue;
+			}
+
+			ArchiveEntry.Type type = entry.isDirectory() ? ArchiveEntry.Type.DIRECTORY : ArchiveEntry.Type.FILE;
+
+			visitor.visit(new ArchiveEntry(path.get(), type, entry.getUnixMode(), ""), zip);
+		}
+	}
+
+	private static Option<String> stripTopLevelDirectory(String name)
+	{
+		String normalizedName = name.replace('\\', '/');
+		int separator = normalizedName.indexOf('/');
+		String path = (separator < 0) ? "" : normalizedName.substring(separator + 1);
+
+		while (path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+
+		return path.isEmpty() ? Option.none() : Option.of(path);
+	}
+
+	/**
+	 * Receives the entries of an archive.
+	 */
+	@FunctionalInterface
+	interface EntryVisitor
+	{
+		/**
+		 * Handles a single archive entry.
+		 *
+		 * @param entry
+		 * 	The entry being read
+		 * @param content
+		 * 	The content of the entry. Only meaningful for file entries. Must not be closed.
+		 *
+		 * @throws IOException
+		 * 	If handling the entry fails
+		 */
+		void visit(ArchiveEntry entry, InputStream content)
+			throws IOException;
+	}
+}
@@ -7,8 +7,8 @@ import java.util.Locale;
 import java.util.Properties;
 
 /**
- * A factory to compute a Gradle compatible simplified dependency string for the requested version of NodeJS. At this
- * time, only the following operating systems are recognized/supported.
+ * A factory to compute a Gradle compatible simplified dependency string (or the plain archive name) for the requested
+ * version of NodeJS. At this time, only the following operating systems are recognized/supported.
  * <ul>
  *    <li>macOS</li>
  *    <li>Windows</li>
@@ -48,6 +48,31 @@ final class NodeDependencyFactory
 		);
 	}
 
+	/**
+	 * Computes the file name of the NodeJS archive for the requested version as published on the NodeJS distribution
+	 * site, for example {@code node-v20.6.0-linux-x64.tar.gz}.
+	 *
+	 * @param version
+	 * 	The version of NodeJS to install
+	 * @param systemProperties
+	 * 	The system properties containing the details of the OS and the architecture.
+	 *
+	 * @return The archive file name or {@code none()}, if the environment is not supported
+	 */
+	static Option<String> computeArchiveName(CharSequence version, Properties systemProperties)
+	{
+		Option<String> operatingSystem = computeOperatingSystem(systemProperties);
+
+		return operatingSystem.map(osName ->
+			String.format("node-v%s-%s-%s.%s",
+				version,
+				osName,
+				computeArchitecture(systemProperties, version),
+				computeExtension(systemProperties)
+			)
+		);
+	}
+
 	private static Option<String> computeOperatingSystem(Properties systemProperties)
 	{
 		String osName = systemProperties.getProperty("os.name", "").toLowerCase(Locale.ENGLISH);
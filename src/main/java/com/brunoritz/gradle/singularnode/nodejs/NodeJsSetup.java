@@ -1,16 +1,20 @@
 package com.brunoritz.gradle.singularnode.nodejs;
 
 import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import com.brunoritz.gradle.singularnode.bundle.ToolBundleSetup;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
 import org.gradle.api.Project;
-import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.dsl.DependencyHandler;
 import org.gradle.api.artifacts.repositories.IvyArtifactRepository;
+import org.gradle.api.file.RegularFile;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.TaskProvider;
 
 import static com.brunoritz.gradle.singularnode.platform.layout.InstallationLayoutFactory.platformDependentLayout;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * Configures all tasks, repositories and dependencies required for installing NodeJS locally.
@@ -27,7 +31,9 @@ public final class NodeJsSetup
 	 * <ul>
 	 *     <li>Creates a {@code nodeJs} extension via which the installation can be customized</li>
 	 *     <li>Creates an Ivy repository that is used to fetch the NodeJS archive from</li>
-	 *     <li>Creates a depdency configuration for the specific NdeJS version</li>
+	 *     <li>Creates a {@code nodeJsDistribution} configuration for the specific NodeJS version</li>
+	 *     <li>Creates a {@code downloadNodeJs} task that downloads the archive if parallel downloads are enabled</li>
+	 *     <li>Creates {@code exportToolBundle} and {@code unpackToolBundle} tasks for offline installations</li>
 	 *     <li>Creates an {@code installNodeJs} task that performs the actual installation</li>
 	 * </ul>
 	 *
@@ -41,8 +47,10 @@ public final class NodeJsSetup
 		NodeJsExtension configuration = project.getExtensions().create("nodeJs", NodeJsExtension.class);
 		TaskProvider<InstallNodeJsTask> nodeInstallationTask = registerInstallTask(project, configuration);
 
+		TaskProvider<DownloadNodeJsTask> nodeDownloadTask = registerDownloadTask(project, configuration);
+
 		configureNodeRepository(project, configuration);
-		createNodeDependency(project, nodeInstallationTask);
+		createNodeDependency(project, configuration, nodeInstallationTask, nodeDownloadTask);
 
 		return nodeInstallationTask;
 	}
@@ -58,11 +66,41 @@ public final class NodeJsSetup
 			task.setGroup("NodeJS");
 			task.getInstallationLayout().set(layout);
 			task.getNodeJsInstallDir().set(layout.nodeJsInstallDir());
+			task.getShareDistribution().set(configuration.shareNodeJsDistributions);
+			task.getDistributionStoreDir().set(configuration.distributionStoreDir);
+			task.getIncrementalUpgrade().set(configuration.incrementalNodeJsUpgrade);
 		});
 
 		return nodeInstallationTask;
 	}
 
+	private static TaskProvider<DownloadNodeJsTask> registerDownloadTask(
+		Project project,
+		NodeJsExtension configuration)
+	{
+		Provider<String> archiveName = archiveName(configuration);
+		TaskProvider<DownloadNodeJsTask> nodeDownloadTask =
+			project.getTasks().register("downloadNodeJs", DownloadNodeJsTask.class);
+
+		nodeDownloadTask.configure(task -> {
+			task.setGroup("NodeJS");
+			task.getDownloadBase().set(configuration.nodeDownloadBase);
+			task.getNodeVersion().set(configuration.nodeVersion);
+			task.getConnections().set(configuration.nodeJsDownloadConnections);
+			task.getArchiveFile().set(configuration.nodeJsDownloadDir.file(archiveName));
+		});
+
+		return nodeDownloadTask;
+	}
+
+	private static Provider<String> archiveName(NodeJsExtension configuration)
+	{
+		return configuration.nodeVersion.map(version ->
+			NodeDependencyFactory.computeArchiveName(version, System.getProperties())
+				.getOrElseThrow(() -> new IllegalStateException("Running on unsupported operating system"))
+		);
+	}
+
 	private static void configureNodeRepository(Project project, NodeJsExtension configuration)
 	{
 		project.getRepositories().ivy(repo -> {
@@ -74,27 +112,56 @@ public final class NodeJsSetup
 		});
 	}
 
-	private static void createNodeDependency(Project project, TaskProvider<InstallNodeJsTask> nodeInstallationTask)
+	private static void createNodeDependency(
+		Project project,
+		NodeJsExtension configuration,
+		TaskProvider<InstallNodeJsTask> nodeInstallationTask,
+		TaskProvider<DownloadNodeJsTask> nodeDownloadTask)
 	{
-		Provider<File> archiveProvider = project.getProviders().provider(() -> nodeJsArchive(project));
+		Configuration nodeDistribution = nodeDistributionConfiguration(project, configuration);
+		Provider<File> archiveProvider = nodeDistribution.getIncoming()
+			.getArtifacts()
+			.getResolvedArtifacts()
+			.map(artifacts -> artifacts.iterator().next().getFile());
+		Provider<RegularFile> resolvedArchive = project.getLayout().file(archiveProvider);
+		Provider<RegularFile> downloadedArchive = nodeDownloadTask.flatMap(DownloadNodeJsTask::getArchiveFile);
+		Provider<RegularFile> onlineArchive = configuration.parallelNodeJsDownload.flatMap(parallel ->
+			parallel ? downloadedArchive : resolvedArchive
+		);
+		Provider<RegularFile> bundledArchive =
+			ToolBundleSetup.configureToolBundle(project, configuration, onlineArchive, archiveName(configuration));
 
-		nodeInstallationTask.configure(task -> task.getNodeArchive().set(project.getLayout().file(archiveProvider)));
+		nodeInstallationTask.configure(task -> {
+			task.dependsOn(configuration.parallelNodeJsDownload.zip(configuration.offline, (parallel, offline) ->
+				(parallel && !offline) ? List.of(nodeDownloadTask) : List.of()
+			));
+			task.getNodeArchive().set(configuration.offline.flatMap(offline ->
+				offline ? bundledArchive : onlineArchive
+			));
+		});
 	}
 
-	private static File nodeJsArchive(Project project)
+	/*
+	 * The dependency is added lazily, so the NodeJS version is only queried once the archive is actually needed. Since
+	 * the archive is obtained from the artifacts of a regular configuration, the resolution result can be stored in
+	 * the configuration cache.
+	 */
+	private static Configuration nodeDistributionConfiguration(Project project, NodeJsExtension configuration)
 	{
-		NodeJsExtension configuration = project.getExtensions().getByType(NodeJsExtension.class);
-		String nodeDependencySpec = NodeDependencyFactory.computeDependencyString(
-				configuration.nodeVersion.get(),
-				System.getProperties()
+		DependencyHandler dependencies = project.getDependencies();
+		Configuration nodeDistribution = project.getConfigurations().create("nodeJsDistribution", config -> {
+			config.setCanBeConsumed(false);
+			config.setCanBeResolved(true);
+			config.setTransitive(false);
+		});
+
+		nodeDistribution.getDependencies().addLater(configuration.nodeVersion.map(version ->
+			dependencies.create(
+				NodeDependencyFactory.computeDependencyString(version, System.getProperties())
+					.getOrElseThrow(() -> new IllegalStateException("Running on unsupported operating system"))
 			)
-			.getOrElseThrow(() -> new IllegalStateException("Running on unsupported operating system"));
-		Dependency nodeDependency = project.getDependencies().create(nodeDependencySpec);
-
-		return project.getConfigurations().detachedConfiguration(nodeDependency)
-			.setTransitive(false)
-			.resolve()
-			.iterator()
-			.next();
+		));
+
+		return nodeDistribution;
 	}
 }
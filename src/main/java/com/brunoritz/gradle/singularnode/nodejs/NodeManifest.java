@@ -0,0 +1,317 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import com.brunoritz.gradle.singularnode.platform.Checksums;
+import io.vavr.control.Option;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Describes the contents of a NodeJS installation: every directory, file (by its SHA-256 checksum) and symlink
+ * (by its target) along with the permission bits. A manifest can be computed from an archive as well as from an
+ * existing installation, which allows determining exactly those entries that differ between the two.
+ * <p>
+ * Hard links contained in an archive are described as regular files having the content of the linked file.
+ */
+final class NodeManifest
+{
+	private static final boolean POSIX_PERMISSIONS =
+		FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+	private static final int PERMISSION_MASK = 0777;
+	private static final int OWNER_ACCESS = 0700;
+
+	private final SortedMap<String, Descriptor> entries;
+
+	private NodeManifest(SortedMap<String, Descriptor> entries)
+	{
+		this.entries = Collections.unmodifiableSortedMap(entries);
+	}
+
+	/**
+	 * Computes the manifest of the installation the given archive would produce. The archive is read without
+	 * extracting anything.
+	 *
+	 * @param archive
+	 * 	The NodeJS archive to describe
+	 *
+	 * @return The manifest of the archive contents
+	 *
+	 * @throws IOException
+	 * 	If the archive cannot be read
+	 */
+	static NodeManifest ofArchive(File archive)
+		throws IOException
+	{
+		SortedMap<String, Descriptor> entries = new TreeMap<>();
+
+		NodeArchiveReader.read(archive, (entry, content) -> {
+			Descriptor descriptor = describe(entry, content, entries);
+
+			entries.put(entry.path(), descriptor);
+		});
+
+		return new NodeManifest(entries);
+	}
+
+	private static Descriptor describe(
+		ArchiveEntry entry,
+		InputStream content,
+		SortedMap<String, Descriptor> previous)
+		throws IOException
+	{
+		int mode = entry.mode() & PERMISSION_MASK;
+
+		return switch (entry.type()) {
+			case DIRECTORY -> new Descriptor(Type.DIRECTORY, (mode == 0) ? 0 : (mode | OWNER_ACCESS), "");
+			case FILE -> new Descriptor(Type.FILE, mode, Checksums.sha256(content));
+			case SYMLINK -> new Descriptor(Type.SYMLINK, 0, entry.linkTarget());
+			case HARDLINK -> Option.of(previous.get(entry.linkTarget()))
+				.getOrElseThrow(() -> new IOException("Hard link to unknown entry: " + entry.path()));
+		};
+	}
+
+	/**
+	 * Computes the manifest of an existing installation. Symlinks are described, but not followed.
+	 *
+	 * @param installDir
+	 * 	The root of the installation to describe
+	 *
+	 * @return The manifest of the installation or an empty manifest, if the installation does not exist
+	 *
+	 * @throws IOException
+	 * 	If the installation cannot be read
+	 */
+	static NodeManifest ofInstallation(Path installDir)
+		throws IOException
+	{
+		SortedMap<String, Descriptor> entries = new TreeMap<>();
+
+		if (!Files.isDirectory(installDir, LinkOption.NOFOLLOW_LINKS)) {
+			return new NodeManifest(entries);
+		}
+
+		List<Path> paths;
+
+		try (Stream<Path> walk = Files.walk(installDir)) {
+			paths = walk.filter(path -> !path.equals(installDir)).toList();
+		}
+
+		for (Path path : paths) {
+			String relativePath = installDir.relativize(path).toString().replace(File.separatorChar, '/');
+
+			entries.put(relativePath, describe(path));
+		}
+
+		return new NodeManifest(entries);
+	}
+
+	private static Descriptor describe(Path path)
+		throws IOException
+	{
+		if (Files.isSymbolicLink(path)) {
+			return new Descriptor(Type.SYMLINK, 0, Files.readSymbolicLink(path).toString());
+		} else if (Files.isDirectory(path)) {
+			return new Descriptor(Type.DIRECTORY, modeOf(path), "");
+		} else {
+			return new Descriptor(Type.FILE, modeOf(path), Checksums.sha256(path.toFile()));
+		}
+	}
+
+	private static int modeOf(Path path)
+		throws IOException
+	{
+		if (!POSIX_PERMISSIONS) {
+			return 0;
+		}
+
+		Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+		PosixFilePermission[] bits = PosixFilePermission.values();
+		int mode = 0;
+
+		for (int index = 0; index < bits.length; index++) {
+			if (permissions.contains(bits[index])) {
+				mode |= 1 << (bits.length - 1 - index);
+			}
+		}
+
+		return mode;
+	}
+
+	/**
+	 * Reads a manifest previously written using {@link #writeTo(Path)}.
+	 *
+	 * @param file
+	 * 	The manifest file
+	 *
+	 * @return The manifest or {@code none()}, if the file does not exist
+	 *
+	 * @throws IOException
+	 * 	If the file cannot be read or is malformed
+	 */
+	static Option<NodeManifest> readFrom(Path file)
+		throws IOException
+	{
+		if (!Files.isRegularFile(file)) {
+			return Option.none();
+		}
+
+		SortedMap<String, Descriptor> entries = new TreeMap<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(" ", 4);
+
+				if (fields.length != 4) {
+					throw new IOException("Malformed manifest entry: " + line);
+				}
+
+				Descriptor descriptor =
+					new Descriptor(Type.fromCode(fields[0]), Integer.parseInt(fields[1], 8), fields[2]);
+
+				entries.put(fields[3], descriptor);
+			}
+		}
+
+		return Option.of(new NodeManifest(entries));
+	}
+
+	/**
+	 * Writes the manifest to the given file, replacing any existing content.
+	 *
+	 * @param file
+	 * 	The file to write
+	 *
+	 * @throws IOException
+	 * 	If the file cannot be written
+	 */
+	void writeTo(Path file)
+		throws IOException
+	{
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Descriptor> entry : entries.entrySet()) {
+				Descriptor value = entry.getValue();
+
+				writer.write(String.format("%s %o %s %s%n",
+					value.type.code, value.mode, value.value.isEmpty() ? "-" : value.value, entry.getKey()
+				));
+			}
+		}
+	}
+
+	/**
+	 * Returns the paths of all entries described by this manifest.
+	 */
+	Set<String> paths()
+	{
+		return entries.keySet();
+	}
+
+	/**
+	 * Returns the paths of all entries of this manifest that are either missing from or differ in {@code actual}.
+	 * Permission bits are only compared if both manifests provide them.
+	 *
+	 * @param actual
+	 * 	The manifest to compare against
+	 *
+	 * @return The paths of this manifest that are not matched by {@code actual}
+	 */
+	List<String> unmatchedPaths(NodeManifest actual)
+	{
+		List<String> unmatched = new ArrayList<>();
+
+		for (Map.Entry<String, Descriptor> entry : entries.entrySet()) {
+			Descriptor actualEntry = actual.entries.get(entry.getKey());
+
+			if ((actualEntry == null) || !entry.getValue().matches(actualEntry)) {
+				unmatched.add(entry.getKey());
+			}
+		}
+
+		return unmatched;
+	}
+
+	/**
+	 * Returns whether the entry at the given path is of a different type in {@code other}.
+	 *
+	 * @param path
+	 * 	The path of the entry to check
+	 * @param other
+	 * 	The manifest to compare against
+	 *
+	 * @return {@code true}, if both manifests contain the path, but with different types
+	 */
+	boolean typeDiffers(String path, NodeManifest other)
+	{
+		Descriptor entry = entries.get(path);
+		Descriptor otherEntry = other.entries.get(path);
+
+		return (entry != null) && (otherEntry != null) && (entry.type != otherEntry.type);
+	}
+
+	private enum Type
+	{
+		DIRECTORY("D"),
+		FILE("F"),
+		SYMLINK("L");
+
+		private final String code;
+
+		Type(String code)
+		{
+			this.code = code;
+		}
+
+		static Type fromCode(String code)
+			throws IOException
+		{
+			for (Type type : values()) {
+				if (type.code.equals(code)) {
+					return type;
+				}
+			}
+
+			throw new IOException("Unknown manifest entry type: " + code);
+		}
+	}
+
+	private static final class Descriptor
+	{
+		private final Type type;
+		private final int mode;
+		private final String value;
+
+		Descriptor(Type type, int mode, String value)
+		{
+			this.type = type;
+			this.mode = mode;
+			this.value = "-".equals(value) ? "" : value;
+		}
+
+		boolean matches(Descriptor other)
+		{
+			boolean modeMatches = (mode == 0) || (other.mode == 0) || (mode == other.mode);
+
+			return (type == other.type) && value.equals(other.value) && modeMatches;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.brunoritz.gradle.singularnode.nodejs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Extracts NodeJS archives straight into the installation directory in a single pass. Contrary to Gradle's archive
+ * support, no intermediate copy of the archive contents is made and symlinks as well as permission bits are preserved.
+ * Hence, no repairs of the extracted distribution are necessary.
+ * <p>
+ * Since package tarballs of NPM registries share the format of NodeJS archives, including the top-level directory,
+ * they are extracted the same way. Contrary to NodeJS archives, links are never legitimate within package tarballs,
+ * which is why NPM ignores them. Since these tarballs are untrusted, they are rejected instead.
+ */
+public final class StreamingExtractor
+{
+	private static final boolean POSIX_PERMISSIONS =
+		FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+	private static final int OWNER_ACCESS = 0700;
+
+	private static final PosixFilePermission[] PERMISSION_BITS = {
+		PosixFilePermission.OTHERS_EXECUTE,
+		PosixFilePermission.OTHERS_WRITE,
+		PosixFilePermission.OTHERS_READ,
+		PosixFilePermission.GROUP_EXECUTE,
+		PosixFilePermission.GROUP_WRITE,
+		PosixFilePermission.GROUP_READ,
+		PosixFilePermission.OWNER_EXECUTE,
+		PosixFilePermission.OWNER_WRITE,
+		PosixFilePermission.OWNER_READ
+	};
+
+	private StreamingExtractor()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Extracts the archive into the target directory. The top-level directory of the archive is not recreated.
+	 *
+	 * @param archive
+	 * 	The {@code .tar.gz} or {@code .zip} archive to extract
+	 * @param targetDir
+	 * 	The directory to extract the contents into
+	 *
+	 * @throws IOException
+	 * 	If reading the archive or writing any entry fails
+	 */
+	public static void extract(File archive, File targetDir)
+		throws IOException
+	{
+		Path target = targetDir.toPath();
+
+		Files.createDirectories(target);
+		NodeArchiveReader.read(archive, (entry, content) -> write(target, entry, content));
+	}
+
+	/**
+	 * Extracts the tarball of a package as published to a registry into the target directory. The top-level directory
+	 * of the tarball is not recreated.
+	 *
+	 * @param tarball
+	 * 	The package tarball to extract
+	 * @param targetDir
+	 * 	The directory to extract the contents into
+	 *
+	 * @throws IOException
+	 * 	If reading the tarball or writing any entry fails, or the tarball contains links
+	 */
+	static void extractPackage(File tarball, File targetDir)
+		throws IOException
+	{
+		Path target = targetDir.toPath();
+
+		Files.createDirectories(target);
+		NodeArchiveReader.read(tarball, (entry, content) -> {
+			if ((entry.type() == ArchiveEntry.Type.SYMLINK) || (entry.type() == ArchiveEntry.Type.HARDLINK)) {
+				throw new IOException("Package tarballs must not contain links: " + entry.path());
+			}
+
+			write(target, entry, content);
+		});
+	}
+
+	/**
+	 * Writes a single archive entry below the target directory. An existing file at the entry's location will be
+	 * replaced.
+	 *
+	 * @param targetDir
+	 * 	The installation root
+	 * @param entry
+	 * 	The entry to write
+	 * @param content
+	 * 	The content of the entry, only read for file entries
+	 *
+	 * @throws IOException
+	 * 	If the entry cannot be written or it, or the target of a link, would be placed outside the target directory
+	 */
+	static void write(Path targetDir, ArchiveEntry entry, InputStream content)
+		throws IOException
+	{
+		Path destination = resolveSafely(targetDir, entry.path());
+
+		requireWithin(targetDir, (entry.type() == ArchiveEntry.Type.DIRECTORY) ? destination : destination.getParent(),
+			entry.path());
+
+		switch (entry.type()) {
+			case DIRECTORY -> {
+				Files.createDirectories(destination);
+				applyMode(destination, (entry.mode() == 0) ? 0 : (entry.mode() | OWNER_ACCESS));
+			}
+			case FILE -> {
+				Files.createDirectories(destination.getParent());
+				Files.copy(content, destination, StandardCopyOption.REPLACE_EXISTING);
+				applyMode(destination, entry.mode());
+			}
+			case SYMLINK -> {
+				Files.createDirectories(destination.getParent());
+				Files.deleteIfExists(destination);
+				Files.createSymbolicLink(destination, linkTarget(targetDir, destination, entry));
+			}
+			case HARDLINK -> {
+				Path linked = resolveSafely(targetDir, entry.linkTarget());
+
+				requireWithin(targetDir, linked, entry.linkTarget());
+
+				Files.createDirectories(destination.getParent());
+				Files.deleteIfExists(destination);
+				Files.createLink(destination, linked);
+			}
+			default -> throw new IllegalStateException("Unknown entry type: " + entry.type());
+		}
+	}
+
+	private static Path resolveSafely(Path targetDir, String entryPath)
+		throws IOException
+	{
+		Path destination = targetDir.resolve(entryPath).normalize();
+
+		if (!destination.startsWith(targetDir.normalize())) {
+			throw new IOException("Archive entry points outside of the installation: " + entryPath);
+		}
+
+		return destination;
+	}
+
+	/*
+	 * Symlink targets are relative to the directory containing the link. Absolute targets are rejected outright since
+	 * they cannot be within an installation that may be moved.
+	 */
+	private static Path linkTarget(Path targetDir, Path destination, ArchiveEntry entry)
+		throws IOException
+	{
+		Path linkTarget = destination.getFileSystem().getPath(entry.linkTarget());
+		Path resolved = destination.getParent().resolve(linkTarget).normalize();
+
+		if (linkTarget.isAbsolute() || (linkTarget.getRoot() != null) || !resolved.startsWith(targetDir.normalize())) {
+			throw new IOException(
+				String.format("Archive link %s points outside of the installation: %s", entry.path(),
+					entry.linkTarget())
+			);
+		}
+
+		return linkTarget;
+	}
+
+	/*
+	 * The lexical check of resolveSafely() does not see links that have already been extracted. An entry such as
+	 * a/etc/passwd following a link a pointing elsewhere would be written through that link. Hence, the real path of
+	 * the nearest existing ancestor of the location about to be written must be within the target directory as well.
+	 */
+	private static void requireWithin(Path targetDir, Path path, String entryPath)
+		throws IOException
+	{
+		Path existing = path;
+
+		while ((existing != null) && !Files.exists(existing)) {
+			existing = existing.getParent();
+		}
+
+		if ((existing == null) || !existing.toRealPath().startsWith(targetDir.toRealPath())) {
+			throw new IOException("Archive entry points outside of the installation: " + entryPath);
+		}
+	}
+
+	private static void applyMode(Path path, int mode)
+		throws IOException
+	{
+		if (!POSIX_PERMISSIONS || (mode == 0)) {
+			return;
+		}
+
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+
+		for (int bit = 0; bit < PERMISSION_BITS.length; bit++) {
+			if ((mode & (1 << bit)) != 0) {
+				permissions.add(PERMISSION_BITS[bit]);
+			}
+		}
+
+		Files.setPosixFilePermissions(path, permissions);
+	}
+}
@@ -0,0 +1,292 @@
+package com.brunoritz.gradle.singularnode.npm;
+
+import com.brunoritz.gradle.singularnode.cache.PackageCache;
+import com.brunoritz.gradle.singularnode.platform.ExecutionTelemetry;
+import com.brunoritz.gradle.singularnode.platform.NodeCommand;
+import com.brunoritz.gradle.singularnode.platform.OutputOptions;
+import com.brunoritz.gradle.singularnode.platform.PackageScript;
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import groovy.json.JsonOutput;
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import static org.gradle.api.tasks.PathSensitivity.RELATIVE;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The task type for running several scripts of the {@code package.json} at once. All scripts are run by a single
+ * NodeJS process, which starts a shell for each script the way {@code npm run} does, including its {@code pre} and
+ * {@code post} scripts, with {@code node_modules/.bin} on the {@code PATH} and the {@code npm_*} lifecycle variables
+ * set. Compared to one {@link NpmTask} per script, NodeJS is started once and NPM not at all. The command lines and
+ * their environment are determined by {@link PackageScript}, exactly as for {@link NpmTask} tasks executing scripts
+ * directly.
+ * <p>
+ * Up to {@code parallelism} scripts run at the same time. Unless disabled by {@code prefixOutput}, every line written
+ * by a script is prefixed with the name of the script. All scripts run to completion, even if some of them fail. The
+ * task then fails, naming every failed script along with its exit code. The outcome of each script is logged and
+ * available from {@link #getResults()} once the task has been executed.
+ *
+ * <b>Example Usage</b>
+ * <pre>
+ * // package.json
+ * {
+ *     "scripts": {
+ *         "lint:css": "stylelint 'src/**&#47;*.css'",
+ *         "lint:js": "eslint src",
+ *         "typecheck": "tsc --noEmit"
+ *     }
+ * }
+ *
+ * // build.gradle
+ * task check(type: NpmRunTask) {
+ *     scripts.set(['lint:css', 'lint:js', 'typecheck'])
+ *     parallelism.set(2)
+ * }
+ * </pre>
+ */
+public abstract class NpmRunTask
+	extends DefaultTask
+{
+	private static final String RUNNER_SCRIPT = "npm-run.js";
+
+	private final ExecOperations processes;
+	private List<ScriptResult> results = List.empty();
+
+	@Inject
+	public NpmRunTask(ExecOperations processes)
+	{
+		this.processes = processes;
+
+		getWorkingDirectory().convention(getProject().getLayout().getProjectDirectory());
+		getOutputOptions().convention(OutputOptions.unchanged());
+		getLogFile().convention(getProject().getLayout().getBuildDirectory().file("logs/" + getName() + ".log"));
+		getParallelism().convention(Runtime.getRuntime().availableProcessors());
+		getPrefixOutput().convention(true);
+	}
+
+	/**
+	 * The names of the scripts to run, as declared in the {@code scripts} of the {@code package.json}.
+	 */
+	@Input
+	public abstract ListProperty<String> getScripts();
+
+	/**
+	 * The maximum number of scripts running at the same time.
+	 * <p>
+	 * Defaults to the number of available processors.
+	 */
+	@Input
+	public abstract Property<Integer> getParallelism();
+
+	/**
+	 * Whether every line written by a script is prefixed with the name of the script.
+	 * <p>
+	 * Defaults to {@code true}.
+	 */
+	@Input
+	public abstract Property<Boolean> getPrefixOutput();
+
+	@Input
+	@Optional
+	public abstract MapProperty<CharSequence, CharSequence> getEnvironment();
+
+	@Internal
+	public abstract DirectoryProperty getWorkingDirectory();
+
+	@Internal
+	public abstract Property<InstallationLayout> getInstallationLayout();
+
+	/**
+	 * How the output of this task is forwarded to the console.
+	 */
+	@Internal
+	public abstract Property<OutputOptions> getOutputOptions();
+
+	/**
+	 * The file the output of this task is written to, if requested by the {@link #getOutputOptions() output options}.
+	 * <p>
+	 * Defaults to {@code build/logs/<task name>.log} of the project.
+	 */
+	@Internal
+	public abstract RegularFileProperty getLogFile();
+
+	/**
+	 * Records the telemetry of the NodeJS invocation of this task. If not set, no telemetry is recorded.
+	 */
+	@Internal
+	public abstract Property<ExecutionTelemetry> getTelemetry();
+
+	/**
+	 * The machine-wide cache shared by the package managers of all checkouts. If not set, the package manager uses
+	 * its default cache location.
+	 */
+	@Internal
+	public abstract DirectoryProperty getPackageCacheDirectory();
+
+	@InputFile
+	@PathSensitive(RELATIVE)
+	@Optional
+	@Nullable
+	public File getPackageFile()
+	{
+		File packageFile = getWorkingDirectory().file("package.json").get().getAsFile();
+
+		return packageFile.exists() ? packageFile : null;
+	}
+
+	/**
+	 * Returns the outcome of each script, in the order of {@code scripts}.
+	 *
+	 * @return The results, which are empty unless the task has been executed
+	 */
+	@Internal
+	public List<ScriptResult> getResults()
+	{
+		return results;
+	}
+
+	@TaskAction
+	public void execute()
+		throws IOException
+	{
+		int parallelism = getParallelism().get();
+
+		if (parallelism < 1) {
+			throw new IllegalStateException("Parallelism must be at least 1, but is " + parallelism);
+		}
+
+		InstallationLayout layout = getInstallationLayout().get();
+		File workingDirectory = getWorkingDirectory().get().getAsFile();
+		File planFile = new File(getTemporaryDir(), "plan.json");
+		File resultsFile = new File(getTemporaryDir(), "results.json");
+		List<Tuple2<String, Option<PackageScript>>> scripts = List.ofAll(getScripts().get())
+			.map(script -> new Tuple2<>(script, PackageScript.named(workingDirectory, script)));
+
+		Files.deleteIfExists(resultsFile.toPath());
+		Files.deleteIfExists(getLogFile().get().getAsFile().toPath());
+		Files.writeString(planFile.toPath(), plan(scripts), StandardCharsets.UTF_8);
+
+		NodeCommand baseCommand = new NodeCommand(processes, workingDirectory, layout)
+			.args(runnerScript().getAbsolutePath(), planFile.getAbsolutePath(), resultsFile.getAbsolutePath())
+			.args(String.valueOf(parallelism), String.valueOf(getPrefixOutput().get()))
+			.withEnvironment(HashMap.ofAll(System.getenv()))
+			.withEnvironment(packageCache().map(cache -> cache.environment("npm")).getOrElse(HashMap.empty()));
+
+		/* All scripts belong to the same package, hence share the same environment */
+		NodeCommand command = scripts.find(script -> script._2().isDefined())
+			.map(script -> script._2().get().prepare(baseCommand, layout, layout.pathOfManagedNpmScript()))
+			.getOrElse(baseCommand)
+			.withEnvironment(HashMap.ofAll(getEnvironment().get()))
+			.withTelemetry(Option.of(getTelemetry().getOrNull()), getPath(), "npm")
+			.withOutput(getOutputOptions().get(), getPath(), getLogFile().get().getAsFile());
+
+		/*
+		 * The runner exits with a non-zero exit code if any script failed, so that the output of the failed scripts
+		 * is shown if it is written to a log file. Such failures are reported per script below. The runner itself
+		 * only failed if it did not write any results.
+		 */
+		try {
+			command.execute();
+		} catch (RuntimeException e) {
+			if (!resultsFile.isFile()) {
+				throw e;
+			}
+		}
+
+		results = ScriptResult.read(resultsFile);
+
+		reportResults();
+	}
+
+	private void reportResults()
+	{
+		int width = results.foldLeft(0, (longest, result) -> Math.max(longest, result.script().length()));
+		List<ScriptResult> failures = results.filter(result -> !result.succeeded());
+
+		for (ScriptResult result : results) {
+			getLogger().lifecycle(String.format("%-" + width + "s  %s in %d ms",
+				result.script(),
+				result.succeeded() ? "succeeded" : "failed with exit code " + result.exitCode(),
+				result.duration().toMillis()
+			));
+		}
+
+		if (!failures.isEmpty()) {
+			throw new IllegalStateException(String.format("%d of %d scripts failed: %s",
+				failures.size(),
+				results.size(),
+				failures.map(failure -> failure.script() + " (exit code " + failure.exitCode() + ")").mkString(", ")
+			));
+		}
+	}
+
+	/*
+	 * Scripts not declared by the package.json have no command lines, which the runner reports as a missing script.
+	 */
+	private static String plan(List<Tuple2<String, Option<PackageScript>>> scripts)
+	{
+		java.util.List<Map<String, Object>> plan = scripts.map(NpmRunTask::planEntry).toJavaList();
+
+		return JsonOutput.toJson(plan);
+	}
+
+	private static Map<String, Object> planEntry(Tuple2<String, Option<PackageScript>> script)
+	{
+		Map<String, Object> entry = new LinkedHashMap<>();
+
+		entry.put("script", script._1());
+		entry.put("commands", script._2()
+			.map(packageScript -> packageScript.commandLines(true)
+				.map(commandLine -> Map.of("event", commandLine._1(), "command", commandLine._2()))
+				.toJavaList())
+			.getOrNull());
+
+		return entry;
+	}
+
+	private File runnerScript()
+		throws IOException
+	{
+		File script = new File(getTemporaryDir(), RUNNER_SCRIPT);
+
+		try (InputStream content = NpmRunTask.class.getResourceAsStream(RUNNER_SCRIPT)) {
+			if (content == null) {
+				throw new IOException("NPM run script is missing from the plugin");
+			}
+
+			Files.copy(content, script.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		return script;
+	}
+
+	private Option<PackageCache> packageCache()
+	{
+		return Option.of(getPackageCacheDirectory().getAsFile().getOrNull()).map(PackageCache::new);
+	}
+}
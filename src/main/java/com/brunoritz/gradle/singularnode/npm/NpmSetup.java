@@ -1,15 +1,32 @@
 package com.brunoritz.gradle.singularnode.npm;
 
 import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import com.brunoritz.gradle.singularnode.affected.AffectedSetup;
+import com.brunoritz.gradle.singularnode.bundle.ToolBundleSetup;
+import com.brunoritz.gradle.singularnode.cache.PackageCacheSetup;
+import com.brunoritz.gradle.singularnode.cache.RestoreNodeModulesTask;
+import com.brunoritz.gradle.singularnode.nodejs.CorepackInstaller;
 import com.brunoritz.gradle.singularnode.nodejs.InstallNodeJsTask;
+import com.brunoritz.gradle.singularnode.platform.ExecutionTelemetry;
 import com.brunoritz.gradle.singularnode.platform.Lookup;
+import com.brunoritz.gradle.singularnode.platform.NodeWorkerService;
+import com.brunoritz.gradle.singularnode.platform.OutputOptions;
+import com.brunoritz.gradle.singularnode.platform.PackageInstallLimiter;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import com.brunoritz.gradle.singularnode.prefetch.PrefetchSetup;
+import com.brunoritz.gradle.singularnode.workspace.WorkspaceSetup;
+import com.brunoritz.gradle.singularnode.workspace.WorkspaceType;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.TaskProvider;
 
 import static com.brunoritz.gradle.singularnode.platform.layout.InstallationLayoutFactory.platformDependentLayout;
 
+import java.util.List;
+
 /**
  * Configures all required tasks and properties for the NPM package manager.
  */
@@ -25,6 +42,9 @@ public final class NpmSetup
 	/**
 	 * Configures the tasks needed to install the NPM package manager on the root project. The setup task itself will
 	 * depend on the one responsible for setting up NodeJS itself.
+	 * <p>
+	 * Additionally, an {@code installNpmWorkspace} task is registered. It installs the packages of an NPM workspace
+	 * declared in the root project, provided the workspace mode is enabled.
 	 *
 	 * @param project
 	 * 	The root project on which to register the setup task
@@ -47,13 +67,61 @@ public final class NpmSetup
 			task.getWorkingDirectory().set(project.getProjectDir());
 			task.getNpmInstallDirectory().set(layout.npmInstallDirectory());
 			task.getNpmVersion().set(configuration.npmVersion);
+			task.getPackageTarball().set(ToolBundleSetup.bundledPackage(project, configuration, "npm"));
+			task.getProvisioning().set(configuration.packageManagerProvisioning);
+			task.getPackageRegistry().set(configuration.packageRegistry);
+			task.getDeclaredVersion().set(CorepackInstaller.declaredVersion(project, configuration, "npm"));
+		});
+
+		registerWorkspaceInstallTask(project, configuration, layout, npmInstallationTask);
+	}
+
+	private static void registerWorkspaceInstallTask(
+		Project project,
+		NodeJsExtension configuration,
+		InstallationLayout layout,
+		TaskProvider<InstallNpmTask> npmInstallationTask)
+	{
+		Provider<PackageInstallLimiter> installLimiter = PackageInstallLimiter.register(project, configuration);
+		Provider<ExecutionTelemetry> telemetry = ExecutionTelemetry.register(project);
+		Provider<ExecutionTelemetry> enabledTelemetry =
+			configuration.executionTelemetry.filter(enabled -> enabled).flatMap(enabled -> telemetry);
+		Provider<Directory> packageCacheDirectory = PackageCacheSetup.sharedCacheDirectory(configuration);
+		Provider<Directory> packageStoreDirectory = PackageCacheSetup.packageStoreDirectory(configuration);
+		Provider<Boolean> workspaceInstallation =
+			WorkspaceSetup.workspaceInstallation(project, configuration, WorkspaceType.NPM);
+		TaskProvider<InstallNpmPackagesTask> workspaceInstallationTask =
+			project.getTasks().register("installNpmWorkspace", InstallNpmPackagesTask.class);
+
+		workspaceInstallationTask.configure(task -> {
+			task.setGroup(GROUP);
+			task.dependsOn(npmInstallationTask);
+			task.onlyIf("Workspace mode is enabled and the root project declares a workspace", workspaceTask ->
+				workspaceInstallation.get()
+			);
+
+			task.getArgs().set(configuration.npmInstallArgs);
+			task.getWorkingDirectory().set(project.getProjectDir());
+			task.getInstallationLayout().set(layout);
+			task.getInstallLimiter().set(installLimiter);
+			task.usesService(installLimiter);
+			task.getTelemetry().set(enabledTelemetry);
+			task.usesService(telemetry);
+			task.getPackageCacheDirectory().set(packageCacheDirectory);
+			task.getPreferOffline().set(configuration.prefetchPackages);
+			task.dependsOn(PrefetchSetup.prefetchDependency(project, configuration));
+			task.getPackageStoreDirectory().set(packageStoreDirectory);
+			task.getWorkspacePackageFiles().from(WorkspaceSetup.memberPackageFiles(project));
+
+			task.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			task.getInputs().property("npmVersion", configuration.npmVersion);
 		});
 	}
 
 	/**
 	 * Configures the tasks for any subproject using this plugin. A task for installing packages via NPM will be
-	 * registered {@code installNpmPackages}. Any consumer defined task of type {@link NpmTask} will automatically
-	 * be made dependent on the {@code installNpmPackages} task.
+	 * registered {@code installNpmPackages}. Any consumer defined task of type {@link NpmTask} or {@link NpmRunTask}
+	 * will automatically be made dependent on the {@code installNpmPackages} task.
 	 *
 	 * @param project
 	 * 	The subproject to configure
@@ -66,29 +134,96 @@ public final class NpmSetup
 			.getOrElseThrow(() -> new IllegalStateException("Running on unsupported OS"));
 		TaskProvider<Task> npmSetupTask = Lookup.rootProjectTask(project, "installNpm")
 			.getOrElseThrow(() -> new IllegalStateException("Requested task does not exist on root project"));
+		TaskProvider<Task> workspaceInstallationTask = Lookup.rootProjectTask(project, "installNpmWorkspace")
+			.getOrElseThrow(() -> new IllegalStateException("Requested task does not exist on root project"));
+		Provider<Boolean> workspaceInstallation =
+			WorkspaceSetup.workspaceInstallation(project, configuration, WorkspaceType.NPM);
+		Provider<PackageInstallLimiter> installLimiter = PackageInstallLimiter.register(project, configuration);
+		Provider<ExecutionTelemetry> telemetry = ExecutionTelemetry.register(project);
+		Provider<ExecutionTelemetry> enabledTelemetry =
+			configuration.executionTelemetry.filter(enabled -> enabled).flatMap(enabled -> telemetry);
+		Provider<Directory> packageCacheDirectory = PackageCacheSetup.sharedCacheDirectory(configuration);
+		Provider<Directory> packageStoreDirectory = PackageCacheSetup.packageStoreDirectory(configuration);
+		Provider<RegularFile> nodeModulesArchive = PackageCacheSetup.nodeModulesArchive(project, configuration, "npm");
 		TaskProvider<InstallNpmPackagesTask> installNpmPackagesTask =
 			project.getTasks().register("installNpmPackages", InstallNpmPackagesTask.class);
 
 		installNpmPackagesTask.configure(task -> {
 			task.setGroup(GROUP);
 			task.dependsOn(npmSetupTask);
+			AffectedSetup.onlyIfAffected(project, configuration, task);
 
 			task.getArgs().set(configuration.npmInstallArgs);
 			task.getWorkingDirectory().set(project.getProjectDir());
 			task.getInstallationLayout().set(layout);
+			task.getInstallLimiter().set(installLimiter);
+			task.usesService(installLimiter);
+			task.getTelemetry().set(enabledTelemetry);
+			task.usesService(telemetry);
+			task.getPackageCacheDirectory().set(packageCacheDirectory);
+			task.getPreferOffline().set(configuration.prefetchPackages);
+			task.dependsOn(PrefetchSetup.prefetchDependency(project, configuration));
+			task.getPackageStoreDirectory().set(packageStoreDirectory);
+			task.getWorkspaceInstallation().set(workspaceInstallation);
+			task.dependsOn(workspaceInstallation.map(enabled ->
+				enabled ? List.of(workspaceInstallationTask) : List.of()
+			));
+
+			task.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			task.getInputs().property("npmVersion", configuration.npmVersion);
+
+			task.getNodeModulesArchive().set(nodeModulesArchive);
+		});
+
+		TaskProvider<RestoreNodeModulesTask> restorePackagesTask = PackageCacheSetup.registerRestoreTask(
+			project, "restoreNpmPackages", GROUP, installNpmPackagesTask, nodeModulesArchive
+		);
+
+		Provider<NodeWorkerService> workerService = NodeWorkerService.register(project, layout);
+		Provider<NodeWorkerService> enabledWorkerService =
+			configuration.nodeWorkers.filter(enabled -> enabled).flatMap(enabled -> workerService);
+		Provider<OutputOptions> outputOptions = OutputOptions.configured(project, configuration);
+
+		project.getTasks().withType(NpmTask.class).configureEach(newNpmTask -> {
+			newNpmTask.dependsOn(installNpmPackagesTask);
+			newNpmTask.dependsOn(restorePackagesTask);
+			newNpmTask.dependsOn(WorkspaceSetup.projectTaskDependencies(
+				project, configuration, NpmTask.class, newNpmTask.getName()
+			));
+			AffectedSetup.onlyIfAffected(project, configuration, newNpmTask);
+			newNpmTask.getWorkingDirectory().set(project.getProjectDir());
+			newNpmTask.getInstallationLayout().set(layout);
+			newNpmTask.getWorkerService().set(enabledWorkerService);
+			newNpmTask.getDirectScriptExecution().set(configuration.directScriptExecution);
+			newNpmTask.getOutputOptions().set(outputOptions);
+			newNpmTask.usesService(workerService);
+			newNpmTask.getTelemetry().set(enabledTelemetry);
+			newNpmTask.usesService(telemetry);
+			newNpmTask.getPackageCacheDirectory().set(packageCacheDirectory);
+
+			newNpmTask.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			newNpmTask.getInputs().property("npmVersion", configuration.npmVersion);
 		});
 
-		project.getTasks().whenTaskAdded(newTask -> {
-			if (newTask instanceof NpmTask newNpmTask) {
-				newNpmTask.dependsOn(installNpmPackagesTask);
-				newNpmTask.getWorkingDirectory().set(project.getProjectDir());
-				newNpmTask.getInstallationLayout().set(layout);
+		project.getTasks().withType(NpmRunTask.class).configureEach(newNpmRunTask -> {
+			newNpmRunTask.dependsOn(installNpmPackagesTask);
+			newNpmRunTask.dependsOn(restorePackagesTask);
+			newNpmRunTask.dependsOn(WorkspaceSetup.projectTaskDependencies(
+				project, configuration, NpmRunTask.class, newNpmRunTask.getName()
+			));
+			AffectedSetup.onlyIfAffected(project, configuration, newNpmRunTask);
+			newNpmRunTask.getWorkingDirectory().set(project.getProjectDir());
+			newNpmRunTask.getInstallationLayout().set(layout);
+			newNpmRunTask.getTelemetry().set(enabledTelemetry);
+			newNpmRunTask.usesService(telemetry);
+			newNpmRunTask.getPackageCacheDirectory().set(packageCacheDirectory);
+			newNpmRunTask.getOutputOptions().set(outputOptions);
 
-				newNpmTask.getInputs().property("nodeJsVersion", configuration.nodeVersion);
-				newNpmTask.getInputs().property("npmVersion", configuration.npmVersion);
-			}
+			newNpmRunTask.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			newNpmRunTask.getInputs().property("npmVersion", configuration.npmVersion);
 		});
 
 		project.getExtensions().getExtraProperties().set("NpmTask", NpmTask.class);
+		project.getExtensions().getExtraProperties().set("NpmRunTask", NpmRunTask.class);
 	}
 }
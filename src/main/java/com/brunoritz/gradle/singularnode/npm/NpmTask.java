@@ -1,24 +1,36 @@
 package com.brunoritz.gradle.singularnode.npm;
 
+import com.brunoritz.gradle.singularnode.cache.PackageCache;
+import com.brunoritz.gradle.singularnode.platform.ExecutionTelemetry;
 import com.brunoritz.gradle.singularnode.platform.NodeCommand;
+import com.brunoritz.gradle.singularnode.platform.OutputOptions;
+import com.brunoritz.gradle.singularnode.platform.NodeWorkerService;
+import com.brunoritz.gradle.singularnode.platform.PackageScript;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
 import io.vavr.collection.HashMap;
 import io.vavr.collection.List;
+import io.vavr.control.Option;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectories;
 import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.process.ExecOperations;
 
+import static org.gradle.api.tasks.PathSensitivity.ABSOLUTE;
 import static org.gradle.api.tasks.PathSensitivity.RELATIVE;
 
 import javax.inject.Inject;
@@ -44,21 +56,34 @@ import java.io.File;
  *     ])
  * }
  * </pre>
+ * <p>
+ * Tasks declaring their {@code inputFiles} and {@code outputDirectories} are skipped if neither changed since the
+ * last execution and can be restored from the build cache.
+ * <pre>
+ * task compileTypeScript(type: NpmTask) {
+ *     args.set(['run', 'build'])
+ *     inputFiles.from('src', 'tsconfig.json')
+ *     outputDirectories.from('dist')
+ * }
+ * </pre>
  */
+@CacheableTask
 public abstract class NpmTask
 	extends DefaultTask
 {
 	private final ExecOperations processes;
-	private final File packageFile;
-	private final File lockFile;
 
 	@Inject
-	public NpmTask(ExecOperations processes, Project project)
+	public NpmTask(ExecOperations processes)
 	{
 		this.processes = processes;
 
-		packageFile = project.file("package.json");
-		lockFile = project.file("package-lock.json");
+		getWorkingDirectory().convention(getProject().getLayout().getProjectDirectory());
+		getOutputOptions().convention(OutputOptions.unchanged());
+		getLogFile().convention(getProject().getLayout().getBuildDirectory().file("logs/" + getName() + ".log"));
+		getRelocatable().convention(true);
+		getDirectScriptExecution().convention(false);
+		getOutputs().cacheIf("Output directories are declared", task -> !getOutputDirectories().isEmpty());
 	}
 
 	@Input
@@ -75,12 +100,97 @@ public abstract class NpmTask
 	@Internal
 	public abstract Property<InstallationLayout> getInstallationLayout();
 
+	/**
+	 * The pool of long-lived NodeJS workers to execute this task in. If not set, a new NodeJS process is started.
+	 */
+	@Internal
+	public abstract Property<NodeWorkerService> getWorkerService();
+
+	/**
+	 * Whether to run {@code package.json} scripts directly instead of through NPM, which saves starting NPM. Arguments
+	 * of the form {@code run <script>} or {@code run <script> -- <args>} then execute the script through the shell,
+	 * with {@code node_modules/.bin} on the {@code PATH} and the {@code npm_*} lifecycle variables set. Like NPM, the
+	 * {@code pre} and {@code post} scripts of the script are run as well. Any other arguments are passed to NPM as
+	 * usual.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	@Internal
+	public abstract Property<Boolean> getDirectScriptExecution();
+
+	/**
+	 * How the output of this task is forwarded to the console.
+	 */
+	@Internal
+	public abstract Property<OutputOptions> getOutputOptions();
+
+	/**
+	 * The file the output of this task is written to, if requested by the {@link #getOutputOptions() output options}.
+	 * <p>
+	 * Defaults to {@code build/logs/<task name>.log} of the project.
+	 */
+	@Internal
+	public abstract RegularFileProperty getLogFile();
+
+	/**
+	 * Records the telemetry of the NodeJS invocations of this task. If not set, no telemetry is recorded.
+	 */
+	@Internal
+	public abstract Property<ExecutionTelemetry> getTelemetry();
+
+	/**
+	 * The machine-wide cache shared by the package managers of all checkouts. If not set, the package manager uses
+	 * its default cache location.
+	 */
+	@Internal
+	public abstract DirectoryProperty getPackageCacheDirectory();
+
+	/**
+	 * The files read by this task, for example the sources processed by the executed script. Together with
+	 * {@link #getOutputDirectories()}, they allow the task to be up-to-date and to be restored from the build cache.
+	 */
+	@Internal
+	public abstract ConfigurableFileCollection getInputFiles();
+
+	/**
+	 * The directories written by this task. Unless at least one output directory is declared, the task is executed
+	 * every time.
+	 */
+	@OutputDirectories
+	public abstract ConfigurableFileCollection getOutputDirectories();
+
+	/**
+	 * Whether the input files are tracked by their path relative to their root, which allows sharing cached results
+	 * between checkouts in different locations. If disabled, the absolute path of the input files is tracked instead.
+	 * This is necessary if the task produces outputs that contain absolute paths, such as source maps.
+	 * <p>
+	 * Defaults to {@code true}.
+	 */
+	@Input
+	public abstract Property<Boolean> getRelocatable();
+
+	@InputFiles
+	@PathSensitive(RELATIVE)
+	public FileCollection getRelocatableInputFiles()
+	{
+		return getInputFiles().filter(file -> getRelocatable().get());
+	}
+
+	@InputFiles
+	@PathSensitive(ABSOLUTE)
+	public FileCollection getAbsoluteInputFiles()
+	{
+		return getInputFiles().filter(file -> !getRelocatable().get());
+	}
+
 	@InputFile
 	@PathSensitive(RELATIVE)
 	@Optional
 	@Nullable
 	public File getPackageFile()
 	{
+		File packageFile = getWorkingDirectory().file("package.json").get().getAsFile();
+
 		return packageFile.exists() ? packageFile : null;
 	}
 
@@ -90,6 +200,8 @@ public abstract class NpmTask
 	@Nullable
 	public File getPackageLockFile()
 	{
+		File lockFile = getWorkingDirectory().file("package-lock.json").get().getAsFile();
+
 		return lockFile.exists() ? lockFile : null;
 	}
 
@@ -97,13 +209,34 @@ public abstract class NpmTask
 	public void execute()
 	{
 		InstallationLayout layout = getInstallationLayout().get();
-		String npmScript = layout.pathOfManagedNpmScript().getAbsolutePath();
-
-		new NodeCommand(processes, getWorkingDirectory().get().getAsFile(), layout)
-			.args(npmScript)
-			.args(List.ofAll(getArgs().get()))
+		File workingDirectory = getWorkingDirectory().get().getAsFile();
+		File logFile = getLogFile().get().getAsFile();
+		File npmScript = layout.pathOfManagedNpmScript();
+		NodeCommand command = new NodeCommand(processes, workingDirectory, layout)
 			.withEnvironment(HashMap.ofAll(System.getenv()))
+			.withEnvironment(packageCache().map(cache -> cache.environment("npm")).getOrElse(HashMap.empty()))
 			.withEnvironment(HashMap.ofAll(getEnvironment().get()))
-			.execute();
+			.withTelemetry(Option.of(getTelemetry().getOrNull()), getPath(), "npm")
+			.withOutput(getOutputOptions().get(), getPath(), logFile);
+		Option<PackageScript> directScript = getDirectScriptExecution().get()
+			? PackageScript.resolve(workingDirectory, List.ofAll(getArgs().get()))
+			: Option.none();
+
+		logFile.delete();
+
+		if (directScript.isDefined()) {
+			directScript.get().execute(command, layout, npmScript, true);
+		} else {
+			command
+				.args(npmScript.getAbsolutePath())
+				.args(List.ofAll(getArgs().get()))
+				.withWorkers(Option.of(getWorkerService().getOrNull()))
+				.execute();
+		}
+	}
+
+	private Option<PackageCache> packageCache()
+	{
+		return Option.of(getPackageCacheDirectory().getAsFile().getOrNull()).map(PackageCache::new);
 	}
 }
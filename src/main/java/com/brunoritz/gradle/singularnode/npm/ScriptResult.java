@@ -0,0 +1,57 @@
+package com.brunoritz.gradle.singularnode.npm;
+
+import groovy.json.JsonSlurper;
+import io.vavr.collection.List;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The outcome of a single script run by a {@link NpmRunTask}.
+ *
+ * @param script
+ * 	The name of the script in the {@code package.json}
+ * @param exitCode
+ * 	The exit code of the script, or of its {@code pre} or {@code post} script if that one failed
+ * @param duration
+ * 	The wall time spent running the script, including its {@code pre} and {@code post} scripts
+ */
+public record ScriptResult(String script, int exitCode, Duration duration)
+{
+	/**
+	 * Tells whether the script, including its {@code pre} and {@code post} scripts, succeeded.
+	 *
+	 * @return {@code true} if the exit code is zero
+	 */
+	public boolean succeeded()
+	{
+		return exitCode == 0;
+	}
+
+	/**
+	 * Reads the results written by the {@code npm-run.js} script.
+	 *
+	 * @param resultsFile
+	 * 	The file holding the results as a JSON array
+	 *
+	 * @return The results in the order the scripts were requested
+	 */
+	static List<ScriptResult> read(File resultsFile)
+	{
+		Object results = new JsonSlurper().parse(resultsFile, StandardCharsets.UTF_8.name());
+
+		if (!(results instanceof java.util.List<?> entries)) {
+			throw new IllegalStateException("Malformed script results in " + resultsFile);
+		}
+
+		return List.ofAll(entries)
+			.map(entry -> (Map<?, ?>) entry)
+			.map(entry -> new ScriptResult(
+				String.valueOf(entry.get("script")),
+				((Number) entry.get("exitCode")).intValue(),
+				Duration.ofMillis(((Number) entry.get("durationMillis")).longValue())
+			));
+	}
+}
@@ -0,0 +1,139 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Utility methods to compute checksums of files and streams.
+ */
+public final class Checksums
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Map<String, String> INTEGRITY_ALGORITHMS = Map.of(
+		"sha512", "SHA-512",
+		"sha384", "SHA-384",
+		"sha256", "SHA-256",
+		"sha1", "SHA-1"
+	);
+
+	private Checksums()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Computes the SHA-256 checksum of the given file.
+	 *
+	 * @param file
+	 * 	The file of which to compute the checksum
+	 *
+	 * @return The checksum as lower case hexadecimal string
+	 *
+	 * @throws IOException
+	 * 	If the file cannot be read
+	 */
+	public static String sha256(File file)
+		throws IOException
+	{
+		try (InputStream content = Files.newInputStream(file.toPath())) {
+			return sha256(content);
+		}
+	}
+
+	/**
+	 * Computes the SHA-256 checksum of all remaining bytes of the given stream. The stream is not closed.
+	 *
+	 * @param content
+	 * 	The stream of which to compute the checksum
+	 *
+	 * @return The checksum as lower case hexadecimal string
+	 *
+	 * @throws IOException
+	 * 	If the stream cannot be read
+	 */
+	public static String sha256(InputStream content)
+		throws IOException
+	{
+		MessageDigest digest = digest("SHA-256");
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int count;
+
+		while ((count = content.read(buffer)) != -1) {
+			digest.update(buffer, 0, count);
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * Tells whether the given file matches a Subresource Integrity string as published by NPM registries, for example
+	 * {@code sha512-<base64>}. Integrity strings may list several hashes separated by whitespace, of which any
+	 * supported one needs to match.
+	 *
+	 * @param file
+	 * 	The file to verify
+	 * @param integrity
+	 * 	The expected integrity
+	 *
+	 * @return {@code true} if at least one supported hash matches the file
+	 *
+	 * @throws IOException
+	 * 	If the file cannot be read
+	 */
+	public static boolean matchesIntegrity(File file, String integrity)
+		throws IOException
+	{
+		for (String hash : integrity.trim().split("\\s+")) {
+			int separator = hash.indexOf('-');
+			String algorithm = (separator > 0) ? INTEGRITY_ALGORITHMS.get(hash.substring(0, separator)) : null;
+
+			if ((algorithm != null) && MessageDigest.isEqual(
+				Base64.getDecoder().decode(hash.substring(separator + 1)), digest(file, algorithm))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static byte[] digest(File file, String algorithm)
+		throws IOException
+	{
+		MessageDigest digest = digest(algorithm);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int count;
+
+		try (InputStream content = Files.newInputStream(file.toPath())) {
+			while ((count = content.read(buffer)) != -1) {
+				digest.update(buffer, 0, count);
+			}
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * Creates a new message digest for the given algorithm. All algorithms used by this plugin are mandatory for any
+	 * Java platform, hence their absence is considered a programming error.
+	 *
+	 * @param algorithm
+	 * 	The name of the digest algorithm
+	 *
+	 * @return A new digest instance
+	 */
+	public static MessageDigest digest(String algorithm)
+	{
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Digest algorithm not available: " + algorithm, e);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the number of bytes written to the wrapped stream.
+ */
+final class CountingOutputStream
+	extends FilterOutputStream
+{
+	private long count;
+
+	CountingOutputStream(OutputStream target)
+	{
+		super(target);
+	}
+
+	@Override
+	public void write(int b)
+		throws IOException
+	{
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len)
+		throws IOException
+	{
+		out.write(b, off, len);
+		count += len;
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		flush();
+	}
+
+	long count()
+	{
+		return count;
+	}
+}
@@ -0,0 +1,41 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import io.vavr.control.Option;
+
+import java.time.Duration;
+
+/**
+ * The telemetry of a single NodeJS invocation.
+ *
+ * @param taskPath
+ * 	The path of the task that started NodeJS
+ * @param packageManager
+ * 	The package manager in use, {@code npm}, {@code pnpm} or {@code yarn}
+ * @param command
+ * 	The arguments passed to NodeJS
+ * @param wallTime
+ * 	The time elapsed from starting to the termination of NodeJS
+ * @param cpuTime
+ * 	The user and system CPU time consumed by NodeJS, if reported. Includes the NodeJS processes spawned by NodeJS,
+ * 	but no other processes.
+ * @param peakRssBytes
+ * 	The largest peak resident set size of NodeJS and the NodeJS processes it spawned, if reported
+ * @param exitCode
+ * 	The exit code of NodeJS
+ * @param outputBytes
+ * 	The number of bytes written to the standard output
+ * @param errorBytes
+ * 	The number of bytes written to the standard error output
+ */
+public record ExecutionRecord(
+	String taskPath,
+	String packageManager,
+	String command,
+	Duration wallTime,
+	Option<Duration> cpuTime,
+	Option<Long> peakRssBytes,
+	int exitCode,
+	long outputBytes,
+	long errorBytes)
+{
+}
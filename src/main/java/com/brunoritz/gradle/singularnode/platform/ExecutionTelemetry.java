@@ -0,0 +1,183 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Collects the telemetry of all NodeJS invocations of a build. Once the build has finished, the collected data is
+ * written as JSON and HTML report, listing the slowest invocations first.
+ * <p>
+ * The CPU time and peak memory usage are reported by NodeJS itself via a script preloaded through
+ * {@code NODE_OPTIONS}. Hence, they are only known for invocations that start a new NodeJS process. Since
+ * {@code NODE_OPTIONS} is inherited, they include the NodeJS processes spawned by the package manager and scripts, but
+ * no other processes.
+ */
+public abstract class ExecutionTelemetry
+	implements BuildService<ExecutionTelemetry.Parameters>, AutoCloseable
+{
+	private static final String SERVICE_NAME = "com.brunoritz.gradle.singularnode.executionTelemetry";
+	private static final Logger LOGGER = Logging.getLogger(ExecutionTelemetry.class);
+	private static final int BUILD_SCAN_VALUES = 10;
+
+	private List<ExecutionRecord> records = List.empty();
+	private Option<Path> usageScript = Option.none();
+
+	/**
+	 * Registers the shared telemetry service for the build. Calling this method more than once returns the already
+	 * registered service.
+	 *
+	 * @param project
+	 * 	Any project of the build
+	 *
+	 * @return The shared telemetry service
+	 */
+	public static Provider<ExecutionTelemetry> register(Project project)
+	{
+		Project rootProject = project.getRootProject();
+
+		return project.getGradle().getSharedServices().registerIfAbsent(SERVICE_NAME, ExecutionTelemetry.class, spec ->
+			spec.getParameters().getReportDirectory()
+				.set(rootProject.getLayout().getBuildDirectory().dir("reports/singular-node"))
+		);
+	}
+
+	/**
+	 * Publishes the slowest NodeJS invocations as custom values of the build scan. Nothing is published if neither
+	 * the Develocity nor the Gradle Enterprise plugin is applied, or if telemetry or its publication is disabled.
+	 * <p>
+	 * The build scan API is accessed reflectively, so that the plugin does not depend on any of those plugins.
+	 *
+	 * @param project
+	 * 	The root project
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 */
+	public static void publishToBuildScan(Project project, NodeJsExtension configuration)
+	{
+		Option<Object> buildScan = Option.of(project.getExtensions().findByName("develocity"))
+			.flatMap(develocity -> invoke(develocity, "getBuildScan"))
+			.orElse(() -> Option.of(project.getExtensions().findByName("buildScan")));
+
+		if (buildScan.isEmpty()) {
+			return;
+		}
+
+		Provider<Boolean> enabled = configuration.executionTelemetry
+			.zip(configuration.executionTelemetryBuildScan, (telemetry, publish) -> telemetry && publish);
+		Provider<ExecutionTelemetry> telemetry = register(project);
+		Action<Object> publishValues = result -> {
+			if (enabled.get()) {
+				telemetry.get().publishValues(buildScan.get());
+			}
+		};
+
+		invoke(buildScan.get(), "buildFinished", publishValues);
+	}
+
+	/**
+	 * Records the telemetry of a NodeJS invocation.
+	 *
+	 * @param record
+	 * 	The telemetry of the invocation
+	 */
+	public synchronized void record(ExecutionRecord record)
+	{
+		records = records.append(record);
+	}
+
+	/**
+	 * Provides the script to preload into NodeJS in order to have it report its resource usage.
+	 *
+	 * @return The location of the script
+	 *
+	 * @throws IOException
+	 * 	If the script cannot be extracted from the plugin
+	 */
+	synchronized Path usageScript()
+		throws IOException
+	{
+		if (usageScript.isEmpty()) {
+			Path script = Files.createTempFile("singular-node-usage", ".js");
+
+			try (InputStream content = ExecutionTelemetry.class.getResourceAsStream("node-usage.js")) {
+				if (content == null) {
+					throw new IOException("NodeJS usage script is missing from the plugin");
+				}
+
+				Files.copy(content, script, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			usageScript = Option.of(script);
+		}
+
+		return usageScript.get();
+	}
+
+	private synchronized void publishValues(Object buildScan)
+	{
+		for (ExecutionRecord record : TelemetryReport.slowestFirst(records).take(BUILD_SCAN_VALUES)) {
+			String value = String.format("%d ms (%s, exit code %d)",
+				record.wallTime().toMillis(), record.packageManager(), record.exitCode()
+			);
+
+			invoke(buildScan, "value", "NodeJS " + record.taskPath(), value);
+		}
+	}
+
+	private static Option<Object> invoke(Object target, String name, Object... args)
+	{
+		Option<Method> method = List.of(target.getClass().getMethods())
+			.find(candidate -> candidate.getName().equals(name) && (candidate.getParameterCount() == args.length));
+
+		try {
+			return method.isDefined() ? Option.of(method.get().invoke(target, args)) : Option.none();
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			LOGGER.info("Failed to invoke {}{} on the build scan", name, Arrays.toString(args), e);
+
+			return Option.none();
+		}
+	}
+
+	@Override
+	public synchronized void close()
+		throws IOException
+	{
+		if (!records.isEmpty()) {
+			TelemetryReport.write(records, getParameters().getReportDirectory().get().getAsFile());
+		}
+
+		if (usageScript.isDefined()) {
+			Files.deleteIfExists(usageScript.get());
+		}
+	}
+
+	/**
+	 * The parameters of the telemetry service.
+	 */
+	public interface Parameters
+		extends BuildServiceParameters
+	{
+		/**
+		 * The directory to write the reports to.
+		 */
+		DirectoryProperty getReportDirectory();
+	}
+}
@@ -0,0 +1,134 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Computes a fingerprint of an installed dependency graph. The fingerprint is made of
+ * <ul>
+ *     <li>The dependency related sections of {@code package.json}, including those of workspace members</li>
+ *     <li>The lockfile of the package manager</li>
+ *     <li>The state file the package manager writes into {@code node_modules} after each installation</li>
+ * </ul>
+ * <p>
+ * Changes to other parts of {@code package.json}, such as {@code scripts} or {@code version}, do not affect the
+ * fingerprint. A missing or modified state file, on the other hand, indicates that {@code node_modules} was deleted or
+ * changed outside of the package installation and hence alters the fingerprint.
+ */
+public final class InstallationFingerprint
+{
+	private static final List<String> DEPENDENCY_SECTIONS = List.of(
+		"dependencies",
+		"devDependencies",
+		"optionalDependencies",
+		"peerDependencies",
+		"bundleDependencies",
+		"bundledDependencies",
+		"overrides",
+		"resolutions",
+		"workspaces",
+		"packageManager"
+	);
+	private static final byte[] SEPARATOR = {0};
+
+	private InstallationFingerprint()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Computes the fingerprint of the given files. Any of the files may be missing.
+	 *
+	 * @param packageFiles
+	 * 	The {@code package.json} file of the project followed by those of any workspace members
+	 * @param lockFile
+	 * 	The lockfile of the package manager
+	 * @param stateFile
+	 * 	The installation state file of the package manager
+	 *
+	 * @return The fingerprint as lower case hexadecimal string
+	 *
+	 * @throws IOException
+	 * 	If any of the files cannot be read
+	 */
+	public static String compute(List<File> packageFiles, File lockFile, Option<File> stateFile)
+		throws IOException
+	{
+		MessageDigest digest = Checksums.digest("SHA-256");
+
+		for (File packageFile : packageFiles) {
+			digest.update(dependencySections(packageFile).getBytes(StandardCharsets.UTF_8));
+			digest.update(SEPARATOR);
+		}
+
+		digest.update(contentChecksum(Option.of(lockFile)).getBytes(StandardCharsets.UTF_8));
+		digest.update(SEPARATOR);
+		digest.update(contentChecksum(stateFile).getBytes(StandardCharsets.UTF_8));
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * Tells whether the given marker file holds the given fingerprint.
+	 *
+	 * @param markerFile
+	 * 	The file to which a fingerprint was written by a previous installation
+	 * @param fingerprint
+	 * 	The fingerprint of the current state
+	 *
+	 * @return {@code true} if the marker exists and contains the given fingerprint
+	 *
+	 * @throws IOException
+	 * 	If the marker file exists but cannot be read
+	 */
+	public static boolean matches(File markerFile, String fingerprint)
+		throws IOException
+	{
+		return markerFile.isFile()
+			&& Files.readString(markerFile.toPath(), StandardCharsets.UTF_8).trim().equals(fingerprint);
+	}
+
+	private static String dependencySections(File packageFile)
+	{
+		if (!packageFile.isFile()) {
+			return "";
+		}
+
+		Object manifest = new JsonSlurper().parse(packageFile, StandardCharsets.UTF_8.name());
+
+		if (!(manifest instanceof Map<?, ?> sections)) {
+			return "";
+		}
+
+		StringBuilder result = new StringBuilder();
+
+		for (String section : DEPENDENCY_SECTIONS) {
+			if (sections.containsKey(section)) {
+				result.append(section)
+					.append('=')
+					.append(JsonOutput.toJson(sections.get(section)))
+					.append('\n');
+			}
+		}
+
+		return result.toString();
+	}
+
+	private static String contentChecksum(Option<File> file)
+		throws IOException
+	{
+		Option<File> existingFile = file.filter(File::isFile);
+
+		return existingFile.isDefined() ? Checksums.sha256(existingFile.get()) : "-";
+	}
+}
@@ -0,0 +1,153 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Splits the bytes written to it into lines, which are passed to a consumer one at a time. Lines are collected in a
+ * buffer of fixed size that is reused for every line, so that no memory is allocated while streaming. Lines exceeding
+ * the buffer are passed on in chunks of at most the buffer size, which never split a UTF-8 encoded character. Line
+ * terminators, including a carriage return preceding the line feed, are not passed on.
+ */
+final class LineOutputStream
+	extends OutputStream
+{
+	private final byte[] line;
+	private final LineConsumer consumer;
+	private int length;
+
+	LineOutputStream(int maxLineLength, LineConsumer consumer)
+	{
+		this.line = new byte[maxLineLength];
+		this.consumer = consumer;
+	}
+
+	@Override
+	public void write(int b)
+		throws IOException
+	{
+		if (b == '\n') {
+			emitLine();
+		} else {
+			if (length == line.length) {
+				emitChunk();
+			}
+
+			line[length++] = (byte) b;
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len)
+		throws IOException
+	{
+		int end = off + len;
+		int start = off;
+
+		for (int i = off; i < end; i++) {
+			if (b[i] == '\n') {
+				append(b, start, i - start);
+				emitLine();
+				start = i + 1;
+			}
+		}
+
+		append(b, start, end - start);
+	}
+
+	/**
+	 * Passes on the incomplete last line, if any.
+	 */
+	@Override
+	public void close()
+		throws IOException
+	{
+		if (length > 0) {
+			emitLine();
+		}
+	}
+
+	private void append(byte[] b, int off, int len)
+		throws IOException
+	{
+		int position = off;
+		int remaining = len;
+
+		while (remaining > 0) {
+			if (length == line.length) {
+				emitChunk();
+			}
+
+			int chunk = Math.min(remaining, line.length - length);
+
+			System.arraycopy(b, position, line, length, chunk);
+			length += chunk;
+			position += chunk;
+			remaining -= chunk;
+		}
+	}
+
+	private void emitLine()
+		throws IOException
+	{
+		int lineLength = ((length > 0) && (line[length - 1] == '\r')) ? length - 1 : length;
+
+		length = 0;
+		consumer.accept(line, lineLength);
+	}
+
+	/*
+	 * Passes on the full buffer up to the last complete character. The bytes of an incomplete character are kept at the
+	 * start of the buffer and continue the next chunk.
+	 */
+	private void emitChunk()
+		throws IOException
+	{
+		int boundary = characterBoundary();
+		int carried = length - boundary;
+
+		consumer.accept(line, boundary);
+		System.arraycopy(line, boundary, line, 0, carried);
+		length = carried;
+	}
+
+	/*
+	 * Looks at most three bytes back for the first byte of the last character, which tells the length of the
+	 * character. Bytes not forming valid UTF-8 are split anywhere.
+	 */
+	private int characterBoundary()
+	{
+		for (int back = 1; back <= Math.min(3, length - 1); back++) {
+			int b = line[length - back] & 0xFF;
+
+			if ((b & 0xC0) != 0x80) {
+				int characterLength = (b >= 0xF0) ? 4 : (b >= 0xE0) ? 3 : (b >= 0xC0) ? 2 : 1;
+
+				return (characterLength > back) ? (length - back) : length;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Receives the lines of a {@link LineOutputStream}.
+	 */
+	@FunctionalInterface
+	interface LineConsumer
+	{
+		/**
+		 * Receives a single line. The buffer is reused for the next line, hence the consumer must not retain it.
+		 *
+		 * @param line
+		 * 	The buffer holding the line, starting at index zero
+		 * @param length
+		 * 	The length of the line in bytes
+		 *
+		 * @throws IOException
+		 * 	If the line cannot be processed
+		 */
+		void accept(byte[] line, int length)
+			throws IOException;
+	}
+}
@@ -5,10 +5,18 @@ import io.vavr.Tuple2;
 import io.vavr.collection.HashMap;
 import io.vavr.collection.List;
 import io.vavr.collection.Map;
+import io.vavr.control.Option;
 import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Locale;
 
 /**
  * Utility to create NodeJS invocations. This class provides means of setting the execution environment and providing
@@ -21,10 +29,26 @@ public class NodeCommand
 	private final List<CharSequence> args;
 	private final Map<CharSequence, CharSequence> environment;
 	private final File workingDirectory;
+	private final Option<NodeWorkerService> workers;
+	private final Option<Telemetry> telemetry;
+	private final List<File> pathEntries;
+	private final Option<CharSequence> shellCommand;
+	private final Option<OutputSettings> outputSettings;
 
 	public NodeCommand(ExecOperations processes, File workingDirectory, InstallationLayout layout)
 	{
-		this(processes, layout, workingDirectory, List.of(), HashMap.empty());
+		this(
+			processes,
+			layout,
+			workingDirectory,
+			List.of(),
+			HashMap.empty(),
+			Option.none(),
+			Option.none(),
+			List.empty(),
+			Option.none(),
+			Option.none()
+		);
 	}
 
 	private NodeCommand(
@@ -32,13 +56,23 @@ public class NodeCommand
 		InstallationLayout layout,
 		File workingDirectory,
 		List<CharSequence> args,
-		Map<CharSequence, CharSequence> environment)
+		Map<CharSequence, CharSequence> environment,
+		Option<NodeWorkerService> workers,
+		Option<Telemetry> telemetry,
+		List<File> pathEntries,
+		Option<CharSequence> shellCommand,
+		Option<OutputSettings> outputSettings)
 	{
 		this.processes = processes;
 		this.layout = layout;
 		this.workingDirectory = workingDirectory;
 		this.args = args;
 		this.environment = environment;
+		this.workers = workers;
+		this.telemetry = telemetry;
+		this.pathEntries = pathEntries;
+		this.shellCommand = shellCommand;
+		this.outputSettings = outputSettings;
 	}
 
 	/**
@@ -66,7 +100,18 @@ public class NodeCommand
 	{
 		List<CharSequence> mergedArgs = this.args.appendAll(args);
 
-		return new NodeCommand(processes, layout, workingDirectory, mergedArgs, environment);
+		return new NodeCommand(
+			processes,
+			layout,
+			workingDirectory,
+			mergedArgs,
+			environment,
+			workers,
+			telemetry,
+			pathEntries,
+			shellCommand,
+			outputSettings
+		);
 	}
 
 	/**
@@ -86,7 +131,162 @@ public class NodeCommand
 			mergedEnvironment = mergedEnvironment.put(envVariable);
 		}
 
-		return new NodeCommand(processes, layout, workingDirectory, args, mergedEnvironment);
+		return new NodeCommand(
+			processes,
+			layout,
+			workingDirectory,
+			args,
+			mergedEnvironment,
+			workers,
+			telemetry,
+			pathEntries,
+			shellCommand,
+			outputSettings
+		);
+	}
+
+	/**
+	 * Executes scripts in the given pool of long-lived NodeJS workers instead of starting a new process. Commands whose
+	 * first argument is not a script file, as well as any command issued while no worker is available, are still
+	 * executed in a new process.
+	 *
+	 * @param workers
+	 * 	The worker pool to use or {@code none} to always start a new process
+	 *
+	 * @return A new instance using the given workers
+	 */
+	public NodeCommand withWorkers(Option<NodeWorkerService> workers)
+	{
+		return new NodeCommand(
+			processes,
+			layout,
+			workingDirectory,
+			args,
+			environment,
+			workers,
+			telemetry,
+			pathEntries,
+			shellCommand,
+			outputSettings
+		);
+	}
+
+	/**
+	 * Records the telemetry of the invocation with the given service. The telemetry includes the wall time, CPU time,
+	 * peak memory usage, exit code and the number of bytes written to the standard and error output.
+	 *
+	 * @param telemetry
+	 * 	The service to record the invocation with or {@code none} to not record any telemetry
+	 * @param taskPath
+	 * 	The path of the task executing the command
+	 * @param packageManager
+	 * 	The package manager in use
+	 *
+	 * @return A new instance recording its telemetry
+	 */
+	public NodeCommand withTelemetry(Option<ExecutionTelemetry> telemetry, String taskPath, String packageManager)
+	{
+		Option<Telemetry> recording = telemetry.map(service -> new Telemetry(service, taskPath, packageManager));
+
+		return new NodeCommand(
+			processes,
+			layout,
+			workingDirectory,
+			args,
+			environment,
+			workers,
+			recording,
+			pathEntries,
+			shellCommand,
+			outputSettings
+		);
+	}
+
+	/**
+	 * Prepends the given directories to the {@code PATH}, ahead of the binary directory of the NodeJS installation.
+	 *
+	 * @param pathEntries
+	 * 	The directories to prepend, in the order of their precedence
+	 *
+	 * @return A new instance with the additional {@code PATH} entries
+	 */
+	public NodeCommand withPathEntries(List<File> pathEntries)
+	{
+		List<File> mergedEntries = this.pathEntries.appendAll(pathEntries);
+
+		return new NodeCommand(
+			processes,
+			layout,
+			workingDirectory,
+			args,
+			environment,
+			workers,
+			telemetry,
+			mergedEntries,
+			shellCommand,
+			outputSettings
+		);
+	}
+
+	/**
+	 * Executes the given command through the shell of the operating system instead of NodeJS, the way package
+	 * managers run the scripts of a {@code package.json}. This is {@code sh -c} on Unix and {@code cmd /d /s /c} on
+	 * Windows. Arguments and workers are ignored, whereas the environment, including the {@code PATH}, and the
+	 * telemetry apply as for NodeJS invocations.
+	 *
+	 * @param command
+	 * 	The command line to execute
+	 *
+	 * @return A new instance executing the given command
+	 */
+	public NodeCommand shell(CharSequence command)
+	{
+		return new NodeCommand(
+			processes,
+			layout,
+			workingDirectory,
+			args,
+			environment,
+			workers,
+			telemetry,
+			pathEntries,
+			Option.of(command),
+			outputSettings
+		);
+	}
+
+	/**
+	 * Processes the output of the invocation line by line as requested by the given options. Unless the options leave
+	 * the output unchanged, the output is always streamed through the pipeline, including the output of workers.
+	 *
+	 * @param options
+	 * 	The requested output processing
+	 * @param label
+	 * 	The label to prefix lines with, usually the path of the task
+	 * @param logFile
+	 * 	The file to write the output to, if requested by the options. The output is appended to the file, so that
+	 * 	several invocations of a task end up in the same file. Tasks are expected to delete the file beforehand.
+	 *
+	 * @return A new instance processing its output as requested
+	 */
+	public NodeCommand withOutput(OutputOptions options, String label, File logFile)
+	{
+		Option<OutputSettings> settings = options.isUnchanged()
+			? Option.none()
+			: Option.of(new OutputSettings(options, label, logFile));
+
+		return new NodeCommand(
+			processes,
+			layout,
+			workingDirectory,
+			args,
+			environment,
+			workers,
+			telemetry,
+			pathEntries,
+			shellCommand,
+			settings
+		);
 	}
 
 	/**
@@ -95,24 +295,194 @@ public class NodeCommand
 	 */
 	public void execute()
 	{
-		processes.exec(exec -> {
-			String nodeExecutable = layout.pathOfNodeExecutable().getAbsolutePath();
+		Option<OutputPipeline> pipeline = outputSettings.map(settings ->
+			OutputPipeline.open(settings.options(), settings.label(), settings.logFile())
+		);
+		boolean succeeded = false;
 
-			exec.setExecutable(nodeExecutable);
-			exec.setArgs(args.toJavaList());
-			exec.setWorkingDir(workingDirectory);
-			exec.environment(appendNodeToPathToEnvironment().toJavaMap());
-		});
+		try {
+			execute(pipeline);
+			succeeded = true;
+		} finally {
+			for (OutputPipeline outputPipeline : pipeline) {
+				outputPipeline.finish(succeeded);
+			}
+		}
+	}
+
+	private void execute(Option<OutputPipeline> pipeline)
+	{
+		CountingOutputStream output =
+			new CountingOutputStream(pipeline.map(OutputPipeline::standardOutput).getOrElse(System.out));
+		CountingOutputStream errors =
+			new CountingOutputStream(pipeline.map(OutputPipeline::errorOutput).getOrElse(System.err));
+		long start = System.nanoTime();
+		Option<Integer> workerExitCode = executeInWorker(output, errors);
+
+		if (workerExitCode.isDefined()) {
+			recordInvocation(start, ResourceUsage.unknown(), workerExitCode.get(), output, errors);
+
+			if (workerExitCode.get() != 0) {
+				throw new IllegalStateException(String.format(
+					"Process 'node %s' finished with non-zero exit value %d", args.mkString(" "), workerExitCode.get()
+				));
+			}
+		} else if (telemetry.isDefined()) {
+			executeRecordedProcess(telemetry.get().service(), output, errors);
+		} else {
+			processes.exec(exec -> {
+				exec.setExecutable(executable());
+				exec.setArgs(arguments().toJavaList());
+				exec.setWorkingDir(workingDirectory);
+				exec.environment(appendNodeToPathToEnvironment().toJavaMap());
+
+				if (pipeline.isDefined()) {
+					exec.setStandardOutput(output);
+					exec.setErrorOutput(errors);
+				}
+			});
+		}
+	}
+
+	private Option<Integer> executeInWorker(OutputStream output, OutputStream errors)
+	{
+		Option<String> script = args.headOption()
+			.map(CharSequence::toString)
+			.filter(arg -> new File(arg).isFile());
+
+		if (workers.isEmpty() || script.isEmpty() || shellCommand.isDefined()) {
+			return Option.none();
+		}
+
+		return workers.get().execute(
+			script.get(),
+			args.tail().map(CharSequence::toString).toJavaList(),
+			workingDirectory,
+			appendNodeToPathToEnvironment().toJavaMap(),
+			output,
+			errors
+		);
+	}
+
+	private void executeRecordedProcess(
+		ExecutionTelemetry telemetryService,
+		CountingOutputStream output,
+		CountingOutputStream errors)
+	{
+		Path usageReport = createUsageReport();
+		Map<String, String> recordedEnvironment = appendNodeToPathToEnvironment()
+			.put("SINGULAR_NODE_USAGE_FILE", usageReport.toString())
+			.put("NODE_OPTIONS", preloadUsageScript(telemetryService));
+		long start = System.nanoTime();
+
+		try {
+			ExecResult result = processes.exec(exec -> {
+				exec.setExecutable(executable());
+				exec.setArgs(arguments().toJavaList());
+				exec.setWorkingDir(workingDirectory);
+				exec.environment(recordedEnvironment.toJavaMap());
+				exec.setStandardOutput(output);
+				exec.setErrorOutput(errors);
+				exec.setIgnoreExitValue(true);
+			});
+
+			recordInvocation(start, ResourceUsage.read(usageReport.toFile()), result.getExitValue(), output, errors);
+			result.assertNormalExitValue();
+		} finally {
+			usageReport.toFile().delete();
+		}
+	}
+
+	private void recordInvocation(
+		long start,
+		ResourceUsage usage,
+		int exitCode,
+		CountingOutputStream output,
+		CountingOutputStream errors)
+	{
+		Duration wallTime = Duration.ofNanos(System.nanoTime() - start);
+
+		telemetry.forEach(recording -> recording.service().record(new ExecutionRecord(
+			recording.taskPath(),
+			recording.packageManager(),
+			shellCommand.map(CharSequence::toString).getOrElse(() -> args.mkString(" ")),
+			wallTime,
+			usage.cpuTime(),
+			usage.peakRssBytes(),
+			exitCode,
+			output.count(),
+			errors.count()
+		)));
+	}
+
+	private static Path createUsageReport()
+	{
+		try {
+			return Files.createTempFile("singular-node-usage", ".jsonl");
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to create the NodeJS resource usage report", e);
+		}
+	}
+
+	/**
+	 * Prepends the usage script to any {@code NODE_OPTIONS} set by the caller. NodeJS treats backslashes in
+	 * {@code NODE_OPTIONS} as escape characters, hence the path of the script always uses forward slashes.
+	 */
+	private String preloadUsageScript(ExecutionTelemetry telemetryService)
+	{
+		try {
+			String script = telemetryService.usageScript().toAbsolutePath().toString().replace('\\', '/');
+			String existingOptions = environment.getOrElse("NODE_OPTIONS", "").toString();
+
+			return String.format("--require \"%s\" %s", script, existingOptions).trim();
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to provide the NodeJS resource usage script", e);
+		}
+	}
+
+	private String executable()
+	{
+		if (shellCommand.isEmpty()) {
+			return layout.pathOfNodeExecutable().getAbsolutePath();
+		}
+
+		return isWindows() ? "cmd" : "sh";
+	}
+
+	private List<CharSequence> arguments()
+	{
+		if (shellCommand.isEmpty()) {
+			return args;
+		}
+
+		return isWindows()
+			? List.of("/d", "/s", "/c", shellCommand.get())
+			: List.of("-c", shellCommand.get());
+	}
+
+	private static boolean isWindows()
+	{
+		return System.getProperty("os.name").toLowerCase(Locale.ENGLISH).contains("windows");
 	}
 
 	private Map<String, String> appendNodeToPathToEnvironment()
 	{
 		String existingPath = environment.getOrElse("PATH", "").toString();
-		String newPath = String.format("%s%s%s",
-			layout.nodeJsBinDirectory().getAbsolutePath(), File.pathSeparator, existingPath
-		);
+		String newPath = pathEntries
+			.map(File::getAbsolutePath)
+			.append(layout.nodeJsBinDirectory().getAbsolutePath())
+			.append(existingPath)
+			.mkString(File.pathSeparator);
 
 		return environment.put("PATH", newPath)
 			.bimap(CharSequence::toString, CharSequence::toString);
 	}
+
+	private record Telemetry(ExecutionTelemetry service, String taskPath, String packageManager)
+	{
+	}
+
+	private record OutputSettings(OutputOptions options, String label, File logFile)
+	{
+	}
 }
@@ -0,0 +1,212 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import groovy.json.JsonOutput;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single long-lived NodeJS process running the bundled {@code node-worker.js} script. The worker executes one script
+ * at a time and streams the output of that script back to the caller.
+ * <p>
+ * Requests and responses are exchanged over a loopback connection rather than the standard streams of the process.
+ * Scripts and the processes they spawn may write to the standard streams of the worker process, which must never be
+ * mistaken for a response. The worker proves its identity with a random token before any request is sent.
+ */
+final class NodeWorker
+{
+	private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+	private static final String TOKEN_VARIABLE = "SINGULAR_NODE_WORKER_TOKEN";
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final Process process;
+	private final Socket connection;
+	private final BufferedWriter requests;
+	private final BufferedReader responses;
+
+	private NodeWorker(Process process, Socket connection)
+		throws IOException
+	{
+		this.process = process;
+		this.connection = connection;
+
+		requests = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
+		responses = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Starts a new worker process.
+	 *
+	 * @param nodeExecutable
+	 * 	The NodeJS executable to run the worker with
+	 * @param workerScript
+	 * 	The location of the worker script
+	 *
+	 * @return The started worker
+	 *
+	 * @throws IOException
+	 * 	If the process cannot be started or does not connect back
+	 */
+	static NodeWorker start(File nodeExecutable, Path workerScript)
+		throws IOException
+	{
+		try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			String token = newToken();
+			ProcessBuilder builder = new ProcessBuilder(
+				nodeExecutable.getAbsolutePath(),
+				workerScript.toString(),
+				String.valueOf(server.getLocalPort())
+			);
+
+			builder.environment().put(TOKEN_VARIABLE, token);
+
+			Process process = builder
+				.redirectOutput(ProcessBuilder.Redirect.INHERIT)
+				.redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+
+			/* Scripts and their child processes must not wait for input that never comes */
+			process.getOutputStream().close();
+
+			try {
+				server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+
+				NodeWorker worker = new NodeWorker(process, server.accept());
+
+				worker.verify(token);
+
+				return worker;
+			} catch (IOException e) {
+				process.destroy();
+
+				throw e;
+			}
+		}
+	}
+
+	private static String newToken()
+	{
+		byte[] token = new byte[32];
+
+		RANDOM.nextBytes(token);
+
+		return HexFormat.of().formatHex(token);
+	}
+
+	/*
+	 * Any local process may connect to the port, so the connection is only accepted from the started worker.
+	 */
+	private void verify(String token)
+		throws IOException
+	{
+		connection.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+
+		if (!("HELLO " + token).equals(responses.readLine())) {
+			stop();
+
+			throw new IOException("NodeJS worker failed to identify itself");
+		}
+
+		connection.setSoTimeout(0);
+	}
+
+	boolean isAlive()
+	{
+		return process.isAlive();
+	}
+
+	/**
+	 * Runs a script in this worker and blocks until it has terminated.
+	 *
+	 * @param script
+	 * 	The script to execute
+	 * @param args
+	 * 	The arguments to pass to the script
+	 * @param workingDirectory
+	 * 	The working directory for the script
+	 * @param environment
+	 * 	The complete environment of the script
+	 * @param output
+	 * 	The stream to which the standard output of the script is written
+	 * @param errors
+	 * 	The stream to which the standard error output of the script is written
+	 *
+	 * @return The exit code of the script
+	 *
+	 * @throws IOException
+	 * 	If the communication with the worker fails
+	 */
+	int run(
+		String script,
+		List<String> args,
+		File workingDirectory,
+		Map<String, String> environment,
+		OutputStream output,
+		OutputStream errors)
+		throws IOException
+	{
+		Map<String, Object> request = new LinkedHashMap<>();
+
+		request.put("script", script);
+		request.put("args", args);
+		request.put("cwd", workingDirectory.getAbsolutePath());
+		request.put("env", environment);
+
+		requests.write(JsonOutput.toJson(request));
+		requests.newLine();
+		requests.flush();
+
+		String message;
+
+		while ((message = responses.readLine()) != null) {
+			int separator = message.indexOf(' ');
+
+			if (separator < 0) {
+				throw new IOException("Unexpected message from NodeJS worker: " + message);
+			}
+
+			String payload = message.substring(separator + 1);
+
+			switch (message.substring(0, separator)) {
+				case "OUT" -> output.write(Base64.getDecoder().decode(payload));
+				case "ERR" -> errors.write(Base64.getDecoder().decode(payload));
+				case "EXIT" -> {
+					output.flush();
+					errors.flush();
+
+					return Integer.parseInt(payload.trim());
+				}
+				default -> throw new IOException("Unexpected message from NodeJS worker: " + message);
+			}
+		}
+
+		throw new IOException("NodeJS worker terminated unexpectedly");
+	}
+
+	void stop()
+	{
+		try {
+			connection.close();
+		} catch (IOException e) {
+			// The worker is destroyed anyway
+		}
+
+		process.destroy();
+	}
+}
@@ -0,0 +1,201 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import io.vavr.control.Option;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a pool of long-lived NodeJS processes for the duration of a build. Scripts executed via {@link NodeCommand}
+ * are sent to an idle worker instead of starting a new NodeJS process, which avoids paying the startup cost of NodeJS
+ * on every task. Each script runs in a worker thread of its own with its own arguments and environment, which the
+ * worker starts ahead of time, so the script is loaded by the time it is requested again. Since a worker only executes
+ * one script at a time, it can also switch to the working directory requested by the script. Output of child processes
+ * spawned by a script is forwarded along with the output of the script itself.
+ * <p>
+ * The pool grows on demand, hence never holds more workers than tasks were executing concurrently. Should a worker
+ * fail to start, the service disables itself and {@link NodeCommand} falls back to starting a new process per
+ * invocation.
+ */
+public abstract class NodeWorkerService
+	implements BuildService<NodeWorkerService.Parameters>, AutoCloseable
+{
+	private static final String SERVICE_NAME = "com.brunoritz.gradle.singularnode.nodeWorkers";
+	private static final Logger LOGGER = Logging.getLogger(NodeWorkerService.class);
+
+	private final Deque<NodeWorker> idleWorkers = new ArrayDeque<>();
+	private final List<NodeWorker> allWorkers = new ArrayList<>();
+	private Option<Path> workerScript = Option.none();
+	private boolean available = true;
+
+	/**
+	 * Registers the shared worker service for the build. Calling this method more than once returns the already
+	 * registered service.
+	 *
+	 * @param project
+	 * 	Any project of the build
+	 * @param layout
+	 * 	The layout of the NodeJS installation
+	 *
+	 * @return The shared worker service
+	 */
+	public static Provider<NodeWorkerService> register(Project project, InstallationLayout layout)
+	{
+		return project.getGradle().getSharedServices().registerIfAbsent(SERVICE_NAME, NodeWorkerService.class, spec ->
+			spec.getParameters().getNodeExecutable().fileProvider(project.provider(layout::pathOfNodeExecutable))
+		);
+	}
+
+	/**
+	 * Executes a script in an idle worker.
+	 *
+	 * @param script
+	 * 	The script to execute
+	 * @param args
+	 * 	The arguments to pass to the script
+	 * @param workingDirectory
+	 * 	The working directory for the script
+	 * @param environment
+	 * 	The complete environment of the script
+	 * @param output
+	 * 	The stream to which the standard output of the script is written
+	 * @param errors
+	 * 	The stream to which the standard error output of the script is written
+	 *
+	 * @return The exit code of the script or {@code none}, if no worker is available and the script needs to be
+	 * 	executed in a new process
+	 */
+	public Option<Integer> execute(
+		String script,
+		List<String> args,
+		File workingDirectory,
+		Map<String, String> environment,
+		OutputStream output,
+		OutputStream errors)
+	{
+		Option<NodeWorker> worker = acquire();
+
+		if (worker.isEmpty()) {
+			return Option.none();
+		}
+
+		try {
+			int exitCode = worker.get().run(script, args, workingDirectory, environment, output, errors);
+
+			release(worker.get());
+
+			return Option.of(exitCode);
+		} catch (IOException e) {
+			discard(worker.get());
+
+			throw new IllegalStateException("NodeJS worker failed while executing " + script, e);
+		}
+	}
+
+	private synchronized Option<NodeWorker> acquire()
+	{
+		while (!idleWorkers.isEmpty()) {
+			NodeWorker worker = idleWorkers.pop();
+
+			if (worker.isAlive()) {
+				return Option.of(worker);
+			}
+
+			discard(worker);
+		}
+
+		if (!available) {
+			return Option.none();
+		}
+
+		try {
+			NodeWorker worker = NodeWorker.start(getParameters().getNodeExecutable().get().getAsFile(), workerScript());
+
+			allWorkers.add(worker);
+
+			return Option.of(worker);
+		} catch (IOException e) {
+			LOGGER.warn("Failed to start NodeJS worker, falling back to a new process per invocation", e);
+			available = false;
+
+			return Option.none();
+		}
+	}
+
+	private synchronized void release(NodeWorker worker)
+	{
+		idleWorkers.push(worker);
+	}
+
+	private synchronized void discard(NodeWorker worker)
+	{
+		worker.stop();
+		allWorkers.remove(worker);
+	}
+
+	private synchronized Path workerScript()
+		throws IOException
+	{
+		if (workerScript.isEmpty()) {
+			Path script = Files.createTempFile("singular-node-worker", ".js");
+
+			try (InputStream content = NodeWorkerService.class.getResourceAsStream("node-worker.js")) {
+				if (content == null) {
+					throw new IOException("NodeJS worker script is missing from the plugin");
+				}
+
+				Files.copy(content, script, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			workerScript = Option.of(script);
+		}
+
+		return workerScript.get();
+	}
+
+	@Override
+	public synchronized void close()
+		throws IOException
+	{
+		for (NodeWorker worker : allWorkers) {
+			worker.stop();
+		}
+
+		allWorkers.clear();
+		idleWorkers.clear();
+
+		if (workerScript.isDefined()) {
+			Files.deleteIfExists(workerScript.get());
+		}
+	}
+
+	/**
+	 * The parameters of the worker service.
+	 */
+	public interface Parameters
+		extends BuildServiceParameters
+	{
+		/**
+		 * The NodeJS executable used to run the workers.
+		 */
+		RegularFileProperty getNodeExecutable();
+	}
+}
@@ -0,0 +1,67 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+
+import java.io.Serializable;
+
+/**
+ * Controls how the output of a NodeJS invocation is forwarded to the console.
+ *
+ * @param prefixLines
+ * 	Whether every line is prefixed with the path of the task
+ * @param logToFile
+ * 	Whether the output is written to the log file of the task instead of the console. If the invocation fails, its
+ * 	last {@code tailLines} lines are shown on the console.
+ * @param tailLines
+ * 	The number of lines shown on failure if the output is written to a log file, or of the lines dropped by the rate
+ * 	limit
+ * @param maxLinesPerSecond
+ * 	The maximum number of lines of the standard output forwarded to the console per second, or zero for no limit.
+ * 	Excess lines are dropped and only their number is reported, unless the invocation fails. The error output is not
+ * 	limited.
+ */
+public record OutputOptions(boolean prefixLines, boolean logToFile, int tailLines, int maxLinesPerSecond)
+	implements Serializable
+{
+	/**
+	 * Forwards the output to the console as is.
+	 *
+	 * @return The options leaving the output untouched
+	 */
+	public static OutputOptions unchanged()
+	{
+		return new OutputOptions(false, false, 0, 0);
+	}
+
+	/**
+	 * Provides the options configured for the {@code NpmTask}, {@code YarnTask} and {@code PnpmTask} tasks.
+	 *
+	 * @param project
+	 * 	The project owning the tasks
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 *
+	 * @return The configured options
+	 */
+	public static Provider<OutputOptions> configured(Project project, NodeJsExtension configuration)
+	{
+		return project.provider(() -> new OutputOptions(
+			configuration.prefixOutput.get(),
+			configuration.outputLogFiles.get(),
+			configuration.outputTailLines.get(),
+			configuration.maxOutputLinesPerSecond.get()
+		));
+	}
+
+	/**
+	 * Tells whether the output is forwarded to the console as is, which does not require any processing.
+	 *
+	 * @return {@code true} if neither prefixing, nor logging to a file, nor rate limiting is requested
+	 */
+	boolean isUnchanged()
+	{
+		return !prefixLines && !logToFile && (maxLinesPerSecond <= 0);
+	}
+}
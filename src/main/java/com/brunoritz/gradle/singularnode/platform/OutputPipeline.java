@@ -0,0 +1,241 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Processes the standard and error output of a NodeJS invocation line by line, as requested by its
+ * {@link OutputOptions}. Lines are either forwarded to the console, optionally prefixed and rate limited, or written
+ * to a log file while the last lines are retained to be shown if the invocation fails.
+ * <p>
+ * Only the standard output is rate limited, the error output is always forwarded. The last lines dropped by the rate
+ * limit are retained as well and shown if the invocation fails, as they usually explain the failure.
+ * <p>
+ * Lines are written to the console with a single write each, while holding the lock of the console stream. Hence the
+ * lines of tasks running in parallel do not interleave within a line.
+ */
+final class OutputPipeline
+{
+	private static final int MAX_LINE_LENGTH = 8 * 1024;
+	private static final int LOG_BUFFER_SIZE = 64 * 1024;
+	private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final OutputOptions options;
+	private final byte[] prefix;
+	private final OutputStream console;
+	private final OutputStream errorConsole;
+	private final File logFile;
+	private final LongSupplier clock;
+	private final LineOutputStream standardOutput;
+	private final LineOutputStream errorOutput;
+	private final TailBuffer tail;
+	private final byte[] consoleLine = new byte[MAX_LINE_LENGTH + 256];
+	private OutputStream log = OutputStream.nullOutputStream();
+	private long windowStart;
+	private int linesInWindow;
+	private long suppressedLines;
+
+	OutputPipeline(
+		OutputOptions options,
+		String label,
+		File logFile,
+		OutputStream console,
+		OutputStream errorConsole,
+		LongSupplier clock)
+	{
+		this.options = options;
+		this.prefix = options.prefixLines()
+			? String.format("[%s] ", label).getBytes(StandardCharsets.UTF_8)
+			: new byte[0];
+		this.console = console;
+		this.errorConsole = errorConsole;
+		this.logFile = logFile;
+		this.clock = clock;
+		this.standardOutput =
+			new LineOutputStream(MAX_LINE_LENGTH, (line, length) -> accept(line, length, console, true));
+		this.errorOutput =
+			new LineOutputStream(MAX_LINE_LENGTH, (line, length) -> accept(line, length, errorConsole, false));
+		this.tail = new TailBuffer(
+			(options.logToFile() || (options.maxLinesPerSecond() > 0)) ? options.tailLines() : 0
+		);
+		this.windowStart = clock.getAsLong();
+
+		if (options.logToFile()) {
+			openLog();
+		}
+	}
+
+	/**
+	 * Opens a pipeline forwarding to {@link System#out} and {@link System#err}. The output is appended to the log file
+	 * if one is requested, so that several invocations of a task end up in the same file.
+	 *
+	 * @param options
+	 * 	The requested processing
+	 * @param label
+	 * 	The label to prefix lines with, usually the path of the task
+	 * @param logFile
+	 * 	The file to write the output to, if requested by the options
+	 *
+	 * @return The opened pipeline
+	 */
+	static OutputPipeline open(OutputOptions options, String label, File logFile)
+	{
+		return new OutputPipeline(options, label, logFile, System.out, System.err, System::nanoTime);
+	}
+
+	private void openLog()
+	{
+		try {
+			Files.createDirectories(logFile.getAbsoluteFile().getParentFile().toPath());
+
+			log = new BufferedOutputStream(Files.newOutputStream(
+				logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND
+			), LOG_BUFFER_SIZE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to open the log file " + logFile, e);
+		}
+	}
+
+	/**
+	 * Returns the stream to which the invocation writes its standard output.
+	 *
+	 * @return The stream processing the standard output
+	 */
+	OutputStream standardOutput()
+	{
+		return standardOutput;
+	}
+
+	/**
+	 * Returns the stream to which the invocation writes its error output.
+	 *
+	 * @return The stream processing the error output
+	 */
+	OutputStream errorOutput()
+	{
+		return errorOutput;
+	}
+
+	/**
+	 * Processes any incomplete last lines and closes the log file. If the invocation failed and its output was written
+	 * to a log file, the last lines are shown on the console along with the location of the log file. If it failed
+	 * and lines were dropped by the rate limit, the last dropped lines are shown instead.
+	 *
+	 * @param succeeded
+	 * 	Whether the invocation succeeded
+	 */
+	synchronized void finish(boolean succeeded)
+	{
+		try {
+			standardOutput.close();
+			errorOutput.close();
+			reportSuppressedLines();
+			log.close();
+
+			if (!succeeded && options.logToFile()) {
+				writeToConsole(errorConsole, String.format(
+					"Last %d lines of output, the full output is in %s", tail.size(), logFile.getAbsolutePath()
+				));
+				tail.forEach((line, length) -> writeToConsole(errorConsole, line, length));
+			} else if (!succeeded && (tail.size() > 0)) {
+				writeToConsole(errorConsole, String.format("Last %d suppressed lines of output", tail.size()));
+				tail.forEach((line, length) -> writeToConsole(errorConsole, line, length));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to process the output", e);
+		}
+	}
+
+	private synchronized void accept(byte[] line, int length, OutputStream target, boolean rateLimited)
+		throws IOException
+	{
+		if (options.logToFile()) {
+			log.write(line, 0, length);
+			log.write('\n');
+			tail.add(line, length);
+		} else if (!rateLimited || admitLine()) {
+			writeToConsole(target, line, length);
+		} else {
+			tail.add(line, length);
+		}
+	}
+
+	/*
+	 * The lines are counted within windows of one second. Lines exceeding the limit of a window are dropped. Their
+	 * number is reported with the first line of the next window that is forwarded, or once the invocation is finished.
+	 * The last dropped lines are retained in the tail.
+	 */
+	private boolean admitLine()
+		throws IOException
+	{
+		if (options.maxLinesPerSecond() <= 0) {
+			return true;
+		}
+
+		long now = clock.getAsLong();
+
+		if ((now - windowStart) >= RATE_WINDOW_NANOS) {
+			reportSuppressedLines();
+			windowStart = now;
+			linesInWindow = 0;
+		}
+
+		if (linesInWindow < options.maxLinesPerSecond()) {
+			linesInWindow++;
+
+			return true;
+		}
+
+		suppressedLines++;
+
+		return false;
+	}
+
+	private void reportSuppressedLines()
+		throws IOException
+	{
+		if (suppressedLines > 0) {
+			writeToConsole(console, String.format(
+				"... %d lines suppressed, exceeding %d lines per second",
+				suppressedLines, options.maxLinesPerSecond()
+			));
+			suppressedLines = 0;
+		}
+	}
+
+	private void writeToConsole(OutputStream target, String message)
+		throws IOException
+	{
+		byte[] line = message.getBytes(StandardCharsets.UTF_8);
+
+		writeToConsole(target, line, line.length);
+	}
+
+	/*
+	 * The prefix, line and line feed are assembled in a reused buffer and written at once, as the console streams of
+	 * Gradle treat every write of a task as a separate chunk of output.
+	 */
+	private void writeToConsole(OutputStream target, byte[] line, int length)
+		throws IOException
+	{
+		int total = prefix.length + length + 1;
+		byte[] buffer = (total <= consoleLine.length) ? consoleLine : new byte[total];
+
+		System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+		System.arraycopy(line, 0, buffer, prefix.length, length);
+		buffer[total - 1] = '\n';
+
+		synchronized (target) {
+			target.write(buffer, 0, total);
+			target.flush();
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import io.vavr.control.Option;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceRegistry;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+
+/**
+ * Limits the number of package installations running concurrently across all projects of a build. Installations
+ * waiting for a permit are served largest lockfile first. The largest installations usually take the longest, so
+ * starting them first shortens the overall build time when many projects install packages in parallel.
+ * <p>
+ * Installation tasks block while waiting for a permit and keep their Gradle worker in the meantime. The priority
+ * therefore only orders the installations already waiting, not those of tasks Gradle has yet to start.
+ */
+public abstract class PackageInstallLimiter
+	implements BuildService<PackageInstallLimiter.Parameters>
+{
+	private static final String SERVICE_NAME = "com.brunoritz.gradle.singularnode.packageInstallLimiter";
+
+	private Option<PrioritizedPermits> permits = Option.none();
+
+	/**
+	 * Registers the shared limiter for the build. Calling this method more than once returns the already registered
+	 * limiter.
+	 *
+	 * @param project
+	 * 	Any project of the build
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 *
+	 * @return The shared limiter
+	 */
+	public static Provider<PackageInstallLimiter> register(Project project, NodeJsExtension configuration)
+	{
+		BuildServiceRegistry services = project.getGradle().getSharedServices();
+
+		return services.registerIfAbsent(SERVICE_NAME, PackageInstallLimiter.class, spec ->
+			spec.getParameters().getMaxParallelInstallations().set(configuration.maxParallelPackageInstallations)
+		);
+	}
+
+	/**
+	 * Blocks until the caller may install packages.
+	 *
+	 * @param lockFile
+	 * 	The lockfile of the installation. Its size determines the priority of the caller.
+	 *
+	 * @return The permit to install packages, which must be closed once the installation is complete
+	 */
+	public PrioritizedPermits.Permit acquire(File lockFile)
+	{
+		try {
+			return permits().acquire(lockFile.length());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new IllegalStateException("Interrupted while waiting to install packages", e);
+		}
+	}
+
+	private synchronized PrioritizedPermits permits()
+	{
+		if (permits.isEmpty()) {
+			permits = Option.of(new PrioritizedPermits(getParameters().getMaxParallelInstallations().get()));
+		}
+
+		return permits.get();
+	}
+
+	/**
+	 * The parameters of the limiter.
+	 */
+	public interface Parameters
+		extends BuildServiceParameters
+	{
+		/**
+		 * The maximum number of package installations to run at the same time.
+		 */
+		Property<Integer> getMaxParallelInstallations();
+	}
+}
@@ -0,0 +1,214 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import groovy.json.JsonSlurper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * A minimal client of an NPM registry. It only supports what is needed to obtain the tarballs of the package managers
+ * themselves: resolving a version or dist-tag of an unscoped package and downloading its tarball. Every download is
+ * verified against the integrity published by the registry.
+ */
+public final class PackageRegistry
+{
+	private static final int HTTP_OK = 200;
+
+	private final HttpClient client;
+	private final String registryUrl;
+
+	/**
+	 * Creates a new registry client.
+	 *
+	 * @param client
+	 * 	The HTTP client to use for all requests
+	 * @param registryUrl
+	 * 	The base URL of the registry, for example {@code https://registry.npmjs.org}
+	 */
+	public PackageRegistry(HttpClient client, CharSequence registryUrl)
+	{
+		String url = registryUrl.toString();
+
+		this.client = client;
+		this.registryUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+	}
+
+	/**
+	 * Creates a new registry client using the proxy settings of the JVM.
+	 *
+	 * @param registryUrl
+	 * 	The base URL of the registry, for example {@code https://registry.npmjs.org}
+	 *
+	 * @return The registry client
+	 */
+	public static PackageRegistry connect(CharSequence registryUrl)
+	{
+		HttpClient client = HttpClient.newBuilder()
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.proxy(ProxySelector.getDefault())
+			.build();
+
+		return new PackageRegistry(client, registryUrl);
+	}
+
+	/**
+	 * Resolves a version of a package.
+	 *
+	 * @param name
+	 * 	The name of the package
+	 * @param version
+	 * 	The exact version or a dist-tag, such as {@code latest}
+	 *
+	 * @return The resolved version along with the location and integrity of its tarball
+	 *
+	 * @throws IOException
+	 * 	If the registry cannot be reached or does not know the requested version
+	 */
+	public PackageTarball resolve(String name, CharSequence version)
+		throws IOException
+	{
+		URI metadataUri = URI.create(String.format("%s/%s/%s", registryUrl, name, version));
+		HttpResponse<String> response = send(
+			HttpRequest.newBuilder(metadataUri).header("Accept", "application/json").GET().build(),
+			HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)
+		);
+
+		expectSuccess(response, metadataUri);
+
+		Object metadata = new JsonSlurper().parseText(response.body());
+
+		if (!(metadata instanceof Map<?, ?> manifest) || !(manifest.get("dist") instanceof Map<?, ?> dist)) {
+			throw new IOException(String.format("%s did not return the metadata of a package version", metadataUri));
+		}
+
+		return new PackageTarball(
+			name,
+			String.valueOf(manifest.get("version")),
+			URI.create(String.valueOf(dist.get("tarball"))),
+			integrity(dist, metadataUri)
+		);
+	}
+
+	/**
+	 * Downloads the tarball of a package. The tarball is only moved to its destination once it has been verified.
+	 * Several tasks may download the same tarball at the same time, for instance when prefetching into a shared
+	 * cache. Hence, every download is staged in a file of its own and a destination created concurrently is accepted.
+	 *
+	 * @param tarball
+	 * 	The tarball to download
+	 * @param destination
+	 * 	The file to store the tarball in
+	 *
+	 * @throws IOException
+	 * 	If the download fails or the tarball does not match its published integrity
+	 */
+	public void download(PackageTarball tarball, Path destination)
+		throws IOException
+	{
+		Path targetDir = destination.toAbsolutePath().getParent();
+
+		Files.createDirectories(targetDir);
+
+		Path partFile = Files.createTempFile(targetDir, destination.getFileName().toString(), ".part");
+
+		try {
+			HttpResponse<Path> response = send(
+				HttpRequest.newBuilder(tarball.location()).GET().build(),
+				HttpResponse.BodyHandlers.ofFile(partFile)
+			);
+
+			expectSuccess(response, tarball.location());
+
+			if (!Checksums.matchesIntegrity(partFile.toFile(), tarball.integrity())) {
+				throw new IOException(String.format(
+					"Integrity mismatch for %s: expected %s", tarball.location(), tarball.integrity()
+				));
+			}
+
+			moveVerified(partFile, destination, tarball.integrity());
+		} finally {
+			Files.deleteIfExists(partFile);
+		}
+	}
+
+	/*
+	 * Should the move fail because a concurrent download has already stored the tarball, that tarball is just as good,
+	 * provided it is complete.
+	 */
+	private static void moveVerified(Path partFile, Path destination, String integrity)
+		throws IOException
+	{
+		try {
+			Files.move(partFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			if (!Files.isRegularFile(destination) || !Checksums.matchesIntegrity(destination.toFile(), integrity)) {
+				throw e;
+			}
+		}
+	}
+
+	/*
+	 * Packages published before the registry started to compute integrities only provide a hexadecimal SHA-1 checksum.
+	 */
+	private static String integrity(Map<?, ?> dist, URI metadataUri)
+		throws IOException
+	{
+		if (dist.get("integrity") instanceof String integrity) {
+			return integrity;
+		} else if (dist.get("shasum") instanceof String shasum) {
+			return "sha1-" + Base64.getEncoder().encodeToString(HexFormat.of().parseHex(shasum));
+		}
+
+		throw new IOException(String.format("%s does not provide an integrity for the tarball", metadataUri));
+	}
+
+	private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+		throws IOException
+	{
+		try {
+			return client.send(request, handler);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while requesting " + request.uri());
+		}
+	}
+
+	private static void expectSuccess(HttpResponse<?> response, URI uri)
+		throws IOException
+	{
+		if (response.statusCode() != HTTP_OK) {
+			throw new IOException(String.format(
+				"Request to %s failed with HTTP status %d", uri, response.statusCode()
+			));
+		}
+	}
+
+	/**
+	 * A resolved package tarball.
+	 *
+	 * @param name
+	 * 	The name of the package
+	 * @param version
+	 * 	The exact version of the package
+	 * @param location
+	 * 	The location of the tarball
+	 * @param integrity
+	 * 	The Subresource Integrity string of the tarball
+	 */
+	public record PackageTarball(String name, String version, URI location, String integrity)
+	{
+	}
+}
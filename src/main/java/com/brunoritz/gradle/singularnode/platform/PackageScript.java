@@ -0,0 +1,274 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import groovy.json.JsonSlurper;
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A script declared in the {@code scripts} of a {@code package.json}, resolved from the arguments of a package manager
+ * invocation such as {@code run build -- --watch}. The script is executed the way package managers do, through the
+ * shell with the {@code node_modules/.bin} directories on the {@code PATH} and the {@code npm_*} lifecycle variables
+ * set, but without starting the package manager itself.
+ * <p>
+ * This is the only place deciding how scripts are run. Runners executing scripts on their own, such as the
+ * {@code NpmRunTask}, take the environment and the command lines to run from here.
+ */
+public final class PackageScript
+{
+	private static final List<String> RUN_COMMANDS = List.of("run", "run-script");
+	private static final List<String> PNP_FILES = List.of(".pnp.cjs", ".pnp.js");
+
+	private final File packageDirectory;
+	private final String name;
+	private final List<String> scriptArgs;
+	private final HashMap<String, String> scripts;
+	private final String packageName;
+	private final String packageVersion;
+
+	private PackageScript(
+		File packageDirectory,
+		String name,
+		List<String> scriptArgs,
+		HashMap<String, String> scripts,
+		String packageName,
+		String packageVersion)
+	{
+		this.packageDirectory = packageDirectory;
+		this.name = name;
+		this.scriptArgs = scriptArgs;
+		this.scripts = scripts;
+		this.packageName = packageName;
+		this.packageVersion = packageVersion;
+	}
+
+	/**
+	 * Resolves the script invoked by the given package manager arguments. Only plain invocations of the form
+	 * {@code run <script>} or {@code run <script> -- <args>} are resolved. Anything else, such as package manager
+	 * options or a script not declared by the {@code package.json}, is left to the package manager, which knows how
+	 * to handle or report it. So are all scripts of Plug'n'Play installations, identified by a {@code .pnp.cjs} or
+	 * {@code .pnp.js} file in the package directory or any of its parents. They have no {@code node_modules/.bin}
+	 * directories, and only the package manager can make their binaries available.
+	 *
+	 * @param workingDirectory
+	 * 	The directory containing the {@code package.json}
+	 * @param args
+	 * 	The arguments passed to the package manager
+	 *
+	 * @return The invoked script or none if the invocation must be handled by the package manager
+	 */
+	public static Option<PackageScript> resolve(File workingDirectory, List<? extends CharSequence> args)
+	{
+		List<String> arguments = args.map(CharSequence::toString);
+
+		if ((arguments.size() < 2) || !RUN_COMMANDS.contains(arguments.head()) || arguments.get(1).startsWith("-")) {
+			return Option.none();
+		}
+
+		List<String> remainingArgs = arguments.drop(2);
+
+		if ((!remainingArgs.isEmpty() && !"--".equals(remainingArgs.head())) || usesPlugAndPlay(workingDirectory)) {
+			return Option.none();
+		}
+
+		return declared(workingDirectory, arguments.get(1), remainingArgs.drop(1));
+	}
+
+	/**
+	 * Resolves a script by its name, without any additional arguments.
+	 *
+	 * @param workingDirectory
+	 * 	The directory containing the {@code package.json}
+	 * @param name
+	 * 	The name of the script as declared in the {@code scripts} of the {@code package.json}
+	 *
+	 * @return The script or none if the {@code package.json} does not exist or does not declare the script
+	 */
+	public static Option<PackageScript> named(File workingDirectory, String name)
+	{
+		return declared(workingDirectory, name, List.empty());
+	}
+
+	private static Option<PackageScript> declared(File workingDirectory, String name, List<String> scriptArgs)
+	{
+		File packageFile = new File(workingDirectory, "package.json");
+
+		if (!packageFile.isFile()) {
+			return Option.none();
+		}
+
+		Object manifest = new JsonSlurper().parse(packageFile, StandardCharsets.UTF_8.name());
+
+		if (!(manifest instanceof Map<?, ?> sections) || !(sections.get("scripts") instanceof Map<?, ?> declared)) {
+			return Option.none();
+		}
+
+		HashMap<String, String> scripts = HashMap.empty();
+
+		for (Map.Entry<?, ?> script : declared.entrySet()) {
+			scripts = scripts.put(String.valueOf(script.getKey()), String.valueOf(script.getValue()));
+		}
+
+		return scripts.containsKey(name)
+			? Option.of(new PackageScript(
+				workingDirectory,
+				name,
+				scriptArgs,
+				scripts,
+				Option.of(sections.get("name")).map(String::valueOf).getOrElse(""),
+				Option.of(sections.get("version")).map(String::valueOf).getOrElse("")
+			))
+			: Option.none();
+	}
+
+	/**
+	 * Returns the name of the script.
+	 *
+	 * @return The name as declared in the {@code scripts} of the {@code package.json}
+	 */
+	public String name()
+	{
+		return name;
+	}
+
+	/**
+	 * Returns the command lines to run, in order, along with their lifecycle event. These are the script itself and, if
+	 * requested, its {@code pre} and {@code post} scripts, as far as they are declared.
+	 *
+	 * @param lifecycleScripts
+	 * 	Whether to include the {@code pre} and {@code post} scripts, as NPM and Yarn 1 run them
+	 *
+	 * @return The lifecycle events and the command lines to run for them
+	 */
+	public List<Tuple2<String, String>> commandLines(boolean lifecycleScripts)
+	{
+		List<String> events = lifecycleScripts ? List.of("pre" + name, name, "post" + name) : List.of(name);
+
+		return events
+			.filter(scripts::containsKey)
+			.map(event -> new Tuple2<>(event, event.equals(name)
+				? List.of(scripts.get(event).get()).appendAll(scriptArgs.map(PackageScript::quote)).mkString(" ")
+				: scripts.get(event).get()
+			));
+	}
+
+	/**
+	 * Prepares a command to run the scripts of the package. The {@code node_modules/.bin} directories are put on the
+	 * {@code PATH} and the {@code npm_*} variables describing the package are set. Only the
+	 * {@code npm_lifecycle_event} and {@code npm_lifecycle_script} variables are left to be set per command line.
+	 *
+	 * @param command
+	 * 	The command carrying the environment and telemetry to execute the scripts with
+	 * @param layout
+	 * 	The layout of the NodeJS installation
+	 * @param packageManagerScript
+	 * 	The script of the package manager that would run the script otherwise, exposed as {@code npm_execpath}
+	 *
+	 * @return The prepared command
+	 */
+	public NodeCommand prepare(NodeCommand command, InstallationLayout layout, File packageManagerScript)
+	{
+		String nodeExecutable = layout.pathOfNodeExecutable().getAbsolutePath();
+		HashMap<CharSequence, CharSequence> packageEnvironment = HashMap.<CharSequence, CharSequence>empty()
+			.put("npm_command", "run-script")
+			.put("npm_package_json", new File(packageDirectory, "package.json").getAbsolutePath())
+			.put("npm_package_name", packageName)
+			.put("npm_package_version", packageVersion)
+			.put("npm_execpath", packageManagerScript.getAbsolutePath())
+			.put("npm_node_execpath", nodeExecutable)
+			.put("NODE", nodeExecutable)
+			.put("INIT_CWD", packageDirectory.getAbsolutePath());
+
+		return command
+			.withPathEntries(binDirectories())
+			.withEnvironment(packageEnvironment);
+	}
+
+	/**
+	 * Executes the script and, if requested, its {@code pre} and {@code post} scripts. A failing script fails the
+	 * execution and prevents any further script from running.
+	 *
+	 * @param command
+	 * 	The command carrying the environment and telemetry to execute the scripts with
+	 * @param layout
+	 * 	The layout of the NodeJS installation
+	 * @param packageManagerScript
+	 * 	The script of the package manager that would run the script otherwise, exposed as {@code npm_execpath}
+	 * @param lifecycleScripts
+	 * 	Whether to run the {@code pre} and {@code post} scripts as well, as NPM and Yarn 1 do
+	 */
+	public void execute(
+		NodeCommand command,
+		InstallationLayout layout,
+		File packageManagerScript,
+		boolean lifecycleScripts)
+	{
+		NodeCommand scriptCommand = prepare(command, layout, packageManagerScript);
+
+		for (Tuple2<String, String> commandLine : commandLines(lifecycleScripts)) {
+			scriptCommand
+				.withEnvironment(HashMap.of(
+					"npm_lifecycle_event", commandLine._1(),
+					"npm_lifecycle_script", commandLine._2()
+				))
+				.shell(commandLine._2())
+				.execute();
+		}
+	}
+
+	private static boolean usesPlugAndPlay(File packageDirectory)
+	{
+		File directory = packageDirectory.getAbsoluteFile();
+
+		while (directory != null) {
+			for (String fileName : PNP_FILES) {
+				if (new File(directory, fileName).isFile()) {
+					return true;
+				}
+			}
+
+			directory = directory.getParentFile();
+		}
+
+		return false;
+	}
+
+	/*
+	 * Like package managers, the node_modules/.bin directories of all parent directories are added as well, so that
+	 * binaries hoisted to the root of a workspace are found. Directories that do not exist are left out.
+	 */
+	private List<File> binDirectories()
+	{
+		List<File> directories = List.empty();
+
+		File directory = packageDirectory.getAbsoluteFile();
+
+		while (directory != null) {
+			File binDirectory = new File(directory, "node_modules/.bin");
+
+			if (binDirectory.isDirectory()) {
+				directories = directories.append(binDirectory);
+			}
+
+			directory = directory.getParentFile();
+		}
+
+		return directories;
+	}
+
+	private static String quote(String argument)
+	{
+		if (System.getProperty("os.name").toLowerCase(Locale.ENGLISH).contains("windows")) {
+			return '"' + argument.replace("\"", "\\\"") + '"';
+		}
+
+		return '\'' + argument.replace("'", "'\\''") + '\'';
+	}
+}
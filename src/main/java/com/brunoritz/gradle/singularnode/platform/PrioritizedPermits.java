@@ -0,0 +1,109 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A fixed number of permits handed out by priority. Whenever a permit becomes available, it is granted to the waiting
+ * requester with the highest priority. Requesters of equal priority are served in the order of their requests.
+ */
+public final class PrioritizedPermits
+{
+	private final PriorityQueue<Request> waitingRequests = new PriorityQueue<>(
+		Comparator.comparingLong(Request::priority).reversed().thenComparingLong(Request::sequence)
+	);
+	private int availablePermits;
+	private long nextSequence;
+
+	/**
+	 * Creates a new set of permits.
+	 *
+	 * @param permits
+	 * 	The number of permits that can be held at the same time. Must be at least {@code 1}.
+	 */
+	public PrioritizedPermits(int permits)
+	{
+		if (permits < 1) {
+			throw new IllegalArgumentException("At least one permit is required, got " + permits);
+		}
+
+		availablePermits = permits;
+	}
+
+	/**
+	 * Blocks until a permit is granted to the caller. The permit must be closed once no longer needed.
+	 *
+	 * @param priority
+	 * 	The priority of the caller. Higher values are served first.
+	 *
+	 * @return The granted permit
+	 *
+	 * @throws InterruptedException
+	 * 	If the caller is interrupted while waiting
+	 */
+	public synchronized Permit acquire(long priority)
+		throws InterruptedException
+	{
+		Request request = new Request(priority, nextSequence++);
+
+		waitingRequests.add(request);
+
+		try {
+			while ((availablePermits == 0) || (waitingRequests.peek() != request)) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			waitingRequests.remove(request);
+			notifyAll();
+
+			throw e;
+		}
+
+		waitingRequests.remove();
+		availablePermits--;
+		notifyAll();
+
+		return new Permit(this);
+	}
+
+	synchronized int waitingCount()
+	{
+		return waitingRequests.size();
+	}
+
+	private synchronized void release()
+	{
+		availablePermits++;
+		notifyAll();
+	}
+
+	private record Request(long priority, long sequence)
+	{
+	}
+
+	/**
+	 * A granted permit. Closing the permit returns it, closing it more than once has no effect.
+	 */
+	public static final class Permit
+		implements AutoCloseable
+	{
+		private final PrioritizedPermits permits;
+		private boolean released;
+
+		private Permit(PrioritizedPermits permits)
+		{
+			this.permits = permits;
+		}
+
+		@Override
+		public void close()
+		{
+			synchronized (permits) {
+				if (!released) {
+					released = true;
+					permits.release();
+				}
+			}
+		}
+	}
+}
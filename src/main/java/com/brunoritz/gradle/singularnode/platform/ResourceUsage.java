@@ -0,0 +1,106 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import groovy.json.JsonException;
+import groovy.json.JsonSlurper;
+import io.vavr.control.Option;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The resource usage reported by the {@code node-usage.js} script preloaded into NodeJS. Every NodeJS process of an
+ * invocation reports its usage, including those spawned by the package manager or by scripts. Processes other than
+ * NodeJS, such as shells or native tools, do not report.
+ *
+ * @param cpuTime
+ * 	The user and system CPU time consumed by all reporting processes
+ * @param peakRssBytes
+ * 	The largest peak resident set size of any reporting process
+ */
+record ResourceUsage(Option<Duration> cpuTime, Option<Long> peakRssBytes)
+{
+	/**
+	 * Reads the usage reports written by NodeJS. Should no process have written its report, for example because
+	 * NodeJS was killed, the usage is unknown. Lines that cannot be parsed are ignored, as a process may have been
+	 * killed while writing.
+	 *
+	 * @param reportFile
+	 * 	The file the reports were appended to
+	 *
+	 * @return The aggregated usage
+	 */
+	static ResourceUsage read(File reportFile)
+	{
+		if (!reportFile.isFile()) {
+			return unknown();
+		}
+
+		ResourceUsage usage = unknown();
+
+		try {
+			for (String line : Files.readAllLines(reportFile.toPath(), StandardCharsets.UTF_8)) {
+				usage = usage.add(parse(line));
+			}
+		} catch (IOException e) {
+			return unknown();
+		}
+
+		return usage;
+	}
+
+	static ResourceUsage unknown()
+	{
+		return new ResourceUsage(Option.none(), Option.none());
+	}
+
+	/*
+	 * The CPU times of the processes add up. Their peak memory usage does not, as the processes need not have run at the
+	 * same time, hence the largest peak is kept.
+	 */
+	private ResourceUsage add(ResourceUsage other)
+	{
+		Option<Duration> totalCpuTime = cpuTime.isEmpty()
+			? other.cpuTime
+			: Option.of(cpuTime.get().plus(other.cpuTime.getOrElse(Duration.ZERO)));
+		Option<Long> largestPeakRss = peakRssBytes.isEmpty()
+			? other.peakRssBytes
+			: Option.of(Math.max(peakRssBytes.get(), other.peakRssBytes.getOrElse(0L)));
+
+		return new ResourceUsage(totalCpuTime, largestPeakRss);
+	}
+
+	private static ResourceUsage parse(String line)
+	{
+		if (line.isBlank()) {
+			return unknown();
+		}
+
+		Object report;
+
+		try {
+			report = new JsonSlurper().parseText(line);
+		} catch (JsonException e) {
+			return unknown();
+		}
+
+		if (!(report instanceof Map<?, ?> values)) {
+			return unknown();
+		}
+
+		Option<Long> cpuMicros = number(values.get("cpuMicros"));
+		Option<Long> maxRssKilobytes = number(values.get("maxRssKilobytes"));
+
+		return new ResourceUsage(cpuMicros.map(Duration.ofNanos(1000)::multipliedBy),
+			maxRssKilobytes.map(kilobytes -> kilobytes * 1024)
+		);
+	}
+
+	private static Option<Long> number(Object value)
+	{
+		return (value instanceof Number number) ? Option.of(number.longValue()) : Option.none();
+	}
+}
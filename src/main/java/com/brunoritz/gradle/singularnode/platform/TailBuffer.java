@@ -0,0 +1,76 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import java.io.IOException;
+
+/**
+ * Retains the last lines of an output in a ring of reusable line buffers. A buffer is only reallocated when a line
+ * does not fit into it.
+ */
+final class TailBuffer
+{
+	private final byte[][] lines;
+	private final int[] lengths;
+	private int next;
+	private int size;
+
+	TailBuffer(int capacity)
+	{
+		lines = new byte[capacity][];
+		lengths = new int[capacity];
+	}
+
+	/**
+	 * Retains a copy of the given line, dropping the oldest one if the buffer is full.
+	 *
+	 * @param line
+	 * 	The buffer holding the line, starting at index zero
+	 * @param length
+	 * 	The length of the line in bytes
+	 */
+	void add(byte[] line, int length)
+	{
+		if (lines.length == 0) {
+			return;
+		}
+
+		if ((lines[next] == null) || (lines[next].length < length)) {
+			lines[next] = new byte[Math.max(length, 128)];
+		}
+
+		System.arraycopy(line, 0, lines[next], 0, length);
+		lengths[next] = length;
+		next = (next + 1) % lines.length;
+		size = Math.min(size + 1, lines.length);
+	}
+
+	/**
+	 * Returns the number of retained lines.
+	 *
+	 * @return The number of lines, which is at most the capacity
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Passes the retained lines, oldest first, to the given consumer.
+	 *
+	 * @param consumer
+	 * 	The consumer to receive the lines
+	 *
+	 * @throws IOException
+	 * 	If the consumer fails
+	 */
+	void forEach(LineOutputStream.LineConsumer consumer)
+		throws IOException
+	{
+		int first = (next - size + lines.length) % Math.max(lines.length, 1);
+
+		for (int i = 0; i < size; i++) {
+			int index = (first + i) % lines.length;
+
+			consumer.accept(lines[index], lengths[index]);
+		}
+	}
+}
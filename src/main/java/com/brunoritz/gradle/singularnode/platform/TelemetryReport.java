@@ -0,0 +1,120 @@
+package com.brunoritz.gradle.singularnode.platform;
+
+import groovy.json.JsonOutput;
+import io.vavr.collection.List;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the recorded NodeJS invocations of a build as JSON and HTML report. Both reports list the invocations slowest
+ * first.
+ */
+final class TelemetryReport
+{
+	private TelemetryReport()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Writes {@code telemetry.json} and {@code telemetry.html} into the given directory.
+	 *
+	 * @param records
+	 * 	The recorded invocations
+	 * @param reportDirectory
+	 * 	The directory to write the reports to
+	 *
+	 * @throws IOException
+	 * 	If the reports cannot be written
+	 */
+	static void write(List<ExecutionRecord> records, File reportDirectory)
+		throws IOException
+	{
+		List<ExecutionRecord> slowestFirst = slowestFirst(records);
+
+		Files.createDirectories(reportDirectory.toPath());
+		Files.writeString(new File(reportDirectory, "telemetry.json").toPath(), json(slowestFirst),
+			StandardCharsets.UTF_8
+		);
+		Files.writeString(new File(reportDirectory, "telemetry.html").toPath(), html(slowestFirst),
+			StandardCharsets.UTF_8
+		);
+	}
+
+	static List<ExecutionRecord> slowestFirst(List<ExecutionRecord> records)
+	{
+		return records.sorted(Comparator.comparing(ExecutionRecord::wallTime).reversed());
+	}
+
+	static String json(List<ExecutionRecord> records)
+	{
+		java.util.List<Map<String, Object>> invocations = records.map(TelemetryReport::jsonEntry).toJavaList();
+
+		return JsonOutput.prettyPrint(JsonOutput.toJson(Map.of("invocations", invocations)));
+	}
+
+	private static Map<String, Object> jsonEntry(ExecutionRecord record)
+	{
+		Map<String, Object> entry = new LinkedHashMap<>();
+
+		entry.put("task", record.taskPath());
+		entry.put("packageManager", record.packageManager());
+		entry.put("command", record.command());
+		entry.put("wallTimeMillis", record.wallTime().toMillis());
+		entry.put("cpuTimeMillis", record.cpuTime().map(cpuTime -> (Object) cpuTime.toMillis()).getOrNull());
+		entry.put("peakRssBytes", record.peakRssBytes().getOrNull());
+		entry.put("exitCode", record.exitCode());
+		entry.put("stdoutBytes", record.outputBytes());
+		entry.put("stderrBytes", record.errorBytes());
+
+		return entry;
+	}
+
+	static String html(List<ExecutionRecord> records)
+	{
+		StringBuilder html = new StringBuilder()
+			.append("<!DOCTYPE html>\n")
+			.append("<html>\n<head>\n<meta charset=\"utf-8\">\n<title>NodeJS Invocations</title>\n")
+			.append("<style>table { border-collapse: collapse; } th, td { border: 1px solid #ccc; ")
+			.append("padding: 4px 8px; } td.number { text-align: right; }</style>\n")
+			.append("</head>\n<body>\n<h1>NodeJS Invocations</h1>\n<table>\n")
+			.append("<tr><th>Task</th><th>Package Manager</th><th>Wall Time (ms)</th><th>CPU Time (ms)</th>")
+			.append("<th>Peak RSS (MiB)</th><th>Exit Code</th><th>Stdout (bytes)</th><th>Stderr (bytes)</th>")
+			.append("<th>Command</th></tr>\n");
+
+		for (ExecutionRecord record : records) {
+			html.append("<tr>")
+				.append(cell(escape(record.taskPath()), false))
+				.append(cell(escape(record.packageManager()), false))
+				.append(cell(String.valueOf(record.wallTime().toMillis()), true))
+				.append(cell(record.cpuTime().map(cpuTime -> String.valueOf(cpuTime.toMillis())).getOrElse("-"), true))
+				.append(cell(record.peakRssBytes().map(bytes -> String.valueOf(bytes / 1048576)).getOrElse("-"), true))
+				.append(cell(String.valueOf(record.exitCode()), true))
+				.append(cell(String.valueOf(record.outputBytes()), true))
+				.append(cell(String.valueOf(record.errorBytes()), true))
+				.append(cell(escape(record.command()), false))
+				.append("</tr>\n");
+		}
+
+		return html.append("</table>\n</body>\n</html>\n").toString();
+	}
+
+	private static String cell(String content, boolean numeric)
+	{
+		return (numeric ? "<td class=\"number\">" : "<td>") + content + "</td>";
+	}
+
+	private static String escape(String text)
+	{
+		return text.replace("&", "&amp;")
+			.replace("<", "&lt;")
+			.replace(">", "&gt;")
+			.replace("\"", "&quot;");
+	}
+}
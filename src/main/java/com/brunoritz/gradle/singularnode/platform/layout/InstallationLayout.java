@@ -28,6 +28,15 @@ public abstract class InstallationLayout
 		return installBaseDir.dir("node").get().getAsFile();
 	}
 
+	/**
+	 * Returns the file describing the contents of the NodeJS installation. The manifest is stored next to the
+	 * installation directory and only exists if NodeJS was installed incrementally.
+	 */
+	public File nodeJsManifestFile()
+	{
+		return installBaseDir.file("node.manifest").get().getAsFile();
+	}
+
 	/**
 	 * Returns the directory whiin which the managed version of NPM is installed. The directory returned is the one
 	 * used to install NPM into using the {@code --prefix} switch.
@@ -55,6 +64,26 @@ public abstract class InstallationLayout
 		return installBaseDir.dir("pnpm").get().getAsFile();
 	}
 
+	/**
+	 * Returns the directory Corepack uses as its home. It holds the package managers prepared by Corepack, shared by
+	 * all projects of the build.
+	 */
+	public File corepackHomeDirectory()
+	{
+		return installBaseDir.dir("corepack").get().getAsFile();
+	}
+
+	/**
+	 * Returns the directory into which a package is placed when being installed globally with the given prefix.
+	 */
+	public abstract File globalPackageDirectory(File prefix, String packageName);
+
+	/**
+	 * Returns the location of the executable shim of a package binary installed globally with the given prefix.
+	 * Shims ending in {@code .cmd} are Windows batch files, all others are symlinks to the script of the binary.
+	 */
+	public abstract File globalBinShim(File prefix, String binName);
+
 	/**
 	 * Returns the directory containing the NodeJS executable. Not that this might not be a subdirectory of the
 	 * installation directory, but just the installation directory itse.f
@@ -88,6 +117,16 @@ public abstract class InstallationLayout
 	 */
 	public abstract File pathOfBundledCliScript(String scriptName);
 
+	/**
+	 * Returns the full path of an entry point of the Corepack version bundled with NodeJS. The entry points reside in
+	 * the {@code dist} directory of Corepack and are named after the package manager they launch, or {@code corepack}
+	 * for the Corepack CLI itself.
+	 *
+	 * @param entryPoint
+	 * 	The entry point's name without the {@code .js} suffix
+	 */
+	public abstract File pathOfBundledCorepackScript(String entryPoint);
+
 	/**
 	 * Returns the full path to the NPM installation managed by this plugin. This is the verison of PNPM to be used
 	 * for
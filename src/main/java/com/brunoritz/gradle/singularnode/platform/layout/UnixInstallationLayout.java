@@ -49,6 +49,14 @@ public class UnixInstallationLayout
 		return combine(nodeJsInstallDir(), "lib", "node_modules", "npm", "bin", cliScript);
 	}
 
+	@Override
+	public File pathOfBundledCorepackScript(String entryPoint)
+	{
+		String script = String.format("%s.js", entryPoint);
+
+		return combine(nodeJsInstallDir(), "lib", "node_modules", "corepack", "dist", script);
+	}
+
 	@Override
 	public File pathOfManagedNpmScript()
 	{
@@ -66,4 +74,16 @@ public class UnixInstallationLayout
 	{
 		return combine(pnpmInstallDirectory(), "bin", "pnpm");
 	}
+
+	@Override
+	public File globalPackageDirectory(File prefix, String packageName)
+	{
+		return combine(prefix, "lib", "node_modules", packageName);
+	}
+
+	@Override
+	public File globalBinShim(File prefix, String binName)
+	{
+		return combine(prefix, "bin", binName);
+	}
 }
@@ -50,6 +50,14 @@ public class WindowsInstallationLayout
 		return combine(nodeJsInstallDir(), "node_modules", "npm", "bin", cliScript);
 	}
 
+	@Override
+	public File pathOfBundledCorepackScript(String entryPoint)
+	{
+		String script = String.format("%s.js", entryPoint);
+
+		return combine(nodeJsInstallDir(), "node_modules", "corepack", "dist", script);
+	}
+
 	@Override
 	public File pathOfManagedNpmScript()
 	{
@@ -67,4 +75,16 @@ public class WindowsInstallationLayout
 	{
 		return combine(pnpmInstallDirectory(), "node_modules", "pnpm", "bin", "pnpm.cjs");
 	}
+
+	@Override
+	public File globalPackageDirectory(File prefix, String packageName)
+	{
+		return combine(prefix, "node_modules", packageName);
+	}
+
+	@Override
+	public File globalBinShim(File prefix, String binName)
+	{
+		return combine(prefix, binName + ".cmd");
+	}
 }
@@ -1,15 +1,32 @@
 package com.brunoritz.gradle.singularnode.pnpm;
 
 import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import com.brunoritz.gradle.singularnode.affected.AffectedSetup;
+import com.brunoritz.gradle.singularnode.bundle.ToolBundleSetup;
+import com.brunoritz.gradle.singularnode.cache.PackageCacheSetup;
+import com.brunoritz.gradle.singularnode.cache.RestoreNodeModulesTask;
+import com.brunoritz.gradle.singularnode.nodejs.CorepackInstaller;
 import com.brunoritz.gradle.singularnode.nodejs.InstallNodeJsTask;
+import com.brunoritz.gradle.singularnode.platform.ExecutionTelemetry;
 import com.brunoritz.gradle.singularnode.platform.Lookup;
+import com.brunoritz.gradle.singularnode.platform.NodeWorkerService;
+import com.brunoritz.gradle.singularnode.platform.OutputOptions;
+import com.brunoritz.gradle.singularnode.platform.PackageInstallLimiter;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import com.brunoritz.gradle.singularnode.prefetch.PrefetchSetup;
+import com.brunoritz.gradle.singularnode.workspace.WorkspaceSetup;
+import com.brunoritz.gradle.singularnode.workspace.WorkspaceType;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.TaskProvider;
 
 import static com.brunoritz.gradle.singularnode.platform.layout.InstallationLayoutFactory.platformDependentLayout;
 
+import java.util.List;
+
 /**
  * Configures all required tasks and properties for the PNPM package manager.
  */
@@ -25,6 +42,9 @@ public final class PnpmSetup
 	/**
 	 * Configures the tasks needed to install the PNPM package manager on the root project. The setup task itself will
 	 * depend on the one responsible for setting up NodeJS itself.
+	 * <p>
+	 * Additionally, an {@code installPnpmWorkspace} task is registered. It installs the packages of an PNPM workspace
+	 * declared in the root project, provided the workspace mode is enabled.
 	 *
 	 * @param project
 	 * 	The root project on which to register the setup task
@@ -47,6 +67,52 @@ public final class PnpmSetup
 			task.getWorkingDirectory().set(project.getProjectDir());
 			task.getPnpmInstallDirectory().set(layout.pnpmInstallDirectory());
 			task.getPnpmVersion().set(configuration.pnpmVersion);
+			task.getPackageTarball().set(ToolBundleSetup.bundledPackage(project, configuration, "pnpm"));
+			task.getProvisioning().set(configuration.packageManagerProvisioning);
+			task.getPackageRegistry().set(configuration.packageRegistry);
+			task.getDeclaredVersion().set(CorepackInstaller.declaredVersion(project, configuration, "pnpm"));
+		});
+
+		registerWorkspaceInstallTask(project, configuration, layout, pnpmInstallationTask);
+	}
+
+	private static void registerWorkspaceInstallTask(
+		Project project,
+		NodeJsExtension configuration,
+		InstallationLayout layout,
+		TaskProvider<InstallPnpmTask> pnpmInstallationTask)
+	{
+		Provider<PackageInstallLimiter> installLimiter = PackageInstallLimiter.register(project, configuration);
+		Provider<ExecutionTelemetry> telemetry = ExecutionTelemetry.register(project);
+		Provider<ExecutionTelemetry> enabledTelemetry =
+			configuration.executionTelemetry.filter(enabled -> enabled).flatMap(enabled -> telemetry);
+		Provider<Directory> packageCacheDirectory = PackageCacheSetup.sharedCacheDirectory(configuration);
+		Provider<Boolean> workspaceInstallation =
+			WorkspaceSetup.workspaceInstallation(project, configuration, WorkspaceType.PNPM);
+		TaskProvider<InstallPnpmPackagesTask> workspaceInstallationTask =
+			project.getTasks().register("installPnpmWorkspace", InstallPnpmPackagesTask.class);
+
+		workspaceInstallationTask.configure(task -> {
+			task.setGroup(GROUP);
+			task.dependsOn(pnpmInstallationTask);
+			task.onlyIf("Workspace mode is enabled and the root project declares a workspace", workspaceTask ->
+				workspaceInstallation.get()
+			);
+
+			task.getArgs().set(configuration.pnpmInstallArgs);
+			task.getWorkingDirectory().set(project.getProjectDir());
+			task.getInstallationLayout().set(layout);
+			task.getInstallLimiter().set(installLimiter);
+			task.usesService(installLimiter);
+			task.getTelemetry().set(enabledTelemetry);
+			task.usesService(telemetry);
+			task.getPackageCacheDirectory().set(packageCacheDirectory);
+			task.getPreferOffline().set(configuration.prefetchPackages);
+			task.dependsOn(PrefetchSetup.prefetchDependency(project, configuration));
+			task.getWorkspacePackageFiles().from(WorkspaceSetup.memberPackageFiles(project));
+
+			task.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			task.getInputs().property("pnpmVersion", configuration.pnpmVersion);
 		});
 	}
 
@@ -66,27 +132,73 @@ public final class PnpmSetup
 			.getOrElseThrow(() -> new IllegalStateException("Running on unsupported OS"));
 		TaskProvider<Task> pnpmSetupTask = Lookup.rootProjectTask(project, "installPnpm")
 			.getOrElseThrow(() -> new IllegalStateException("Requested task does not exist on root project"));
+		TaskProvider<Task> workspaceInstallationTask = Lookup.rootProjectTask(project, "installPnpmWorkspace")
+			.getOrElseThrow(() -> new IllegalStateException("Requested task does not exist on root project"));
+		Provider<Boolean> workspaceInstallation =
+			WorkspaceSetup.workspaceInstallation(project, configuration, WorkspaceType.PNPM);
+		Provider<PackageInstallLimiter> installLimiter = PackageInstallLimiter.register(project, configuration);
+		Provider<ExecutionTelemetry> telemetry = ExecutionTelemetry.register(project);
+		Provider<ExecutionTelemetry> enabledTelemetry =
+			configuration.executionTelemetry.filter(enabled -> enabled).flatMap(enabled -> telemetry);
+		Provider<Directory> packageCacheDirectory = PackageCacheSetup.sharedCacheDirectory(configuration);
+		Provider<RegularFile> nodeModulesArchive = PackageCacheSetup.nodeModulesArchive(project, configuration, "pnpm");
 		TaskProvider<InstallPnpmPackagesTask> installPnpmPackagesTask =
 			project.getTasks().register("installPnpmPackages", InstallPnpmPackagesTask.class);
 
 		installPnpmPackagesTask.configure(task -> {
 			task.setGroup(GROUP);
 			task.dependsOn(pnpmSetupTask);
+			AffectedSetup.onlyIfAffected(project, configuration, task);
 
 			task.getArgs().set(configuration.pnpmInstallArgs);
 			task.getWorkingDirectory().set(project.getProjectDir());
 			task.getInstallationLayout().set(layout);
+			task.getInstallLimiter().set(installLimiter);
+			task.usesService(installLimiter);
+			task.getTelemetry().set(enabledTelemetry);
+			task.usesService(telemetry);
+			task.getPackageCacheDirectory().set(packageCacheDirectory);
+			task.getPreferOffline().set(configuration.prefetchPackages);
+			task.dependsOn(PrefetchSetup.prefetchDependency(project, configuration));
+			task.getWorkspaceInstallation().set(workspaceInstallation);
+			task.dependsOn(workspaceInstallation.map(enabled ->
+				enabled ? List.of(workspaceInstallationTask) : List.of()
+			));
+
+			task.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			task.getInputs().property("pnpmVersion", configuration.pnpmVersion);
+
+			task.getNodeModulesArchive().set(nodeModulesArchive);
 		});
 
-		project.getTasks().whenTaskAdded(newTask -> {
-			if (newTask instanceof PnpmTask newPnpmTask) {
-				newPnpmTask.dependsOn(installPnpmPackagesTask);
-				newPnpmTask.getWorkingDirectory().set(project.getProjectDir());
-				newPnpmTask.getInstallationLayout().set(layout);
+		TaskProvider<RestoreNodeModulesTask> restorePackagesTask = PackageCacheSetup.registerRestoreTask(
+			project, "restorePnpmPackages", GROUP, installPnpmPackagesTask, nodeModulesArchive
+		);
+
+		Provider<NodeWorkerService> workerService = NodeWorkerService.register(project, layout);
+		Provider<NodeWorkerService> enabledWorkerService =
+			configuration.nodeWorkers.filter(enabled -> enabled).flatMap(enabled -> workerService);
+		Provider<OutputOptions> outputOptions = OutputOptions.configured(project, configuration);
+
+		project.getTasks().withType(PnpmTask.class).configureEach(newPnpmTask -> {
+			newPnpmTask.dependsOn(installPnpmPackagesTask);
+			newPnpmTask.dependsOn(restorePackagesTask);
+			newPnpmTask.dependsOn(WorkspaceSetup.projectTaskDependencies(
+				project, configuration, PnpmTask.class, newPnpmTask.getName()
+			));
+			AffectedSetup.onlyIfAffected(project, configuration, newPnpmTask);
+			newPnpmTask.getWorkingDirectory().set(project.getProjectDir());
+			newPnpmTask.getInstallationLayout().set(layout);
+			newPnpmTask.getWorkerService().set(enabledWorkerService);
+			newPnpmTask.getDirectScriptExecution().set(configuration.directScriptExecution);
+			newPnpmTask.getOutputOptions().set(outputOptions);
+			newPnpmTask.usesService(workerService);
+			newPnpmTask.getTelemetry().set(enabledTelemetry);
+			newPnpmTask.usesService(telemetry);
+			newPnpmTask.getPackageCacheDirectory().set(packageCacheDirectory);
 
-				newPnpmTask.getInputs().property("nodeJsVersion", configuration.nodeVersion);
-				newPnpmTask.getInputs().property("pnpmVersion", configuration.pnpmVersion);
-			}
+			newPnpmTask.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			newPnpmTask.getInputs().property("pnpmVersion", configuration.pnpmVersion);
 		});
 
 		project.getExtensions().getExtraProperties().set("PnpmTask", PnpmTask.class);
@@ -0,0 +1,102 @@
+package com.brunoritz.gradle.singularnode.prefetch;
+
+import com.brunoritz.gradle.singularnode.lockfile.DependencyGraph;
+import com.brunoritz.gradle.singularnode.lockfile.LockedPackage;
+import com.brunoritz.gradle.singularnode.lockfile.Lockfiles;
+import com.brunoritz.gradle.singularnode.platform.PackageRegistry.PackageTarball;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the tarballs of all locked packages from a lockfile. Only packages resolved from an HTTP location and
+ * protected by an integrity are returned. Packages resolved from Git repositories, local directories or workspace
+ * members are fetched by the package manager itself.
+ */
+final class LockedTarballs
+{
+	private static final Pattern SHA1_HEX = Pattern.compile("[0-9a-f]{40}");
+
+	private LockedTarballs()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Reads the tarballs locked by a {@code package-lock.json} or {@code npm-shrinkwrap.json} file.
+	 *
+	 * @param lockFile
+	 * 	The NPM lockfile
+	 *
+	 * @return The locked tarballs
+	 *
+	 * @throws IOException
+	 * 	If the lockfile cannot be read
+	 */
+	static List<PackageTarball> npm(File lockFile)
+		throws IOException
+	{
+		return tarballs(Lockfiles.read(lockFile));
+	}
+
+	/**
+	 * Reads the tarballs locked by a {@code yarn.lock} file. Lockfiles of Yarn 2 and later resolve packages to
+	 * descriptors rather than tarball locations, hence no tarballs are returned for them.
+	 * <p>
+	 * Yarn 1 omits the {@code integrity} field for packages locked by old versions. The SHA-1 checksum appended to the
+	 * resolved location is used for these instead.
+	 *
+	 * @param lockFile
+	 * 	The Yarn lockfile
+	 *
+	 * @return The locked tarballs
+	 *
+	 * @throws IOException
+	 * 	If the lockfile cannot be read
+	 */
+	static List<PackageTarball> yarn(File lockFile)
+		throws IOException
+	{
+		return tarballs(Lockfiles.read(lockFile));
+	}
+
+	private static List<PackageTarball> tarballs(DependencyGraph graph)
+	{
+		return graph.packages().flatMap(LockedTarballs::tarball);
+	}
+
+	private static Option<PackageTarball> tarball(LockedPackage lockedPackage)
+	{
+		Option<String> resolved = lockedPackage.resolved().filter(LockedTarballs::isHttp);
+
+		if (resolved.isEmpty()) {
+			return Option.none();
+		}
+
+		URI location = URI.create(resolved.get());
+		URI tarballLocation = URI.create(resolved.get().replaceFirst("#.*$", ""));
+		Option<String> sha1Integrity = Option.of(location.getFragment())
+			.filter(hash -> SHA1_HEX.matcher(hash).matches())
+			.map(hash -> "sha1-" + Base64.getEncoder().encodeToString(HexFormat.of().parseHex(hash)));
+
+		return lockedPackage.integrity()
+			.orElse(sha1Integrity)
+			.map(hash -> new PackageTarball(
+				lockedPackage.name(),
+				lockedPackage.version().getOrElse(""),
+				tarballLocation,
+				hash
+			));
+	}
+
+	private static boolean isHttp(String location)
+	{
+		return location.startsWith("https://") || location.startsWith("http://");
+	}
+}
@@ -0,0 +1,147 @@
+package com.brunoritz.gradle.singularnode.prefetch;
+
+import com.brunoritz.gradle.singularnode.cache.PackageCache;
+import com.brunoritz.gradle.singularnode.platform.NodeCommand;
+import com.brunoritz.gradle.singularnode.platform.PackageRegistry;
+import com.brunoritz.gradle.singularnode.platform.PackageRegistry.PackageTarball;
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * Downloads the tarballs of all packages locked by the lockfiles of a project into the caches of the package managers,
+ * so the subsequent package installation does not need to fetch them. Unlike the package managers, which interleave
+ * resolving, fetching and linking packages, all tarballs are known upfront and downloaded in parallel.
+ * <p>
+ * The lockfiles are handled as follows:
+ * <ul>
+ *     <li>{@code package-lock.json}: The tarballs are stored in the content-addressable cache of NPM</li>
+ *     <li>{@code yarn.lock} of Yarn 1: The tarballs are stored in the offline mirror of Yarn</li>
+ *     <li>{@code pnpm-lock.yaml}: The store of PNPM is populated using {@code pnpm fetch}, as its format is
+ *     internal to PNPM</li>
+ * </ul>
+ * Lockfiles of Yarn 2 or later are left to Yarn, which already fetches packages in parallel.
+ */
+public abstract class PrefetchPackagesTask
+	extends DefaultTask
+{
+	private final ExecOperations processes;
+
+	@Inject
+	public PrefetchPackagesTask(ExecOperations processes)
+	{
+		this.processes = processes;
+
+		getWorkingDirectory().convention(getProject().getLayout().getProjectDirectory());
+	}
+
+	@Internal
+	public abstract DirectoryProperty getWorkingDirectory();
+
+	@Internal
+	public abstract Property<InstallationLayout> getInstallationLayout();
+
+	/**
+	 * The registry client used to download the tarballs. Tarballs are downloaded from the location recorded in the
+	 * lockfile, regardless of the registry.
+	 */
+	@Internal
+	public abstract Property<CharSequence> getPackageRegistry();
+
+	/**
+	 * The maximum number of tarballs downloaded at the same time.
+	 */
+	@Internal
+	public abstract Property<Integer> getConnections();
+
+	/**
+	 * The cache directory of NPM into which the tarballs locked by {@code package-lock.json} are downloaded.
+	 */
+	@Internal
+	public abstract DirectoryProperty getNpmCacheDirectory();
+
+	/**
+	 * The offline mirror of Yarn into which the tarballs locked by {@code yarn.lock} are downloaded.
+	 */
+	@Internal
+	public abstract DirectoryProperty getOfflineMirrorDirectory();
+
+	/**
+	 * The machine-wide cache shared by the package managers of all checkouts. If set, it is protected from pruning
+	 * while prefetching and PNPM fetches into it.
+	 */
+	@Internal
+	public abstract DirectoryProperty getPackageCacheDirectory();
+
+	@TaskAction
+	public void prefetchPackages()
+		throws IOException
+	{
+		File workingDirectory = getWorkingDirectory().get().getAsFile();
+		Option<PackageCache> packageCache =
+			Option.of(getPackageCacheDirectory().getAsFile().getOrNull()).map(PackageCache::new);
+		TarballPrefetcher prefetcher =
+			new TarballPrefetcher(PackageRegistry.connect(getPackageRegistry().get()), getConnections().get());
+		File npmLockFile = new File(workingDirectory, "package-lock.json");
+		File yarnLockFile = new File(workingDirectory, "yarn.lock");
+		File pnpmLockFile = new File(workingDirectory, "pnpm-lock.yaml");
+		boolean didWork = false;
+
+		try (PackageCache.Lease ignored =
+			packageCache.map(PackageCache::lockShared).getOrElse(PackageCache.Lease.NONE)) {
+			if (npmLockFile.isFile()) {
+				Path npmCache = getNpmCacheDirectory().get().getAsFile().toPath();
+
+				didWork |= prefetch(prefetcher, LockedTarballs.npm(npmLockFile), tarball ->
+					TarballPrefetcher.npmCacheLocation(npmCache, tarball)
+				);
+			}
+
+			if (yarnLockFile.isFile()) {
+				Path offlineMirror = getOfflineMirrorDirectory().get().getAsFile().toPath();
+
+				didWork |= prefetch(prefetcher, LockedTarballs.yarn(yarnLockFile), tarball ->
+					TarballPrefetcher.offlineMirrorLocation(offlineMirror, tarball)
+				);
+			}
+
+			if (pnpmLockFile.isFile()) {
+				new NodeCommand(processes, workingDirectory, getInstallationLayout().get())
+					.args(getInstallationLayout().get().pathOfManagedPnpmScript().getAbsolutePath(), "fetch")
+					.withEnvironment(HashMap.ofAll(System.getenv()))
+					.withEnvironment(packageCache.map(cache -> cache.environment("pnpm")).getOrElse(HashMap.empty()))
+					.execute();
+
+				didWork = true;
+			}
+		}
+
+		setDidWork(didWork);
+	}
+
+	private boolean prefetch(
+		TarballPrefetcher prefetcher,
+		List<PackageTarball> tarballs,
+		Function<PackageTarball, Path> destination)
+		throws IOException
+	{
+		int downloaded = prefetcher.prefetch(tarballs, destination);
+
+		getLogger().info("Prefetched {} of {} locked packages", downloaded, tarballs.size());
+
+		return downloaded > 0;
+	}
+}
@@ -0,0 +1,135 @@
+package com.brunoritz.gradle.singularnode.prefetch;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import com.brunoritz.gradle.singularnode.affected.AffectedSetup;
+import com.brunoritz.gradle.singularnode.cache.PackageCacheSetup;
+import com.brunoritz.gradle.singularnode.platform.Lookup;
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import org.gradle.api.Project;
+import org.gradle.api.file.Directory;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.TaskProvider;
+
+import static com.brunoritz.gradle.singularnode.platform.layout.InstallationLayoutFactory.platformDependentLayout;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Configures the prefetching of locked packages ahead of their installation.
+ */
+public final class PrefetchSetup
+{
+	private static final String TASK_NAME = "prefetchNodePackages";
+
+	private PrefetchSetup()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Registers the {@code prefetchNodePackages} task on the given project. It prefetches the packages locked by the
+	 * lockfiles within the project directory and is skipped unless prefetching packages is enabled. In the
+	 * affected-only mode, the task of an unaffected subproject is skipped as well. Must be called before the package
+	 * manager specific tasks are configured, as the package installation tasks depend on it.
+	 *
+	 * @param project
+	 * 	The project, either the root project or a subproject
+	 */
+	public static void configurePrefetching(Project project)
+	{
+		NodeJsExtension configuration = Lookup.pluginConfiguration(project)
+			.getOrElseThrow(() -> new IllegalStateException("Plugin configuration does not exist in root project"));
+		InstallationLayout layout = platformDependentLayout(configuration.installBaseDir)
+			.getOrElseThrow(() -> new IllegalStateException("Running on unsupported OS"));
+		Provider<Directory> packageCacheDirectory = PackageCacheSetup.sharedCacheDirectory(configuration);
+		File pnpmLockFile = project.file("pnpm-lock.yaml");
+		TaskProvider<PrefetchPackagesTask> prefetchTask =
+			project.getTasks().register(TASK_NAME, PrefetchPackagesTask.class);
+
+		prefetchTask.configure(task -> {
+			task.setGroup("NodeJS");
+			task.setDescription("Downloads the tarballs of all locked packages ahead of their installation");
+			task.onlyIf("Prefetching packages is enabled", prefetching -> configuration.prefetchPackages.get());
+			task.dependsOn(project.provider(() ->
+				pnpmLockFile.isFile() ? Lookup.rootProjectTask(project, "installPnpm").toJavaList() : List.of()
+			));
+
+			if (project != project.getRootProject()) {
+				AffectedSetup.onlyIfAffected(project, configuration, task);
+			}
+
+			task.getWorkingDirectory().set(project.getProjectDir());
+			task.getInstallationLayout().set(layout);
+			task.getPackageRegistry().set(configuration.packageRegistry);
+			task.getConnections().set(configuration.prefetchConnections);
+			task.getPackageCacheDirectory().set(packageCacheDirectory);
+			task.getNpmCacheDirectory().set(packageCacheDirectory
+				.map(cacheDir -> cacheDir.dir("npm"))
+				.orElse(project.getLayout().dir(project.provider(PrefetchSetup::defaultNpmCacheDirectory)))
+			);
+			task.getOfflineMirrorDirectory().set(offlineMirrorDirectory(configuration));
+		});
+	}
+
+	/**
+	 * Provides the dependency of a package installation task on the {@code prefetchNodePackages} task of its project.
+	 * The provider yields no task unless prefetching packages is enabled.
+	 *
+	 * @param project
+	 * 	The project of the package installation task
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 *
+	 * @return The tasks on which the package installation depends
+	 */
+	public static Provider<List<TaskProvider<PrefetchPackagesTask>>> prefetchDependency(
+		Project project,
+		NodeJsExtension configuration)
+	{
+		return configuration.prefetchPackages.map(enabled ->
+			enabled ? List.of(project.getTasks().named(TASK_NAME, PrefetchPackagesTask.class)) : List.of()
+		);
+	}
+
+	/**
+	 * Provides the offline mirror of Yarn into which locked tarballs are prefetched. It resides within the shared
+	 * package cache if enabled, and within the installation base directory otherwise. The provider has no value unless
+	 * prefetching packages is enabled.
+	 *
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 *
+	 * @return The offline mirror directory
+	 */
+	public static Provider<Directory> offlineMirrorDirectory(NodeJsExtension configuration)
+	{
+		Provider<Directory> mirrorDirectory = PackageCacheSetup.sharedCacheDirectory(configuration)
+			.map(cacheDir -> cacheDir.dir("yarn").dir("offline-mirror"))
+			.orElse(configuration.installBaseDir.dir("yarn-offline-mirror"));
+
+		return configuration.prefetchPackages
+			.filter(enabled -> enabled)
+			.flatMap(enabled -> mirrorDirectory);
+	}
+
+	/*
+	 * The default cache location of NPM, unless overridden by the environment. Overrides within .npmrc files are not
+	 * considered.
+	 */
+	private static File defaultNpmCacheDirectory()
+	{
+		String configuredCache = System.getenv("npm_config_cache");
+		String osName = System.getProperty("os.name").toLowerCase(Locale.ENGLISH);
+		String localAppData = System.getenv("LocalAppData");
+
+		if (configuredCache != null) {
+			return new File(configuredCache);
+		} else if (osName.contains("windows") && (localAppData != null)) {
+			return new File(localAppData, "npm-cache");
+		}
+
+		return new File(System.getProperty("user.home"), ".npm");
+	}
+}
@@ -0,0 +1,161 @@
+package com.brunoritz.gradle.singularnode.prefetch;
+
+import com.brunoritz.gradle.singularnode.platform.PackageRegistry;
+import com.brunoritz.gradle.singularnode.platform.PackageRegistry.PackageTarball;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Downloads package tarballs into the cache of a package manager using a bounded number of parallel connections.
+ * Every tarball is verified against its integrity before being moved into the cache, and tarballs already present in
+ * the cache are not downloaded again.
+ */
+final class TarballPrefetcher
+{
+	private static final List<String> INTEGRITY_ALGORITHMS = List.of("sha512", "sha384", "sha256", "sha1");
+
+	private final PackageRegistry registry;
+	private final int connections;
+
+	TarballPrefetcher(PackageRegistry registry, int connections)
+	{
+		this.registry = registry;
+		this.connections = Math.max(1, connections);
+	}
+
+	/**
+	 * Downloads all tarballs not yet present at their destination.
+	 *
+	 * @param tarballs
+	 * 	The tarballs to download
+	 * @param destination
+	 * 	Determines the file into which a tarball is downloaded
+	 *
+	 * @return The number of downloaded tarballs
+	 *
+	 * @throws IOException
+	 * 	If any download fails or any tarball does not match its integrity
+	 */
+	int prefetch(List<PackageTarball> tarballs, Function<PackageTarball, Path> destination)
+		throws IOException
+	{
+		List<PackageTarball> missing = tarballs
+			.distinctBy(PackageTarball::integrity)
+			.filter(tarball -> !Files.isRegularFile(destination.apply(tarball)));
+
+		if (missing.isEmpty()) {
+			return 0;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(connections, missing.size()));
+
+		try {
+			java.util.List<Future<Void>> pendingDownloads = new ArrayList<>();
+
+			for (PackageTarball tarball : missing) {
+				pendingDownloads.add(executor.submit(() -> {
+					registry.download(tarball, destination.apply(tarball));
+
+					return null;
+				}));
+			}
+
+			awaitAll(pendingDownloads);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return missing.size();
+	}
+
+	/**
+	 * Determines the location of a tarball within the content-addressable cache of NPM. NPM looks up tarballs by
+	 * their integrity, hence a tarball stored there is used by any installation that locked the same integrity. The
+	 * strongest hash of the integrity determines the location.
+	 *
+	 * @param npmCache
+	 * 	The cache directory of NPM, as configured by {@code npm_config_cache}
+	 * @param tarball
+	 * 	The tarball to store
+	 *
+	 * @return The location of the tarball, {@code _cacache/content-v2/<algorithm>/<hex digest>}
+	 */
+	static Path npmCacheLocation(Path npmCache, PackageTarball tarball)
+	{
+		Option<String> strongestHash = INTEGRITY_ALGORITHMS
+			.flatMap(algorithm -> List.of(tarball.integrity().trim().split("\\s+"))
+				.filter(hash -> hash.startsWith(algorithm + "-")))
+			.headOption();
+		String hash = strongestHash.getOrElseThrow(() -> new IllegalArgumentException(
+			String.format("Unsupported integrity %s of %s", tarball.integrity(), tarball.name())
+		));
+		int separator = hash.indexOf('-');
+		String digest = HexFormat.of().formatHex(Base64.getDecoder().decode(hash.substring(separator + 1)));
+
+		return npmCache.resolve("_cacache")
+			.resolve("content-v2")
+			.resolve(hash.substring(0, separator))
+			.resolve(digest.substring(0, 2))
+			.resolve(digest.substring(2, 4))
+			.resolve(digest.substring(4));
+	}
+
+	/**
+	 * Determines the location of a tarball within the offline mirror of Yarn 1. Yarn names mirrored tarballs after
+	 * the last segment of their location, prefixed by the scope of scoped packages.
+	 *
+	 * @param offlineMirror
+	 * 	The offline mirror directory, as configured by {@code yarn-offline-mirror}
+	 * @param tarball
+	 * 	The tarball to store
+	 *
+	 * @return The location of the tarball, for example {@code @babel-core-7.0.0.tgz}
+	 */
+	static Path offlineMirrorLocation(Path offlineMirror, PackageTarball tarball)
+	{
+		String path = tarball.location().getPath();
+		String fileName = path.substring(path.lastIndexOf('/') + 1);
+		String scope = tarball.name().startsWith("@")
+			? tarball.name().substring(0, tarball.name().indexOf('/') + 1).replace('/', '-')
+			: "";
+
+		return offlineMirror.resolve(scope + fileName);
+	}
+
+	private static void awaitAll(java.util.List<Future<Void>> futures)
+		throws IOException
+	{
+		Option<Throwable> failure = Option.none();
+
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				failure = failure.orElse(Option.of(e.getCause()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				throw new InterruptedIOException("Interrupted while prefetching packages");
+			}
+		}
+
+		if (failure.isDefined()) {
+			throw (failure.get() instanceof IOException ioException)
+				? ioException
+				: new IOException("Failed to prefetch packages", failure.get());
+		}
+	}
+}
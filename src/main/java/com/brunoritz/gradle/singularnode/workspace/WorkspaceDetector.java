@@ -0,0 +1,56 @@
+package com.brunoritz.gradle.singularnode.workspace;
+
+import groovy.json.JsonSlurper;
+import io.vavr.control.Option;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Detects package manager workspaces declared in the root project directory.
+ * <ul>
+ *     <li>A {@code pnpm-workspace.yaml} file declares a PNPM workspace</li>
+ *     <li>A {@code workspaces} section in {@code package.json} declares a Yarn workspace, if {@code yarn.lock}
+ *     exists, and an NPM workspace otherwise</li>
+ * </ul>
+ */
+public final class WorkspaceDetector
+{
+	private WorkspaceDetector()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Detects the workspace declared in the given directory.
+	 *
+	 * @param rootDir
+	 * 	The directory to check, usually the root project directory
+	 *
+	 * @return The type of the workspace or {@code none}, if the directory does not declare a workspace
+	 */
+	public static Option<WorkspaceType> detect(File rootDir)
+	{
+		if (new File(rootDir, "pnpm-workspace.yaml").isFile()) {
+			return Option.of(WorkspaceType.PNPM);
+		} else if (!declaresWorkspaces(new File(rootDir, "package.json"))) {
+			return Option.none();
+		} else if (new File(rootDir, "yarn.lock").isFile()) {
+			return Option.of(WorkspaceType.YARN);
+		} else {
+			return Option.of(WorkspaceType.NPM);
+		}
+	}
+
+	private static boolean declaresWorkspaces(File packageFile)
+	{
+		if (!packageFile.isFile()) {
+			return false;
+		}
+
+		Object manifest = new JsonSlurper().parse(packageFile, StandardCharsets.UTF_8.name());
+
+		return (manifest instanceof Map<?, ?> sections) && (sections.get("workspaces") != null);
+	}
+}
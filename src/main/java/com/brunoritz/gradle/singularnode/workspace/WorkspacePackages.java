@@ -0,0 +1,301 @@
+package com.brunoritz.gradle.singularnode.workspace;
+
+import groovy.json.JsonSlurper;
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceRegistry;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Tells which subprojects a subproject depends on according to the {@code package.json} files of all subprojects. The
+ * {@code package.json} files are read once per build, the first time any dependencies are requested. They are read
+ * through Gradle providers, so changing them invalidates the configuration cache.
+ * <p>
+ * A subproject depends on another one if any of its {@code dependencies}, {@code optionalDependencies} or
+ * {@code devDependencies}
+ * <ul>
+ *     <li>has the package name declared in the {@code package.json} of the other subproject, which is how NPM, Yarn
+ *     and PNPM workspaces link their members, or</li>
+ *     <li>refers to the directory of the other subproject using the {@code file:}, {@code link:} or {@code portal:}
+ *     protocol</li>
+ * </ul>
+ * {@code peerDependencies} are ignored, since they are provided by the dependent package rather than installed for
+ * the declaring one.
+ * <p>
+ * Dependencies between workspace members may be circular, typically when a package of test utilities depends on the
+ * library it is a {@code devDependency} of. Task dependencies must not be circular, hence {@link #taskDependencies}
+ * omits any dependency closing a cycle. Dependencies of the {@code dependencies} and {@code optionalDependencies}
+ * sections take precedence over {@code devDependencies} when doing so.
+ */
+public abstract class WorkspacePackages
+	implements BuildService<WorkspacePackages.Parameters>
+{
+	private static final String SERVICE_NAME = "com.brunoritz.gradle.singularnode.workspacePackages";
+	private static final Logger LOGGER = Logging.getLogger(WorkspacePackages.class);
+	private static final List<String> RUNTIME_DEPENDENCY_SECTIONS = List.of("dependencies", "optionalDependencies");
+	private static final List<String> DEVELOPMENT_DEPENDENCY_SECTIONS = List.of("devDependencies");
+	private static final List<String> PATH_PROTOCOLS = List.of("file:", "link:", "portal:");
+
+	private Option<HashMap<String, List<String>>> projectDependencies = Option.none();
+	private Option<HashMap<String, List<String>>> projectTaskDependencies = Option.none();
+
+	/**
+	 * Registers the shared service for the build. Calling this method more than once returns the already registered
+	 * service.
+	 *
+	 * @param project
+	 * 	Any project of the build
+	 *
+	 * @return The shared service
+	 */
+	public static Provider<WorkspacePackages> register(Project project)
+	{
+		BuildServiceRegistry services = project.getGradle().getSharedServices();
+		ProviderFactory providers = project.getProviders();
+
+		return services.registerIfAbsent(SERVICE_NAME, WorkspacePackages.class, spec ->
+			project.getRootProject().getSubprojects().forEach(subproject -> {
+				spec.getParameters().getProjectDirectories().put(subproject.getPath(), subproject.getProjectDir());
+				spec.getParameters().getManifests().put(
+					subproject.getPath(),
+					providers.fileContents(subproject.getLayout().getProjectDirectory().file("package.json"))
+						.getAsText()
+						.orElse("")
+				);
+			})
+		);
+	}
+
+	/**
+	 * Returns the subprojects a subproject depends on, as declared in its {@code package.json}. The dependencies may
+	 * be circular.
+	 *
+	 * @param projectPath
+	 * 	The path of the dependent subproject
+	 *
+	 * @return The paths of the subprojects depended on, which is empty if the subproject has no {@code package.json}
+	 */
+	public synchronized List<String> dependencies(String projectPath)
+	{
+		return dependencyIndex().getOrElse(projectPath, List.empty());
+	}
+
+	/**
+	 * Returns the subprojects whose tasks the tasks of a subproject depend on. These are the subprojects it depends
+	 * on, except those closing a cycle.
+	 *
+	 * @param projectPath
+	 * 	The path of the dependent subproject
+	 *
+	 * @return The paths of the subprojects whose tasks to depend on
+	 */
+	public synchronized List<String> taskDependencies(String projectPath)
+	{
+		dependencyIndex();
+
+		return projectTaskDependencies.get().getOrElse(projectPath, List.empty());
+	}
+
+	private HashMap<String, List<String>> dependencyIndex()
+	{
+		if (projectDependencies.isEmpty()) {
+			HashMap<String, File> projectDirectories = HashMap.ofAll(getParameters().getProjectDirectories().get());
+			HashMap<String, Map<?, ?>> manifests = HashMap.empty();
+
+			for (Map.Entry<String, String> manifest : getParameters().getManifests().get().entrySet()) {
+				Option<Map<?, ?>> sections = parseManifest(manifest.getValue());
+
+				if (sections.isDefined()) {
+					manifests = manifests.put(manifest.getKey(), sections.get());
+				}
+			}
+
+			HashMap<String, List<String>> runtimeDependencies =
+				readDependencies(projectDirectories, manifests, RUNTIME_DEPENDENCY_SECTIONS);
+			HashMap<String, List<String>> developmentDependencies =
+				readDependencies(projectDirectories, manifests, DEVELOPMENT_DEPENDENCY_SECTIONS);
+			HashMap<String, List<String>> allDependencies = HashMap.empty();
+
+			for (Tuple2<String, List<String>> project : runtimeDependencies) {
+				List<String> development = developmentDependencies.getOrElse(project._1(), List.empty());
+
+				allDependencies = allDependencies.put(project._1(), project._2().appendAll(development).distinct());
+			}
+
+			projectDependencies = Option.of(allDependencies);
+			projectTaskDependencies = Option.of(
+				withoutCycles(withoutCycles(HashMap.empty(), runtimeDependencies), developmentDependencies)
+			);
+		}
+
+		return projectDependencies.get();
+	}
+
+	private static HashMap<String, List<String>> readDependencies(
+		HashMap<String, File> projectDirectories,
+		HashMap<String, Map<?, ?>> manifests,
+		List<String> sections)
+	{
+		HashMap<String, String> projectsByName = HashMap.empty();
+		HashMap<File, String> projectsByDirectory = HashMap.empty();
+
+		for (Tuple2<String, Map<?, ?>> manifest : manifests) {
+			projectsByDirectory =
+				projectsByDirectory.put(canonicalFile(projectDirectories.get(manifest._1()).get()), manifest._1());
+
+			if (manifest._2().get("name") instanceof String packageName) {
+				projectsByName = projectsByName.put(packageName, manifest._1());
+			}
+		}
+
+		HashMap<String, List<String>> dependencies = HashMap.empty();
+
+		for (Tuple2<String, Map<?, ?>> project : manifests) {
+			File projectDirectory = projectDirectories.get(project._1()).get();
+			HashMap<String, String> members = projectsByName;
+			HashMap<File, String> memberDirectories = projectsByDirectory;
+			List<String> dependencyProjects = sections
+				.flatMap(section -> declaredDependencies(project._2(), section))
+				.flatMap(dependency -> memberOf(dependency, projectDirectory, members, memberDirectories))
+				.remove(project._1())
+				.distinct();
+
+			dependencies = dependencies.put(project._1(), dependencyProjects);
+		}
+
+		return dependencies;
+	}
+
+	/*
+	 * Adds the dependencies one by one, in a stable order, skipping each one whose target already depends on the
+	 * dependent project. Gradle would otherwise fail the build with a circular task dependency.
+	 */
+	private static HashMap<String, List<String>> withoutCycles(
+		HashMap<String, List<String>> acyclicDependencies,
+		HashMap<String, List<String>> dependencies)
+	{
+		HashMap<String, List<String>> result = acyclicDependencies;
+
+		for (String project : List.ofAll(dependencies.keySet()).sorted()) {
+			for (String dependency : dependencies.getOrElse(project, List.empty())) {
+				if (reaches(result, dependency, project)) {
+					LOGGER.info(
+						"Tasks of {} do not depend on tasks of {}, because the latter already depend on the former",
+						project,
+						dependency
+					);
+				} else {
+					result = result.put(project, result.getOrElse(project, List.empty()).append(dependency).distinct());
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private static boolean reaches(HashMap<String, List<String>> dependencies, String from, String to)
+	{
+		List<String> pending = List.of(from);
+		HashSet<String> visited = HashSet.empty();
+
+		while (!pending.isEmpty()) {
+			String project = pending.head();
+
+			pending = pending.tail();
+
+			if (project.equals(to)) {
+				return true;
+			}
+
+			if (!visited.contains(project)) {
+				visited = visited.add(project);
+				pending = pending.prependAll(dependencies.getOrElse(project, List.empty()));
+			}
+		}
+
+		return false;
+	}
+
+	private static Option<Map<?, ?>> parseManifest(String content)
+	{
+		if (content.isBlank()) {
+			return Option.none();
+		}
+
+		Object manifest = new JsonSlurper().parseText(content);
+
+		return (manifest instanceof Map<?, ?> sections) ? Option.of(sections) : Option.none();
+	}
+
+	private static List<Map.Entry<?, ?>> declaredDependencies(Map<?, ?> manifest, String section)
+	{
+		return (manifest.get(section) instanceof Map<?, ?> dependencies)
+			? List.ofAll(dependencies.entrySet())
+			: List.empty();
+	}
+
+	/*
+	 * Dependencies referring to a directory are matched by directory, all others by package name, regardless of the
+	 * requested range. Package managers link workspace members only if their version satisfies the range, but an
+	 * additional dependency at most orders tasks that could have run in parallel, while cycles are dropped anyway.
+	 */
+	private static Option<String> memberOf(
+		Map.Entry<?, ?> dependency,
+		File projectDirectory,
+		HashMap<String, String> members,
+		HashMap<File, String> memberDirectories)
+	{
+		String range = String.valueOf(dependency.getValue());
+		Option<String> protocol = PATH_PROTOCOLS.find(range::startsWith);
+
+		if (protocol.isDefined()) {
+			File directory = new File(projectDirectory, range.substring(protocol.get().length()));
+
+			return memberDirectories.get(canonicalFile(directory));
+		}
+
+		return members.get(String.valueOf(dependency.getKey()));
+	}
+
+	private static File canonicalFile(File file)
+	{
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The parameters of the service.
+	 */
+	public interface Parameters
+		extends BuildServiceParameters
+	{
+		/**
+		 * The directories of all subprojects by their project path.
+		 */
+		MapProperty<String, File> getProjectDirectories();
+
+		/**
+		 * The contents of the {@code package.json} files of all subprojects by their project path, which are empty
+		 * for subprojects without one.
+		 */
+		MapProperty<String, String> getManifests();
+	}
+}
@@ -0,0 +1,103 @@
+package com.brunoritz.gradle.singularnode.workspace;
+
+import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.TaskProvider;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Utility methods to configure the workspace mode. In workspace mode, packages are installed once for the entire
+ * workspace by the root project. The package installation tasks of subprojects then only depend on that single
+ * installation instead of installing packages on their own.
+ */
+public final class WorkspaceSetup
+{
+	private WorkspaceSetup()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Tells whether packages of the given type are installed by a single workspace installation. This is the case if
+	 * the workspace mode is enabled and the root project declares a workspace of the given type.
+	 *
+	 * @param project
+	 * 	Any project of the build
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 * @param type
+	 * 	The package manager to check
+	 *
+	 * @return {@code true}, if the package installation is performed by the root project
+	 */
+	public static Provider<Boolean> workspaceInstallation(
+		Project project,
+		NodeJsExtension configuration,
+		WorkspaceType type)
+	{
+		File rootDir = project.getRootDir();
+
+		return configuration.workspaceMode.map(enabled ->
+			enabled && WorkspaceDetector.detect(rootDir).contains(type)
+		);
+	}
+
+	/**
+	 * Returns the tasks a task of a subproject depends on because its subproject depends on the packages of other
+	 * subprojects. These are the tasks having the same name and type in the other subprojects. Dependencies closing a
+	 * cycle between subprojects are omitted. No tasks are returned unless {@code projectTaskDependencies} is enabled.
+	 *
+	 * @param project
+	 * 	The subproject of the dependent task
+	 * @param configuration
+	 * 	The configuration of the plugin
+	 * @param type
+	 * 	The type of the dependent task
+	 * @param taskName
+	 * 	The name of the dependent task
+	 * @param <T>
+	 * 	The type of the dependent task
+	 *
+	 * @return The tasks to depend on
+	 */
+	public static <T extends Task> Provider<List<TaskProvider<T>>> projectTaskDependencies(
+		Project project,
+		NodeJsExtension configuration,
+		Class<T> type,
+		String taskName)
+	{
+		Provider<WorkspacePackages> workspacePackages = WorkspacePackages.register(project);
+		String projectPath = project.getPath();
+
+		return configuration.projectTaskDependencies.map(enabled -> enabled
+			? workspacePackages.get()
+				.taskDependencies(projectPath)
+				.map(project::project)
+				.filter(dependency -> dependency.getTasks().withType(type).getNames().contains(taskName))
+				.map(dependency -> dependency.getTasks().withType(type).named(taskName))
+				.toJavaList()
+			: List.of()
+		);
+	}
+
+	/**
+	 * Returns the {@code package.json} files of all subprojects. They are the potential members of the workspace.
+	 *
+	 * @param rootProject
+	 * 	The root project of the build
+	 *
+	 * @return The package files, which do not necessarily exist
+	 */
+	public static List<File> memberPackageFiles(Project rootProject)
+	{
+		return rootProject.getSubprojects()
+			.stream()
+			.map(subproject -> new File(subproject.getProjectDir(), "package.json"))
+			.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,11 @@
+package com.brunoritz.gradle.singularnode.workspace;
+
+/**
+ * The package managers whose workspaces can be installed at once by the root project.
+ */
+public enum WorkspaceType
+{
+	NPM,
+	YARN,
+	PNPM
+}
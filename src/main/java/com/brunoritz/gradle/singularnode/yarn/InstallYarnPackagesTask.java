@@ -1,113 +1,124 @@
 package com.brunoritz.gradle.singularnode.yarn;
 
-import com.brunoritz.gradle.singularnode.platform.NodeCommand;
+import com.brunoritz.gradle.singularnode.cache.InstallPackagesTask;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
 import io.vavr.collection.HashMap;
 import io.vavr.collection.List;
-import org.checkerframework.checker.nullness.qual.Nullable;
-import org.gradle.api.DefaultTask;
-import org.gradle.api.Project;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+import org.gradle.api.file.Directory;
 import org.gradle.api.file.DirectoryProperty;
-import org.gradle.api.provider.ListProperty;
-import org.gradle.api.provider.Property;
-import org.gradle.api.tasks.Input;
-import org.gradle.api.tasks.InputFile;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.OutputFile;
-import org.gradle.api.tasks.PathSensitive;
-import org.gradle.api.tasks.TaskAction;
 import org.gradle.process.ExecOperations;
 
-import static org.gradle.api.tasks.PathSensitivity.RELATIVE;
-
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.stream.Stream;
 
 /**
- * Installs packages declared in the {@code package.json} file.
+ * Installs packages declared in the {@code package.json} file using Yarn.
  */
 public abstract class InstallYarnPackagesTask
-	extends DefaultTask
+	extends InstallPackagesTask
 {
-	private final ExecOperations processes;
-	private final File packageFile;
-	private final File lockFile;
-	private final File executionMarker;
-
 	@Inject
-	public InstallYarnPackagesTask(ExecOperations processes, Project project)
+	public InstallYarnPackagesTask(ExecOperations processes)
 	{
-		this.processes = processes;
-
-		packageFile = project.file("package.json");
-		lockFile = project.file("yarn.lock");
-		executionMarker = new File(project.getProjectDir(), ".install.executed");
+		super(processes);
 	}
 
 	/**
-	 * Optional arguments to pass to the package installation command. By default, no arguments are defined.
+	 * The offline mirror holding the prefetched tarballs. Only passed to Yarn 1, as later versions do not support an
+	 * offline mirror. If not set, Yarn uses the mirror configured in {@code .yarnrc}, if any.
 	 */
-	@Input
-	@Optional
-	public abstract ListProperty<CharSequence> getArgs();
-
 	@Internal
-	public abstract DirectoryProperty getWorkingDirectory();
+	public abstract DirectoryProperty getOfflineMirrorDirectory();
 
-	@Internal
-	public abstract Property<InstallationLayout> getInstallationLayout();
+	/**
+	 * The Plug'n'Play runtime file of Yarn. Only declared as output if the package installation is cacheable.
+	 */
+	@OutputFile
+	@Optional
+	public abstract RegularFileProperty getPnpFile();
 
-	@InputFile
-	@PathSensitive(RELATIVE)
+	/**
+	 * The Plug'n'Play loader file of Yarn. Only declared as output if the package installation is cacheable.
+	 */
+	@OutputFile
 	@Optional
-	@Nullable
-	public File getPackageFile()
+	public abstract RegularFileProperty getPnpLoaderFile();
+
+	/**
+	 * The execution marker is kept next to {@code package.json}, as Plug'n'Play installations do not create a
+	 * {@code node_modules} directory.
+	 */
+	@Override
+	@OutputFile
+	public File getExecutionMarkerFile()
 	{
-		return packageFile.exists() ? packageFile : null;
+		return getWorkingDirectory().file(".install.executed").get().getAsFile();
 	}
 
-	@InputFile
-	@PathSensitive(RELATIVE)
-	@Optional
-	@Nullable
-	public File getPackageLockFile()
+	@Override
+	protected String packageManager()
 	{
-		return lockFile.exists() ? lockFile : null;
+		return "yarn";
 	}
 
-	/**
-	 * The execution marker file indicates that this task was executed. It is a compromise between reliability and
-	 * speed. Declaring {@code node_modules} an output directory would add a tremendous hashing overhead for Gradle.
-	 * <p>
-	 * Manual changes to {@code node_modules} or changes introduced by a build cannot be detected with this approach.
+	@Override
+	protected String lockFileName()
+	{
+		return "yarn.lock";
+	}
+
+	@Override
+	protected File packageManagerScript(InstallationLayout layout)
+	{
+		return layout.pathOfManagedYarnScript();
+	}
+
+	/*
+	 * Yarn writes node_modules/.yarn-state.yml (Berry), node_modules/.yarn-integrity (Classic) or .pnp.cjs
+	 * (Plug'n'Play) after every installation.
 	 */
-	@OutputFile
-	public File getExecutionMarkerFile()
+	@Override
+	protected Option<File> installedStateFile()
 	{
-		return executionMarker;
+		Directory workingDirectory = getWorkingDirectory().get();
+
+		return List.of(
+				workingDirectory.file("node_modules/.yarn-state.yml").getAsFile(),
+				workingDirectory.file("node_modules/.yarn-integrity").getAsFile(),
+				workingDirectory.file(".pnp.cjs").getAsFile()
+			)
+			.find(File::isFile);
 	}
 
-	@TaskAction
-	public void installPackages()
+	/*
+	 * Yarn 1 reads its settings from YARN_ prefixed environment variables. Later versions reject unknown settings,
+	 * which includes the offline mirror, hence the variable is only passed for lockfiles of Yarn 1. These lack the
+	 * __metadata section.
+	 */
+	@Override
+	protected Map<CharSequence, CharSequence> installationEnvironment(File lockFile)
 		throws IOException
 	{
-		InstallationLayout layout = getInstallationLayout().get();
-		String yarnScript = layout.pathOfManagedYarnScript().getAbsolutePath();
-
-		new NodeCommand(processes, getWorkingDirectory().get().getAsFile(), layout)
-			.args(yarnScript, "install")
-			.args(List.ofAll(getArgs().get()))
-			.withEnvironment(HashMap.ofAll(System.getenv()))
-			.execute();
+		if (!getOfflineMirrorDirectory().isPresent() || !lockFile.isFile()) {
+			return HashMap.empty();
+		}
 
-		/*
-		 * Just mark that this task was successful. Making node_modules an output directory would result in a large
-		 * amount of time neeed to index that directory.
-		 */
-		if (!executionMarker.exists() && !executionMarker.createNewFile()) {
-			throw new IllegalStateException("Failed to create execution marker");
+		try (Stream<String> lines = Files.lines(lockFile.toPath(), StandardCharsets.UTF_8)) {
+			if (lines.anyMatch(line -> line.startsWith("__metadata:"))) {
+				return HashMap.empty();
+			}
 		}
+
+		return HashMap.of("YARN_YARN_OFFLINE_MIRROR", getOfflineMirrorDirectory().get().getAsFile().getAbsolutePath());
 	}
 }
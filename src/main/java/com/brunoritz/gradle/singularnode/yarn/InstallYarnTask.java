@@ -1,81 +1,66 @@
 package com.brunoritz.gradle.singularnode.yarn;
 
-import com.brunoritz.gradle.singularnode.platform.NodeCommand;
+import com.brunoritz.gradle.singularnode.nodejs.InstallPackageManagerTask;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
-import io.vavr.collection.HashMap;
-import org.gradle.api.DefaultTask;
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileSystemOperations;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
-import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.process.ExecOperations;
 
 import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
 
 /**
- * Installs the requested version of Yarn into the installation directory. This task uses the bundled version of NPM to
- * fetch the requested version of Yarn.
- * <p>
- * Any existing installation will be deleted prior to the installation.
+ * Installs the requested version of Yarn into the installation directory, as provisioned by
+ * {@link InstallPackageManagerTask}.
  */
 public abstract class InstallYarnTask
-	extends DefaultTask
+	extends InstallPackageManagerTask
 {
-	private final FileSystemOperations files;
-	private final ExecOperations processes;
-
 	@Inject
 	public InstallYarnTask(FileSystemOperations files, ExecOperations processes)
 	{
-		this.files = files;
-		this.processes = processes;
+		super(files, processes);
 	}
 
 	@Input
 	public abstract Property<CharSequence> getYarnVersion();
 
-	@Internal
-	public abstract DirectoryProperty getWorkingDirectory();
-
-	@Internal
-	public abstract Property<InstallationLayout> getInstallationLayout();
-
 	@OutputDirectory
 	public abstract DirectoryProperty getYarnInstallDirectory();
 
 	@TaskAction
 	public void installYarn()
+		throws IOException
 	{
-		cleanTarget();
-		install();
+		installPackageManager();
 	}
 
-	private void cleanTarget()
+	@Override
+	protected String packageName()
 	{
-		InstallationLayout layout = getInstallationLayout().get();
+		return "yarn";
+	}
 
-		files.delete(spec -> spec.delete(layout.yarnInstallDirectory()));
+	@Override
+	protected Property<CharSequence> packageVersion()
+	{
+		return getYarnVersion();
 	}
 
-	private void install()
+	@Override
+	protected DirectoryProperty installDirectory()
 	{
-		InstallationLayout layout = getInstallationLayout().get();
-		String bundledNpm = layout.pathOfBundledNpmScript().getAbsolutePath();
-		String npmPackage = String.format("yarn@%s", getYarnVersion().get());
+		return getYarnInstallDirectory();
+	}
 
-		new NodeCommand(processes, getWorkingDirectory().get().getAsFile(), layout)
-			.args(
-				bundledNpm,
-				"install",
-				"--global",
-				"--no-save",
-				"--prefix", getYarnInstallDirectory().get().getAsFile().getAbsolutePath(),
-				npmPackage
-			)
-			.withEnvironment(HashMap.ofAll(System.getenv()))
-			.execute();
+	@Override
+	protected File managedScript(InstallationLayout layout)
+	{
+		return layout.pathOfManagedYarnScript();
 	}
 }
@@ -1,15 +1,32 @@
 package com.brunoritz.gradle.singularnode.yarn;
 
 import com.brunoritz.gradle.singularnode.NodeJsExtension;
+import com.brunoritz.gradle.singularnode.affected.AffectedSetup;
+import com.brunoritz.gradle.singularnode.bundle.ToolBundleSetup;
+import com.brunoritz.gradle.singularnode.cache.PackageCacheSetup;
+import com.brunoritz.gradle.singularnode.cache.RestoreNodeModulesTask;
+import com.brunoritz.gradle.singularnode.nodejs.CorepackInstaller;
 import com.brunoritz.gradle.singularnode.nodejs.InstallNodeJsTask;
+import com.brunoritz.gradle.singularnode.platform.ExecutionTelemetry;
 import com.brunoritz.gradle.singularnode.platform.Lookup;
+import com.brunoritz.gradle.singularnode.platform.NodeWorkerService;
+import com.brunoritz.gradle.singularnode.platform.OutputOptions;
+import com.brunoritz.gradle.singularnode.platform.PackageInstallLimiter;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
+import com.brunoritz.gradle.singularnode.prefetch.PrefetchSetup;
+import com.brunoritz.gradle.singularnode.workspace.WorkspaceSetup;
+import com.brunoritz.gradle.singularnode.workspace.WorkspaceType;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.TaskProvider;
 
 import static com.brunoritz.gradle.singularnode.platform.layout.InstallationLayoutFactory.platformDependentLayout;
 
+import java.util.List;
+
 /**
  * Configures all required tasks and properties for the Yarn package manager.
  */
@@ -25,6 +42,9 @@ public final class YarnSetup
 	/**
 	 * Configures the tasks needed to install the Yarn package manager on the root project. The setup task itself will
 	 * depend on the one responsible for setting up NodeJS itself.
+	 * <p>
+	 * Additionally, an {@code installYarnWorkspace} task is registered. It installs the packages of an Yarn workspace
+	 * declared in the root project, provided the workspace mode is enabled.
 	 *
 	 * @param project
 	 * 	The root project on which to register the setup task
@@ -47,6 +67,55 @@ public final class YarnSetup
 			task.getWorkingDirectory().set(project.getProjectDir());
 			task.getYarnInstallDirectory().set(layout.yarnInstallDirectory());
 			task.getYarnVersion().set(configuration.yarnVersion);
+			task.getPackageTarball().set(ToolBundleSetup.bundledPackage(project, configuration, "yarn"));
+			task.getProvisioning().set(configuration.packageManagerProvisioning);
+			task.getPackageRegistry().set(configuration.packageRegistry);
+			task.getDeclaredVersion().set(CorepackInstaller.declaredVersion(project, configuration, "yarn"));
+		});
+
+		registerWorkspaceInstallTask(project, configuration, layout, yarnInstallationTask);
+	}
+
+	private static void registerWorkspaceInstallTask(
+		Project project,
+		NodeJsExtension configuration,
+		InstallationLayout layout,
+		TaskProvider<InstallYarnTask> yarnInstallationTask)
+	{
+		Provider<PackageInstallLimiter> installLimiter = PackageInstallLimiter.register(project, configuration);
+		Provider<ExecutionTelemetry> telemetry = ExecutionTelemetry.register(project);
+		Provider<ExecutionTelemetry> enabledTelemetry =
+			configuration.executionTelemetry.filter(enabled -> enabled).flatMap(enabled -> telemetry);
+		Provider<Directory> packageCacheDirectory = PackageCacheSetup.sharedCacheDirectory(configuration);
+		Provider<Directory> packageStoreDirectory = PackageCacheSetup.packageStoreDirectory(configuration);
+		Provider<Boolean> workspaceInstallation =
+			WorkspaceSetup.workspaceInstallation(project, configuration, WorkspaceType.YARN);
+		TaskProvider<InstallYarnPackagesTask> workspaceInstallationTask =
+			project.getTasks().register("installYarnWorkspace", InstallYarnPackagesTask.class);
+
+		workspaceInstallationTask.configure(task -> {
+			task.setGroup(GROUP);
+			task.dependsOn(yarnInstallationTask);
+			task.onlyIf("Workspace mode is enabled and the root project declares a workspace", workspaceTask ->
+				workspaceInstallation.get()
+			);
+
+			task.getArgs().set(configuration.yarnInstallArgs);
+			task.getWorkingDirectory().set(project.getProjectDir());
+			task.getInstallationLayout().set(layout);
+			task.getInstallLimiter().set(installLimiter);
+			task.usesService(installLimiter);
+			task.getTelemetry().set(enabledTelemetry);
+			task.usesService(telemetry);
+			task.getPackageCacheDirectory().set(packageCacheDirectory);
+			task.getPreferOffline().set(configuration.prefetchPackages);
+			task.getOfflineMirrorDirectory().set(PrefetchSetup.offlineMirrorDirectory(configuration));
+			task.dependsOn(PrefetchSetup.prefetchDependency(project, configuration));
+			task.getPackageStoreDirectory().set(packageStoreDirectory);
+			task.getWorkspacePackageFiles().from(WorkspaceSetup.memberPackageFiles(project));
+
+			task.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			task.getInputs().property("yarnVersion", configuration.yarnVersion);
 		});
 	}
 
@@ -66,27 +135,84 @@ public final class YarnSetup
 			.getOrElseThrow(() -> new IllegalStateException("Running on unsupported OS"));
 		TaskProvider<Task> yarnSetupTask = Lookup.rootProjectTask(project, "installYarn")
 			.getOrElseThrow(() -> new IllegalStateException("Requested task does not exist on root project"));
+		Directory projectDir = project.getLayout().getProjectDirectory();
+		Provider<Boolean> cacheable = configuration.cacheablePackageInstallation.filter(enabled -> enabled);
+		TaskProvider<Task> workspaceInstallationTask = Lookup.rootProjectTask(project, "installYarnWorkspace")
+			.getOrElseThrow(() -> new IllegalStateException("Requested task does not exist on root project"));
+		Provider<Boolean> workspaceInstallation =
+			WorkspaceSetup.workspaceInstallation(project, configuration, WorkspaceType.YARN);
+		Provider<PackageInstallLimiter> installLimiter = PackageInstallLimiter.register(project, configuration);
+		Provider<ExecutionTelemetry> telemetry = ExecutionTelemetry.register(project);
+		Provider<ExecutionTelemetry> enabledTelemetry =
+			configuration.executionTelemetry.filter(enabled -> enabled).flatMap(enabled -> telemetry);
+		Provider<Directory> packageCacheDirectory = PackageCacheSetup.sharedCacheDirectory(configuration);
+		Provider<Directory> packageStoreDirectory = PackageCacheSetup.packageStoreDirectory(configuration);
+		Provider<RegularFile> nodeModulesArchive = PackageCacheSetup.nodeModulesArchive(project, configuration, "yarn");
 		TaskProvider<InstallYarnPackagesTask> installYarnPackagesTask =
 			project.getTasks().register("installYarnPackages", InstallYarnPackagesTask.class);
 
 		installYarnPackagesTask.configure(task -> {
 			task.setGroup(GROUP);
 			task.dependsOn(yarnSetupTask);
+			AffectedSetup.onlyIfAffected(project, configuration, task);
 
 			task.getArgs().set(configuration.yarnInstallArgs);
 			task.getWorkingDirectory().set(project.getProjectDir());
 			task.getInstallationLayout().set(layout);
+			task.getInstallLimiter().set(installLimiter);
+			task.usesService(installLimiter);
+			task.getTelemetry().set(enabledTelemetry);
+			task.usesService(telemetry);
+			task.getPackageCacheDirectory().set(packageCacheDirectory);
+			task.getPreferOffline().set(configuration.prefetchPackages);
+			task.getOfflineMirrorDirectory().set(PrefetchSetup.offlineMirrorDirectory(configuration));
+			task.dependsOn(PrefetchSetup.prefetchDependency(project, configuration));
+			task.getPackageStoreDirectory().set(packageStoreDirectory);
+			task.getWorkspaceInstallation().set(workspaceInstallation);
+			task.dependsOn(workspaceInstallation.map(enabled ->
+				enabled ? List.of(workspaceInstallationTask) : List.of()
+			));
+
+			task.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			task.getInputs().property("yarnVersion", configuration.yarnVersion);
+
+			task.getNodeModulesArchive().set(nodeModulesArchive);
+			task.getPnpFile().set(cacheable.map(enabled -> projectDir.file(".pnp.cjs")));
+			task.getPnpLoaderFile().set(cacheable.map(enabled -> projectDir.file(".pnp.loader.mjs")));
 		});
 
-		project.getTasks().whenTaskAdded(newTask -> {
-			if (newTask instanceof YarnTask newYarnTask) {
-				newYarnTask.dependsOn(installYarnPackagesTask);
-				newYarnTask.getWorkingDirectory().set(project.getProjectDir());
-				newYarnTask.getInstallationLayout().set(layout);
+		TaskProvider<RestoreNodeModulesTask> restorePackagesTask = PackageCacheSetup.registerRestoreTask(
+			project, "restoreYarnPackages", GROUP, installYarnPackagesTask, nodeModulesArchive
+		);
+
+		Provider<NodeWorkerService> workerService = NodeWorkerService.register(project, layout);
+		Provider<NodeWorkerService> enabledWorkerService =
+			configuration.nodeWorkers.filter(enabled -> enabled).flatMap(enabled -> workerService);
+		Provider<OutputOptions> outputOptions = OutputOptions.configured(project, configuration);
+		Provider<String> yarnVersion = CorepackInstaller
+			.declaredVersion(project.getRootProject(), configuration, "yarn")
+			.orElse(configuration.yarnVersion.map(CharSequence::toString));
+
+		project.getTasks().withType(YarnTask.class).configureEach(newYarnTask -> {
+			newYarnTask.dependsOn(installYarnPackagesTask);
+			newYarnTask.dependsOn(restorePackagesTask);
+			newYarnTask.dependsOn(WorkspaceSetup.projectTaskDependencies(
+				project, configuration, YarnTask.class, newYarnTask.getName()
+			));
+			AffectedSetup.onlyIfAffected(project, configuration, newYarnTask);
+			newYarnTask.getWorkingDirectory().set(project.getProjectDir());
+			newYarnTask.getInstallationLayout().set(layout);
+			newYarnTask.getWorkerService().set(enabledWorkerService);
+			newYarnTask.getDirectScriptExecution().set(configuration.directScriptExecution);
+			newYarnTask.getYarnVersion().set(yarnVersion);
+			newYarnTask.getOutputOptions().set(outputOptions);
+			newYarnTask.usesService(workerService);
+			newYarnTask.getTelemetry().set(enabledTelemetry);
+			newYarnTask.usesService(telemetry);
+			newYarnTask.getPackageCacheDirectory().set(packageCacheDirectory);
 
-				newYarnTask.getInputs().property("nodeJsVersion", configuration.nodeVersion);
-				newYarnTask.getInputs().property("yarnVersion", configuration.yarnVersion);
-			}
+			newYarnTask.getInputs().property("nodeJsVersion", configuration.nodeVersion);
+			newYarnTask.getInputs().property("yarnVersion", configuration.yarnVersion);
 		});
 
 		project.getExtensions().getExtraProperties().set("YarnTask", YarnTask.class);
@@ -1,28 +1,42 @@
 package com.brunoritz.gradle.singularnode.yarn;
 
+import com.brunoritz.gradle.singularnode.cache.PackageCache;
+import com.brunoritz.gradle.singularnode.platform.ExecutionTelemetry;
 import com.brunoritz.gradle.singularnode.platform.NodeCommand;
+import com.brunoritz.gradle.singularnode.platform.OutputOptions;
+import com.brunoritz.gradle.singularnode.platform.NodeWorkerService;
+import com.brunoritz.gradle.singularnode.platform.PackageScript;
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout;
 import io.vavr.collection.HashMap;
 import io.vavr.collection.List;
+import io.vavr.control.Option;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectories;
 import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.process.ExecOperations;
 
+import static org.gradle.api.tasks.PathSensitivity.ABSOLUTE;
 import static org.gradle.api.tasks.PathSensitivity.RELATIVE;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * The task type for defining custon Yarn tasks to execute. Any task that uses this class as its type will automatically
@@ -44,21 +58,36 @@ import java.io.File;
  *     ])
  * }
  * </pre>
+ * <p>
+ * Tasks declaring their {@code inputFiles} and {@code outputDirectories} are skipped if neither changed since the
+ * last execution and can be restored from the build cache.
+ * <pre>
+ * task compileTypeScript(type: YarnTask) {
+ *     args.set(['run', 'build'])
+ *     inputFiles.from('src', 'tsconfig.json')
+ *     outputDirectories.from('dist')
+ * }
+ * </pre>
  */
+@CacheableTask
 public abstract class YarnTask
 	extends DefaultTask
 {
+	private static final Pattern MAJOR_VERSION = Pattern.compile("(\\d+)(\\.|$)");
+
 	private final ExecOperations processes;
-	private final File packageFile;
-	private final File lockFile;
 
 	@Inject
-	public YarnTask(ExecOperations processes, Project project)
+	public YarnTask(ExecOperations processes)
 	{
 		this.processes = processes;
 
-		packageFile = project.file("package.json");
-		lockFile = project.file("yarn.lock");
+		getWorkingDirectory().convention(getProject().getLayout().getProjectDirectory());
+		getOutputOptions().convention(OutputOptions.unchanged());
+		getLogFile().convention(getProject().getLayout().getBuildDirectory().file("logs/" + getName() + ".log"));
+		getRelocatable().convention(true);
+		getDirectScriptExecution().convention(false);
+		getOutputs().cacheIf("Output directories are declared", task -> !getOutputDirectories().isEmpty());
 	}
 
 	@Input
@@ -75,12 +104,106 @@ public abstract class YarnTask
 	@Internal
 	public abstract Property<InstallationLayout> getInstallationLayout();
 
+	/**
+	 * The pool of long-lived NodeJS workers to execute this task in. If not set, a new NodeJS process is started.
+	 */
+	@Internal
+	public abstract Property<NodeWorkerService> getWorkerService();
+
+	/**
+	 * Whether to run {@code package.json} scripts directly instead of through Yarn, which saves starting Yarn.
+	 * Arguments of the form {@code run <script>} or {@code run <script> -- <args>} then execute the script through the
+	 * shell, with {@code node_modules/.bin} on the {@code PATH} and the {@code npm_*} lifecycle variables set. Its
+	 * {@code pre} and {@code post} scripts are run for Yarn 1, like Yarn 1 does, but not for Yarn 2 and later. Unless
+	 * {@link #getYarnVersion()} tells the major version of Yarn, scripts are passed to Yarn as usual. So are scripts of
+	 * Plug'n'Play installations and any other arguments.
+	 * <p>
+	 * Defaults to {@code false}.
+	 */
+	@Internal
+	public abstract Property<Boolean> getDirectScriptExecution();
+
+	/**
+	 * The version of Yarn running this task, which decides whether scripts executed directly run their {@code pre}
+	 * and {@code post} scripts. Tags such as {@code berry} do not tell the major version.
+	 */
+	@Internal
+	@Optional
+	public abstract Property<CharSequence> getYarnVersion();
+
+	/**
+	 * How the output of this task is forwarded to the console.
+	 */
+	@Internal
+	public abstract Property<OutputOptions> getOutputOptions();
+
+	/**
+	 * The file the output of this task is written to, if requested by the {@link #getOutputOptions() output options}.
+	 * <p>
+	 * Defaults to {@code build/logs/<task name>.log} of the project.
+	 */
+	@Internal
+	public abstract RegularFileProperty getLogFile();
+
+	/**
+	 * Records the telemetry of the NodeJS invocations of this task. If not set, no telemetry is recorded.
+	 */
+	@Internal
+	public abstract Property<ExecutionTelemetry> getTelemetry();
+
+	/**
+	 * The machine-wide cache shared by the package managers of all checkouts. If not set, the package manager uses
+	 * its default cache location.
+	 */
+	@Internal
+	public abstract DirectoryProperty getPackageCacheDirectory();
+
+	/**
+	 * The files read by this task, for example the sources processed by the executed script. Together with
+	 * {@link #getOutputDirectories()}, they allow the task to be up-to-date and to be restored from the build cache.
+	 */
+	@Internal
+	public abstract ConfigurableFileCollection getInputFiles();
+
+	/**
+	 * The directories written by this task. Unless at least one output directory is declared, the task is executed
+	 * every time.
+	 */
+	@OutputDirectories
+	public abstract ConfigurableFileCollection getOutputDirectories();
+
+	/**
+	 * Whether the input files are tracked by their path relative to their root, which allows sharing cached results
+	 * between checkouts in different locations. If disabled, the absolute path of the input files is tracked instead.
+	 * This is necessary if the task produces outputs that contain absolute paths, such as source maps.
+	 * <p>
+	 * Defaults to {@code true}.
+	 */
+	@Input
+	public abstract Property<Boolean> getRelocatable();
+
+	@InputFiles
+	@PathSensitive(RELATIVE)
+	public FileCollection getRelocatableInputFiles()
+	{
+		return getInputFiles().filter(file -> getRelocatable().get());
+	}
+
+	@InputFiles
+	@PathSensitive(ABSOLUTE)
+	public FileCollection getAbsoluteInputFiles()
+	{
+		return getInputFiles().filter(file -> !getRelocatable().get());
+	}
+
 	@InputFile
 	@PathSensitive(RELATIVE)
 	@Optional
 	@Nullable
 	public File getPackageFile()
 	{
+		File packageFile = getWorkingDirectory().file("package.json").get().getAsFile();
+
 		return packageFile.exists() ? packageFile : null;
 	}
 
@@ -90,6 +213,8 @@ public abstract class YarnTask
 	@Nullable
 	public File getPackageLockFile()
 	{
+		File lockFile = getWorkingDirectory().file("yarn.lock").get().getAsFile();
+
 		return lockFile.exists() ? lockFile : null;
 	}
 
@@ -97,13 +222,47 @@ public abstract class YarnTask
 	public void execute()
 	{
 		InstallationLayout layout = getInstallationLayout().get();
-		String yarnScript = layout.pathOfManagedYarnScript().getAbsolutePath();
-
-		new NodeCommand(processes, getWorkingDirectory().get().getAsFile(), layout)
-			.args(yarnScript)
-			.args(List.ofAll(getArgs().get()))
+		File workingDirectory = getWorkingDirectory().get().getAsFile();
+		File logFile = getLogFile().get().getAsFile();
+		File yarnScript = layout.pathOfManagedYarnScript();
+		NodeCommand command = new NodeCommand(processes, workingDirectory, layout)
 			.withEnvironment(HashMap.ofAll(System.getenv()))
+			.withEnvironment(packageCache().map(cache -> cache.environment("yarn")).getOrElse(HashMap.empty()))
 			.withEnvironment(HashMap.ofAll(getEnvironment().get()))
-			.execute();
+			.withTelemetry(Option.of(getTelemetry().getOrNull()), getPath(), "yarn")
+			.withOutput(getOutputOptions().get(), getPath(), logFile);
+		Option<Integer> majorVersion = majorVersion();
+		Option<PackageScript> directScript = getDirectScriptExecution().get() && majorVersion.isDefined()
+			? PackageScript.resolve(workingDirectory, List.ofAll(getArgs().get()))
+			: Option.none();
+
+		logFile.delete();
+
+		if (directScript.isDefined()) {
+			directScript.get().execute(command, layout, yarnScript, majorVersion.get() == 1);
+		} else {
+			command
+				.args(yarnScript.getAbsolutePath())
+				.args(List.ofAll(getArgs().get()))
+				.withWorkers(Option.of(getWorkerService().getOrNull()))
+				.execute();
+		}
+	}
+
+	/*
+	 * Yarn 1 runs the pre and post scripts of a script, whereas Yarn 2 and later dropped them. Versions may also be
+	 * given as tags, for which the major version is unknown.
+	 */
+	private Option<Integer> majorVersion()
+	{
+		String version = Option.of(getYarnVersion().getOrNull()).map(CharSequence::toString).getOrElse("");
+		Matcher matcher = MAJOR_VERSION.matcher(version);
+
+		return matcher.lookingAt() ? Option.of(Integer.parseInt(matcher.group(1))) : Option.none();
+	}
+
+	private Option<PackageCache> packageCache()
+	{
+		return Option.of(getPackageCacheDirectory().getAsFile().getOrNull()).map(PackageCache::new);
 	}
 }
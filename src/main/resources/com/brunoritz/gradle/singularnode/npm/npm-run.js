@@ -0,0 +1,128 @@
+'use strict';
+
+/*
+ * Runs several scripts of the package.json in the working directory concurrently, used by the NpmRunTask of the
+ * Singular Node plugin. NPM itself is not started. Which command lines make up a script, including its pre and post
+ * scripts, and the environment they run with are determined by the plugin, which passes them as a plan file:
+ * [{ script, commands: [{ event, command }] }]. Scripts not declared by the package.json have no commands. Every
+ * command line is run through the shell with the environment of this process, adding only the npm_lifecycle_event
+ * and npm_lifecycle_script variables.
+ *
+ * Usage: node npm-run.js <plan file> <results file> <parallelism> <prefix output>
+ *
+ * All scripts run to completion, even if some of them fail. If requested, every line written by a script is prefixed
+ * with the name of the script. Once all scripts have finished, their results are written to the results file as a
+ * JSON array: [{ script, exitCode, durationMillis }]
+ *
+ * The process exits with 1 if any script failed, or if the scripts could not be run at all, in which case no results
+ * are written.
+ */
+
+const { spawn } = require('child_process');
+const fs = require('fs');
+
+const [planFile, resultsFile, parallelism, prefixOutput] = process.argv.slice(2);
+const plan = JSON.parse(fs.readFileSync(planFile, 'utf8'));
+const nameWidth = Math.max(0, ...plan.map((entry) => entry.script.length));
+
+function environment(event, command) {
+	return { ...process.env, npm_lifecycle_event: event, npm_lifecycle_script: command };
+}
+
+function forward(stream, target, prefix) {
+	let pending = '';
+
+	stream.setEncoding('utf8');
+	stream.on('data', (chunk) => {
+		const lines = (pending + chunk).split('\n');
+
+		pending = lines.pop();
+
+		if (lines.length > 0) {
+			target.write(lines.map((line) => `${prefix}${line}\n`).join(''));
+		}
+	});
+
+	return new Promise((resolve) => stream.on('end', () => {
+		if (pending) {
+			target.write(`${prefix}${pending}\n`);
+		}
+
+		resolve();
+	}));
+}
+
+function runCommand(event, command, prefix) {
+	process.stdout.write(`${prefix}> ${event}\n${prefix}> ${command}\n`);
+
+	return new Promise((resolve) => {
+		const child = spawn(command, {
+			shell: true,
+			env: environment(event, command),
+			stdio: prefix ? ['ignore', 'pipe', 'pipe'] : ['ignore', 'inherit', 'inherit']
+		});
+		const output = prefix
+			? [forward(child.stdout, process.stdout, prefix), forward(child.stderr, process.stderr, prefix)]
+			: [];
+		let settled = false;
+
+		function settle(exitCode) {
+			if (!settled) {
+				settled = true;
+				resolve(exitCode);
+			}
+		}
+
+		child.on('error', (error) => {
+			process.stderr.write(`${prefix}${error.message}\n`);
+			settle(1);
+		});
+		child.on('close', (code) => Promise.all(output).then(() => settle(code === null ? 1 : code)));
+	});
+}
+
+async function runScript({ script, commands }) {
+	const prefix = (prefixOutput === 'true') ? `[${script.padEnd(nameWidth)}] ` : '';
+	const start = Date.now();
+	let exitCode = 0;
+
+	if (!commands) {
+		process.stderr.write(`${prefix}Missing script: "${script}"\n`);
+		exitCode = 1;
+	}
+
+	for (const { event, command } of commands || []) {
+		if (exitCode === 0) {
+			exitCode = await runCommand(event, command, prefix);
+		}
+	}
+
+	return { script, exitCode, durationMillis: Date.now() - start };
+}
+
+async function runAll() {
+	const results = new Array(plan.length);
+	let next = 0;
+
+	async function runNext() {
+		while (next < plan.length) {
+			const index = next++;
+
+			results[index] = await runScript(plan[index]);
+		}
+	}
+
+	const runners = Math.max(1, Math.min(Number(parallelism), plan.length));
+
+	await Promise.all(Array.from({ length: runners }, runNext));
+	fs.writeFileSync(resultsFile, JSON.stringify(results));
+
+	if (results.some((result) => result.exitCode !== 0)) {
+		process.exitCode = 1;
+	}
+}
+
+runAll().catch((error) => {
+	process.stderr.write(`${error && error.stack ? error.stack : error}\n`);
+	process.exit(1);
+});
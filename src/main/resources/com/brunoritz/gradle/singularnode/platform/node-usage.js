@@ -0,0 +1,29 @@
+'use strict';
+
+/*
+ * Reports the resource usage of the NodeJS processes of an invocation started by the ExecutionTelemetry of the Singular
+ * Node plugin.
+ *
+ * The script is preloaded via NODE_OPTIONS. Processes spawned by the package manager inherit NODE_OPTIONS and the
+ * report file, hence every NodeJS process of the invocation reports its own usage. Worker threads share the usage of
+ * their process and do not report.
+ *
+ * The report holds one JSON object per process and line: { cpuMicros, maxRssKilobytes }
+ */
+
+const fs = require('fs');
+const { isMainThread } = require('worker_threads');
+
+const reportFile = process.env.SINGULAR_NODE_USAGE_FILE;
+
+if (reportFile && isMainThread) {
+	process.on('exit', () => {
+		const usage = process.resourceUsage();
+
+		/* A single append of a short line does not interleave with those of concurrently exiting processes */
+		fs.appendFileSync(reportFile, JSON.stringify({
+			cpuMicros: usage.userCPUTime + usage.systemCPUTime,
+			maxRssKilobytes: usage.maxRSS
+		}) + '\n');
+	});
+}
@@ -0,0 +1,280 @@
+'use strict';
+
+/*
+ * Long-lived NodeJS worker used by the NodeWorkerService of the Singular Node plugin.
+ *
+ * The worker connects to the loopback port passed as first argument and authenticates itself with the token passed in
+ * the SINGULAR_NODE_WORKER_TOKEN environment variable. All messages are exchanged over that connection, hence output
+ * written to the standard streams of the process can never be mistaken for a message.
+ *
+ * Requests are received one JSON object per line: { script, args, cwd, env }. Each request is executed in a fresh
+ * worker thread, hence scripts do not share any module state. Requests are processed one at a time, which allows
+ * changing the working directory of the process for the duration of a request.
+ *
+ * Package manager CLIs execute on load, so they cannot be run twice within the same thread. Instead, the thread for
+ * the next execution of a script is started as soon as the previous one has completed, and NodeJS versions supporting
+ * it keep the compiled code of the CLI in a compile cache. Requests therefore find their CLI ready to run.
+ *
+ * Child processes spawned by scripts would inherit the standard streams of the process and bypass the worker thread.
+ * Their output is piped through the thread instead, so it is attributed to the script that spawned them.
+ *
+ * Responses are sent one message per line:
+ *     HELLO <token>   Sent once after connecting
+ *     OUT <base64>    Output written to stdout by the script
+ *     ERR <base64>    Output written to stderr by the script
+ *     EXIT <code>     The script has terminated with the given exit code
+ */
+
+const { once } = require('events');
+const { isMainThread, parentPort, Worker, workerData } = require('worker_threads');
+
+const COMPILE_CACHE_DIR = require('path').join(require('os').tmpdir(), 'singular-node-compile-cache');
+
+function enableCompileCache() {
+	const Module = require('module');
+
+	if (typeof Module.enableCompileCache === 'function') {
+		Module.enableCompileCache(COMPILE_CACHE_DIR);
+	}
+}
+
+/*
+ * Standard output and error streams that refer to the process rather than to the worker thread.
+ */
+function isInherited(stdio, fd) {
+	return stdio === 'inherit' || stdio === fd || stdio === process.stdout || stdio === process.stderr;
+}
+
+function pipedStdio(stdio) {
+	const streams = Array.isArray(stdio) ? [...stdio] : [stdio, stdio, stdio];
+	const piped = [false, false];
+
+	for (const fd of [1, 2]) {
+		if (isInherited(streams[fd], fd)) {
+			streams[fd] = 'pipe';
+			piped[fd - 1] = true;
+		}
+	}
+
+	return { streams, piped };
+}
+
+function pipeChildProcesses() {
+	const childProcess = require('child_process');
+	const spawn = childProcess.ChildProcess.prototype.spawn;
+
+	childProcess.ChildProcess.prototype.spawn = function (options) {
+		if (!options || options.stdio === undefined) {
+			return spawn.call(this, options);
+		}
+
+		const { streams, piped } = pipedStdio(options.stdio);
+		const result = spawn.call(this, { ...options, stdio: streams });
+
+		if (piped[0] && this.stdout) {
+			this.stdout.pipe(process.stdout, { end: false });
+		}
+
+		if (piped[1] && this.stderr) {
+			this.stderr.pipe(process.stderr, { end: false });
+		}
+
+		return result;
+	};
+
+	childProcess.spawnSync = pipedSync(childProcess.spawnSync, 'pipe', (result) => result);
+	childProcess.execSync = pipedSync(childProcess.execSync, ['pipe', 'pipe', 'inherit'], stdoutOf);
+	childProcess.execFileSync = pipedSync(childProcess.execFileSync, ['pipe', 'pipe', 'inherit'], stdoutOf);
+}
+
+function stdoutOf(result) {
+	return { stdout: result };
+}
+
+/*
+ * Synchronous functions only report the output of the child once it has terminated. Output that would have gone to
+ * the inherited streams is written to the streams of the thread, also if the function throws.
+ */
+function pipedSync(original, defaultStdio, outputOf) {
+	return function (...args) {
+		const optionsIndex = args.findIndex((arg) => arg && typeof arg === 'object' && !Array.isArray(arg));
+		const options = optionsIndex < 0 ? {} : args[optionsIndex];
+		const { streams, piped } = pipedStdio(options.stdio === undefined ? defaultStdio : options.stdio);
+
+		if (!piped[0] && !piped[1]) {
+			return original.apply(this, args);
+		}
+
+		const pipedOptions = { maxBuffer: Infinity, ...options, stdio: streams };
+		const pipedArgs = [...args];
+
+		if (optionsIndex < 0) {
+			pipedArgs.push(pipedOptions);
+		} else {
+			pipedArgs[optionsIndex] = pipedOptions;
+		}
+
+		const forward = (output) => {
+			if (piped[0] && output && output.stdout) {
+				process.stdout.write(output.stdout);
+			}
+
+			if (piped[1] && output && output.stderr) {
+				process.stderr.write(output.stderr);
+			}
+		};
+
+		let result;
+
+		try {
+			result = original.apply(this, pipedArgs);
+		} catch (error) {
+			forward(error);
+
+			throw error;
+		}
+
+		forward(outputOf(result));
+
+		if (outputOf(result) !== result) {
+			return piped[0] ? null : result;
+		}
+
+		return {
+			...result,
+			stdout: piped[0] ? null : result.stdout,
+			stderr: piped[1] ? null : result.stderr
+		};
+	};
+}
+
+/*
+ * Runs within a worker thread. The thread is started ahead of the request it will serve, hence it waits for the
+ * request before running the script as main module.
+ */
+function runScript() {
+	enableCompileCache();
+	pipeChildProcesses();
+
+	parentPort.once('message', (request) => {
+		parentPort.unref();
+
+		for (const name of Object.keys(process.env)) {
+			delete process.env[name];
+		}
+
+		Object.assign(process.env, request.env);
+		process.argv = [process.execPath, workerData.script, ...request.args];
+
+		require('module').runMain(workerData.script);
+	});
+}
+
+const readyThreads = new Map();
+
+function startThread(script) {
+	const thread = new Worker(__filename, {
+		workerData: { script },
+		stdout: true,
+		stderr: true
+	});
+
+	thread.exited = once(thread, 'exit');
+	thread.exited.catch(() => {});
+
+	return thread;
+}
+
+function takeThread(script) {
+	const thread = readyThreads.get(script);
+
+	readyThreads.delete(script);
+
+	return thread || startThread(script);
+}
+
+function forward(stream, type, send) {
+	stream.on('data', (chunk) => send(type, Buffer.from(chunk).toString('base64')));
+
+	return once(stream, 'end');
+}
+
+async function execute(request, send) {
+	process.chdir(request.cwd);
+
+	const thread = takeThread(request.script);
+
+	thread.on('error', (error) => {
+		send('ERR', Buffer.from(`${error && error.stack ? error.stack : error}\n`).toString('base64'));
+	});
+
+	const output = forward(thread.stdout, 'OUT', send);
+	const errors = forward(thread.stderr, 'ERR', send);
+
+	thread.postMessage({ args: request.args, env: request.env });
+
+	const [exitCode] = await thread.exited;
+
+	await Promise.all([output, errors]);
+
+	return exitCode;
+}
+
+function serve(socket, token) {
+	const pendingRequests = [];
+	let busy = false;
+
+	const send = (type, payload) => socket.write(`${type} ${payload}\n`);
+
+	async function processRequests() {
+		if (busy) {
+			return;
+		}
+
+		busy = true;
+
+		while (pendingRequests.length > 0) {
+			const request = pendingRequests.shift();
+			let exitCode;
+
+			try {
+				exitCode = await execute(request, send);
+			} catch (error) {
+				send('ERR', Buffer.from(`${error && error.stack ? error.stack : error}\n`).toString('base64'));
+				exitCode = 1;
+			}
+
+			send('EXIT', exitCode);
+
+			if (!readyThreads.has(request.script)) {
+				readyThreads.set(request.script, startThread(request.script));
+			}
+		}
+
+		busy = false;
+	}
+
+	send('HELLO', token);
+
+	require('readline').createInterface({ input: socket, terminal: false })
+		.on('line', (line) => {
+			pendingRequests.push(JSON.parse(line));
+			processRequests();
+		})
+		.on('close', () => process.exit(0));
+}
+
+if (isMainThread) {
+	const token = process.env.SINGULAR_NODE_WORKER_TOKEN || '';
+
+	/* The token must neither reach the scripts nor the processes they spawn */
+	delete process.env.SINGULAR_NODE_WORKER_TOKEN;
+
+	const socket = require('net').connect(Number(process.argv[2]), '127.0.0.1');
+
+	socket.setNoDelay(true);
+	socket.on('connect', () => serve(socket, token));
+	socket.on('error', () => process.exit(1));
+} else {
+	runScript();
+}
@@ -0,0 +1,119 @@
+package com.brunoritz.gradle.singularnode.affected
+
+import io.vavr.collection.HashMap
+import io.vavr.collection.List
+import spock.lang.Specification
+
+class ChangeImpactSpec
+	extends Specification
+{
+	private File repositoryDir
+	private File buildDir
+	private HashMap<String, File> projectDirectories
+	private Map<String, java.util.List<String>> dependencies = [:]
+	private java.util.List<String> globalFiles = ['package.json', 'package-lock.json', '*.gradle', '.yarn/releases/**']
+
+	def setup()
+	{
+		repositoryDir = File.createTempDir()
+		buildDir = new File(repositoryDir, 'frontend')
+		projectDirectories = HashMap.of(
+			':app', new File(buildDir, 'app'),
+			':ui', new File(buildDir, 'ui'),
+			':ui:icons', new File(buildDir, 'ui/icons'),
+			':docs', new File(buildDir, 'docs')
+		)
+	}
+
+	def cleanup()
+	{
+		repositoryDir.deleteDir()
+	}
+
+	def 'It shall only affect the projects containing changed files'()
+	{
+		when:
+			def affected = affectedProjects('frontend/app/src/index.js', 'frontend/app/package.json')
+
+		then:
+			affected == [':app': 'Changed frontend/app/src/index.js and 1 more files']
+	}
+
+	def 'It shall attribute changes in nested projects to the innermost project'()
+	{
+		when:
+			def affected = affectedProjects('frontend/ui/icons/arrow.svg')
+
+		then:
+			affected == [':ui:icons': 'Changed frontend/ui/icons/arrow.svg']
+	}
+
+	def 'It shall affect the projects depending on affected projects, directly or transitively'()
+	{
+		given:
+			dependencies[':ui'] = [':ui:icons']
+			dependencies[':app'] = [':ui']
+
+		when:
+			def affected = affectedProjects('frontend/ui/icons/arrow.svg')
+
+		then:
+			affected == [
+				':ui:icons': 'Changed frontend/ui/icons/arrow.svg',
+				':ui'      : 'Depends on affected project :ui:icons',
+				':app'     : 'Depends on affected project :ui'
+			]
+	}
+
+	def 'It shall affect all projects if a file outside of any project changed'()
+	{
+		when:
+			def affected = affectedProjects('frontend/app/src/index.js', 'frontend/package-lock.json')
+
+		then:
+			affected.keySet() == [':app', ':ui', ':ui:icons', ':docs'] as Set
+			affected.values().every { it == 'Changed frontend/package-lock.json outside of any subproject' }
+	}
+
+	def 'It shall affect all projects if a global file in a nested directory changed'()
+	{
+		when:
+			def affected = affectedProjects('frontend/.yarn/releases/yarn-4.1.0.cjs')
+
+		then:
+			affected.keySet() == [':app', ':ui', ':ui:icons', ':docs'] as Set
+	}
+
+	def 'It shall ignore changes to other files outside of any project'()
+	{
+		when:
+			def affected = affectedProjects('frontend/app/src/index.js', 'frontend/README.md', 'frontend/tools/lint.js')
+
+		then:
+			affected == [':app': 'Changed frontend/app/src/index.js']
+	}
+
+	def 'It shall only match global files relative to the root of the build'()
+	{
+		expect:
+			affectedProjects('frontend/tools/package.json', 'frontend/gradle/settings.gradle').isEmpty()
+	}
+
+	def 'It shall ignore changes outside of the build'()
+	{
+		expect:
+			affectedProjects('backend/src/Main.java', 'README.md').isEmpty()
+	}
+
+	private Map<String, String> affectedProjects(String... changedFiles)
+	{
+		return ChangeImpact.affectedProjects(
+			repositoryDir,
+			List.of(changedFiles),
+			buildDir,
+			projectDirectories,
+			{ String project -> List.ofAll(dependencies.getOrDefault(project, [])) },
+			List.ofAll(globalFiles)
+		).toJavaMap()
+	}
+}
@@ -0,0 +1,112 @@
+package com.brunoritz.gradle.singularnode.bundle
+
+import io.vavr.collection.LinkedHashMap
+import spock.lang.Specification
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+class ToolBundleSpec
+	extends Specification
+{
+	private static final String ARCHIVE_NAME = 'node-v20.6.0-linux-x64.tar.gz'
+
+	private File workDir
+	private File bundleFile
+	private File targetDir
+
+	def setup()
+	{
+		workDir = File.createTempDir()
+		bundleFile = new File(workDir, 'tool-bundle.zip')
+		targetDir = new File(workDir, 'unpacked')
+	}
+
+	def cleanup()
+	{
+		workDir.deleteDir()
+	}
+
+	def 'It shall extract all entries of a bundle along with its manifest'()
+	{
+		given:
+			writeBundle()
+
+		when:
+			def manifest = ToolBundle.extract(bundleFile, targetDir)
+
+		then:
+			manifest.nodeVersion() == '20.6.0'
+			manifest.nodeArchive() == ARCHIVE_NAME
+			manifest.packageVersions().get('yarn').get() == '1.22.19'
+			new File(targetDir, "node/${ARCHIVE_NAME}").text == 'node-archive'
+			new File(targetDir, 'packages/yarn.tgz').text == 'yarn-tarball'
+	}
+
+	def 'It shall reject bundles whose entries do not match their checksum'()
+	{
+		given:
+			writeBundle()
+			replaceEntry('packages/yarn.tgz', 'tampered')
+
+		when:
+			ToolBundle.extract(bundleFile, targetDir)
+
+		then:
+			def e = thrown(IOException)
+			e.message.contains('Checksum mismatch')
+			!new File(targetDir, 'packages/yarn.tgz').exists()
+	}
+
+	def 'It shall reject bundles containing entries not listed in the manifest'()
+	{
+		given:
+			writeBundle()
+			replaceEntry('packages/pnpm.tgz', 'unexpected')
+
+		when:
+			ToolBundle.extract(bundleFile, targetDir)
+
+		then:
+			def e = thrown(IOException)
+			e.message.contains('unexpected entry')
+	}
+
+	private void writeBundle()
+	{
+		def nodeArchive = new File(workDir, ARCHIVE_NAME)
+		def yarnTarball = new File(workDir, 'yarn.tgz')
+
+		nodeArchive.text = 'node-archive'
+		yarnTarball.text = 'yarn-tarball'
+
+		ToolBundle.write(
+			bundleFile,
+			new ToolBundle.Manifest('20.6.0', ARCHIVE_NAME, LinkedHashMap.of('yarn', '1.22.19'), LinkedHashMap.empty()),
+			LinkedHashMap.of(ToolBundle.nodeArchiveEntry(ARCHIVE_NAME), nodeArchive)
+				.put(ToolBundle.packageEntry('yarn'), yarnTarball)
+		)
+	}
+
+	private void replaceEntry(String entryName, String content)
+	{
+		def original = new File(workDir, 'original.zip')
+
+		bundleFile.renameTo(original)
+
+		new ZipFile(original).withCloseable { source ->
+			new ZipOutputStream(bundleFile.newOutputStream()).withCloseable { target ->
+				source.entries().findAll { it.name != entryName }.each { entry ->
+					target.putNextEntry(new ZipEntry(entry.name))
+					target << source.getInputStream(entry)
+					target.closeEntry()
+				}
+
+				target.putNextEntry(new ZipEntry(entryName))
+				target << content.bytes
+				target.closeEntry()
+			}
+		}
+	}
+}
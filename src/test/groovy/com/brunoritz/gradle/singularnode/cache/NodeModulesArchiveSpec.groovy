@@ -0,0 +1,110 @@
+package com.brunoritz.gradle.singularnode.cache
+
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Paths
+
+@IgnoreIf({ System.getProperty('os.name').containsIgnoreCase('windows') })
+class NodeModulesArchiveSpec
+	extends Specification
+{
+	private File workDir
+	private File nodeModules
+	private File archive
+
+	def setup()
+	{
+		workDir = File.createTempDir()
+		nodeModules = new File(workDir, 'project/node_modules')
+		archive = new File(workDir, 'project/build/node-modules/npm.tar.gz')
+	}
+
+	def cleanup()
+	{
+		workDir.deleteDir()
+	}
+
+	def 'It shall preserve the binaries of packages when restoring node_modules'()
+	{
+		given:
+			def script = new File(nodeModules, 'cli/lib/cli.sh')
+
+			script.parentFile.mkdirs()
+			script.text = '#!/bin/sh\necho restored\n'
+			script.setExecutable(true)
+			new File(nodeModules, '.bin').mkdirs()
+			Files.createSymbolicLink(new File(nodeModules, '.bin/cli').toPath(), Paths.get('../cli/lib/cli.sh'))
+
+		when:
+			NodeModulesArchive.store(nodeModules, archive)
+			nodeModules.deleteDir()
+			NodeModulesArchive.restore(archive, nodeModules)
+
+		then:
+			Files.isSymbolicLink(new File(nodeModules, '.bin/cli').toPath())
+			new File(nodeModules, '.bin/cli').canonicalFile == script.canonicalFile
+
+		when:
+			def process = new ProcessBuilder(new File(nodeModules, '.bin/cli').absolutePath).start()
+
+		then:
+			process.waitFor() == 0
+			process.inputStream.text.trim() == 'restored'
+	}
+
+	def 'It shall replace the previous contents of node_modules when restoring'()
+	{
+		given:
+			new File(nodeModules, 'colors').mkdirs()
+			new File(nodeModules, 'colors/index.js').text = 'module.exports = 1'
+			NodeModulesArchive.store(nodeModules, archive)
+			new File(nodeModules, 'stale').mkdirs()
+			new File(nodeModules, 'colors/index.js').text = 'module.exports = 2'
+
+		when:
+			NodeModulesArchive.restore(archive, nodeModules)
+
+		then:
+			!new File(nodeModules, 'stale').exists()
+			new File(nodeModules, 'colors/index.js').text == 'module.exports = 1'
+	}
+
+	def 'It shall detect whether node_modules matches the archive'()
+	{
+		given:
+			new File(nodeModules, 'colors').mkdirs()
+			new File(nodeModules, 'colors/index.js').text = 'module.exports = 1'
+
+		when:
+			NodeModulesArchive.store(nodeModules, archive)
+
+		then:
+			NodeModulesArchive.matches(nodeModules, archive)
+
+		when:
+			archive.setLastModified(archive.lastModified() - 60_000)
+
+		then:
+			!NodeModulesArchive.matches(nodeModules, archive)
+	}
+
+	def 'It shall refuse to store symlinks pointing outside of node_modules'()
+	{
+		given:
+			def library = new File(workDir, 'library')
+
+			library.mkdirs()
+			nodeModules.mkdirs()
+			Files.createSymbolicLink(new File(nodeModules, 'library').toPath(), Paths.get('../../library'))
+
+		when:
+			NodeModulesArchive.store(nodeModules, archive)
+
+		then:
+			def e = thrown(IOException)
+			e.message.contains('cannot be cached')
+			!archive.exists()
+	}
+}
@@ -0,0 +1,162 @@
+package com.brunoritz.gradle.singularnode.cache
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+@Timeout(10)
+class PackageCacheSpec
+	extends Specification
+{
+	private File cacheDir
+
+	def setup()
+	{
+		cacheDir = File.createTempDir()
+	}
+
+	def cleanup()
+	{
+		cacheDir.deleteDir()
+	}
+
+	def 'It shall point each package manager to its part of the cache'()
+	{
+		given:
+			def cache = new PackageCache(cacheDir)
+
+		expect:
+			cache.environment('npm').get('npm_config_cache').get() == new File(cacheDir, 'npm').path
+			cache.environment('pnpm').get('npm_config_store_dir').get() == new File(cacheDir, 'pnpm').path
+			cache.environment('yarn').get('YARN_CACHE_FOLDER').get() == new File(cacheDir, 'yarn/cache').path
+	}
+
+	def 'It shall leave the global cache setting of Yarn to the project'()
+	{
+		given:
+			def cache = new PackageCache(cacheDir)
+
+		expect:
+			!cache.environment('yarn').containsKey('YARN_ENABLE_GLOBAL_CACHE')
+			!cache.environment('yarn').containsKey('YARN_GLOBAL_FOLDER')
+	}
+
+	def 'It shall delete the least recently used entries until the cache fits'()
+	{
+		given:
+			def cache = new PackageCache(cacheDir)
+			def oldest = cacheEntry('npm/_cacache/content-v2/sha512/aa/oldest', 100, 1000)
+			def older = cacheEntry('pnpm/v3/files/bb/older', 100, 2000)
+			def newer = cacheEntry('yarn/offline-mirror/newer.tgz', 100, 3000)
+			def newest = cacheEntry('npm/_cacache/content-v2/sha512/cc/newest', 100, 4000)
+
+		when:
+			def deleted = cache.prune(250)
+
+		then:
+			deleted == 200
+			!oldest.exists()
+			!older.exists()
+			newer.exists()
+			newest.exists()
+	}
+
+	def 'It shall treat package directories of Yarn 1 as a single entry'()
+	{
+		given:
+			def cache = new PackageCache(cacheDir)
+			def packageFile = cacheEntry('yarn/cache/v6/npm-colors-1.4.0/package.json', 50, 1000)
+			def metadataFile = cacheEntry('yarn/cache/v6/npm-colors-1.4.0/.yarn-metadata.json', 50, 5000)
+			def otherPackage = cacheEntry('yarn/cache/v6/npm-chalk-5.3.0/package.json', 50, 3000)
+
+		when:
+			cache.prune(100)
+
+		then:
+			packageFile.exists()
+			metadataFile.exists()
+			!otherPackage.parentFile.exists()
+	}
+
+	def 'It shall not delete the archives of Yarn 2 or later referenced by Plug\'n\'Play installations'()
+	{
+		given:
+			def cache = new PackageCache(cacheDir)
+			def archive = cacheEntry('yarn/cache/colors-npm-1.4.0-98bc3e9e6a-90b2d5465b.zip', 100, 1000)
+			def classicPackage = cacheEntry('yarn/cache/v6/npm-chalk-5.3.0/package.json', 100, 2000)
+
+		when:
+			def deleted = cache.prune(0)
+
+		then:
+			deleted == 100
+			archive.exists()
+			!classicPackage.exists()
+	}
+
+	def 'It shall admit concurrent shared leases'()
+	{
+		given:
+			def cache = new PackageCache(cacheDir)
+			def holders = new CountDownLatch(3)
+
+		when:
+			def threads = (1..3).collect {
+				Thread.start {
+					cache.lockShared().withCloseable {
+						holders.countDown()
+						holders.await(5, TimeUnit.SECONDS)
+					}
+				}
+			}
+
+			threads*.join()
+
+		then:
+			holders.count == 0
+	}
+
+	def 'It shall not grant an exclusive lease while shared leases are held'()
+	{
+		given:
+			def cache = new PackageCache(cacheDir)
+			def sharedLease = cache.lockShared()
+			def exclusiveGrants = new AtomicInteger()
+			def pruning = Thread.start {
+				cache.lockExclusive().withCloseable {
+					exclusiveGrants.incrementAndGet()
+				}
+			}
+
+		when:
+			Thread.sleep(200)
+			def grantsWhileShared = exclusiveGrants.get()
+
+			sharedLease.close()
+			pruning.join()
+
+		then:
+			grantsWhileShared == 0
+			exclusiveGrants.get() == 1
+	}
+
+	private File cacheEntry(String path, int size, long lastUsedMillis)
+	{
+		def file = new File(cacheDir, path)
+
+		file.parentFile.mkdirs()
+		file.bytes = new byte[size]
+
+		def lastUsed = FileTime.fromMillis(lastUsedMillis)
+
+		Files.setAttribute(file.toPath(), 'basic:lastModifiedTime', lastUsed)
+		Files.setAttribute(file.toPath(), 'basic:lastAccessTime', lastUsed)
+
+		return file
+	}
+}
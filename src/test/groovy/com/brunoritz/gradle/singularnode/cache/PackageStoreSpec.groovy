@@ -0,0 +1,192 @@
+package com.brunoritz.gradle.singularnode.cache
+
+import io.vavr.collection.List
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class PackageStoreSpec
+	extends Specification
+{
+	private File workDir
+	private File storeDir
+
+	def setup()
+	{
+		workDir = File.createTempDir()
+		storeDir = new File(workDir, 'store')
+	}
+
+	def cleanup()
+	{
+		workDir.deleteDir()
+	}
+
+	def 'It shall link identical packages of different projects to the same files'()
+	{
+		given:
+			def store = new PackageStore(storeDir, List.empty())
+			def firstProject = installPackage('first', 'colors', 'module.exports = 1')
+			def secondProject = installPackage('second', 'colors', 'module.exports = 1')
+
+		when:
+			def firstResult = store.deduplicate(new File(firstProject, 'node_modules'))
+			def secondResult = store.deduplicate(new File(secondProject, 'node_modules'))
+
+		then:
+			firstResult.linkedPackages() == 1
+			secondResult.linkedPackages() == 1
+			Files.isSameFile(
+				new File(firstProject, 'node_modules/colors/index.js').toPath(),
+				new File(secondProject, 'node_modules/colors/index.js').toPath()
+			)
+			new File(secondProject, 'node_modules/colors/index.js').text == 'module.exports = 1'
+	}
+
+	def 'It shall not link packages whose contents differ'()
+	{
+		given:
+			def store = new PackageStore(storeDir)
+			def firstProject = installPackage('first', 'colors', 'module.exports = 1')
+			def secondProject = installPackage('second', 'colors', 'module.exports = 2')
+
+		when:
+			store.deduplicate(new File(firstProject, 'node_modules'))
+			def result = store.deduplicate(new File(secondProject, 'node_modules'))
+
+		then:
+			result.linkedPackages() == 0
+			!Files.isSameFile(
+				new File(firstProject, 'node_modules/colors/index.js').toPath(),
+				new File(secondProject, 'node_modules/colors/index.js').toPath()
+			)
+	}
+
+	def 'It shall deduplicate scoped and nested packages separately from their parent'()
+	{
+		given:
+			def store = new PackageStore(storeDir, List.empty())
+			def firstProject = installPackage('first', '@types/node', 'export {}')
+			def secondProject = installPackage('second', 'chalk', 'module.exports = 3')
+
+			writeFile(firstProject, 'node_modules/@types/node/node_modules/undici-types/index.d.ts', 'types')
+			writeFile(secondProject, 'node_modules/chalk/node_modules/undici-types/index.d.ts', 'types')
+
+		when:
+			store.deduplicate(new File(firstProject, 'node_modules'))
+			def result = store.deduplicate(new File(secondProject, 'node_modules'))
+
+		then:
+			result.linkedPackages() == 2
+			Files.isSameFile(
+				new File(firstProject, 'node_modules/@types/node/node_modules/undici-types/index.d.ts').toPath(),
+				new File(secondProject, 'node_modules/chalk/node_modules/undici-types/index.d.ts').toPath()
+			)
+	}
+
+	@IgnoreIf({ System.getProperty('os.name').containsIgnoreCase('windows') })
+	def 'It shall store copies instead of the installed files'()
+	{
+		given:
+			def store = new PackageStore(storeDir, List.of('cp', '-p'))
+			def firstProject = installPackage('first', 'colors', 'module.exports = 1')
+			def secondProject = installPackage('second', 'colors', 'module.exports = 1')
+			def firstFile = new File(firstProject, 'node_modules/colors/index.js')
+			def secondFile = new File(secondProject, 'node_modules/colors/index.js')
+
+		when:
+			store.deduplicate(new File(firstProject, 'node_modules'))
+			def result = store.deduplicate(new File(secondProject, 'node_modules'))
+
+			firstFile.text = 'modified in place'
+
+		then:
+			result.linkedPackages() == 1
+			!Files.isSameFile(firstFile.toPath(), secondFile.toPath())
+			secondFile.text == 'module.exports = 1'
+	}
+
+	@IgnoreIf({ System.getProperty('os.name').containsIgnoreCase('windows') })
+	def 'It shall not link packages whose files differ in being executable'()
+	{
+		given:
+			def store = new PackageStore(storeDir, List.empty())
+			def firstProject = installPackage('first', 'colors', 'module.exports = 1')
+			def secondProject = installPackage('second', 'colors', 'module.exports = 1')
+
+			new File(secondProject, 'node_modules/colors/index.js').setExecutable(true)
+
+		when:
+			store.deduplicate(new File(firstProject, 'node_modules'))
+			store.deduplicate(new File(secondProject, 'node_modules'))
+
+		then:
+			!Files.isSameFile(
+				new File(firstProject, 'node_modules/colors/index.js').toPath(),
+				new File(secondProject, 'node_modules/colors/index.js').toPath()
+			)
+			!new File(firstProject, 'node_modules/colors/index.js').canExecute()
+	}
+
+	def 'It shall skip packages that are still linked to the store'()
+	{
+		given:
+			def store = new PackageStore(storeDir, List.empty())
+			def project = installPackage('project', 'colors', 'module.exports = 1')
+			def nodeModules = new File(project, 'node_modules')
+
+		when:
+			def firstResult = store.deduplicate(nodeModules)
+			def secondResult = store.deduplicate(nodeModules)
+
+		then:
+			firstResult.linkedPackages() == 1
+			secondResult.linkedPackages() == 0
+
+		when:
+			def installedFile = new File(project, 'node_modules/colors/index.js')
+
+			installedFile.delete()
+			installedFile.text = 'module.exports = 22'
+
+			def thirdResult = store.deduplicate(nodeModules)
+
+		then:
+			thirdResult.linkedPackages() == 1
+			storeDir.list().findAll { !it.startsWith('.') }.size() == 2
+	}
+
+	def 'It shall not treat hidden entries of node_modules as packages'()
+	{
+		given:
+			def store = new PackageStore(storeDir)
+			def project = new File(workDir, 'project')
+
+			writeFile(project, 'node_modules/.cache/state.json', '{}')
+
+		when:
+			store.deduplicate(new File(project, 'node_modules'))
+
+		then:
+			!storeDir.exists() || storeDir.list().length == 0
+	}
+
+	private File installPackage(String projectName, String packageName, String content)
+	{
+		def project = new File(workDir, projectName)
+
+		writeFile(project, "node_modules/${packageName}/package.json", "{\"name\": \"${packageName}\"}")
+		writeFile(project, "node_modules/${packageName}/index.js", content)
+
+		return project
+	}
+
+	private static void writeFile(File project, String path, String content)
+	{
+		def file = new File(project, path)
+
+		file.parentFile.mkdirs()
+		file.text = content
+	}
+}
@@ -0,0 +1,280 @@
+package com.brunoritz.gradle.singularnode.lockfile
+
+import groovy.json.JsonOutput
+import io.vavr.control.Option
+import spock.lang.Specification
+
+class LockfilesSpec
+	extends Specification
+{
+	def 'It shall resolve the dependencies of NPM lockfiles of version 2 and later like NodeJS does'()
+	{
+		given:
+			def lockFile = JsonOutput.toJson([
+				lockfileVersion: 3,
+				packages       : [
+					''                                  : [name: 'app', dependencies: [chalk: '^5.0.0', member: '*']],
+					'node_modules/chalk'                : [
+						version     : '5.3.0',
+						resolved    : 'https://registry.npmjs.org/chalk/-/chalk-5.3.0.tgz',
+						integrity   : 'sha512-chalk',
+						dependencies: [ansi: '^6.0.0', '@scope/util': '^1.0.0']
+					],
+					'node_modules/chalk/node_modules/ansi': [version: '6.2.0'],
+					'node_modules/ansi'                 : [version: '5.0.0'],
+					'node_modules/@scope/util'          : [version: '1.0.0', dependencies: [ansi: '^5.0.0']],
+					'node_modules/member'               : [resolved: 'packages/member', link: true],
+					'packages/member'                   : [name: 'member', version: '0.1.0']
+				]
+			])
+
+		when:
+			def graph = Lockfiles.npm(new StringReader(lockFile))
+
+		then:
+			graph.size() == 7
+			graph.get(1) == new LockedPackage(
+				1,
+				'chalk',
+				Option.of('5.3.0'),
+				Option.of('https://registry.npmjs.org/chalk/-/chalk-5.3.0.tgz'),
+				Option.of('sha512-chalk')
+			)
+			dependencies(graph, 0) == ['chalk@5.3.0', 'member@null']
+			dependencies(graph, 1) == ['ansi@6.2.0', '@scope/util@1.0.0']
+			dependencies(graph, 4) == ['ansi@5.0.0']
+			dependencies(graph, 5) == ['member@0.1.0']
+	}
+
+	def 'It shall resolve the nested dependencies of NPM lockfiles of version 1'()
+	{
+		given:
+			def lockFile = JsonOutput.toJson([
+				lockfileVersion: 1,
+				dependencies   : [
+					chalk: [
+						version     : '5.3.0',
+						requires    : [ansi: '^6.0.0'],
+						dependencies: [ansi: [version: '6.2.0']]
+					],
+					ansi : [version: '5.0.0']
+				]
+			])
+
+		when:
+			def graph = Lockfiles.npm(new StringReader(lockFile))
+
+		then:
+			graph.packages().map { it.name() }.toJavaList() == ['chalk', 'ansi', 'ansi']
+			dependencies(graph, 0) == ['ansi@6.2.0']
+	}
+
+	def 'It shall reject malformed NPM lockfiles'()
+	{
+		when:
+			Lockfiles.npm(new StringReader('[]'))
+
+		then:
+			thrown(IOException)
+	}
+
+	def 'It shall key the packages of Yarn 1 lockfiles by all their requested ranges'()
+	{
+		given:
+			def lockFile = '''\
+				# yarn lockfile v1
+
+
+				"@babel/highlight@^7.0.0", "@babel/highlight@^7.12.13":
+				  version "7.13.10"
+				  resolved "https://registry.yarnpkg.com/@babel/highlight/-/highlight-7.13.10.tgz"
+				  integrity sha512-highlight
+				  dependencies:
+				    chalk "^2.0.0"
+				  optionalDependencies:
+				    colors "^1.4.0"
+
+				chalk@^2.0.0, chalk@^2.4.0:
+				  version "2.4.2"
+				  resolved "https://registry.yarnpkg.com/chalk/-/chalk-2.4.2.tgz"
+				  dependencies:
+				    "@babel/highlight" "^7.12.13"
+				'''.stripIndent()
+
+		when:
+			def graph = Lockfiles.yarn(new StringReader(lockFile))
+
+		then:
+			graph.size() == 2
+			graph.get(0).name() == '@babel/highlight'
+			graph.get(0).integrity() == Option.of('sha512-highlight')
+			dependencies(graph, 0) == ['chalk@2.4.2']
+			dependencies(graph, 1) == ['@babel/highlight@7.13.10']
+	}
+
+	def 'It shall read the resolutions of lockfiles of later Yarn versions'()
+	{
+		given:
+			def lockFile = '''\
+				__metadata:
+				  version: 8
+				  cacheKey: 10c0
+
+				"app@workspace:.":
+				  version: 0.0.0-use.local
+				  resolution: "app@workspace:."
+				  dependencies:
+				    chalk: "npm:^2.0.0"
+				    colors: ^1.4.0
+
+				"chalk@npm:^2.0.0":
+				  version: 2.4.2
+				  resolution: "chalk@npm:2.4.2"
+				  checksum: 10c0/e6543f02ec877732e3a2d1c3c3323ddb4d39fbab687c23f526e25bd4c6a9bf3b
+
+				"colors@npm:^1.4.0":
+				  version: 1.4.0
+				  resolution: "colors@npm:1.4.0"
+				'''.stripIndent()
+
+		when:
+			def graph = Lockfiles.yarn(new StringReader(lockFile))
+
+		then:
+			graph.packages().map { it.name() }.toJavaList() == ['app', 'chalk', 'colors']
+			graph.get(1).resolved() == Option.of('chalk@npm:2.4.2')
+			graph.get(1).integrity().isEmpty()
+			dependencies(graph, 0) == ['chalk@2.4.2', 'colors@1.4.0']
+	}
+
+	def 'It shall merge the peer variants of PNPM packages of lockfile version #lockfileVersion'()
+	{
+		when:
+			def graph = Lockfiles.pnpm(new StringReader(lockFile.stripIndent()))
+
+		then:
+			graph.packages().map { "${it.name()}@${it.version().get()}".toString() }.toJavaList() == [
+				'react-dom@18.2.0', 'react@18.2.0', '@types/node@20.0.0'
+			]
+			graph.get(0).integrity() == Option.of('sha512-dom')
+			dependencies(graph, 0) == ['react@18.2.0', '@types/node@20.0.0']
+
+		where:
+			lockfileVersion | lockFile
+			'5.4'           | '''\
+				lockfileVersion: 5.4
+
+				packages:
+
+				  /react-dom/18.2.0_react@18.2.0:
+				    resolution: {integrity: sha512-dom}
+				    dependencies:
+				      react: 18.2.0
+				      '@types/node': 20.0.0
+
+				  /react/18.2.0:
+				    resolution: {integrity: sha512-react}
+
+				  /@types/node/20.0.0:
+				    resolution: {integrity: sha512-node}
+				'''
+			'6.0'           | '''\
+				lockfileVersion: '6.0'
+
+				packages:
+
+				  /react-dom@18.2.0(react@18.2.0):
+				    resolution: {integrity: sha512-dom}
+				    dependencies:
+				      react: 18.2.0
+				      '@types/node': 20.0.0
+
+				  /react@18.2.0:
+				    resolution: {integrity: sha512-react}
+
+				  /@types/node@20.0.0:
+				    resolution: {integrity: sha512-node}
+				'''
+			'9.0'           | '''\
+				lockfileVersion: '9.0'
+
+				importers:
+
+				  .:
+				    dependencies:
+				      react-dom:
+				        specifier: ^18.2.0
+				        version: 18.2.0(react@18.2.0)
+
+				packages:
+
+				  react-dom@18.2.0:
+				    resolution: {integrity: sha512-dom}
+				    peerDependencies:
+				      react: ^18.2.0
+
+				  react@18.2.0:
+				    resolution: {integrity: sha512-react}
+
+				  '@types/node@20.0.0':
+				    resolution: {integrity: sha512-node}
+
+				snapshots:
+
+				  react-dom@18.2.0(react@18.2.0):
+				    dependencies:
+				      react: 18.2.0
+				      '@types/node': 20.0.0
+				      member: link:../member
+
+				  react@18.2.0: {}
+
+				  '@types/node@20.0.0': {}
+				'''
+	}
+
+	def 'It shall read the tarball locations of PNPM packages not obtained from the registry'()
+	{
+		given:
+			def lockFile = '''\
+				lockfileVersion: '9.0'
+
+				packages:
+
+				  private@1.0.0:
+				    resolution: {integrity: sha512-private, tarball: https://npm.example/private-1.0.0.tgz}
+				'''.stripIndent()
+
+		when:
+			def graph = Lockfiles.pnpm(new StringReader(lockFile))
+
+		then:
+			graph.get(0).resolved() == Option.of('https://npm.example/private-1.0.0.tgz')
+			graph.get(0).integrity() == Option.of('sha512-private')
+	}
+
+	def 'It shall tell the lockfile format by the file name'()
+	{
+		given:
+			def workDir = File.createTempDir()
+			def lockFile = new File(workDir, 'package.json')
+
+			lockFile.text = '{}'
+
+		when:
+			Lockfiles.read(lockFile)
+
+		then:
+			thrown(IllegalArgumentException)
+
+		cleanup:
+			workDir.deleteDir()
+	}
+
+	private static List<String> dependencies(DependencyGraph graph, int id)
+	{
+		return graph.dependencies(graph.get(id))
+			.map { "${it.name()}@${it.version().getOrNull()}".toString() }
+			.toJavaList()
+	}
+}
@@ -0,0 +1,21 @@
+package com.brunoritz.gradle.singularnode.nodejs
+
+import spock.lang.Specification
+
+class CorepackInstallerSpec
+	extends Specification
+{
+	def 'It shall read the version declared for a package manager'()
+	{
+		expect:
+			CorepackInstaller.declaredVersion(packageJson, 'yarn').getOrNull() == expectedVersion
+
+		where:
+			packageJson                                  || expectedVersion
+			'{"packageManager": "yarn@3.6.1"}'           || '3.6.1'
+			'{"packageManager": "yarn@3.6.1+sha224.ab"}' || '3.6.1+sha224.ab'
+			'{"packageManager": "pnpm@8.7.0"}'           || null
+			'{"name": "project"}'                        || null
+			'[]'                                         || null
+	}
+}
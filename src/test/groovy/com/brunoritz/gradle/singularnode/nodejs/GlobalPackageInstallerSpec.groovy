@@ -0,0 +1,165 @@
+package com.brunoritz.gradle.singularnode.nodejs
+
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream
+import org.apache.commons.compress.archivers.tar.TarConstants
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.LinkOption
+
+class GlobalPackageInstallerSpec
+	extends Specification
+{
+	private File workDir
+	private File prefix
+
+	def setup()
+	{
+		workDir = File.createTempDir()
+		prefix = new File(workDir, 'prefix')
+	}
+
+	def cleanup()
+	{
+		workDir.deleteDir()
+	}
+
+	def 'It shall extract the package and link its binaries'()
+	{
+		given:
+			def tarball = writeTarball([
+				'package/package.json': '{"name": "yarn", "bin": {"yarn": "bin/yarn.js", "yarnpkg": "bin/yarn.js"}}',
+				'package/bin/yarn.js' : 'console.log("yarn")'
+			])
+			def layout = layout('bin/%s')
+
+		when:
+			GlobalPackageInstaller.install(tarball, 'yarn', prefix, layout)
+
+		then:
+			new File(prefix, 'lib/node_modules/yarn/bin/yarn.js').text == 'console.log("yarn")'
+			Files.isSymbolicLink(new File(prefix, 'bin/yarn').toPath())
+			Files.readSymbolicLink(new File(prefix, 'bin/yarn').toPath()).toString() ==
+				'../lib/node_modules/yarn/bin/yarn.js'
+			new File(prefix, 'bin/yarnpkg').text == 'console.log("yarn")'
+			new File(prefix, 'lib/node_modules/yarn/bin/yarn.js').canExecute()
+	}
+
+	def 'It shall name a single binary after the package'()
+	{
+		given:
+			def tarball = writeTarball([
+				'package/package.json': '{"name": "pnpm", "bin": "bin/pnpm.cjs"}',
+				'package/bin/pnpm.cjs': 'console.log("pnpm")'
+			])
+			def layout = layout('bin/%s')
+
+		when:
+			GlobalPackageInstaller.install(tarball, 'pnpm', prefix, layout)
+
+		then:
+			new File(prefix, 'bin/pnpm').text == 'console.log("pnpm")'
+	}
+
+	def 'It shall create batch files for shims ending in .cmd'()
+	{
+		given:
+			def tarball = writeTarball([
+				'package/package.json': '{"name": "yarn", "bin": {"yarn": "bin/yarn.js"}}',
+				'package/bin/yarn.js' : 'console.log("yarn")'
+			])
+			def layout = layout('%s.cmd')
+
+		when:
+			GlobalPackageInstaller.install(tarball, 'yarn', prefix, layout)
+
+		then:
+			new File(prefix, 'yarn.cmd').text == '@node "%~dp0\\lib\\node_modules\\yarn\\bin\\yarn.js" %*\r\n'
+	}
+
+	def 'It shall reject binaries pointing outside of the package'()
+	{
+		given:
+			def tarball = writeTarball([
+				'package/package.json': '{"name": "yarn", "bin": {"yarn": "../../outside.js"}}'
+			])
+			def layout = layout('bin/%s')
+
+		when:
+			GlobalPackageInstaller.install(tarball, 'yarn', prefix, layout)
+
+		then:
+			def e = thrown(IOException)
+			e.message.contains('does not exist')
+	}
+
+	def 'It shall reject links within the package'()
+	{
+		given:
+			def tarball = writeTarball([
+				'package/package.json': '{"name": "yarn", "bin": {"yarn": "bin/yarn.js"}}',
+				'package/bin/yarn.js' : 'console.log("yarn")'
+			], [
+				'package/bin/yarn.js': new TarArchiveEntry('package/lib', linkFlag)
+			])
+			def layout = layout('bin/%s')
+
+		when:
+			GlobalPackageInstaller.install(tarball, 'yarn', prefix, layout)
+
+		then:
+			def e = thrown(IOException)
+			e.message.contains('must not contain links')
+			!Files.exists(new File(prefix, 'lib/node_modules/yarn/lib').toPath(), LinkOption.NOFOLLOW_LINKS)
+
+		where:
+			linkFlag << [TarConstants.LF_SYMLINK, TarConstants.LF_LINK]
+	}
+
+	private InstallationLayout layout(String shimPattern)
+	{
+		def layout = Mock(InstallationLayout)
+
+		layout.globalPackageDirectory(prefix, _ as String) >> { File dir, String name ->
+			new File(dir, "lib/node_modules/${name}")
+		}
+		layout.globalBinShim(prefix, _ as String) >> { File dir, String name ->
+			new File(dir, String.format(shimPattern, name))
+		}
+
+		return layout
+	}
+
+	private File writeTarball(Map<String, String> entries, Map<String, TarArchiveEntry> links = [:])
+	{
+		def tarball = new File(workDir, 'package.tgz')
+
+		tarball.withOutputStream { fileStream ->
+			def tarStream = new TarArchiveOutputStream(new GzipCompressorOutputStream(fileStream))
+
+			entries.each { name, content ->
+				def bytes = content.getBytes(StandardCharsets.UTF_8)
+				def entry = new TarArchiveEntry(name)
+
+				entry.size = bytes.length
+				tarStream.putArchiveEntry(entry)
+				tarStream.write(bytes)
+				tarStream.closeArchiveEntry()
+			}
+
+			links.each { target, link ->
+				link.linkName = target
+				tarStream.putArchiveEntry(link)
+				tarStream.closeArchiveEntry()
+			}
+
+			tarStream.close()
+		}
+
+		return tarball
+	}
+}
@@ -0,0 +1,172 @@
+package com.brunoritz.gradle.singularnode.nodejs
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import spock.lang.Specification
+
+import java.net.http.HttpClient
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+
+class NodeArchiveDownloaderSpec
+	extends Specification
+{
+	private static final String ARCHIVE_NAME = 'node-v1.2.3-linux-x64.tar.gz'
+	private static final int CHUNK_SIZE = 1024
+
+	private HttpServer server
+	private byte[] archive
+	private String publishedChecksum
+	private boolean rangesSupported
+	private AtomicInteger archiveRequests
+	private File downloadDir
+
+	def setup()
+	{
+		archive = new byte[10 * CHUNK_SIZE + 123]
+		new Random(42).nextBytes(archive)
+		publishedChecksum = MessageDigest.getInstance('SHA-256').digest(archive).encodeHex().toString()
+		rangesSupported = true
+		archiveRequests = new AtomicInteger()
+		downloadDir = File.createTempDir()
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.loopbackAddress, 0), 0)
+		server.createContext('/v1.2.3/SHASUMS256.txt') { HttpExchange exchange ->
+			respond(exchange, 200, "${publishedChecksum}  ${ARCHIVE_NAME}\n".bytes)
+		}
+		server.createContext("/v1.2.3/${ARCHIVE_NAME}") { HttpExchange exchange -> serveArchive(exchange) }
+		server.start()
+	}
+
+	def cleanup()
+	{
+		server.stop(0)
+		downloadDir.deleteDir()
+	}
+
+	def 'It shall download the archive in parallel chunks'()
+	{
+		given:
+			def destination = new File(downloadDir, ARCHIVE_NAME)
+
+		when:
+			downloader().download(archiveUri(), checksumsUri(), destination.toPath())
+
+		then:
+			destination.bytes == archive
+			archiveRequests.get() == 11
+			!new File(downloadDir, "${ARCHIVE_NAME}.part").exists()
+			!new File(downloadDir, "${ARCHIVE_NAME}.part.progress").exists()
+	}
+
+	def 'It shall only fetch missing chunks of an interrupted download'()
+	{
+		given:
+			def destination = new File(downloadDir, ARCHIVE_NAME)
+			def partFile = new File(downloadDir, "${ARCHIVE_NAME}.part")
+			def progressFile = new File(downloadDir, "${ARCHIVE_NAME}.part.progress")
+
+			partFile.bytes = Arrays.copyOf(archive, 4 * CHUNK_SIZE)
+			progressFile.text = "${archive.length}\n0\n1\n2\n3\n"
+
+		when:
+			downloader().download(archiveUri(), checksumsUri(), destination.toPath())
+
+		then:
+			destination.bytes == archive
+			archiveRequests.get() == 7
+	}
+
+	def 'It shall download sequentially if the server does not support range requests'()
+	{
+		given:
+			def destination = new File(downloadDir, ARCHIVE_NAME)
+
+			rangesSupported = false
+
+		when:
+			downloader().download(archiveUri(), checksumsUri(), destination.toPath())
+
+		then:
+			destination.bytes == archive
+			archiveRequests.get() == 1
+	}
+
+	def 'It shall reject an archive not matching the published checksum'()
+	{
+		given:
+			def destination = new File(downloadDir, ARCHIVE_NAME)
+
+			publishedChecksum = '0' * 64
+
+		when:
+			downloader().download(archiveUri(), checksumsUri(), destination.toPath())
+
+		then:
+			thrown(IOException)
+			!destination.exists()
+			!new File(downloadDir, "${ARCHIVE_NAME}.part").exists()
+	}
+
+	def 'It shall not download an existing archive with the expected checksum again'()
+	{
+		given:
+			def destination = new File(downloadDir, ARCHIVE_NAME)
+
+			destination.bytes = archive
+
+		when:
+			downloader().download(archiveUri(), checksumsUri(), destination.toPath())
+
+		then:
+			archiveRequests.get() == 0
+	}
+
+	private NodeArchiveDownloader downloader()
+	{
+		return new NodeArchiveDownloader(HttpClient.newHttpClient(), 4, CHUNK_SIZE)
+	}
+
+	private URI archiveUri()
+	{
+		return URI.create("http://127.0.0.1:${server.address.port}/v1.2.3/${ARCHIVE_NAME}")
+	}
+
+	private URI checksumsUri()
+	{
+		return URI.create("http://127.0.0.1:${server.address.port}/v1.2.3/SHASUMS256.txt")
+	}
+
+	private void serveArchive(HttpExchange exchange)
+	{
+		if (exchange.requestMethod == 'HEAD') {
+			if (rangesSupported) {
+				exchange.responseHeaders.add('Accept-Ranges', 'bytes')
+			}
+
+			exchange.responseHeaders.add('Content-Length', archive.length.toString())
+			exchange.sendResponseHeaders(200, -1)
+			exchange.close()
+
+			return
+		}
+
+		archiveRequests.incrementAndGet()
+
+		def range = exchange.requestHeaders.getFirst('Range')
+
+		if (rangesSupported && range != null) {
+			def (start, end) = range.replace('bytes=', '').split('-').collect { it as int }
+
+			respond(exchange, 206, Arrays.copyOfRange(archive, start, end + 1))
+		} else {
+			respond(exchange, 200, archive)
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, byte[] body)
+	{
+		exchange.sendResponseHeaders(status, body.length)
+		exchange.responseBody.withCloseable { it.write(body) }
+	}
+}
@@ -41,6 +41,33 @@ class NodeDependencyFactorySpec
 			'xx.0.0' | 'Mac OS X' | 'x64'     | 'org.nodejs:node:xx.0.0:darwin-x64@tar.gz'
 	}
 
+	@Unroll
+	def 'It shall compute a platform dependent archive name'(
+		String version,
+		String osName,
+		String osArch,
+		String expected)
+	{
+		given:
+			def systemProperties = new Properties()
+
+			systemProperties.setProperty('os.name', osName)
+			systemProperties.setProperty('os.arch', osArch)
+
+		when:
+			def result = NodeDependencyFactory.computeArchiveName(version, systemProperties)
+
+		then:
+			result.isDefined()
+			result.get() == expected
+
+		where:
+			version  | osName     | osArch    | expected
+			'20.6.0' | 'Windows'  | ''        | 'node-v20.6.0-win-x64.zip'
+			'20.6.0' | 'Linux'    | ''        | 'node-v20.6.0-linux-x64.tar.gz'
+			'20.6.0' | 'Mac OS X' | 'aarch64' | 'node-v20.6.0-darwin-arm64.tar.gz'
+	}
+
 	def 'It shall return no archive for unsupported platforms'()
 	{
 		given:
@@ -0,0 +1,145 @@
+package com.brunoritz.gradle.singularnode.nodejs
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream
+import org.apache.commons.compress.archivers.tar.TarConstants
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.LinkOption
+
+class StreamingExtractorSpec
+	extends Specification
+{
+	private File workDir
+	private File targetDir
+
+	def setup()
+	{
+		workDir = File.createTempDir()
+		targetDir = new File(workDir, 'install')
+	}
+
+	def cleanup()
+	{
+		workDir.deleteDir()
+	}
+
+	def 'It shall preserve symlinks pointing within the target directory'()
+	{
+		given:
+			def archive = writeArchive([
+				file('node/lib/cli.js', 'console.log("cli")'),
+				symlink('node/bin/cli', '../lib/cli.js')
+			])
+
+		when:
+			StreamingExtractor.extract(archive, targetDir)
+
+		then:
+			Files.readSymbolicLink(new File(targetDir, 'bin/cli').toPath()).toString() == '../lib/cli.js'
+			new File(targetDir, 'bin/cli').text == 'console.log("cli")'
+	}
+
+	def 'It shall reject symlinks pointing outside of the target directory'()
+	{
+		given:
+			def archive = writeArchive([
+				symlink('node/a', linkTarget)
+			])
+
+		when:
+			StreamingExtractor.extract(archive, targetDir)
+
+		then:
+			thrown(IOException)
+			!Files.exists(new File(targetDir, 'a').toPath(), LinkOption.NOFOLLOW_LINKS)
+
+		where:
+			linkTarget << ['/', '/etc', '..', '../..', 'lib/../../..']
+	}
+
+	def 'It shall not write entries through a previously extracted link'()
+	{
+		given:
+			def outside = new File(workDir, 'outside')
+			outside.mkdirs()
+			Files.createDirectories(targetDir.toPath())
+			Files.createSymbolicLink(new File(targetDir, 'a').toPath(), outside.toPath())
+			def archive = writeArchive([
+				file('node/a/x', 'escaped')
+			])
+
+		when:
+			StreamingExtractor.extract(archive, targetDir)
+
+		then:
+			thrown(IOException)
+			!new File(outside, 'x').exists()
+	}
+
+	def 'It shall reject hard links to files outside of the target directory'()
+	{
+		given:
+			def archive = writeArchive([
+				hardlink('node/passwd', '../../etc/passwd')
+			])
+
+		when:
+			StreamingExtractor.extract(archive, targetDir)
+
+		then:
+			thrown(IOException)
+			!new File(targetDir, 'passwd').exists()
+	}
+
+	private static Map file(String name, String content)
+	{
+		return [entry: new TarArchiveEntry(name), content: content]
+	}
+
+	private static Map symlink(String name, String target)
+	{
+		def entry = new TarArchiveEntry(name, TarConstants.LF_SYMLINK)
+
+		entry.linkName = target
+
+		return [entry: entry, content: '']
+	}
+
+	private static Map hardlink(String name, String target)
+	{
+		def entry = new TarArchiveEntry(name, TarConstants.LF_LINK)
+
+		entry.linkName = target
+
+		return [entry: entry, content: '']
+	}
+
+	private File writeArchive(List<Map> entries)
+	{
+		def archive = new File(workDir, 'node.tar.gz')
+
+		archive.withOutputStream { fileStream ->
+			def tarStream = new TarArchiveOutputStream(new GzipCompressorOutputStream(fileStream))
+
+			entries.each { entry ->
+				def bytes = entry.content.getBytes(StandardCharsets.UTF_8)
+
+				if (entry.entry.isFile()) {
+					entry.entry.size = bytes.length
+				}
+
+				tarStream.putArchiveEntry(entry.entry)
+				tarStream.write(bytes)
+				tarStream.closeArchiveEntry()
+			}
+
+			tarStream.close()
+		}
+
+		return archive
+	}
+}
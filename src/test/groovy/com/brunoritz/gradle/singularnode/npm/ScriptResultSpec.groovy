@@ -0,0 +1,52 @@
+package com.brunoritz.gradle.singularnode.npm
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+class ScriptResultSpec
+	extends Specification
+{
+	private File resultsFile
+
+	def setup()
+	{
+		resultsFile = File.createTempFile('results', '.json')
+	}
+
+	def cleanup()
+	{
+		resultsFile.delete()
+	}
+
+	def 'It shall read the results in the order of the scripts'()
+	{
+		given:
+			resultsFile.text = '''[
+				{ "script": "lint:css", "exitCode": 0, "durationMillis": 1250 },
+				{ "script": "typecheck", "exitCode": 2, "durationMillis": 4100 }
+			]'''
+
+		when:
+			def results = ScriptResult.read(resultsFile)
+
+		then:
+			results.toJavaList() == [
+				new ScriptResult('lint:css', 0, Duration.ofMillis(1250)),
+				new ScriptResult('typecheck', 2, Duration.ofMillis(4100))
+			]
+			results.map { it.succeeded() }.toJavaList() == [true, false]
+	}
+
+	def 'It shall reject malformed results'()
+	{
+		given:
+			resultsFile.text = '{ "script": "lint:css" }'
+
+		when:
+			ScriptResult.read(resultsFile)
+
+		then:
+			thrown(IllegalStateException)
+	}
+}
@@ -0,0 +1,111 @@
+package com.brunoritz.gradle.singularnode.platform
+
+import io.vavr.collection.List
+import io.vavr.control.Option
+import spock.lang.Specification
+
+class InstallationFingerprintSpec
+	extends Specification
+{
+	private File projectDir
+	private File packageFile
+	private File lockFile
+	private File stateFile
+
+	def setup()
+	{
+		projectDir = File.createTempDir()
+		packageFile = new File(projectDir, 'package.json')
+		lockFile = new File(projectDir, 'package-lock.json')
+		stateFile = new File(projectDir, 'node_modules/.package-lock.json')
+
+		stateFile.parentFile.mkdirs()
+
+		packageFile.text = packageManifest('1.0.0', 'jest', '1.4.0')
+		lockFile.text = 'lockfile'
+		stateFile.text = 'installed'
+	}
+
+	def cleanup()
+	{
+		projectDir.deleteDir()
+	}
+
+	def 'It shall not change the fingerprint if sections unrelated to dependencies change'()
+	{
+		given:
+			def before = fingerprint()
+
+		when:
+			packageFile.text = packageManifest('2.0.0', 'mocha', '1.4.0')
+
+		then:
+			fingerprint() == before
+	}
+
+	def 'It shall change the fingerprint if the dependencies change'()
+	{
+		given:
+			def before = fingerprint()
+
+		when:
+			packageFile.text = packageManifest('1.0.0', 'jest', '1.4.1')
+
+		then:
+			fingerprint() != before
+	}
+
+	def 'It shall change the fingerprint if the lockfile changes'()
+	{
+		given:
+			def before = fingerprint()
+
+		when:
+			lockFile.text = 'updated lockfile'
+
+		then:
+			fingerprint() != before
+	}
+
+	def 'It shall change the fingerprint if the installation state file is missing'()
+	{
+		given:
+			def before = fingerprint()
+
+		when:
+			stateFile.parentFile.deleteDir()
+
+		then:
+			fingerprint() != before
+	}
+
+	def 'It shall only match a marker containing the same fingerprint'()
+	{
+		given:
+			def markerFile = new File(projectDir, 'marker')
+
+		expect:
+			!InstallationFingerprint.matches(markerFile, fingerprint())
+
+		when:
+			markerFile.text = fingerprint()
+
+		then:
+			InstallationFingerprint.matches(markerFile, fingerprint())
+			!InstallationFingerprint.matches(markerFile, 'other')
+	}
+
+	private static String packageManifest(String version, String testScript, String colorsVersion)
+	{
+		return """{
+			"version": "${version}",
+			"scripts": { "test": "${testScript}" },
+			"dependencies": { "colors": "${colorsVersion}" }
+		}"""
+	}
+
+	private String fingerprint()
+	{
+		return InstallationFingerprint.compute(List.of(packageFile), lockFile, Option.of(stateFile).filter { it.isFile() })
+	}
+}
@@ -3,8 +3,10 @@ package com.brunoritz.gradle.singularnode.platform
 import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout
 import io.vavr.collection.HashMap
 import io.vavr.collection.List
+import io.vavr.control.Option
 import org.gradle.api.Action
 import org.gradle.process.ExecOperations
+import org.gradle.process.ExecResult
 import org.gradle.process.ExecSpec
 import spock.lang.Specification
 
@@ -150,4 +152,46 @@ class NodeCommandSpec
 				return execSpec
 			}
 	}
+
+	def 'It shall record the telemetry of the invocation if requested'()
+	{
+		given:
+			def processes = Mock(ExecOperations)
+			def workingDirectory = new File('working-dir')
+			def layout = Mock(InstallationLayout)
+			def execSpec = Mock(ExecSpec)
+			def execResult = Mock(ExecResult)
+			def telemetry = Mock(ExecutionTelemetry)
+			def command = new NodeCommand(processes, workingDirectory, layout)
+				.args('--foo=bar')
+				.withTelemetry(Option.of(telemetry), ':subproject:someTask', 'npm')
+
+		when:
+			command.execute()
+
+		then:
+			1 * telemetry.usageScript() >> new File('node-usage.js').toPath()
+			1 * processes.exec { _ as Action } >> { Action action ->
+				action.execute(execSpec)
+
+				return execResult
+			}
+			1 * layout.pathOfNodeExecutable() >> NODE_EXECUTABLE
+			1 * layout.nodeJsBinDirectory() >> NODE_BIN_DIR
+			1 * execSpec.environment(_) >> { Map<String, String> envVars ->
+				assert envVars['NODE_OPTIONS'].startsWith('--require ')
+
+				return execSpec
+			}
+			1 * execSpec.setIgnoreExitValue(true)
+			1 * execResult.getExitValue() >> 0
+
+		then:
+			1 * telemetry.record({ ExecutionRecord record ->
+				record.taskPath() == ':subproject:someTask' &&
+					record.packageManager() == 'npm' &&
+					record.command() == '--foo=bar' &&
+					record.exitCode() == 0
+			})
+	}
 }
@@ -0,0 +1,157 @@
+package com.brunoritz.gradle.singularnode.platform
+
+import spock.lang.Specification
+
+class OutputPipelineSpec
+	extends Specification
+{
+	private File logDir
+	private ByteArrayOutputStream console = new ByteArrayOutputStream()
+	private ByteArrayOutputStream errorConsole = new ByteArrayOutputStream()
+	private long now = 0
+
+	def setup()
+	{
+		logDir = File.createTempDir()
+	}
+
+	def cleanup()
+	{
+		logDir.deleteDir()
+	}
+
+	def 'It shall prefix every line, including incomplete ones, with the label'()
+	{
+		given:
+			def pipeline = pipeline(new OutputOptions(true, false, 0, 0))
+
+		when:
+			pipeline.standardOutput().write('first\r\nsec'.bytes)
+			pipeline.standardOutput().write('ond\nincomplete'.bytes)
+			pipeline.errorOutput().write('failure\n'.bytes)
+			pipeline.finish(true)
+
+		then:
+			console.toString() == '[:app:build] first\n[:app:build] second\n[:app:build] incomplete\n'
+			errorConsole.toString() == '[:app:build] failure\n'
+	}
+
+	def 'It shall drop lines exceeding the rate limit and report their number'()
+	{
+		given:
+			def pipeline = pipeline(new OutputOptions(false, false, 0, 2))
+
+		when:
+			pipeline.standardOutput().write('1\n2\n3\n4\n'.bytes)
+			now = 1_000_000_000
+			pipeline.standardOutput().write('5\n6\n7\n'.bytes)
+			pipeline.finish(true)
+
+		then:
+			console.toString().readLines() == [
+				'1',
+				'2',
+				'... 2 lines suppressed, exceeding 2 lines per second',
+				'5',
+				'6',
+				'... 1 lines suppressed, exceeding 2 lines per second'
+			]
+	}
+
+	def 'It shall not rate limit the error output'()
+	{
+		given:
+			def pipeline = pipeline(new OutputOptions(false, false, 0, 1))
+
+		when:
+			pipeline.standardOutput().write('1\n2\n'.bytes)
+			pipeline.errorOutput().write('error 1\nerror 2\n'.bytes)
+			pipeline.finish(true)
+
+		then:
+			console.toString().readLines() == ['1', '... 1 lines suppressed, exceeding 1 lines per second']
+			errorConsole.toString().readLines() == ['error 1', 'error 2']
+	}
+
+	def 'It shall show the last suppressed lines on failure'()
+	{
+		given:
+			def pipeline = pipeline(new OutputOptions(false, false, 2, 1))
+
+		when:
+			pipeline.standardOutput().write('1\n2\n3\n4\n'.bytes)
+			pipeline.finish(false)
+
+		then:
+			console.toString().readLines() == ['1', '... 3 lines suppressed, exceeding 1 lines per second']
+			errorConsole.toString().readLines() == ['Last 2 suppressed lines of output', '3', '4']
+	}
+
+	def 'It shall split lines exceeding the line buffer'()
+	{
+		given:
+			def pipeline = pipeline(new OutputOptions(false, false, 0, 0))
+
+		when:
+			pipeline.standardOutput().write(('x' * 10000 + '\n').bytes)
+			pipeline.finish(true)
+
+		then:
+			console.toString().readLines()*.length() == [8192, 1808]
+	}
+
+	def 'It shall not split UTF-8 encoded characters when splitting long lines'()
+	{
+		given:
+			def pipeline = pipeline(new OutputOptions(false, false, 0, 0))
+
+		when:
+			pipeline.standardOutput().write(('x' * 8191 + '\u00e4\u20ac' + '\n').getBytes('UTF-8'))
+			pipeline.finish(true)
+
+		then:
+			console.toString('UTF-8').readLines() == ['x' * 8191, '\u00e4\u20ac']
+	}
+
+	def 'It shall write the output to the log file and only show the last lines on failure'()
+	{
+		given:
+			def logFile = new File(logDir, 'logs/build.log')
+			def pipeline = pipeline(new OutputOptions(false, true, 2, 0), logFile)
+
+		when:
+			pipeline.standardOutput().write('1\n2\n3\n'.bytes)
+			pipeline.errorOutput().write('4\n'.bytes)
+			pipeline.finish(false)
+
+		then:
+			logFile.readLines() == ['1', '2', '3', '4']
+			console.size() == 0
+			errorConsole.toString().readLines() == [
+				"Last 2 lines of output, the full output is in ${logFile.absolutePath}".toString(),
+				'3',
+				'4'
+			]
+	}
+
+	def 'It shall not show any output on success if the output is written to the log file'()
+	{
+		given:
+			def logFile = new File(logDir, 'build.log')
+			def pipeline = pipeline(new OutputOptions(false, true, 2, 0), logFile)
+
+		when:
+			pipeline.standardOutput().write('1\n2\n'.bytes)
+			pipeline.finish(true)
+
+		then:
+			logFile.readLines() == ['1', '2']
+			console.size() == 0
+			errorConsole.size() == 0
+	}
+
+	private OutputPipeline pipeline(OutputOptions options, File logFile = new File(logDir, 'unused.log'))
+	{
+		return new OutputPipeline(options, ':app:build', logFile, console, errorConsole, { now })
+	}
+}
@@ -0,0 +1,118 @@
+package com.brunoritz.gradle.singularnode.platform
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import groovy.json.JsonOutput
+import spock.lang.Specification
+
+import java.net.http.HttpClient
+import java.security.MessageDigest
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+
+class PackageRegistrySpec
+	extends Specification
+{
+	private HttpServer server
+	private byte[] tarball
+	private String publishedIntegrity
+	private File downloadDir
+
+	def setup()
+	{
+		tarball = new byte[4096]
+		new Random(42).nextBytes(tarball)
+		publishedIntegrity = 'sha512-' + MessageDigest.getInstance('SHA-512').digest(tarball).encodeBase64()
+		downloadDir = File.createTempDir()
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.loopbackAddress, 0), 0)
+		server.createContext('/yarn/1.22.19') { HttpExchange exchange ->
+			respond(exchange, 200, JsonOutput.toJson([
+				name   : 'yarn',
+				version: '1.22.19',
+				dist   : [
+					tarball  : "${registryUrl()}/yarn/-/yarn-1.22.19.tgz",
+					integrity: publishedIntegrity
+				]
+			]).bytes)
+		}
+		server.createContext('/yarn/-/yarn-1.22.19.tgz') { HttpExchange exchange -> respond(exchange, 200, tarball) }
+		server.start()
+	}
+
+	def cleanup()
+	{
+		server.stop(0)
+		downloadDir.deleteDir()
+	}
+
+	def 'It shall resolve and download the tarball of a package'()
+	{
+		given:
+			def registry = new PackageRegistry(HttpClient.newHttpClient(), registryUrl() + '/')
+			def destination = new File(downloadDir, 'yarn.tgz')
+
+		when:
+			def resolved = registry.resolve('yarn', '1.22.19')
+
+			registry.download(resolved, destination.toPath())
+
+		then:
+			resolved.version() == '1.22.19'
+			resolved.integrity() == publishedIntegrity
+			destination.bytes == tarball
+	}
+
+	def 'It shall reject tarballs not matching their published integrity'()
+	{
+		given:
+			def registry = new PackageRegistry(HttpClient.newHttpClient(), registryUrl())
+			def destination = new File(downloadDir, 'yarn.tgz')
+
+			publishedIntegrity = 'sha512-' + MessageDigest.getInstance('SHA-512').digest('other'.bytes).encodeBase64()
+
+		when:
+			registry.download(registry.resolve('yarn', '1.22.19'), destination.toPath())
+
+		then:
+			thrown(IOException)
+			!destination.exists()
+			downloadDir.list().length == 0
+	}
+
+	def 'It shall tolerate concurrent downloads of the same tarball'()
+	{
+		given:
+			def registry = new PackageRegistry(HttpClient.newHttpClient(), registryUrl())
+			def destination = new File(downloadDir, 'yarn.tgz')
+			def resolved = registry.resolve('yarn', '1.22.19')
+			def pool = Executors.newFixedThreadPool(8)
+
+		when:
+			def downloads = (1..16).collect {
+				pool.submit({ registry.download(resolved, destination.toPath()) } as Callable)
+			}
+
+			downloads*.get()
+
+		then:
+			notThrown(ExecutionException)
+			destination.bytes == tarball
+			downloadDir.list() == ['yarn.tgz'] as String[]
+
+		cleanup:
+			pool.shutdownNow()
+	}
+
+	private String registryUrl()
+	{
+		return "http://${server.address.hostString}:${server.address.port}"
+	}
+
+	private static void respond(HttpExchange exchange, int status, byte[] body)
+	{
+		exchange.sendResponseHeaders(status, body.length)
+		exchange.responseBody.withCloseable { it.write(body) }
+	}
+}
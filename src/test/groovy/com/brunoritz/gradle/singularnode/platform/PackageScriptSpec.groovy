@@ -0,0 +1,159 @@
+package com.brunoritz.gradle.singularnode.platform
+
+import com.brunoritz.gradle.singularnode.platform.layout.InstallationLayout
+import groovy.json.JsonOutput
+import io.vavr.collection.List
+import org.gradle.api.Action
+import org.gradle.process.ExecOperations
+import org.gradle.process.ExecSpec
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+
+class PackageScriptSpec
+	extends Specification
+{
+	private File packageDir
+
+	def setup()
+	{
+		packageDir = File.createTempDir()
+		new File(packageDir, 'package.json').text = JsonOutput.toJson([
+			name   : 'app',
+			version: '1.2.3',
+			scripts: [
+				prebuild : 'rimraf dist',
+				build    : 'tsc -p .',
+				postbuild: 'node copy-assets.js',
+				test     : 'jest'
+			]
+		])
+	}
+
+	def cleanup()
+	{
+		packageDir.deleteDir()
+	}
+
+	def 'It shall resolve plain invocations of declared scripts'()
+	{
+		expect:
+			PackageScript.resolve(packageDir, List.ofAll(args)).map { it.name() }.toJavaList() == [expectedName]
+
+		where:
+			args                                || expectedName
+			['run', 'build']                    || 'build'
+			['run-script', 'test']              || 'test'
+			['run', 'test', '--', '--coverage'] || 'test'
+	}
+
+	def 'It shall leave other invocations to the package manager'()
+	{
+		expect:
+			PackageScript.resolve(packageDir, List.ofAll(args)).isEmpty()
+
+		where:
+			args << [
+				['install'],
+				['run'],
+				['run', 'lint'],
+				['run', '--silent', 'build'],
+				['run', 'build', '--watch'],
+				['exec', 'tsc']
+			]
+	}
+
+	def 'It shall leave invocations to the package manager if there is no package file'()
+	{
+		given:
+			new File(packageDir, 'package.json').delete()
+
+		expect:
+			PackageScript.resolve(packageDir, List.of('run', 'build')).isEmpty()
+	}
+
+	def 'It shall leave invocations to the package manager in Plug\'n\'Play installations'()
+	{
+		given:
+			new File(packageDir, '.pnp.cjs').text = ''
+
+		expect:
+			PackageScript.resolve(packageDir, List.of('run', 'build')).isEmpty()
+	}
+
+	def 'It shall list the command lines of a script by its name'()
+	{
+		when:
+			def script = PackageScript.named(packageDir, 'build').get()
+
+		then:
+			script.commandLines(true).map { [it._1(), it._2()] }.toJavaList() == [
+				['prebuild', 'rimraf dist'],
+				['build', 'tsc -p .'],
+				['postbuild', 'node copy-assets.js']
+			]
+			script.commandLines(false).map { [it._1(), it._2()] }.toJavaList() == [['build', 'tsc -p .']]
+			PackageScript.named(packageDir, 'lint').isEmpty()
+	}
+
+	@IgnoreIf({ os.windows })
+	def 'It shall run the script along with its lifecycle scripts through the shell'()
+	{
+		given:
+			def processes = Mock(ExecOperations)
+			def layout = Stub(InstallationLayout) {
+				pathOfNodeExecutable() >> new File('nodejs/bin/node')
+				nodeJsBinDirectory() >> new File('nodejs/bin')
+			}
+			def execSpec = Mock(ExecSpec)
+			def binDir = new File(packageDir, 'node_modules/.bin')
+			def npmScript = new File('npm/bin/npm-cli.js')
+			def script = PackageScript.resolve(packageDir, List.of('run', 'build', '--', '--watch', "it's")).get()
+			def environments = []
+
+			binDir.mkdirs()
+
+		when:
+			script.execute(new NodeCommand(processes, packageDir, layout), layout, npmScript, true)
+
+		then:
+			3 * processes.exec { _ as Action } >> { Action action -> action.execute(execSpec) }
+			3 * execSpec.setExecutable('sh')
+			1 * execSpec.setArgs(['-c', 'rimraf dist'])
+			1 * execSpec.setArgs(['-c', "tsc -p . '--watch' 'it'\\''s'"])
+			1 * execSpec.setArgs(['-c', 'node copy-assets.js'])
+			3 * execSpec.environment(_) >> { Map<String, String> envVars ->
+				environments << envVars
+
+				return execSpec
+			}
+
+		then:
+			environments*.npm_lifecycle_event == ['prebuild', 'build', 'postbuild']
+			environments.every {
+				it.npm_package_name == 'app' &&
+					it.npm_package_version == '1.2.3' &&
+					it.npm_execpath == npmScript.absolutePath &&
+					it.PATH.startsWith("${binDir.absolutePath}${File.pathSeparator}")
+			}
+	}
+
+	@IgnoreIf({ os.windows })
+	def 'It shall only run the script itself unless lifecycle scripts are requested'()
+	{
+		given:
+			def processes = Mock(ExecOperations)
+			def layout = Stub(InstallationLayout) {
+				pathOfNodeExecutable() >> new File('nodejs/bin/node')
+				nodeJsBinDirectory() >> new File('nodejs/bin')
+			}
+			def execSpec = Mock(ExecSpec)
+			def script = PackageScript.resolve(packageDir, List.of('run', 'build')).get()
+
+		when:
+			script.execute(new NodeCommand(processes, packageDir, layout), layout, new File('yarn.js'), false)
+
+		then:
+			1 * processes.exec { _ as Action } >> { Action action -> action.execute(execSpec) }
+			1 * execSpec.setArgs(['-c', 'tsc -p .'])
+	}
+}
@@ -0,0 +1,99 @@
+package com.brunoritz.gradle.singularnode.platform
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+
+@Timeout(10)
+class PrioritizedPermitsSpec
+	extends Specification
+{
+	def 'It shall grant waiting permits by descending priority'()
+	{
+		given:
+			def permits = new PrioritizedPermits(1)
+			def grantOrder = new CopyOnWriteArrayList<Long>()
+			def blockingPermit = permits.acquire(0)
+			def waitingThreads = [10L, 30L, 20L].withIndex().collect { priority, index ->
+				def thread = Thread.start {
+					permits.acquire(priority).withCloseable {
+						grantOrder << priority
+					}
+				}
+
+				waitUntilWaiting(permits, index + 1)
+
+				return thread
+			}
+
+		when:
+			blockingPermit.close()
+			waitingThreads*.join()
+
+		then:
+			grantOrder == [30L, 20L, 10L]
+	}
+
+	def 'It shall never grant more permits than available'()
+	{
+		given:
+			def permits = new PrioritizedPermits(3)
+			def holders = new AtomicInteger()
+			def maximumHolders = new AtomicInteger()
+
+		when:
+			(1..20).collect { index ->
+				Thread.start {
+					permits.acquire(index).withCloseable {
+						maximumHolders.accumulateAndGet(holders.incrementAndGet(), Math::max)
+						Thread.sleep(5)
+						holders.decrementAndGet()
+					}
+				}
+			}*.join()
+
+		then:
+			maximumHolders.get() <= 3
+	}
+
+	def 'It shall ignore closing a permit more than once'()
+	{
+		given:
+			def permits = new PrioritizedPermits(1)
+			def permit = permits.acquire(0)
+
+		when:
+			permit.close()
+			permit.close()
+
+			def secondPermit = permits.acquire(0)
+			def waitingThread = Thread.start { permits.acquire(0).close() }
+
+			waitUntilWaiting(permits, 1)
+
+		then:
+			permits.waitingCount() == 1
+
+		cleanup:
+			secondPermit?.close()
+			waitingThread?.join()
+	}
+
+	def 'It shall require at least one permit'()
+	{
+		when:
+			new PrioritizedPermits(0)
+
+		then:
+			thrown(IllegalArgumentException)
+	}
+
+	private static void waitUntilWaiting(PrioritizedPermits permits, int count)
+	{
+		while (permits.waitingCount() < count) {
+			Thread.sleep(1)
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.brunoritz.gradle.singularnode.platform
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+class ResourceUsageSpec
+	extends Specification
+{
+	private File reportFile
+
+	def setup()
+	{
+		reportFile = File.createTempFile('usage', '.jsonl')
+	}
+
+	def cleanup()
+	{
+		reportFile.delete()
+	}
+
+	def 'It shall sum up the CPU time and keep the largest peak memory usage of all processes'()
+	{
+		given:
+			reportFile.text = '{"cpuMicros":2000,"maxRssKilobytes":100}\n' +
+				'{"cpuMicros":3000,"maxRssKilobytes":300}\n' +
+				'{"cpuMicros":1000,"maxRssKilobytes":200}\n'
+
+		when:
+			def usage = ResourceUsage.read(reportFile)
+
+		then:
+			usage.cpuTime().get() == Duration.ofMillis(6)
+			usage.peakRssBytes().get() == 300 * 1024
+	}
+
+	def 'It shall ignore reports of processes killed while writing'()
+	{
+		given:
+			reportFile.text = '{"cpuMicros":2000,"maxRssKilobytes":100}\n{"cpuMicros":30'
+
+		when:
+			def usage = ResourceUsage.read(reportFile)
+
+		then:
+			usage.cpuTime().get() == Duration.ofMillis(2)
+			usage.peakRssBytes().get() == 100 * 1024
+	}
+
+	def 'It shall report an unknown usage if no process reported'()
+	{
+		given:
+			reportFile.text = ''
+
+		when:
+			def usage = ResourceUsage.read(reportFile)
+
+		then:
+			usage.cpuTime().isEmpty()
+			usage.peakRssBytes().isEmpty()
+	}
+}
@@ -0,0 +1,89 @@
+package com.brunoritz.gradle.singularnode.platform
+
+import groovy.json.JsonSlurper
+import io.vavr.collection.List
+import io.vavr.control.Option
+import spock.lang.Specification
+
+import java.time.Duration
+
+class TelemetryReportSpec
+	extends Specification
+{
+	def 'It shall list the slowest invocations first'()
+	{
+		given:
+			def records = List.of(
+				invocation(':fast:installNpmPackages', 100),
+				invocation(':slow:installNpmPackages', 5000),
+				invocation(':medium:installNpmPackages', 1200)
+			)
+
+		when:
+			def report = new JsonSlurper().parseText(TelemetryReport.json(records))
+
+		then:
+			report.invocations*.task == [
+				':slow:installNpmPackages',
+				':medium:installNpmPackages',
+				':fast:installNpmPackages'
+			]
+			report.invocations[0].wallTimeMillis == 5000
+			report.invocations[0].cpuTimeMillis == 2500
+			report.invocations[0].peakRssBytes == 1048576
+	}
+
+	def 'It shall escape the commands in the HTML report'()
+	{
+		given:
+			def records = List.of(new ExecutionRecord(
+				':subproject:someTask',
+				'npm',
+				'npm-cli.js run "<test>"',
+				Duration.ofMillis(10),
+				Option.none(),
+				Option.none(),
+				0,
+				0,
+				0
+			))
+
+		when:
+			def html = TelemetryReport.html(records)
+
+		then:
+			html.contains('npm-cli.js run &quot;&lt;test&gt;&quot;')
+			!html.contains('<test>')
+	}
+
+	def 'It shall write the JSON and HTML report'()
+	{
+		given:
+			def reportDir = File.createTempDir()
+
+		when:
+			TelemetryReport.write(List.of(invocation(':subproject:someTask', 10)), reportDir)
+
+		then:
+			new File(reportDir, 'telemetry.json').isFile()
+			new File(reportDir, 'telemetry.html').isFile()
+
+		cleanup:
+			reportDir.deleteDir()
+	}
+
+	private static ExecutionRecord invocation(String taskPath, long wallTimeMillis)
+	{
+		return new ExecutionRecord(
+			taskPath,
+			'npm',
+			'npm-cli.js install',
+			Duration.ofMillis(wallTimeMillis),
+			Option.of(Duration.ofMillis(wallTimeMillis.intdiv(2))),
+			Option.of(1048576L),
+			0,
+			128,
+			0
+		)
+	}
+}
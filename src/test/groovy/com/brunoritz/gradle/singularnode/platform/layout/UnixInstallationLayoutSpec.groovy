@@ -187,6 +187,52 @@ class UnixInstallationLayoutSpec
 			result == project.file('base-path/pnpm/bin/pnpm')
 	}
 
+	def 'It shall provide consumers with the directory of a globally installed package'()
+	{
+		given:
+			def project = newProject()
+			def baseDirectory = project.objects.directoryProperty()
+
+			baseDirectory.set(project.file('base-path'))
+
+		when:
+			def result = new UnixInstallationLayout(baseDirectory)
+				.globalPackageDirectory(project.file('base-path/yarn'), 'yarn')
+
+		then:
+			result == project.file('base-path/yarn/lib/node_modules/yarn')
+	}
+
+	def 'It shall provide consumers with the shim of a globally installed binary'()
+	{
+		given:
+			def project = newProject()
+			def baseDirectory = project.objects.directoryProperty()
+
+			baseDirectory.set(project.file('base-path'))
+
+		when:
+			def result = new UnixInstallationLayout(baseDirectory).globalBinShim(project.file('base-path/yarn'), 'yarn')
+
+		then:
+			result == project.file('base-path/yarn/bin/yarn')
+	}
+
+	def 'It shall provide consumers with the path to an entry point of the bundled Corepack'()
+	{
+		given:
+			def project = newProject()
+			def baseDirectory = project.objects.directoryProperty()
+
+			baseDirectory.set(project.file('base-path'))
+
+		when:
+			def result = new UnixInstallationLayout(baseDirectory).pathOfBundledCorepackScript('yarn')
+
+		then:
+			result == project.file('base-path/node/lib/node_modules/corepack/dist/yarn.js')
+	}
+
 	private static Project newProject()
 	{
 		def project = ProjectBuilder.builder().build()
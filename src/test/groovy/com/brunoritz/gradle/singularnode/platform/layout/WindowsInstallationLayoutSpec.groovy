@@ -187,6 +187,53 @@ class WindowsInstallationLayoutSpec
 			result == project.file('base-path/pnpm/node_modules/pnpm/bin/pnpm.cjs')
 	}
 
+	def 'It shall provide consumers with the directory of a globally installed package'()
+	{
+		given:
+			def project = newProject()
+			def baseDirectory = project.objects.directoryProperty()
+
+			baseDirectory.set(project.file('base-path'))
+
+		when:
+			def result = new WindowsInstallationLayout(baseDirectory)
+				.globalPackageDirectory(project.file('base-path/yarn'), 'yarn')
+
+		then:
+			result == project.file('base-path/yarn/node_modules/yarn')
+	}
+
+	def 'It shall provide consumers with the shim of a globally installed binary'()
+	{
+		given:
+			def project = newProject()
+			def baseDirectory = project.objects.directoryProperty()
+
+			baseDirectory.set(project.file('base-path'))
+
+		when:
+			def result = new WindowsInstallationLayout(baseDirectory)
+				.globalBinShim(project.file('base-path/yarn'), 'yarn')
+
+		then:
+			result == project.file('base-path/yarn/yarn.cmd')
+	}
+
+	def 'It shall provide consumers with the path to an entry point of the bundled Corepack'()
+	{
+		given:
+			def project = newProject()
+			def baseDirectory = project.objects.directoryProperty()
+
+			baseDirectory.set(project.file('base-path'))
+
+		when:
+			def result = new WindowsInstallationLayout(baseDirectory).pathOfBundledCorepackScript('yarn')
+
+		then:
+			result == project.file('base-path/node/node_modules/corepack/dist/yarn.js')
+	}
+
 	private static Project newProject()
 	{
 		def project = ProjectBuilder.builder().build()
@@ -0,0 +1,138 @@
+package com.brunoritz.gradle.singularnode.prefetch
+
+import groovy.json.JsonOutput
+import spock.lang.Specification
+
+class LockedTarballsSpec
+	extends Specification
+{
+	private File workDir
+
+	def setup()
+	{
+		workDir = File.createTempDir()
+	}
+
+	def cleanup()
+	{
+		workDir.deleteDir()
+	}
+
+	def 'It shall read the locked tarballs of NPM lockfiles of version 2 and later'()
+	{
+		given:
+			def lockFile = writeFile('package-lock.json', JsonOutput.toJson([
+				lockfileVersion: 3,
+				packages       : [
+					''                                    : [name: 'app', version: '1.0.0'],
+					'node_modules/@babel/core'            : [
+						version  : '7.24.0',
+						resolved : 'https://registry.npmjs.org/@babel/core/-/core-7.24.0.tgz',
+						integrity: 'sha512-core'
+					],
+					'node_modules/chalk/node_modules/ansi': [
+						version  : '6.2.0',
+						resolved : 'https://registry.npmjs.org/ansi/-/ansi-6.2.0.tgz',
+						integrity: 'sha512-ansi'
+					],
+					'node_modules/member'                 : [resolved: 'packages/member', link: true],
+					'node_modules/from-git'               : [
+						version : '1.0.0',
+						resolved: 'git+ssh://git@github.com/example/from-git.git#abc'
+					]
+				]
+			]))
+
+		when:
+			def tarballs = LockedTarballs.npm(lockFile)
+
+		then:
+			tarballs.map { it.name() }.toJavaList() == ['@babel/core', 'ansi']
+			tarballs.get(0).version() == '7.24.0'
+			tarballs.get(0).location() == URI.create('https://registry.npmjs.org/@babel/core/-/core-7.24.0.tgz')
+			tarballs.get(0).integrity() == 'sha512-core'
+	}
+
+	def 'It shall read the nested dependencies of NPM lockfiles of version 1'()
+	{
+		given:
+			def lockFile = writeFile('package-lock.json', JsonOutput.toJson([
+				lockfileVersion: 1,
+				dependencies   : [
+					chalk: [
+						version     : '5.3.0',
+						resolved    : 'https://registry.npmjs.org/chalk/-/chalk-5.3.0.tgz',
+						integrity   : 'sha512-chalk',
+						dependencies: [
+							ansi: [
+								version  : '6.2.0',
+								resolved : 'https://registry.npmjs.org/ansi/-/ansi-6.2.0.tgz',
+								integrity: 'sha512-ansi'
+							]
+						]
+					]
+				]
+			]))
+
+		expect:
+			LockedTarballs.npm(lockFile).map { it.name() }.toJavaList() == ['chalk', 'ansi']
+	}
+
+	def 'It shall read the locked tarballs of Yarn 1 lockfiles'()
+	{
+		given:
+			def lockFile = writeFile('yarn.lock', '''\
+				# THIS IS AN AUTOGENERATED FILE. DO NOT EDIT THIS FILE DIRECTLY.
+				# yarn lockfile v1
+
+
+				"@babel/core@^7.0.0", "@babel/core@^7.1.0":
+				  version "7.24.0"
+				  resolved "https://registry.yarnpkg.com/@babel/core/-/core-7.24.0.tgz"
+				  integrity sha512-core
+
+				colors@^1.4.0:
+				  version "1.4.0"
+				  resolved "https://npm.example/colors/-/colors-1.4.0.tgz#c50491479d4c1bdaed2c9ced32cf7c7dc2360f78"
+				'''.stripIndent())
+
+		when:
+			def tarballs = LockedTarballs.yarn(lockFile)
+
+		then:
+			tarballs.size() == 2
+			tarballs.get(0).name() == '@babel/core'
+			tarballs.get(0).version() == '7.24.0'
+			tarballs.get(0).location() == URI.create('https://registry.yarnpkg.com/@babel/core/-/core-7.24.0.tgz')
+			tarballs.get(0).integrity() == 'sha512-core'
+			tarballs.get(1).name() == 'colors'
+			tarballs.get(1).integrity() == 'sha1-xQSRR51MG9rtLJztMs98fcI2D3g='
+	}
+
+	def 'It shall leave lockfiles of later Yarn versions to Yarn'()
+	{
+		given:
+			def lockFile = writeFile('yarn.lock', '''\
+				__metadata:
+				  version: 8
+				  cacheKey: 10c0
+
+				"colors@npm:^1.4.0":
+				  version: 1.4.0
+				  resolution: "colors@npm:1.4.0"
+				  checksum: 10c0/9af357c019da3c5a098a301cf64e3799d27549d8f185d86f79af23069e4f4303
+				'''.stripIndent())
+
+		expect:
+			LockedTarballs.yarn(lockFile).isEmpty()
+	}
+
+	private File writeFile(String name, String content)
+	{
+		def file = new File(workDir, name)
+
+		file.text = content
+
+		return file
+	}
+}
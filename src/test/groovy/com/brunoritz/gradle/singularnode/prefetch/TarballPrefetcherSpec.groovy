@@ -0,0 +1,118 @@
+package com.brunoritz.gradle.singularnode.prefetch
+
+import com.brunoritz.gradle.singularnode.platform.PackageRegistry
+import com.brunoritz.gradle.singularnode.platform.PackageRegistry.PackageTarball
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import io.vavr.collection.List
+import spock.lang.Specification
+
+import java.nio.file.Path
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+
+class TarballPrefetcherSpec
+	extends Specification
+{
+	private HttpServer server
+	private AtomicInteger requests
+	private File cacheDir
+
+	def setup()
+	{
+		requests = new AtomicInteger()
+		cacheDir = File.createTempDir()
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.loopbackAddress, 0), 0)
+		server.createContext('/') { HttpExchange exchange ->
+			def content = exchange.requestURI.path.bytes
+
+			requests.incrementAndGet()
+			exchange.sendResponseHeaders(200, content.length)
+			exchange.responseBody.withCloseable { it.write(content) }
+		}
+		server.start()
+	}
+
+	def cleanup()
+	{
+		server.stop(0)
+		cacheDir.deleteDir()
+	}
+
+	def 'It shall download all tarballs into the NPM cache and skip those already present'()
+	{
+		given:
+			def prefetcher = new TarballPrefetcher(PackageRegistry.connect(registryUrl()), 4)
+			def tarballs = List.ofAll((1..10).collect { tarball("package-${it}") })
+			def destination = { PackageTarball tarball ->
+				TarballPrefetcher.npmCacheLocation(cacheDir.toPath(), tarball)
+			}
+
+		when:
+			def firstRun = prefetcher.prefetch(tarballs, destination)
+			def secondRun = prefetcher.prefetch(tarballs, destination)
+
+		then:
+			firstRun == 10
+			secondRun == 0
+			requests.get() == 10
+			destination(tarballs.get(0)).toFile().text == '/package-1/-/package-1-1.0.0.tgz'
+	}
+
+	def 'It shall fail if a tarball does not match its integrity'()
+	{
+		given:
+			def prefetcher = new TarballPrefetcher(PackageRegistry.connect(registryUrl()), 4)
+			def tampered = new PackageTarball('colors', '1.4.0', URI.create("${registryUrl()}/colors.tgz"), sha512('x'))
+
+		when:
+			prefetcher.prefetch(List.of(tampered), { cacheDir.toPath().resolve('colors.tgz') })
+
+		then:
+			thrown(IOException)
+			!new File(cacheDir, 'colors.tgz').exists()
+	}
+
+	def 'It shall store tarballs in the NPM cache by their strongest hash'()
+	{
+		given:
+			def integrity = 'sha1-xQSRR51MG9rtLJztMs98fcI2D3g= sha512-AAECAw=='
+			def tarball = new PackageTarball('colors', '1.4.0', URI.create('https://npm.example/colors.tgz'), integrity)
+
+		expect:
+			TarballPrefetcher.npmCacheLocation(Path.of('cache'), tarball) ==
+				Path.of('cache', '_cacache', 'content-v2', 'sha512', '00', '01', '0203')
+	}
+
+	def 'It shall name tarballs in the offline mirror of Yarn after their location and scope'()
+	{
+		given:
+			def tarball = new PackageTarball(name, '7.24.0', URI.create(location), 'sha512-AAECAw==')
+
+		expect:
+			TarballPrefetcher.offlineMirrorLocation(Path.of('mirror'), tarball) == Path.of('mirror', fileName)
+
+		where:
+			name          | location                                            || fileName
+			'colors'      | 'https://npm.example/colors/-/colors-1.4.0.tgz'     || 'colors-1.4.0.tgz'
+			'@babel/core' | 'https://npm.example/@babel/core/-/core-7.24.0.tgz' || '@babel-core-7.24.0.tgz'
+	}
+
+	private PackageTarball tarball(String name)
+	{
+		String path = "/${name}/-/${name}-1.0.0.tgz"
+
+		return new PackageTarball(name, '1.0.0', URI.create(registryUrl() + path), sha512(path))
+	}
+
+	private static String sha512(String content)
+	{
+		return 'sha512-' + MessageDigest.getInstance('SHA-512').digest(content.bytes).encodeBase64()
+	}
+
+	private String registryUrl()
+	{
+		return "http://${server.address.hostString}:${server.address.port}"
+	}
+}
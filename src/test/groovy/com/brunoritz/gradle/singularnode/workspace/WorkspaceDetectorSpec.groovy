@@ -0,0 +1,62 @@
+package com.brunoritz.gradle.singularnode.workspace
+
+import spock.lang.Specification
+
+class WorkspaceDetectorSpec
+	extends Specification
+{
+	private File rootDir
+
+	def setup()
+	{
+		rootDir = File.createTempDir()
+	}
+
+	def cleanup()
+	{
+		rootDir.deleteDir()
+	}
+
+	def 'It shall detect a PNPM workspace'()
+	{
+		given:
+			new File(rootDir, 'pnpm-workspace.yaml').text = 'packages:\n  - "packages/*"\n'
+
+		expect:
+			WorkspaceDetector.detect(rootDir).get() == WorkspaceType.PNPM
+	}
+
+	def 'It shall detect a Yarn workspace'()
+	{
+		given:
+			new File(rootDir, 'package.json').text = '{ "workspaces": ["packages/*"] }'
+			new File(rootDir, 'yarn.lock').text = ''
+
+		expect:
+			WorkspaceDetector.detect(rootDir).get() == WorkspaceType.YARN
+	}
+
+	def 'It shall detect an NPM workspace'()
+	{
+		given:
+			new File(rootDir, 'package.json').text = '{ "workspaces": ["packages/*"] }'
+
+		expect:
+			WorkspaceDetector.detect(rootDir).get() == WorkspaceType.NPM
+	}
+
+	def 'It shall not detect a workspace if the package file does not declare workspaces'()
+	{
+		given:
+			new File(rootDir, 'package.json').text = '{ "dependencies": { "colors": "1.4.0" } }'
+
+		expect:
+			WorkspaceDetector.detect(rootDir).isEmpty()
+	}
+
+	def 'It shall not detect a workspace if there is no package file'()
+	{
+		expect:
+			WorkspaceDetector.detect(rootDir).isEmpty()
+	}
+}
@@ -0,0 +1,120 @@
+package com.brunoritz.gradle.singularnode.workspace
+
+import groovy.json.JsonOutput
+import org.gradle.api.Project
+import org.gradle.testfixtures.ProjectBuilder
+import spock.lang.Specification
+
+class WorkspacePackagesSpec
+	extends Specification
+{
+	private File rootDir
+	private Project rootProject
+
+	def setup()
+	{
+		rootDir = File.createTempDir()
+		rootProject = ProjectBuilder.builder().withProjectDir(rootDir).build()
+	}
+
+	def cleanup()
+	{
+		rootDir.deleteDir()
+	}
+
+	def 'It shall derive the dependencies between subprojects from their package names'()
+	{
+		given:
+			subproject('app', [
+				name           : '@example/app',
+				dependencies   : ['@example/ui': 'workspace:*', react: '^18.2.0'],
+				devDependencies: ['@example/config': '^1.0.0']
+			])
+			subproject('ui', [name: '@example/ui', peerDependencies: [react: '^18.2.0']])
+			subproject('config', [name: '@example/config'])
+
+		when:
+			def packages = WorkspacePackages.register(rootProject).get()
+
+		then:
+			packages.dependencies(':app').toJavaList() == [':ui', ':config']
+			packages.dependencies(':ui').isEmpty()
+	}
+
+	def 'It shall derive the dependencies between subprojects from references to their directories'()
+	{
+		given:
+			subproject('app', [name: 'app', dependencies: [shared: 'file:../lib', tools: 'link:../tools']])
+			subproject('lib', [name: 'lib'])
+			subproject('tools', [name: 'unrelated-name'])
+
+		expect:
+			WorkspacePackages.register(rootProject).get().dependencies(':app').toJavaList() == [':lib', ':tools']
+	}
+
+	def 'It shall ignore peer dependencies on other subprojects'()
+	{
+		given:
+			subproject('plugin', [name: 'plugin', peerDependencies: [host: '^1.0.0']])
+			subproject('host', [name: 'host', dependencies: [plugin: 'workspace:*']])
+
+		when:
+			def packages = WorkspacePackages.register(rootProject).get()
+
+		then:
+			packages.dependencies(':plugin').isEmpty()
+			packages.taskDependencies(':host').toJavaList() == [':plugin']
+	}
+
+	def 'It shall omit task dependencies closing a cycle in favor of runtime dependencies'()
+	{
+		given:
+			subproject('library', [name: 'library', devDependencies: ['test-utils': 'workspace:*']])
+			subproject('test-utils', [name: 'test-utils', dependencies: [library: 'workspace:*']])
+
+		when:
+			def packages = WorkspacePackages.register(rootProject).get()
+
+		then:
+			packages.dependencies(':library').toJavaList() == [':test-utils']
+			packages.dependencies(':test-utils').toJavaList() == [':library']
+			packages.taskDependencies(':library').isEmpty()
+			packages.taskDependencies(':test-utils').toJavaList() == [':library']
+	}
+
+	def 'It shall omit task dependencies closing a cycle of several subprojects'()
+	{
+		given:
+			subproject('a', [name: 'a', dependencies: [b: '*']])
+			subproject('b', [name: 'b', dependencies: [c: '*']])
+			subproject('c', [name: 'c', dependencies: [a: '*']])
+
+		when:
+			def packages = WorkspacePackages.register(rootProject).get()
+
+		then:
+			packages.taskDependencies(':a').toJavaList() == [':b']
+			packages.taskDependencies(':b').toJavaList() == [':c']
+			packages.taskDependencies(':c').isEmpty()
+	}
+
+	def 'It shall report no dependencies for subprojects without a package file'()
+	{
+		given:
+			ProjectBuilder.builder().withName('docs').withParent(rootProject).build()
+			subproject('app', [name: 'app'])
+
+		expect:
+			WorkspacePackages.register(rootProject).get().dependencies(':docs').isEmpty()
+	}
+
+	private void subproject(String name, Map manifest)
+	{
+		def projectDir = new File(rootDir, name)
+
+		projectDir.mkdirs()
+		new File(projectDir, 'package.json').text = JsonOutput.toJson(manifest)
+
+		ProjectBuilder.builder().withName(name).withProjectDir(projectDir).withParent(rootProject).build()
+	}
+}